@@ -72,6 +72,16 @@ public interface IRiakConfig {
 
     public Integer getMaxConnections();
 
+    /**
+     * Value to set for the HttpConnectionManagerParams.MAX_HOST_CONNECTIONS
+     * property: maximum number of connections to each Riak node. If null, it
+     * defaults to the value of {@link IRiakConfig#getMaxConnections()} when
+     * that is set.
+     */
+    public void setMaxConnectionsPerHost(Integer maxConnectionsPerHost);
+
+    public Integer getMaxConnectionsPerHost();
+
     /**
      * Value to set for the HttpClientParams.RETRY_HANDLER property: the default
      * retry handler for requests.
@@ -82,4 +92,58 @@ public interface IRiakConfig {
 
     public void setRetryHandler(HttpMethodRetryHandler retryHandler);
 
-}
\ No newline at end of file
+    /**
+     * Whether RiakClient merges concurrent identical fetch and fetchMeta
+     * requests into a single HTTP request. Each caller still receives its own
+     * copy of the fetched objects.
+     */
+    public boolean isCoalesceFetches();
+
+    public void setCoalesceFetches(boolean coalesceFetches);
+
+    /**
+     * Maximum total size in bytes of the objects RiakClient caches from
+     * fetches. Cached objects are revalidated with a conditional GET using
+     * their vtag, and the cached copy is returned when Riak answers 304 Not
+     * Modified. Null disables the cache.
+     */
+    public void setObjectCacheMaxBytes(Long objectCacheMaxBytes);
+
+    public Long getObjectCacheMaxBytes();
+
+    /**
+     * Milliseconds after which a cached object is discarded instead of
+     * revalidated. Null for no expiry.
+     */
+    public void setObjectCacheTtl(Long objectCacheTtl);
+
+    public Long getObjectCacheTtl();
+
+    /**
+     * Maximum number of keys RiakClient remembers as not found after a fetch
+     * or fetchMeta returns 404 or the key is deleted through the client.
+     * Fetches of those keys return a 404 response without contacting Riak
+     * until the entry expires. Null disables the negative cache.
+     */
+    public void setNegativeCacheSize(Integer negativeCacheSize);
+
+    public Integer getNegativeCacheSize();
+
+    /**
+     * Milliseconds a key is remembered as not found.
+     */
+    public void setNegativeCacheTtl(Long negativeCacheTtl);
+
+    public Long getNegativeCacheTtl();
+
+    /**
+     * Maximum total size in bytes of the map/reduce results RiakClient
+     * caches for jobs which opt in with
+     * {@link com.basho.riak.client.request.MapReduceBuilder#setCacheTtl(long)}.
+     * Null disables the cache.
+     */
+    public void setMapReduceCacheMaxBytes(Long mapReduceCacheMaxBytes);
+
+    public Long getMapReduceCacheMaxBytes();
+
+}
@@ -13,32 +13,64 @@
  */
 package com.basho.riak.client;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.methods.RequestEntity;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import com.basho.riak.client.mapreduce.JavascriptFunctionStore;
+import com.basho.riak.client.request.LocalMapReduceBuilder;
 import com.basho.riak.client.request.MapReduceBuilder;
+import com.basho.riak.client.request.MapReduceRequestEntity;
 import com.basho.riak.client.request.RequestMeta;
 import com.basho.riak.client.request.RiakWalkSpec;
 import com.basho.riak.client.response.BucketResponse;
+import com.basho.riak.client.response.BulkFetchResponse;
+import com.basho.riak.client.response.DefaultHttpResponse;
+import com.basho.riak.client.response.FetchManyResponse;
 import com.basho.riak.client.response.FetchResponse;
 import com.basho.riak.client.response.HttpResponse;
 import com.basho.riak.client.response.MapReduceResponse;
 import com.basho.riak.client.response.RiakExceptionHandler;
+import com.basho.riak.client.response.RiakFetchRuntimeException;
 import com.basho.riak.client.response.RiakIORuntimeException;
 import com.basho.riak.client.response.RiakResponseRuntimeException;
+import com.basho.riak.client.response.ShardedMapReduceResponse;
 import com.basho.riak.client.response.StoreResponse;
 import com.basho.riak.client.response.StreamHandler;
+import com.basho.riak.client.response.StreamedKeysCursor;
+import com.basho.riak.client.response.StreamedMapReduceResponse;
 import com.basho.riak.client.response.WalkResponse;
+import com.basho.riak.client.util.BloomFilter;
 import com.basho.riak.client.util.ClientHelper;
 import com.basho.riak.client.util.ClientUtils;
+import com.basho.riak.client.util.Coalescer;
 import com.basho.riak.client.util.Constants;
+import com.basho.riak.client.util.DaemonThreadFactory;
+import com.basho.riak.client.util.DiskKeySet;
 import com.basho.riak.client.util.FailoverClientHelper;
 import com.basho.riak.client.util.IClientHelper;
+import com.basho.riak.client.util.LruCache;
+import com.basho.riak.client.util.MapReduceResultCache;
 
 /**
  * Primary interface for interacting with Riak via HTTP.
@@ -46,6 +78,22 @@ import com.basho.riak.client.util.IClientHelper;
 public class RiakClient {
 
     private IClientHelper helper;
+    private LruCache<String, FetchResponse> objectCache = null;
+    private LruCache<String, Boolean> negativeCache = null;
+    private final ConcurrentMap<String, BloomFilter> bloomFilters = new ConcurrentHashMap<String, BloomFilter>();
+    private final ConcurrentMap<String, BloomFilter> seedingBloomFilters = new ConcurrentHashMap<String, BloomFilter>();
+    private ExecutorService fetchManyExecutor = null;
+    private ExecutorService mapReduceExecutor = null;
+    private JavascriptFunctionStore functionStore = null;
+    private MapReduceResultCache mapReduceCache = null;
+
+    /** Default number of fetches fetchMany() keeps in flight */
+    public static final int DEFAULT_FETCH_MANY_CONCURRENCY = 10;
+    private final Coalescer<String, FetchResponse> fetchCoalescer = new Coalescer<String, FetchResponse>() {
+        @Override protected FetchResponse share(FetchResponse r) {
+            return FetchResponse.copyOf(r, RiakClient.this);
+        }
+    };
 
     public IRiakConfig getConfig() {
         return helper.getConfig();
@@ -56,11 +104,13 @@ public class RiakClient {
     }
 
     public RiakClient(IRiakConfig config, String clientId) {
-        if (config instanceof RiakFailoverConfig) {
-            helper = new FailoverClientHelper((RiakFailoverConfig)config, clientId);
-        } else {
-            helper = new ClientHelper(config, clientId);
-        }
+        this(newHelper(config, clientId));
+    }
+
+    private static IClientHelper newHelper(IRiakConfig config, String clientId) {
+        if (config instanceof RiakFailoverConfig)
+            return new FailoverClientHelper((RiakFailoverConfig)config, clientId);
+        return new ClientHelper(config, clientId);
     }
 
     public RiakClient(String url) {
@@ -81,6 +131,20 @@ public class RiakClient {
 
     public RiakClient(IClientHelper helper) {
         this.helper = helper;
+        IRiakConfig config = helper.getConfig();
+        if (config != null && config.getObjectCacheMaxBytes() != null) {
+            Long ttl = config.getObjectCacheTtl();
+            objectCache = new LruCache<String, FetchResponse>(config.getObjectCacheMaxBytes(), ttl == null ? 0 : ttl,
+                                                              OBJECT_WEIGHER);
+        }
+        if (config != null && config.getNegativeCacheSize() != null) {
+            Long ttl = config.getNegativeCacheTtl();
+            negativeCache = new LruCache<String, Boolean>(config.getNegativeCacheSize(), ttl == null ? 0 : ttl,
+                                                          UNIT_WEIGHER);
+        }
+        if (config != null && config.getMapReduceCacheMaxBytes() != null) {
+            mapReduceCache = new MapReduceResultCache(config.getMapReduceCacheMaxBytes());
+        }
     }
 
     /**
@@ -199,6 +263,84 @@ public class RiakClient {
         return streamBucket(bucket, null);
     }
 
+    /**
+     * Enumerate the keys in a bucket without holding them in memory. The keys
+     * are streamed from Riak and decoded one at a time as the returned cursor
+     * is iterated; unlike {@link RiakClient#streamBucket(String)}, they are
+     * not cached, so iterating a listing of any size uses constant memory.
+     * The cursor can be iterated only once, and the user must call
+     * {@link StreamedKeysCursor#close()} if they stop before the end.
+     * 
+     * @param bucket
+     *            The bucket to list.
+     * @param meta
+     *            Extra metadata to attach to the request such as HTTP headers
+     *            and query parameters.
+     * 
+     * @return {@link StreamedKeysCursor} containing HTTP response information
+     *         and iterating over the keys
+     * 
+     * @throws RiakIORuntimeException
+     *             If an error occurs during communication with the Riak server.
+     * @throws RiakResponseRuntimeException
+     *             If the Riak server returns a malformed response.
+     */
+    public StreamedKeysCursor streamKeys(String bucket, RequestMeta meta) {
+        HttpResponse r = helper.listBucket(bucket, meta, true);
+        try {
+            return getStreamedKeysCursor(r);
+        } catch (RiakResponseRuntimeException e) {
+            r.close();
+            return new StreamedKeysCursor(helper.toss(e));
+        }
+    }
+
+    public StreamedKeysCursor streamKeys(String bucket) {
+        return streamKeys(bucket, null);
+    }
+
+    /**
+     * List the keys in a bucket into a sorted, memory-mapped key file, for
+     * buckets too large to hold in heap that need to be enumerated more than
+     * once. The keys are streamed from Riak as with
+     * {@link RiakClient#streamKeys(String, RequestMeta)} and spilled to disk
+     * in sorted runs; the returned {@link DiskKeySet} can then be iterated,
+     * searched and sliced any number of times without listing the bucket
+     * again. The caller should close it when done.
+     * 
+     * @param bucket
+     *            The bucket to list.
+     * @param file
+     *            Where to write the key file. Any existing file is replaced.
+     * @param meta
+     *            Extra metadata to attach to the request such as HTTP headers
+     *            and query parameters.
+     * 
+     * @return The key set, or null if Riak did not return the bucket's keys
+     * 
+     * @throws RiakIORuntimeException
+     *             If an error occurs during communication with the Riak server
+     *             or writing the key file.
+     * @throws RiakResponseRuntimeException
+     *             If the Riak server returns a malformed response.
+     */
+    public DiskKeySet listBucketToDisk(String bucket, File file, RequestMeta meta) {
+        StreamedKeysCursor keys = streamKeys(bucket, meta);
+        try {
+            if (!keys.isSuccess())
+                return null;
+            return DiskKeySet.build(keys.iterator(), file);
+        } catch (IOException e) {
+            throw new RiakIORuntimeException("Error writing key file " + file, e);
+        } finally {
+            keys.close();
+        }
+    }
+
+    public DiskKeySet listBucketToDisk(String bucket, File file) {
+        return listBucketToDisk(bucket, file, null);
+    }
+
     BucketResponse listBucket(String bucket, RequestMeta meta, boolean streamResponse) {
         HttpResponse r = helper.listBucket(bucket, meta, streamResponse);
         try {
@@ -249,9 +391,21 @@ public class RiakClient {
         }
 
         HttpResponse r = helper.store(object, meta);
+        stored(object.getBucket(), object.getKey());
         return new StoreResponse(r);
     }
 
+    /**
+     * Update this client's object cache, negative cache and Bloom filters
+     * after <code>key</code> was stored without going through
+     * {@link RiakClient#store(RiakObject, RequestMeta)}, e.g. by an
+     * {@link com.basho.riak.client.async.AsyncRiakClient}.
+     */
+    public void stored(String bucket, String key) {
+        invalidate(bucket, key);
+        recordPresent(bucket, key);
+    }
+
     public StoreResponse store(RiakObject object) {
         return store(object, null);
     }
@@ -277,9 +431,21 @@ public class RiakClient {
      * @throws RiakResponseRuntimeException
      *             If the Riak server returns a malformed response.
      */
-    public FetchResponse fetchMeta(String bucket, String key, RequestMeta meta) {
+    public FetchResponse fetchMeta(final String bucket, final String key, final RequestMeta meta) {
+        if (isKnownMissing(bucket, key))
+            return new FetchResponse(notFound(bucket, key), this);
+        if (isCoalescingFetches())
+            return fetchCoalescer.execute(coalescingKey("HEAD", bucket, key, meta), new Callable<FetchResponse>() {
+                public FetchResponse call() {
+                    return doFetchMeta(bucket, key, meta);
+                }
+            });
+        return doFetchMeta(bucket, key, meta);
+    }
+
+    private FetchResponse doFetchMeta(String bucket, String key, RequestMeta meta) {
         try {
-            return getFetchResponse(helper.fetchMeta(bucket, key, meta));
+            return recordMissing(getFetchResponse(helper.fetchMeta(bucket, key, meta)));
         } catch (RiakResponseRuntimeException e) {
             return new FetchResponse(helper.toss(e), this);
         }
@@ -318,6 +484,54 @@ public class RiakClient {
         return fetch(bucket, key, null, false);
     }
 
+    /**
+     * Fetch many objects from <code>bucket</code> in parallel, with at most
+     * <code>maxConcurrency</code> requests in flight. Returns immediately;
+     * iterating the result yields a {@link FetchResponse} for each key as its
+     * fetch completes, in completion order. A failed fetch throws a
+     * {@link RiakFetchRuntimeException} naming its key from the iterator.
+     * 
+     * @param bucket
+     *            The bucket containing the objects to fetch.
+     * @param keys
+     *            The keys of the objects to fetch.
+     * @param meta
+     *            Extra metadata to attach to each request, as for
+     *            {@link RiakClient#fetch(String, String, RequestMeta)}. Each
+     *            fetch uses its own copy.
+     * @param maxConcurrency
+     *            Maximum number of fetches to run at once. Fetches also wait
+     *            for a free connection, so going beyond the connection pool
+     *            size does not add parallelism.
+     * 
+     * @return {@link FetchManyResponse} yielding one response per key.
+     */
+    public FetchManyResponse fetchMany(String bucket, Collection<String> keys, RequestMeta meta, int maxConcurrency) {
+        return new FetchManyResponse(this, bucket, keys, meta, maxConcurrency, getFetchManyExecutor());
+    }
+
+    public FetchManyResponse fetchMany(String bucket, Collection<String> keys, RequestMeta meta) {
+        return fetchMany(bucket, keys, meta, DEFAULT_FETCH_MANY_CONCURRENCY);
+    }
+
+    public FetchManyResponse fetchMany(String bucket, Collection<String> keys) {
+        return fetchMany(bucket, keys, null);
+    }
+
+    private synchronized ExecutorService getMapReduceExecutor() {
+        if (mapReduceExecutor == null) {
+            mapReduceExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("riak-mapreduce"));
+        }
+        return mapReduceExecutor;
+    }
+
+    private synchronized ExecutorService getFetchManyExecutor() {
+        if (fetchManyExecutor == null) {
+            fetchManyExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("riak-fetch-many"));
+        }
+        return fetchManyExecutor;
+    }
+
     /**
      * Similar to fetch(), except the HTTP connection is left open for
      * successful responses, and the Riak response is provided as a stream.
@@ -346,7 +560,9 @@ public class RiakClient {
         return fetch(bucket, key, null, true);
     }
 
-    FetchResponse fetch(String bucket, String key, RequestMeta meta, boolean streamResponse) {
+    FetchResponse fetch(final String bucket, final String key, RequestMeta meta, final boolean streamResponse) {
+        if (isKnownMissing(bucket, key))
+            return new FetchResponse(notFound(bucket, key), this);
         if (meta == null) {
             meta = new RequestMeta();
         }
@@ -358,16 +574,215 @@ public class RiakClient {
             meta.setHeader(Constants.HDR_ACCEPT, accept + ", " + Constants.CTYPE_MULTIPART_MIXED);
         }
 
-        HttpResponse r = helper.fetch(bucket, key, meta, streamResponse);
+        if (!streamResponse && isCoalescingFetches()) {
+            final RequestMeta fetchMeta = meta;
+            return fetchCoalescer.execute(coalescingKey("GET", bucket, key, meta), new Callable<FetchResponse>() {
+                public FetchResponse call() {
+                    return doFetch(bucket, key, fetchMeta, false);
+                }
+            });
+        }
+        return doFetch(bucket, key, meta, streamResponse);
+    }
+
+    private FetchResponse doFetch(String bucket, String key, RequestMeta meta, boolean streamResponse) {
+        boolean cacheable = objectCache != null && !streamResponse && meta.getIfNoneMatch() == null &&
+                            meta.getIfModifiedSince() == null;
+        if (!cacheable)
+            return recordMissing(parseFetch(helper.fetch(bucket, key, meta, streamResponse)));
 
+        String cacheKey = cacheKey(bucket, key);
+        FetchResponse cached = objectCache.get(cacheKey);
+        HttpResponse r;
+        if (cached != null) {
+            RequestMeta conditional = meta.copy();
+            conditional.setIfNoneMatch(cached.getObject().getVtag());
+            r = helper.fetch(bucket, key, conditional, false);
+            if (r.getStatusCode() == 304)
+                return FetchResponse.copyOf(cached, this);
+        } else {
+            r = helper.fetch(bucket, key, meta, false);
+        }
+
+        FetchResponse response = recordMissing(parseFetch(r));
+        if (response.getStatusCode() == 200 && response.hasObject() && response.getObject().getVtag() != null) {
+            objectCache.put(cacheKey, FetchResponse.copyOf(response, this));
+        } else {
+            objectCache.remove(cacheKey);
+        }
+        return response;
+    }
+
+    private FetchResponse parseFetch(HttpResponse r) {
         try {
             return getFetchResponse(r);
         } catch (RiakResponseRuntimeException e) {
             return new FetchResponse(helper.toss(e), this);
         }
+    }
+
+    private boolean isCoalescingFetches() {
+        IRiakConfig config = helper.getConfig();
+        return config != null && config.isCoalesceFetches();
+    }
+
+    /**
+     * Identifies fetches that return the same result: same method, object and
+     * request parameters.
+     */
+    static String coalescingKey(String method, String bucket, String key, RequestMeta meta) {
+        StringBuilder sb = new StringBuilder(method).append('\n').append(bucket).append('\n').append(key);
+        if (meta != null) {
+            sb.append('\n').append(meta.getQueryParams()).append('\n');
+            for (Map.Entry<String, String> header : new TreeMap<String, String>(meta.getHeaders()).entrySet()) {
+                sb.append(header.getKey()).append(':').append(header.getValue()).append('\n');
+            }
+        }
+        return sb.toString();
+    }
 
+    /**
+     * Drop any cached copy of the object at <code>bucket</code> and
+     * <code>key</code>.
+     */
+    private void invalidate(String bucket, String key) {
+        if (objectCache != null) {
+            objectCache.remove(cacheKey(bucket, key));
+        }
+    }
+
+    private static String cacheKey(String bucket, String key) {
+        return bucket + '\n' + key;
     }
 
+    /**
+     * Whether the negative cache or the bucket's Bloom filter say the object
+     * does not exist
+     */
+    private boolean isKnownMissing(String bucket, String key) {
+        if (negativeCache != null && negativeCache.get(cacheKey(bucket, key)) != null)
+            return true;
+        BloomFilter filter = bloomFilters.get(bucket);
+        return filter != null && key != null && !filter.mightContain(key);
+    }
+
+    private FetchResponse recordMissing(FetchResponse r) {
+        if (negativeCache != null && r.getStatusCode() == 404) {
+            negativeCache.put(cacheKey(r.getBucket(), r.getKey()), Boolean.TRUE);
+        }
+        return r;
+    }
+
+    private void recordPresent(String bucket, String key) {
+        if (key == null)
+            return;
+        if (negativeCache != null) {
+            negativeCache.remove(cacheKey(bucket, key));
+        }
+        BloomFilter filter = seedingBloomFilters.get(bucket);
+        if (filter != null) {
+            filter.add(key);
+        }
+        filter = bloomFilters.get(bucket);
+        if (filter != null) {
+            filter.add(key);
+        }
+    }
+
+    private static HttpResponse notFound(String bucket, String key) {
+        return new DefaultHttpResponse(bucket, key, 404, new HashMap<String, String>(), null, null, null);
+    }
+
+    /**
+     * Keep a Bloom filter of the keys in <code>bucket</code> so that fetches
+     * of keys that don't exist return a 404 response without contacting
+     * Riak. The filter is seeded by streaming the bucket's key list and is
+     * updated by stores through this client. Only use this for buckets that
+     * are written solely through this client: keys stored by other clients
+     * will appear missing.
+     * 
+     * @param expectedKeys
+     *            Number of keys the bucket is expected to grow to
+     * @param falsePositiveRate
+     *            Probability that a fetch of a missing key still goes to Riak
+     * @return The filter, or null if the bucket's keys could not be listed
+     */
+    public BloomFilter enableBloomFilter(String bucket, long expectedKeys, double falsePositiveRate) {
+        BloomFilter filter = new BloomFilter(expectedKeys, falsePositiveRate);
+        seedingBloomFilters.put(bucket, filter);
+        StreamedKeysCursor r = null;
+        try {
+            r = streamKeys(bucket);
+            if (!r.isSuccess())
+                return null;
+            for (String key : r) {
+                filter.add(key);
+            }
+            bloomFilters.put(bucket, filter);
+            return filter;
+        } finally {
+            seedingBloomFilters.remove(bucket, filter);
+            if (r != null) {
+                r.close();
+            }
+        }
+    }
+
+    /**
+     * Stop using a Bloom filter for <code>bucket</code>.
+     */
+    public void disableBloomFilter(String bucket) {
+        bloomFilters.remove(bucket);
+    }
+
+    /**
+     * @return the Bloom filter of keys in <code>bucket</code>, or null if
+     *         none has been enabled
+     */
+    public BloomFilter getBloomFilter(String bucket) {
+        return bloomFilters.get(bucket);
+    }
+
+    /**
+     * @return the cache of keys known not to exist, or null if
+     *         {@link IRiakConfig#getNegativeCacheSize()} was not set
+     */
+    public LruCache<String, Boolean> getNegativeCache() {
+        return negativeCache;
+    }
+
+    /**
+     * @return the cache of map/reduce results, or null if
+     *         {@link IRiakConfig#getMapReduceCacheMaxBytes()} was not set
+     */
+    public MapReduceResultCache getMapReduceCache() {
+        return mapReduceCache;
+    }
+
+    /**
+     * @return the cache of fetched objects, or null if
+     *         {@link IRiakConfig#getObjectCacheMaxBytes()} was not set
+     */
+    public LruCache<String, FetchResponse> getObjectCache() {
+        return objectCache;
+    }
+
+    private static final LruCache.Weigher<Object> UNIT_WEIGHER = new LruCache.Weigher<Object>() {
+        public long weigh(Object value) {
+            return 1;
+        }
+    };
+
+    private static final int OBJECT_OVERHEAD_BYTES = 256;
+    private static final LruCache.Weigher<FetchResponse> OBJECT_WEIGHER = new LruCache.Weigher<FetchResponse>() {
+        public long weigh(FetchResponse r) {
+            // the response body and the copy of the value held by the object
+            byte[] body = r.getBody();
+            byte[] value = r.getObject().getValueAsBytes();
+            return OBJECT_OVERHEAD_BYTES + (body == null ? 0 : body.length) + (value == null ? 0 : value.length);
+        }
+    };
+
     /**
      * Fetch and process the object stored at <code>bucket</code> and
      * <code>key</code> as a stream.
@@ -413,7 +828,25 @@ public class RiakClient {
      *             If an error occurs during communication with the Riak server.
      */
     public HttpResponse delete(String bucket, String key, RequestMeta meta) {
-        return helper.delete(bucket, key, meta);
+        HttpResponse r = helper.delete(bucket, key, meta);
+        deleted(bucket, key, r);
+        return r;
+    }
+
+    /**
+     * Update this client's object cache and negative cache after a delete of
+     * <code>key</code> which didn't go through
+     * {@link RiakClient#delete(String, String, RequestMeta)}, e.g. by an
+     * {@link com.basho.riak.client.async.AsyncRiakClient}.
+     * 
+     * @param r
+     *            The response to the delete
+     */
+    public void deleted(String bucket, String key, HttpResponse r) {
+        invalidate(bucket, key);
+        if (negativeCache != null && r.isSuccess()) {
+            negativeCache.put(cacheKey(bucket, key), Boolean.TRUE);
+        }
     }
 
     public HttpResponse delete(String bucket, String key) {
@@ -467,6 +900,41 @@ public class RiakClient {
         return walk(bucket, key, walkSpec.toString(), null);
     }
 
+    /**
+     * Same as {@link RiakClient#walk(String, String, String, RequestMeta)},
+     * except the response is streamed. Steps and the objects within them are
+     * read as they are iterated over from
+     * {@link WalkResponse#getStreamedSteps()}, and object values are exposed as
+     * streams, so a wide walk is never held in memory all at once. The user
+     * must remember to call {@link WalkResponse#close()} on the return value.
+     * 
+     * @throws RiakIORuntimeException
+     *             If an error occurs during communication with the Riak server.
+     * @throws RiakResponseRuntimeException
+     *             If the Riak server returns a malformed response.
+     */
+    public WalkResponse streamWalk(String bucket, String key, String walkSpec, RequestMeta meta) {
+        HttpResponse r = helper.walk(bucket, key, walkSpec, meta, true);
+
+        try {
+            return getWalkResponse(r);
+        } catch (RiakResponseRuntimeException e) {
+            r.close();
+            return new WalkResponse(helper.toss(e), this);
+        } catch (RiakIORuntimeException e) {
+            r.close();
+            return new WalkResponse(helper.toss(e), this);
+        }
+    }
+
+    public WalkResponse streamWalk(String bucket, String key, RiakWalkSpec walkSpec, RequestMeta meta) {
+        return streamWalk(bucket, key, walkSpec.toString(), meta);
+    }
+
+    public WalkResponse streamWalk(String bucket, String key, String walkSpec) {
+        return streamWalk(bucket, key, walkSpec, null);
+    }
+
     /**
      * Execute a map reduce job on the Riak server.
      * 
@@ -499,6 +967,167 @@ public class RiakClient {
         return mapReduce(job, null);
     }
 
+    /**
+     * Same as {@link RiakClient#mapReduce(String, RequestMeta)}, except the job
+     * is run in Riak's chunked mode and the results are streamed back as
+     * phase-tagged batches, parsed as they arrive. The user must iterate the
+     * return value to the end or call
+     * {@link StreamedMapReduceResponse#close()} to release the connection.
+     * 
+     * @return {@link StreamedMapReduceResponse} containing HTTP response
+     *         information and an iterator over the batches of results
+     * 
+     * @throws RiakIORuntimeException
+     *             If an error occurs during communication with the Riak server.
+     * @throws RiakResponseRuntimeException
+     *             If the Riak server does not return a multipart/mixed
+     *             response.
+     */
+    public StreamedMapReduceResponse streamMapReduce(String job, RequestMeta meta) {
+        HttpResponse r = helper.mapReduce(job, meta, true);
+        try {
+            return getStreamedMapReduceResponse(r);
+        } catch (RiakResponseRuntimeException e) {
+            r.close();
+            return new StreamedMapReduceResponse(helper.toss(e));
+        } catch (RiakIORuntimeException e) {
+            r.close();
+            return new StreamedMapReduceResponse(helper.toss(e));
+        }
+    }
+
+    public StreamedMapReduceResponse streamMapReduce(String job) {
+        return streamMapReduce(job, null);
+    }
+
+    /**
+     * Same as {@link RiakClient#mapReduce(String, RequestMeta)}, except the job
+     * is written to the connection by <code>job</code> rather than built as a
+     * String first. Use a {@link MapReduceRequestEntity} to stream a
+     * {@link MapReduceBuilder}'s job, including inputs drawn lazily with
+     * {@link MapReduceBuilder#setInputs(Iterable)}.
+     */
+    public MapReduceResponse mapReduce(RequestEntity job, RequestMeta meta) {
+        HttpResponse r = helper.mapReduce(job, meta, false);
+        try {
+            return getMapReduceResponse(r);
+        } catch (JSONException e) {
+            helper.toss(new RiakResponseRuntimeException(r, e));
+            return null;
+        }
+    }
+
+    /**
+     * Same as {@link RiakClient#streamMapReduce(String, RequestMeta)}, except
+     * the job is written to the connection by <code>job</code> as in
+     * {@link RiakClient#mapReduce(RequestEntity, RequestMeta)}.
+     */
+    public StreamedMapReduceResponse streamMapReduce(RequestEntity job, RequestMeta meta) {
+        HttpResponse r = helper.mapReduce(job, meta, true);
+        try {
+            return getStreamedMapReduceResponse(r);
+        } catch (RiakResponseRuntimeException e) {
+            r.close();
+            return new StreamedMapReduceResponse(helper.toss(e));
+        } catch (RiakIORuntimeException e) {
+            r.close();
+            return new StreamedMapReduceResponse(helper.toss(e));
+        }
+    }
+
+    /**
+     * This client's {@link JavascriptFunctionStore}, which stores anonymous
+     * map/reduce functions in {@link JavascriptFunctionStore#DEFAULT_BUCKET}.
+     * Pass it to {@link MapReduceBuilder#setFunctionStore(JavascriptFunctionStore)}
+     * so that jobs refer to stored copies of their functions. Each function
+     * is only uploaded once per client.
+     */
+    public synchronized JavascriptFunctionStore getFunctionStore() {
+        if (functionStore == null) {
+            functionStore = new JavascriptFunctionStore(this);
+        }
+        return functionStore;
+    }
+
+    /**
+     * A convenience method for creating a {@link LocalMapReduceBuilder}, which
+     * runs a map/reduce job with Java functions in the client, over a set of
+     * Riak objects.
+     * 
+     * @param objects
+     *            Map of bucket names to the keys of the objects to process
+     * @return A {@link LocalMapReduceBuilder} to build the job
+     */
+    public <T> LocalMapReduceBuilder<T> localMapReduceOverObjects(Map<String, Set<String>> objects) {
+        return new LocalMapReduceBuilder<T>(this).setRiakObjects(objects);
+    }
+
+    /**
+     * Split <code>job</code> with {@link MapReduceBuilder#split()} and run the
+     * sub-jobs in parallel, merging their results with
+     * {@link MapReduceBuilder#mergeShardResults(List)}. Each sub-job is a
+     * separate request, so with a {@link FailoverClientHelper} they are spread
+     * across its hosts. This is what {@link MapReduceBuilder#submit()} does
+     * when the job is sharded.
+     * 
+     * @param meta
+     *            Extra metadata to attach to each request. Each sub-job uses
+     *            its own copy.
+     * 
+     * @return {@link ShardedMapReduceResponse} containing the merged results
+     * 
+     * @throws IllegalStateException
+     *             If the job cannot be split
+     * @throws RiakIORuntimeException
+     *             If an error occurs during communication with the Riak server.
+     * @throws RiakResponseRuntimeException
+     *             If the Riak server returns a malformed response, or the
+     *             results cannot be merged.
+     */
+    public ShardedMapReduceResponse mapReduceSharded(MapReduceBuilder job, RequestMeta meta) {
+        List<MapReduceBuilder> shards = job.split();
+        List<Future<MapReduceResponse>> futures = new ArrayList<Future<MapReduceResponse>>(shards.size());
+        ExecutorService executor = getMapReduceExecutor();
+        for (MapReduceBuilder shard : shards) {
+            final RequestEntity entity = new MapReduceRequestEntity(shard);
+            final RequestMeta shardMeta = meta == null ? null : meta.copy();
+            futures.add(executor.submit(new Callable<MapReduceResponse>() {
+                public MapReduceResponse call() {
+                    return mapReduce(entity, shardMeta);
+                }
+            }));
+        }
+
+        List<MapReduceResponse> responses = new ArrayList<MapReduceResponse>(shards.size());
+        try {
+            for (Future<MapReduceResponse> f : futures) {
+                responses.add(f.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RiakIORuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RiakIORuntimeException(e.getCause());
+        } finally {
+            for (Future<MapReduceResponse> f : futures) {
+                f.cancel(true);
+            }
+        }
+
+        // a sub-job failed and the exception handler swallowed it
+        if (responses.contains(null))
+            return null;
+
+        try {
+            return new ShardedMapReduceResponse(job, responses);
+        } catch (JSONException e) {
+            helper.toss(new RiakResponseRuntimeException(responses.get(0), e));
+            return null;
+        }
+    }
+
     /**
      * A convenience method for creating a MapReduceBuilder used for building a
      * map reduce job to submission to this client
@@ -523,6 +1152,46 @@ public class RiakClient {
         return new MapReduceBuilder(this).setRiakObjects(objects);
     }
 
+    /**
+     * Fetch a set of objects in one round trip by submitting a map/reduce job
+     * over them with a single map phase that returns each object whole. The
+     * results are decoded into {@link RiakObject}s, which is much cheaper than
+     * issuing a GET per key when hydrating large key sets.
+     * 
+     * @param objects
+     *            A set of objects represented as a map of { bucket : [ list of
+     *            keys in bucket ] }
+     * @param meta
+     *            Extra metadata to attach to the request such as HTTP headers
+     *            or query parameters.
+     * 
+     * @return {@link BulkFetchResponse} containing the returned objects and
+     *         the requested keys which were not found
+     * 
+     * @throws RiakIORuntimeException
+     *             If an error occurs during communication with the Riak server.
+     * @throws RiakResponseRuntimeException
+     *             If the Riak server does not return valid results.
+     */
+    public BulkFetchResponse bulkFetch(Map<String, Set<String>> objects, RequestMeta meta) {
+        String job = mapReduceOverObjects(objects).map(BulkFetchResponse.MAP_OBJECT, true).toJSON().toString();
+        HttpResponse r = helper.mapReduce(job, meta);
+        try {
+            return getBulkFetchResponse(r, objects);
+        } catch (JSONException e) {
+            helper.toss(new RiakResponseRuntimeException(r, e));
+            return null;
+        }
+    }
+
+    public BulkFetchResponse bulkFetch(Map<String, Set<String>> objects) {
+        return bulkFetch(objects, null);
+    }
+
+    public BulkFetchResponse bulkFetch(String bucket, Collection<String> keys) {
+        return bulkFetch(Collections.singletonMap(bucket, (Set<String>) new LinkedHashSet<String>(keys)), null);
+    }
+
     /**
      * The installed exception handler or null if not installed
      */
@@ -580,4 +1249,16 @@ public class RiakClient {
     MapReduceResponse getMapReduceResponse(HttpResponse r) throws JSONException {
         return new MapReduceResponse(r);
     }
+
+    StreamedMapReduceResponse getStreamedMapReduceResponse(HttpResponse r) {
+        return new StreamedMapReduceResponse(r);
+    }
+
+    StreamedKeysCursor getStreamedKeysCursor(HttpResponse r) {
+        return new StreamedKeysCursor(r);
+    }
+
+    BulkFetchResponse getBulkFetchResponse(HttpResponse r, Map<String, Set<String>> objects) throws JSONException {
+        return new BulkFetchResponse(r, this, objects);
+    }
 }
@@ -34,7 +34,14 @@ public class RiakConfig implements IRiakConfig {
     private HttpClient httpClient = null;
     private Integer timeout = null;
     private Integer maxConnections = null;
+    private Integer maxConnectionsPerHost = null;
     private HttpMethodRetryHandler retryHandler = null;
+    private boolean coalesceFetches = false;
+    private Long objectCacheMaxBytes = null;
+    private Long objectCacheTtl = null;
+    private Integer negativeCacheSize = null;
+    private Long negativeCacheTtl = 1000L;
+    private Long mapReduceCacheMaxBytes = null;
 
     public RiakConfig() {}
 
@@ -164,6 +171,20 @@ public class RiakConfig implements IRiakConfig {
         return maxConnections;
     }
 
+    /**
+     * Value to set for the HttpConnectionManagerParams.MAX_HOST_CONNECTIONS
+     * property: maximum number of connections to each Riak node. If null, it
+     * defaults to the value of {@link RiakConfig#getMaxConnections()} when
+     * that is set.
+     */
+    public void setMaxConnectionsPerHost(Integer maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    public Integer getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
     /**
      * Value to set for the HttpClientParams.RETRY_HANDLER property: the default
      * retry handler for requests.
@@ -177,4 +198,82 @@ public class RiakConfig implements IRiakConfig {
     public void setRetryHandler(HttpMethodRetryHandler retryHandler) {
         this.retryHandler = retryHandler;
     }
+
+    /**
+     * Whether RiakClient merges concurrent identical fetch and fetchMeta
+     * requests into a single HTTP request. Each caller still receives its own
+     * copy of the fetched objects. Defaults to false.
+     */
+    public boolean isCoalesceFetches() {
+        return coalesceFetches;
+    }
+
+    public void setCoalesceFetches(boolean coalesceFetches) {
+        this.coalesceFetches = coalesceFetches;
+    }
+
+    /**
+     * Maximum total size in bytes of the objects RiakClient caches from
+     * fetches. Cached objects are revalidated with a conditional GET using
+     * their vtag, and the cached copy is returned when Riak answers 304 Not
+     * Modified. Null disables the cache.
+     */
+    public void setObjectCacheMaxBytes(Long objectCacheMaxBytes) {
+        this.objectCacheMaxBytes = objectCacheMaxBytes;
+    }
+
+    public Long getObjectCacheMaxBytes() {
+        return objectCacheMaxBytes;
+    }
+
+    /**
+     * Milliseconds after which a cached object is discarded instead of
+     * revalidated. Null for no expiry.
+     */
+    public void setObjectCacheTtl(Long objectCacheTtl) {
+        this.objectCacheTtl = objectCacheTtl;
+    }
+
+    public Long getObjectCacheTtl() {
+        return objectCacheTtl;
+    }
+
+    /**
+     * Maximum number of keys RiakClient remembers as not found after a fetch
+     * or fetchMeta returns 404 or the key is deleted through the client.
+     * Fetches of those keys return a 404 response without contacting Riak
+     * until the entry expires. Null disables the negative cache.
+     */
+    public void setNegativeCacheSize(Integer negativeCacheSize) {
+        this.negativeCacheSize = negativeCacheSize;
+    }
+
+    public Integer getNegativeCacheSize() {
+        return negativeCacheSize;
+    }
+
+    /**
+     * Milliseconds a key is remembered as not found. Defaults to 1 second.
+     */
+    public void setNegativeCacheTtl(Long negativeCacheTtl) {
+        this.negativeCacheTtl = negativeCacheTtl;
+    }
+
+    public Long getNegativeCacheTtl() {
+        return negativeCacheTtl;
+    }
+
+    /**
+     * Maximum total size in bytes of the map/reduce results RiakClient
+     * caches for jobs which opt in with
+     * {@link com.basho.riak.client.request.MapReduceBuilder#setCacheTtl(long)}.
+     * Null disables the cache.
+     */
+    public void setMapReduceCacheMaxBytes(Long mapReduceCacheMaxBytes) {
+        this.mapReduceCacheMaxBytes = mapReduceCacheMaxBytes;
+    }
+
+    public Long getMapReduceCacheMaxBytes() {
+        return mapReduceCacheMaxBytes;
+    }
 }
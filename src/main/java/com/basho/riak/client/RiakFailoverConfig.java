@@ -1,5 +1,6 @@
 package com.basho.riak.client;
 
+import com.basho.riak.client.util.HostSelectionStrategy;
 
 /**
  * Configuration settings for connecting to a Riak cluster.
@@ -7,6 +8,21 @@ package com.basho.riak.client;
 public class RiakFailoverConfig extends RiakConfig {
     
     private String[] urlList;
+    private HostSelectionStrategy hostSelectionStrategy = null;
+    private boolean healthCheckEnabled = true;
+    private String healthCheckPath = "/ping";
+    private long healthCheckInitialDelay = 1000;
+    private long healthCheckMaxDelay = 60000;
+    private int healthCheckTimeout = 2000;
+    private boolean circuitBreakerEnabled = false;
+    private int circuitBreakerWindowSize = 20;
+    private double circuitBreakerErrorRate = 0.5;
+    private double circuitBreakerTimeoutRate = 0.5;
+    private long circuitBreakerSlowRequestThreshold = 2000;
+    private long circuitBreakerOpenInterval = 5000;
+    private boolean hedgedReadsEnabled = false;
+    private double hedgeDelayPercentile = 95;
+    private long hedgeMinDelay = 1;
     
     public RiakFailoverConfig(String[] urlList, String prefix) {
         this.urlList = urlList;
@@ -17,4 +33,184 @@ public class RiakFailoverConfig extends RiakConfig {
         return this.urlList;
     }
 
+    /**
+     * The strategy used to choose which node receives each request. Strategies
+     * keep per-host state, so don't share an instance between clients.
+     * Defaults to round-robin when null.
+     */
+    public HostSelectionStrategy getHostSelectionStrategy() {
+        return hostSelectionStrategy;
+    }
+
+    public void setHostSelectionStrategy(HostSelectionStrategy hostSelectionStrategy) {
+        this.hostSelectionStrategy = hostSelectionStrategy;
+    }
+
+    /**
+     * Whether hosts taken out of rotation after a failed request are probed
+     * in the background and re-admitted once they respond. Defaults to true;
+     * when false, failed hosts are removed permanently.
+     */
+    public boolean isHealthCheckEnabled() {
+        return healthCheckEnabled;
+    }
+
+    public void setHealthCheckEnabled(boolean healthCheckEnabled) {
+        this.healthCheckEnabled = healthCheckEnabled;
+    }
+
+    /**
+     * The path requested to check a failed host, relative to the host root.
+     * Defaults to Riak's /ping resource.
+     */
+    public String getHealthCheckPath() {
+        return healthCheckPath;
+    }
+
+    public void setHealthCheckPath(String healthCheckPath) {
+        this.healthCheckPath = healthCheckPath;
+    }
+
+    /**
+     * Milliseconds to wait before first probing a failed host. The delay
+     * doubles after each failed probe, up to the max delay.
+     */
+    public long getHealthCheckInitialDelay() {
+        return healthCheckInitialDelay;
+    }
+
+    public void setHealthCheckInitialDelay(long healthCheckInitialDelay) {
+        this.healthCheckInitialDelay = healthCheckInitialDelay;
+    }
+
+    /**
+     * Maximum milliseconds between probes of a failed host.
+     */
+    public long getHealthCheckMaxDelay() {
+        return healthCheckMaxDelay;
+    }
+
+    public void setHealthCheckMaxDelay(long healthCheckMaxDelay) {
+        this.healthCheckMaxDelay = healthCheckMaxDelay;
+    }
+
+    /**
+     * Socket timeout in milliseconds for each probe.
+     */
+    public int getHealthCheckTimeout() {
+        return healthCheckTimeout;
+    }
+
+    public void setHealthCheckTimeout(int healthCheckTimeout) {
+        this.healthCheckTimeout = healthCheckTimeout;
+    }
+
+    /**
+     * Whether each host gets a {@link com.basho.riak.client.util.CircuitBreaker}
+     * that stops traffic to it while its recent error or timeout rate is too
+     * high. When enabled, failed requests feed the breaker and the host stays
+     * in the rotation instead of being health checked. Defaults to false.
+     */
+    public boolean isCircuitBreakerEnabled() {
+        return circuitBreakerEnabled;
+    }
+
+    public void setCircuitBreakerEnabled(boolean circuitBreakerEnabled) {
+        this.circuitBreakerEnabled = circuitBreakerEnabled;
+    }
+
+    /**
+     * Number of recent requests to each host the error and timeout rates are
+     * computed over.
+     */
+    public int getCircuitBreakerWindowSize() {
+        return circuitBreakerWindowSize;
+    }
+
+    public void setCircuitBreakerWindowSize(int circuitBreakerWindowSize) {
+        this.circuitBreakerWindowSize = circuitBreakerWindowSize;
+    }
+
+    /**
+     * Fraction of failed requests, between 0 and 1, that opens the breaker.
+     */
+    public double getCircuitBreakerErrorRate() {
+        return circuitBreakerErrorRate;
+    }
+
+    public void setCircuitBreakerErrorRate(double circuitBreakerErrorRate) {
+        this.circuitBreakerErrorRate = circuitBreakerErrorRate;
+    }
+
+    /**
+     * Fraction of timed out or slow requests, between 0 and 1, that opens the
+     * breaker.
+     */
+    public double getCircuitBreakerTimeoutRate() {
+        return circuitBreakerTimeoutRate;
+    }
+
+    public void setCircuitBreakerTimeoutRate(double circuitBreakerTimeoutRate) {
+        this.circuitBreakerTimeoutRate = circuitBreakerTimeoutRate;
+    }
+
+    /**
+     * Milliseconds after which a request counts as timed out for the breaker,
+     * even if it eventually succeeds.
+     */
+    public long getCircuitBreakerSlowRequestThreshold() {
+        return circuitBreakerSlowRequestThreshold;
+    }
+
+    public void setCircuitBreakerSlowRequestThreshold(long circuitBreakerSlowRequestThreshold) {
+        this.circuitBreakerSlowRequestThreshold = circuitBreakerSlowRequestThreshold;
+    }
+
+    /**
+     * Milliseconds an open breaker waits before letting a trial request
+     * through.
+     */
+    public long getCircuitBreakerOpenInterval() {
+        return circuitBreakerOpenInterval;
+    }
+
+    public void setCircuitBreakerOpenInterval(long circuitBreakerOpenInterval) {
+        this.circuitBreakerOpenInterval = circuitBreakerOpenInterval;
+    }
+
+    /**
+     * Whether fetches that are slow to respond are also sent to a second
+     * host, using whichever response arrives first. Defaults to false.
+     */
+    public boolean isHedgedReadsEnabled() {
+        return hedgedReadsEnabled;
+    }
+
+    public void setHedgedReadsEnabled(boolean hedgedReadsEnabled) {
+        this.hedgedReadsEnabled = hedgedReadsEnabled;
+    }
+
+    /**
+     * The percentile, between 0 and 100, of observed fetch latency after
+     * which a fetch is hedged. Defaults to 95, so about 5% of fetches send a
+     * second request.
+     */
+    public double getHedgeDelayPercentile() {
+        return hedgeDelayPercentile;
+    }
+
+    public void setHedgeDelayPercentile(double hedgeDelayPercentile) {
+        this.hedgeDelayPercentile = hedgeDelayPercentile;
+    }
+
+    /**
+     * Minimum milliseconds to wait before hedging a fetch.
+     */
+    public long getHedgeMinDelay() {
+        return hedgeMinDelay;
+    }
+
+    public void setHedgeMinDelay(long hedgeMinDelay) {
+        this.hedgeMinDelay = hedgeMinDelay;
+    }
 }
@@ -0,0 +1,362 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.async;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.methods.DeleteMethod;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.HeadMethod;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+
+import com.basho.riak.client.IRiakConfig;
+import com.basho.riak.client.RiakFailoverConfig;
+import com.basho.riak.client.RiakObject;
+import com.basho.riak.client.request.RequestMeta;
+import com.basho.riak.client.response.DefaultHttpResponse;
+import com.basho.riak.client.response.HttpResponse;
+import com.basho.riak.client.response.RiakIORuntimeException;
+import com.basho.riak.client.util.ClientHelper;
+import com.basho.riak.client.util.ClientUtils;
+import com.basho.riak.client.util.Constants;
+
+/**
+ * Asynchronous counterpart to {@link ClientHelper}. Requests are sent over
+ * non-blocking sockets by a few event loop threads, so the number of
+ * requests in flight is not bounded by a thread pool: each returns
+ * immediately with a {@link Future} for the raw {@link HttpResponse}, and
+ * an optional {@link ResponseCallback} is notified on an event loop thread
+ * when the response has been read.
+ * <p>
+ * Requests are built exactly as {@link ClientHelper} builds them, but none
+ * of its HttpClient connection pool is used, so this is independent of any
+ * {@link ClientHelper} for the same config. Requests are spread round-robin
+ * over the hosts of a {@link RiakFailoverConfig}, without failover. Only
+ * http URLs are supported. Communication errors are always reported as a
+ * {@link RiakIORuntimeException} to the callback and the {@link Future};
+ * there is no exception handler.
+ */
+public class AsyncClientHelper {
+
+    /** Connections to each host when the config doesn't limit them */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 20;
+
+    private final IRiakConfig config;
+    private final NioTransport transport;
+    private final InetSocketAddress[] hosts;
+    private final String[] hostHeaders;
+    private final AtomicInteger nextHost = new AtomicInteger();
+    private volatile String clientId;
+
+    /**
+     * Send requests to the server(s) in <code>config</code> using up to four
+     * event loop threads.
+     */
+    public AsyncClientHelper(IRiakConfig config, String clientId) {
+        this(config, clientId, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param config
+     *            Servers to send requests to. Its timeout fails a request
+     *            whose connection is idle that long, and its maximum
+     *            connections per host bound the connections each event loop
+     *            opens to a server.
+     * @param clientId
+     *            Sent with stores as in {@link ClientHelper}; random if null
+     * @param eventLoops
+     *            Number of event loop threads
+     * @throws IllegalArgumentException
+     *             If a URL in <code>config</code> is not an http URL
+     */
+    public AsyncClientHelper(IRiakConfig config, String clientId, int eventLoops) {
+        if (config == null || eventLoops <= 0)
+            throw new IllegalArgumentException();
+
+        this.config = config;
+        String[] urls = new String[] { config.getUrl() };
+        if (config instanceof RiakFailoverConfig && ((RiakFailoverConfig) config).getUrlList() != null) {
+            urls = ((RiakFailoverConfig) config).getUrlList();
+        }
+        hosts = new InetSocketAddress[urls.length];
+        hostHeaders = new String[urls.length];
+        for (int i = 0; i < urls.length; i++) {
+            URI uri = toHttpUri(urls[i]);
+            int port = uri.getPort() == -1 ? 80 : uri.getPort();
+            hosts[i] = InetSocketAddress.createUnresolved(uri.getHost(), port);
+            hostHeaders[i] = uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + port;
+        }
+        setClientId(clientId);
+
+        transport = new NioTransport(eventLoops, maxConnectionsPerHost(config), timeout(config));
+    }
+
+    public IRiakConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @see ClientHelper#getClientId()
+     */
+    public byte[] getClientId() {
+        try {
+            return Base64.decodeBase64(clientId.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 support required in JVM");
+        }
+    }
+
+    /**
+     * @see ClientHelper#setClientId(String)
+     */
+    public void setClientId(String clientId) {
+        if (clientId != null) {
+            this.clientId = ClientUtils.encodeClientId(clientId);
+        } else {
+            this.clientId = ClientUtils.randomClientId();
+        }
+    }
+
+    /**
+     * Use the same client ID as another client, given as returned by its
+     * getClientId()
+     */
+    public void setClientId(byte[] clientId) {
+        this.clientId = ClientUtils.encodeClientId(clientId);
+    }
+
+    /**
+     * Same as {@link ClientHelper#store(RiakObject, RequestMeta)}
+     */
+    public Future<HttpResponse> store(RiakObject object, RequestMeta meta, ResponseCallback<HttpResponse> callback) {
+        if (meta == null) {
+            meta = new RequestMeta();
+        }
+        if (meta.getClientId() == null) {
+            meta.setClientId(clientId);
+        }
+
+        String bucket = object.getBucket();
+        String key = object.getKey();
+        PutMethod put = new PutMethod(ClientUtils.makeURI(config, bucket, key));
+        object.writeToHttpMethod(put);
+        return execute(bucket, key, put, meta, callback);
+    }
+
+    /**
+     * Same as {@link ClientHelper#fetchMeta(String, String, RequestMeta)}
+     */
+    public Future<HttpResponse> fetchMeta(String bucket, String key, RequestMeta meta,
+                                          ResponseCallback<HttpResponse> callback) {
+        if (meta == null) {
+            meta = new RequestMeta();
+        }
+        if (meta.getQueryParam(Constants.QP_R) == null) {
+            meta.setQueryParam(Constants.QP_R, Constants.DEFAULT_R.toString());
+        }
+        HeadMethod head = new HeadMethod(ClientUtils.makeURI(config, bucket, key));
+        return execute(bucket, key, head, meta, callback);
+    }
+
+    /**
+     * Same as {@link ClientHelper#fetch(String, String, RequestMeta)}
+     */
+    public Future<HttpResponse> fetch(String bucket, String key, RequestMeta meta,
+                                      ResponseCallback<HttpResponse> callback) {
+        if (meta == null) {
+            meta = new RequestMeta();
+        }
+        if (meta.getQueryParam(Constants.QP_R) == null) {
+            meta.setQueryParam(Constants.QP_R, Constants.DEFAULT_R.toString());
+        }
+        GetMethod get = new GetMethod(ClientUtils.makeURI(config, bucket, key));
+        return execute(bucket, key, get, meta, callback);
+    }
+
+    /**
+     * Same as {@link ClientHelper#delete(String, String, RequestMeta)}
+     */
+    public Future<HttpResponse> delete(String bucket, String key, RequestMeta meta,
+                                       ResponseCallback<HttpResponse> callback) {
+        DeleteMethod delete = new DeleteMethod(ClientUtils.makeURI(config, bucket, key));
+        return execute(bucket, key, delete, meta, callback);
+    }
+
+    /**
+     * Same as {@link ClientHelper#walk(String, String, String, RequestMeta)}
+     */
+    public Future<HttpResponse> walk(String bucket, String key, String walkSpec, RequestMeta meta,
+                                     ResponseCallback<HttpResponse> callback) {
+        GetMethod get = new GetMethod(ClientUtils.makeURI(config, bucket, key, walkSpec));
+        return execute(bucket, key, get, meta, callback);
+    }
+
+    /**
+     * Same as {@link ClientHelper#mapReduce(String, RequestMeta)}
+     */
+    public Future<HttpResponse> mapReduce(String job, RequestMeta meta, ResponseCallback<HttpResponse> callback) {
+        PostMethod post = new PostMethod(config.getMapReduceUrl());
+        try {
+            post.setRequestEntity(new StringRequestEntity(job, Constants.CTYPE_JSON, null));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("StringRequestEntity should always support no charset", e);
+        }
+        return execute(null, null, post, meta, callback);
+    }
+
+    /**
+     * Close all connections. Requests still in flight fail, as do any made
+     * afterwards.
+     */
+    public void shutdown() {
+        transport.shutdown();
+    }
+
+    /**
+     * Send <code>httpMethod</code>, which is only used to collect the
+     * request line, headers and body, with the headers and query parameters
+     * from <code>meta</code> added as by ClientHelper.executeMethod().
+     */
+    private Future<HttpResponse> execute(final String bucket, final String key, HttpMethod httpMethod,
+                                         RequestMeta meta, ResponseCallback<HttpResponse> callback) {
+        if (meta != null) {
+            Map<String, String> headers = meta.getHeaders();
+            for (String header : headers.keySet()) {
+                httpMethod.setRequestHeader(header, headers.get(header));
+            }
+
+            String queryParams = meta.getQueryParams();
+            if (queryParams != null && (queryParams.length() != 0)) {
+                String currentQuery = httpMethod.getQueryString();
+                if (currentQuery != null && (currentQuery.length() != 0)) {
+                    httpMethod.setQueryString(currentQuery + "&" + queryParams);
+                } else {
+                    httpMethod.setQueryString(queryParams);
+                }
+            }
+        }
+
+        final CallbackFuture<HttpResponse> future = new CallbackFuture<HttpResponse>(callback);
+        int host = (nextHost.getAndIncrement() & Integer.MAX_VALUE) % hosts.length;
+        ByteBuffer data;
+        try {
+            data = encode(httpMethod, hostHeaders[host]);
+        } catch (IOException e) {
+            future.fail(new RiakIORuntimeException(e));
+            return future;
+        }
+
+        transport.execute(new NioRequest(hosts[host], data, httpMethod instanceof HeadMethod) {
+            @Override void completed(int status, Map<String, String> headers, byte[] body) {
+                future.complete(new DefaultHttpResponse(bucket, key, status, headers, body, null, null));
+            }
+
+            @Override void failed(IOException e) {
+                future.fail(new RiakIORuntimeException(e));
+            }
+        });
+        return future;
+    }
+
+    /** The HTTP/1.1 request for <code>httpMethod</code> */
+    static ByteBuffer encode(HttpMethod httpMethod, String host) throws IOException {
+        byte[] body = null;
+        String contentType = null;
+        if (httpMethod instanceof EntityEnclosingMethod) {
+            RequestEntity entity = ((EntityEnclosingMethod) httpMethod).getRequestEntity();
+            if (entity != null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                entity.writeRequest(out);
+                body = out.toByteArray();
+                contentType = entity.getContentType();
+            }
+        }
+
+        StringBuilder head = new StringBuilder();
+        head.append(httpMethod.getName()).append(' ').append(httpMethod.getPath());
+        String query = httpMethod.getQueryString();
+        if (query != null && query.length() != 0) {
+            head.append('?').append(query);
+        }
+        head.append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(host).append("\r\n");
+        for (Header header : httpMethod.getRequestHeaders()) {
+            String name = header.getName();
+            if (name.equalsIgnoreCase("host") || name.equalsIgnoreCase(Constants.HDR_CONTENT_LENGTH)
+                || name.equalsIgnoreCase("transfer-encoding"))
+                continue;
+            if (name.equalsIgnoreCase(Constants.HDR_CONTENT_TYPE)) {
+                contentType = null;
+            }
+            head.append(name).append(": ").append(header.getValue()).append("\r\n");
+        }
+        if (contentType != null) {
+            head.append(Constants.HDR_CONTENT_TYPE).append(": ").append(contentType).append("\r\n");
+        }
+        if (body != null) {
+            head.append(Constants.HDR_CONTENT_LENGTH).append(": ").append(body.length).append("\r\n");
+        }
+        head.append("\r\n");
+
+        byte[] headBytes = head.toString().getBytes("ISO-8859-1");
+        ByteBuffer data = ByteBuffer.allocate(headBytes.length + (body == null ? 0 : body.length));
+        data.put(headBytes);
+        if (body != null) {
+            data.put(body);
+        }
+        data.flip();
+        return data;
+    }
+
+    private static URI toHttpUri(String url) {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid URL " + url, e);
+        }
+        if (!"http".equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null)
+            throw new IllegalArgumentException("Only http URLs are supported: " + url);
+        return uri;
+    }
+
+    private static int maxConnectionsPerHost(IRiakConfig config) {
+        Integer max = config.getMaxConnectionsPerHost();
+        if (max == null || max <= 0) {
+            max = config.getMaxConnections();
+        }
+        return max == null || max <= 0 ? DEFAULT_MAX_CONNECTIONS_PER_HOST : max;
+    }
+
+    private static int timeout(IRiakConfig config) {
+        Integer timeout = config.getTimeout();
+        return timeout == null || timeout < 0 ? 0 : timeout;
+    }
+}
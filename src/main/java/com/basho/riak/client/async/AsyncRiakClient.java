@@ -0,0 +1,243 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.async;
+
+import java.util.concurrent.Future;
+
+import org.json.JSONException;
+
+import com.basho.riak.client.RiakClient;
+import com.basho.riak.client.RiakObject;
+import com.basho.riak.client.request.RequestMeta;
+import com.basho.riak.client.response.FetchResponse;
+import com.basho.riak.client.response.HttpResponse;
+import com.basho.riak.client.response.MapReduceResponse;
+import com.basho.riak.client.response.RiakResponseRuntimeException;
+import com.basho.riak.client.response.StoreResponse;
+import com.basho.riak.client.response.WalkResponse;
+import com.basho.riak.client.util.Constants;
+
+/**
+ * Non-blocking counterpart to {@link RiakClient}. Operations return a
+ * {@link Future} immediately and optionally notify a
+ * {@link ResponseCallback} on completion. Responses are the same
+ * {@link FetchResponse}, {@link StoreResponse}, etc. that {@link RiakClient}
+ * returns, constructed from the {@link HttpResponse} in the same way.
+ * <p>
+ * Requests are sent by an {@link AsyncClientHelper}, so no thread waits on
+ * any one of them. Stores and deletes update the {@link RiakClient}'s caches
+ * as they would through the {@link RiakClient} itself, but fetches always go
+ * to the server.
+ */
+public class AsyncRiakClient {
+
+    private final RiakClient riak;
+    private final AsyncClientHelper helper;
+
+    /**
+     * Send requests to the servers in <code>riak</code>'s config, with the
+     * same client ID.
+     */
+    public AsyncRiakClient(RiakClient riak) {
+        this(riak, newHelper(riak));
+    }
+
+    public AsyncRiakClient(RiakClient riak, AsyncClientHelper helper) {
+        if (riak == null || helper == null)
+            throw new IllegalArgumentException();
+
+        this.riak = riak;
+        this.helper = helper;
+    }
+
+    /** The synchronous client whose caches are kept up to date */
+    public RiakClient getRiakClient() {
+        return riak;
+    }
+
+    public AsyncClientHelper getHelper() {
+        return helper;
+    }
+
+    /**
+     * Asynchronous {@link RiakClient#store(RiakObject, RequestMeta)}
+     */
+    public Future<StoreResponse> store(final RiakObject object, RequestMeta meta,
+                                       ResponseCallback<StoreResponse> callback) {
+        if (meta == null) {
+            meta = new RequestMeta();
+        }
+        if (meta.getQueryParam(Constants.QP_RETURN_BODY) == null) {
+            meta.setQueryParam(Constants.QP_RETURN_BODY, "true");
+        }
+
+        Conversion<StoreResponse> c = new Conversion<StoreResponse>(callback) {
+            @Override StoreResponse convert(HttpResponse r) {
+                riak.stored(object.getBucket(), object.getKey());
+                return new StoreResponse(r);
+            }
+        };
+        helper.store(object, meta, c);
+        return c.future;
+    }
+
+    public Future<StoreResponse> store(RiakObject object, RequestMeta meta) {
+        return store(object, meta, null);
+    }
+
+    /**
+     * Asynchronous {@link RiakClient#fetchMeta(String, String, RequestMeta)}
+     */
+    public Future<FetchResponse> fetchMeta(String bucket, String key, RequestMeta meta,
+                                           ResponseCallback<FetchResponse> callback) {
+        Conversion<FetchResponse> c = new Conversion<FetchResponse>(callback) {
+            @Override FetchResponse convert(HttpResponse r) {
+                return new FetchResponse(r, riak);
+            }
+        };
+        helper.fetchMeta(bucket, key, meta, c);
+        return c.future;
+    }
+
+    public Future<FetchResponse> fetchMeta(String bucket, String key, RequestMeta meta) {
+        return fetchMeta(bucket, key, meta, null);
+    }
+
+    /**
+     * Asynchronous {@link RiakClient#fetch(String, String, RequestMeta)}
+     */
+    public Future<FetchResponse> fetch(String bucket, String key, RequestMeta meta,
+                                       ResponseCallback<FetchResponse> callback) {
+        Conversion<FetchResponse> c = new Conversion<FetchResponse>(callback) {
+            @Override FetchResponse convert(HttpResponse r) {
+                return new FetchResponse(r, riak);
+            }
+        };
+        helper.fetch(bucket, key, meta, c);
+        return c.future;
+    }
+
+    public Future<FetchResponse> fetch(String bucket, String key, RequestMeta meta) {
+        return fetch(bucket, key, meta, null);
+    }
+
+    /**
+     * Asynchronous {@link RiakClient#delete(String, String, RequestMeta)}
+     */
+    public Future<HttpResponse> delete(final String bucket, final String key, RequestMeta meta,
+                                       ResponseCallback<HttpResponse> callback) {
+        Conversion<HttpResponse> c = new Conversion<HttpResponse>(callback) {
+            @Override HttpResponse convert(HttpResponse r) {
+                riak.deleted(bucket, key, r);
+                return r;
+            }
+        };
+        helper.delete(bucket, key, meta, c);
+        return c.future;
+    }
+
+    public Future<HttpResponse> delete(String bucket, String key, RequestMeta meta) {
+        return delete(bucket, key, meta, null);
+    }
+
+    /**
+     * Asynchronous {@link RiakClient#walk(String, String, String, RequestMeta)}
+     */
+    public Future<WalkResponse> walk(String bucket, String key, String walkSpec, RequestMeta meta,
+                                     ResponseCallback<WalkResponse> callback) {
+        Conversion<WalkResponse> c = new Conversion<WalkResponse>(callback) {
+            @Override WalkResponse convert(HttpResponse r) {
+                return new WalkResponse(r, riak);
+            }
+        };
+        helper.walk(bucket, key, walkSpec, meta, c);
+        return c.future;
+    }
+
+    public Future<WalkResponse> walk(String bucket, String key, String walkSpec, RequestMeta meta) {
+        return walk(bucket, key, walkSpec, meta, null);
+    }
+
+    /**
+     * Asynchronous {@link RiakClient#mapReduce(String, RequestMeta)}
+     */
+    public Future<MapReduceResponse> mapReduce(String job, RequestMeta meta,
+                                               ResponseCallback<MapReduceResponse> callback) {
+        Conversion<MapReduceResponse> c = new Conversion<MapReduceResponse>(callback) {
+            @Override MapReduceResponse convert(HttpResponse r) {
+                try {
+                    return new MapReduceResponse(r);
+                } catch (JSONException e) {
+                    throw new RiakResponseRuntimeException(r, e);
+                }
+            }
+        };
+        helper.mapReduce(job, meta, c);
+        return c.future;
+    }
+
+    public Future<MapReduceResponse> mapReduce(String job, RequestMeta meta) {
+        return mapReduce(job, meta, null);
+    }
+
+    /**
+     * Close the helper's connections. Requests still in flight fail.
+     */
+    public void shutdown() {
+        helper.shutdown();
+    }
+
+    private static AsyncClientHelper newHelper(RiakClient riak) {
+        if (riak == null)
+            throw new IllegalArgumentException();
+
+        AsyncClientHelper helper = new AsyncClientHelper(riak.getConfig(), null);
+        byte[] clientId = riak.getClientId();
+        if (clientId != null) {
+            helper.setClientId(clientId);
+        }
+        return helper;
+    }
+
+    /**
+     * Completes a future, and through it the caller's callback, with the
+     * response converted as {@link RiakClient} would convert it. Anything the
+     * conversion throws fails the future instead.
+     */
+    private static abstract class Conversion<T> implements ResponseCallback<HttpResponse> {
+
+        final CallbackFuture<T> future;
+
+        Conversion(ResponseCallback<T> callback) {
+            future = new CallbackFuture<T>(callback);
+        }
+
+        abstract T convert(HttpResponse r);
+
+        public void onSuccess(HttpResponse response) {
+            T result;
+            try {
+                result = convert(response);
+            } catch (RuntimeException e) {
+                future.fail(e);
+                return;
+            }
+            future.complete(result);
+        }
+
+        public void onFailure(Throwable t) {
+            future.fail(t);
+        }
+    }
+}
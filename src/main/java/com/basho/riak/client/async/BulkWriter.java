@@ -0,0 +1,244 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.async;
+
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.basho.riak.client.IRiakConfig;
+import com.basho.riak.client.RiakClient;
+import com.basho.riak.client.RiakObject;
+import com.basho.riak.client.request.RequestMeta;
+import com.basho.riak.client.response.RiakIORuntimeException;
+import com.basho.riak.client.response.StoreResponse;
+import com.basho.riak.client.util.DaemonThreadFactory;
+
+/**
+ * Stores a stream of {@link RiakObject}s keeping a bounded number of writes in
+ * flight. Once that many writes are outstanding, {@link #write(RiakObject)}
+ * blocks the caller until one completes, so a producer reading from a file or
+ * cursor is slowed to the rate the cluster can absorb rather than queueing
+ * unbounded work in memory. Writes go through the {@link RiakClient}'s helper,
+ * so with a failover configuration they are spread over all hosts.
+ * 
+ * Each write may be given a {@link ResponseCallback}, which is invoked on the
+ * worker thread before the write's slot is released. Call {@link #flush()} to
+ * wait for all submitted writes and {@link #close()} when done.
+ */
+public class BulkWriter {
+
+    /** Writes in flight when the config doesn't set max connections */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 20;
+
+    private final RiakClient riak;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final int maxInFlight;
+    private final Semaphore permits;
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile boolean closed = false;
+
+    /**
+     * Write to <code>riak</code> with up to the config's maximum number of
+     * connections in flight.
+     */
+    public BulkWriter(RiakClient riak) {
+        this(riak, defaultMaxInFlight(riak));
+    }
+
+    /**
+     * Write to <code>riak</code> with up to <code>maxInFlight</code> writes
+     * in flight, each on its own worker thread.
+     */
+    public BulkWriter(RiakClient riak, int maxInFlight) {
+        this(riak, maxInFlight, maxInFlight > 0 ? Executors.newFixedThreadPool(maxInFlight,
+                                                                                new DaemonThreadFactory("riak-bulk-writer"))
+                : null, true);
+    }
+
+    /**
+     * Write to <code>riak</code> with up to <code>maxInFlight</code> writes
+     * in flight, executed on the given executor. The executor is not shut down
+     * by {@link #close()}.
+     */
+    public BulkWriter(RiakClient riak, int maxInFlight, ExecutorService executor) {
+        this(riak, maxInFlight, executor, false);
+    }
+
+    private BulkWriter(RiakClient riak, int maxInFlight, ExecutorService executor, boolean ownsExecutor) {
+        if (riak == null || executor == null || maxInFlight <= 0)
+            throw new IllegalArgumentException();
+
+        this.riak = riak;
+        this.maxInFlight = maxInFlight;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        permits = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Submit a store of <code>object</code>, blocking while the maximum number
+     * of writes are already in flight.
+     * 
+     * @param callback
+     *            Notified with the {@link StoreResponse} or the exception the
+     *            store threw. May be null.
+     * 
+     * @throws IllegalStateException
+     *             If the writer has been closed
+     * @throws RiakIORuntimeException
+     *             If interrupted while waiting for a write to complete
+     */
+    public void write(final RiakObject object, final RequestMeta meta, final ResponseCallback<StoreResponse> callback) {
+        if (closed)
+            throw new IllegalStateException("BulkWriter is closed");
+
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RiakIORuntimeException(e);
+        }
+
+        // the store modifies its meta, so concurrent writes can't share one
+        final RequestMeta writeMeta = meta == null ? null : meta.copy();
+        Callable<StoreResponse> store = new Callable<StoreResponse>() {
+            public StoreResponse call() {
+                return riak.store(object, writeMeta);
+            }
+        };
+        ResponseCallback<StoreResponse> counting = new ResponseCallback<StoreResponse>() {
+            public void onSuccess(StoreResponse response) {
+                if (response != null && response.isSuccess()) {
+                    succeeded.incrementAndGet();
+                } else {
+                    failed.incrementAndGet();
+                }
+                if (callback != null) {
+                    callback.onSuccess(response);
+                }
+            }
+
+            public void onFailure(Throwable t) {
+                failed.incrementAndGet();
+                if (callback != null) {
+                    callback.onFailure(t);
+                }
+            }
+        };
+
+        try {
+            executor.execute(new CallbackFutureTask<StoreResponse>(store, counting) {
+                @Override protected void done() {
+                    try {
+                        super.done();
+                    } finally {
+                        permits.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public void write(RiakObject object, RequestMeta meta) {
+        write(object, meta, null);
+    }
+
+    public void write(RiakObject object) {
+        write(object, null, null);
+    }
+
+    /**
+     * Write every object returned by <code>objects</code>, applying the same
+     * backpressure as {@link #write(RiakObject, RequestMeta, ResponseCallback)}
+     * to the iteration. The callback is shared by all the writes.
+     */
+    public void writeAll(Iterator<? extends RiakObject> objects, RequestMeta meta,
+                         ResponseCallback<StoreResponse> callback) {
+        while (objects.hasNext()) {
+            write(objects.next(), meta, callback);
+        }
+    }
+
+    public void writeAll(Iterable<? extends RiakObject> objects) {
+        writeAll(objects.iterator(), null, null);
+    }
+
+    /**
+     * Block until every write submitted so far has completed and its callback
+     * has returned.
+     * 
+     * @throws RiakIORuntimeException
+     *             If interrupted while waiting
+     */
+    public void flush() {
+        try {
+            permits.acquire(maxInFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RiakIORuntimeException(e);
+        }
+        permits.release(maxInFlight);
+    }
+
+    /**
+     * Stop accepting writes, wait for those in flight, and shut down the worker
+     * threads if they were created by this writer.
+     */
+    public void close() {
+        closed = true;
+        flush();
+        if (ownsExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    /** Number of writes currently in flight */
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    /** Maximum number of writes in flight */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /** Number of writes which returned a 2xx response */
+    public long getSucceeded() {
+        return succeeded.get();
+    }
+
+    /**
+     * Number of writes which returned an unsuccessful response or threw an
+     * exception
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    private static int defaultMaxInFlight(RiakClient riak) {
+        IRiakConfig config = riak == null ? null : riak.getConfig();
+        if (config != null && config.getMaxConnections() != null && config.getMaxConnections() > 0)
+            return config.getMaxConnections();
+        return DEFAULT_MAX_IN_FLIGHT;
+    }
+}
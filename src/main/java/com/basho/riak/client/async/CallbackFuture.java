@@ -0,0 +1,129 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.async;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link Future} completed by whoever holds it, rather than by running a
+ * task, which hands its outcome to an optional {@link ResponseCallback}
+ * before any {@link #get()} returns it. Only the first of
+ * {@link #complete(Object)}, {@link #fail(Throwable)} and
+ * {@link #cancel(boolean)} has any effect.
+ */
+class CallbackFuture<T> implements Future<T> {
+
+    private final ResponseCallback<T> callback;
+    private boolean completing = false;
+    private boolean done = false;
+    private boolean cancelled = false;
+    private T result;
+    private Throwable failure;
+
+    CallbackFuture(ResponseCallback<T> callback) {
+        this.callback = callback;
+    }
+
+    /** Complete with <code>result</code> and notify the callback */
+    void complete(T result) {
+        synchronized (this) {
+            if (completing)
+                return;
+            completing = true;
+            this.result = result;
+        }
+        try {
+            if (callback != null) {
+                callback.onSuccess(result);
+            }
+        } finally {
+            done();
+        }
+    }
+
+    /** Complete with <code>t</code> and notify the callback */
+    void fail(Throwable t) {
+        synchronized (this) {
+            if (completing)
+                return;
+            completing = true;
+            failure = t;
+        }
+        try {
+            if (callback != null) {
+                callback.onFailure(t);
+            }
+        } finally {
+            done();
+        }
+    }
+
+    private synchronized void done() {
+        done = true;
+        notifyAll();
+    }
+
+    /**
+     * Stops the result being delivered. The request itself is not withdrawn,
+     * since it may already be on the wire.
+     */
+    public synchronized boolean cancel(boolean mayInterruptIfRunning) {
+        if (completing)
+            return false;
+        completing = true;
+        cancelled = true;
+        done = true;
+        notifyAll();
+        return true;
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!done) {
+            wait();
+        }
+        return outcome();
+    }
+
+    public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException,
+            TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                throw new TimeoutException();
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return outcome();
+    }
+
+    private T outcome() throws ExecutionException {
+        if (cancelled)
+            throw new CancellationException();
+        if (failure != null)
+            throw new ExecutionException(failure);
+        return result;
+    }
+}
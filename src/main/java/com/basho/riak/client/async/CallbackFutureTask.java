@@ -0,0 +1,51 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.async;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A {@link FutureTask} which hands its outcome to an optional
+ * {@link ResponseCallback} when it completes.
+ */
+class CallbackFutureTask<T> extends FutureTask<T> {
+
+    private final ResponseCallback<T> callback;
+
+    CallbackFutureTask(Callable<T> callable, ResponseCallback<T> callback) {
+        super(callable);
+        this.callback = callback;
+    }
+
+    @Override protected void done() {
+        if (callback == null || isCancelled())
+            return;
+
+        T result;
+        try {
+            result = get();
+        } catch (ExecutionException e) {
+            callback.onFailure(e.getCause());
+            return;
+        } catch (InterruptedException e) {
+            // done() is only called once the result is available
+            Thread.currentThread().interrupt();
+            callback.onFailure(e);
+            return;
+        }
+        callback.onSuccess(result);
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.async;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.basho.riak.client.util.Constants;
+
+/**
+ * Incremental parser for one HTTP/1.x response, fed bytes as they are read
+ * off a non-blocking socket. Handles bodies delimited by Content-Length, by
+ * chunked transfer coding, or by the server closing the connection, and skips
+ * interim 1xx responses. Header names are lower cased, as
+ * {@link com.basho.riak.client.util.ClientUtils#asHeaderMap} does; repeated
+ * headers are joined with ", ".
+ */
+class HttpResponseParser {
+
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private enum State {
+        STATUS_LINE, HEADERS, BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILERS, UNTIL_EOF, DONE
+    }
+
+    private final boolean headRequest;
+    private State state = State.STATUS_LINE;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+    private boolean lineHasCR = false;
+
+    private boolean http11 = true;
+    private int status = 0;
+    private Map<String, String> headers = new HashMap<String, String>();
+    private ByteArrayOutputStream body = null;
+    private long remaining = 0;
+    private boolean keepAlive = true;
+    private boolean started = false;
+
+    /**
+     * @param headRequest
+     *            whether the request was a HEAD, whose response has no body
+     *            whatever its headers say
+     */
+    HttpResponseParser(boolean headRequest) {
+        this.headRequest = headRequest;
+    }
+
+    /**
+     * Consume bytes from <code>buf</code> until it is empty or the response
+     * is complete. Bytes after the end of the response are left in
+     * <code>buf</code>.
+     * 
+     * @return whether the response is complete
+     * @throws IOException
+     *             If the response is malformed
+     */
+    boolean feed(ByteBuffer buf) throws IOException {
+        if (buf.hasRemaining()) {
+            started = true;
+        }
+        while (state != State.DONE && buf.hasRemaining()) {
+            switch (state) {
+            case STATUS_LINE:
+                if (readLine(buf)) {
+                    parseStatusLine(takeLine());
+                    state = State.HEADERS;
+                }
+                break;
+            case HEADERS:
+                if (readLine(buf)) {
+                    String header = takeLine();
+                    if (header.length() == 0) {
+                        endHeaders();
+                    } else {
+                        addHeader(header);
+                    }
+                }
+                break;
+            case BODY:
+                remaining -= copy(buf, remaining);
+                if (remaining == 0) {
+                    state = State.DONE;
+                }
+                break;
+            case CHUNK_SIZE:
+                if (readLine(buf)) {
+                    remaining = parseChunkSize(takeLine());
+                    state = remaining == 0 ? State.TRAILERS : State.CHUNK_DATA;
+                }
+                break;
+            case CHUNK_DATA:
+                remaining -= copy(buf, remaining);
+                if (remaining == 0) {
+                    state = State.CHUNK_END;
+                }
+                break;
+            case CHUNK_END:
+                if (readLine(buf)) {
+                    if (takeLine().length() != 0)
+                        throw new IOException("Malformed chunk: missing CRLF after chunk data");
+                    state = State.CHUNK_SIZE;
+                }
+                break;
+            case TRAILERS:
+                if (readLine(buf) && takeLine().length() == 0) {
+                    state = State.DONE;
+                }
+                break;
+            case UNTIL_EOF:
+                copy(buf, buf.remaining());
+                break;
+            default:
+                throw new IllegalStateException(state.toString());
+            }
+        }
+        return state == State.DONE;
+    }
+
+    /**
+     * Tell the parser the server closed the connection.
+     * 
+     * @return whether that completed the response
+     */
+    boolean eof() {
+        if (state == State.UNTIL_EOF) {
+            state = State.DONE;
+        }
+        keepAlive = false;
+        return state == State.DONE;
+    }
+
+    /** Whether any bytes of the response have been received */
+    boolean isStarted() {
+        return started;
+    }
+
+    boolean isComplete() {
+        return state == State.DONE;
+    }
+
+    /** Whether the connection can be reused once the response is complete */
+    boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    int getStatus() {
+        return status;
+    }
+
+    Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /** The response body, or null if the response has none */
+    byte[] getBody() {
+        return body == null ? null : body.toByteArray();
+    }
+
+    private void parseStatusLine(String statusLine) throws IOException {
+        // e.g. "HTTP/1.1 200 OK"
+        int sp1 = statusLine.indexOf(' ');
+        if (!statusLine.startsWith("HTTP/") || sp1 == -1)
+            throw new IOException("Malformed status line: " + statusLine);
+        int sp2 = statusLine.indexOf(' ', sp1 + 1);
+        String code = sp2 == -1 ? statusLine.substring(sp1 + 1) : statusLine.substring(sp1 + 1, sp2);
+        try {
+            status = Integer.parseInt(code.trim());
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed status line: " + statusLine);
+        }
+        http11 = !statusLine.startsWith("HTTP/1.0");
+    }
+
+    private void addHeader(String header) throws IOException {
+        int colon = header.indexOf(':');
+        if (colon <= 0)
+            throw new IOException("Malformed header: " + header);
+        String name = header.substring(0, colon).trim().toLowerCase();
+        String value = header.substring(colon + 1).trim();
+        String existing = headers.get(name);
+        headers.put(name, existing == null ? value : existing + ", " + value);
+    }
+
+    private void endHeaders() throws IOException {
+        if (status >= 100 && status < 200) {
+            // interim response, e.g. 100 Continue; the real one follows
+            headers = new HashMap<String, String>();
+            state = State.STATUS_LINE;
+            return;
+        }
+
+        String connection = headers.get(Constants.HDR_CONNECTION);
+        if (connection != null) {
+            connection = connection.toLowerCase();
+        }
+        keepAlive = http11 ? !"close".equals(connection) : "keep-alive".equals(connection);
+
+        String transferEncoding = headers.get("transfer-encoding");
+        String contentLength = headers.get(Constants.HDR_CONTENT_LENGTH);
+        if (headRequest || status == 204 || status == 304) {
+            state = State.DONE;
+        } else if (transferEncoding != null && transferEncoding.toLowerCase().indexOf("chunked") != -1) {
+            body = new ByteArrayOutputStream();
+            state = State.CHUNK_SIZE;
+        } else if (contentLength != null) {
+            try {
+                remaining = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed Content-Length: " + contentLength);
+            }
+            if (remaining < 0 || remaining > Integer.MAX_VALUE)
+                throw new IOException("Unsupported Content-Length: " + contentLength);
+            body = new ByteArrayOutputStream((int) remaining);
+            state = remaining == 0 ? State.DONE : State.BODY;
+        } else {
+            body = new ByteArrayOutputStream();
+            keepAlive = false;
+            state = State.UNTIL_EOF;
+        }
+    }
+
+    private static long parseChunkSize(String chunkLine) throws IOException {
+        int semi = chunkLine.indexOf(';');
+        String size = (semi == -1 ? chunkLine : chunkLine.substring(0, semi)).trim();
+        try {
+            long n = Long.parseLong(size, 16);
+            if (n < 0)
+                throw new NumberFormatException();
+            return n;
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed chunk size: " + chunkLine);
+        }
+    }
+
+    /** Copy up to <code>max</code> bytes of body; returns the number copied */
+    private int copy(ByteBuffer buf, long max) {
+        int n = (int) Math.min(max, buf.remaining());
+        if (buf.hasArray()) {
+            body.write(buf.array(), buf.arrayOffset() + buf.position(), n);
+            buf.position(buf.position() + n);
+        } else {
+            byte[] b = new byte[n];
+            buf.get(b);
+            body.write(b, 0, n);
+        }
+        return n;
+    }
+
+    /**
+     * Accumulate bytes up to the next LF
+     * 
+     * @return whether a whole line has been read
+     */
+    private boolean readLine(ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            byte b = buf.get();
+            if (b == '\n')
+                return true;
+            if (lineHasCR) {
+                line.write('\r');
+            }
+            lineHasCR = b == '\r';
+            if (!lineHasCR) {
+                line.write(b);
+            }
+            if (line.size() > MAX_LINE_LENGTH)
+                throw new IOException("Response line longer than " + MAX_LINE_LENGTH + " bytes");
+        }
+        return false;
+    }
+
+    private String takeLine() {
+        String s;
+        try {
+            s = line.toString("ISO-8859-1");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("ISO-8859-1 must be supported", e);
+        }
+        line.reset();
+        lineHasCR = false;
+        return s;
+    }
+}
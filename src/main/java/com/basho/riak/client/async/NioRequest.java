@@ -0,0 +1,81 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.async;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * An encoded HTTP request to be sent by {@link NioTransport}, which reports
+ * the outcome through {@link #completed(int, Map, byte[])} or
+ * {@link #failed(IOException)}, on an event loop thread.
+ */
+abstract class NioRequest {
+
+    private final InetSocketAddress address;
+    private final ByteBuffer data;
+    private final boolean head;
+    private boolean retried = false;
+
+    /**
+     * @param address
+     *            The server to send the request to
+     * @param data
+     *            The whole request: request line, headers and body
+     * @param head
+     *            Whether this is a HEAD request, so the response has no body
+     */
+    NioRequest(InetSocketAddress address, ByteBuffer data, boolean head) {
+        this.address = address;
+        this.data = data;
+        this.head = head;
+    }
+
+    InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /** A fresh view of the request bytes, so it can be sent again */
+    ByteBuffer getData() {
+        return data.duplicate();
+    }
+
+    boolean isHead() {
+        return head;
+    }
+
+    /**
+     * A request which failed on a reused keep-alive connection before any of
+     * the response arrived is sent once more on a new connection, since the
+     * server probably closed the idle connection just as it was reused.
+     */
+    boolean isRetried() {
+        return retried;
+    }
+
+    void setRetried() {
+        retried = true;
+    }
+
+    /**
+     * Called with the complete response. Header names are lower case; the
+     * body is null if the response has none.
+     */
+    abstract void completed(int status, Map<String, String> headers, byte[] body);
+
+    /** Called if the request could not be sent or the response not read */
+    abstract void failed(IOException e);
+}
@@ -0,0 +1,439 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.async;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.UnresolvedAddressException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.basho.riak.client.response.RiakIORuntimeException;
+import com.basho.riak.client.util.DaemonThreadFactory;
+
+/**
+ * A non-blocking HTTP/1.1 client transport. A few event loop threads, each
+ * with its own {@link Selector}, multiplex every request in flight over
+ * keep-alive connections; no thread is tied up waiting for any one response.
+ * <p>
+ * Each event loop keeps at most <code>maxConnectionsPerHost</code>
+ * connections to each server. Requests beyond that wait in a queue, without
+ * a thread, until a connection is free. Responses are read into memory
+ * whole, and requests are completed on the event loop thread, so
+ * completion handlers must not block.
+ */
+class NioTransport {
+
+    private static final DaemonThreadFactory THREADS = new DaemonThreadFactory("riak-nio");
+
+    private final EventLoop[] loops;
+    private final int maxConnectionsPerHost;
+    private final long timeoutNanos;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile boolean shutdown = false;
+
+    /**
+     * @param eventLoops
+     *            Number of event loop threads
+     * @param maxConnectionsPerHost
+     *            Maximum connections each event loop opens to one server
+     * @param timeoutMillis
+     *            Fail a request if its connection is idle this long while
+     *            connecting, sending or awaiting the response; 0 for no
+     *            timeout
+     * @throws RiakIORuntimeException
+     *             If a selector can't be opened
+     */
+    NioTransport(int eventLoops, int maxConnectionsPerHost, int timeoutMillis) {
+        if (eventLoops <= 0 || maxConnectionsPerHost <= 0 || timeoutMillis < 0)
+            throw new IllegalArgumentException();
+
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        loops = new EventLoop[eventLoops];
+        try {
+            for (int i = 0; i < eventLoops; i++) {
+                loops[i] = new EventLoop(Selector.open());
+            }
+        } catch (IOException e) {
+            shutdown();
+            throw new RiakIORuntimeException("Cannot open selector", e);
+        }
+        for (EventLoop loop : loops) {
+            THREADS.newThread(loop).start();
+        }
+    }
+
+    /**
+     * Send <code>request</code> on one of the event loops. Returns
+     * immediately; the outcome is reported to the request.
+     */
+    void execute(NioRequest request) {
+        loops[(next.getAndIncrement() & Integer.MAX_VALUE) % loops.length].submit(request);
+    }
+
+    /**
+     * Close all connections. Requests not yet complete fail, as do any
+     * executed afterwards.
+     */
+    void shutdown() {
+        shutdown = true;
+        for (EventLoop loop : loops) {
+            if (loop != null) {
+                loop.selector.wakeup();
+            }
+        }
+    }
+
+    private static void completed(NioRequest request, HttpResponseParser response) {
+        try {
+            request.completed(response.getStatus(), response.getHeaders(), response.getBody());
+        } catch (Throwable t) {
+            uncaught(t);
+        }
+    }
+
+    private static void failed(NioRequest request, IOException e) {
+        try {
+            request.failed(e);
+        } catch (Throwable t) {
+            uncaught(t);
+        }
+    }
+
+    /** Report a throwing completion handler without killing the event loop */
+    private static void uncaught(Throwable t) {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+    }
+
+    /** Connections from one event loop to one server */
+    private static class HostPool {
+        final InetSocketAddress address;
+        final LinkedList<Connection> idle = new LinkedList<Connection>();
+        final LinkedList<NioRequest> waiting = new LinkedList<NioRequest>();
+        int open = 0;
+
+        HostPool(InetSocketAddress address) {
+            this.address = address;
+        }
+    }
+
+    private static class Connection {
+        final HostPool pool;
+        final SocketChannel channel;
+        SelectionKey key;
+        boolean closed = false;
+
+        // the request in flight, if any
+        NioRequest request;
+        HttpResponseParser response;
+        ByteBuffer out;
+        boolean reused;
+        long lastActivity;
+
+        Connection(HostPool pool, SocketChannel channel) {
+            this.pool = pool;
+            this.channel = channel;
+        }
+    }
+
+    private class EventLoop implements Runnable {
+
+        final Selector selector;
+        final Queue<NioRequest> submitted = new ConcurrentLinkedQueue<NioRequest>();
+        final Map<InetSocketAddress, HostPool> pools = new HashMap<InetSocketAddress, HostPool>();
+        final Set<Connection> connections = new HashSet<Connection>();
+        final Set<Connection> active = new HashSet<Connection>();
+        final ByteBuffer readBuffer = ByteBuffer.allocate(64 * 1024);
+        long nextExpiry = System.nanoTime();
+
+        EventLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        void submit(NioRequest request) {
+            submitted.add(request);
+            selector.wakeup();
+            // the loop may already have drained its queue for the last time
+            if (shutdown && submitted.remove(request)) {
+                failed(request, new IOException("Transport is shut down"));
+            }
+        }
+
+        public void run() {
+            try {
+                while (!shutdown) {
+                    selector.select(active.isEmpty() || timeoutNanos == 0 ? 0 : tickMillis());
+
+                    NioRequest request;
+                    while ((request = submitted.poll()) != null) {
+                        dispatch(request);
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        ready((Connection) key.attachment(), key);
+                    }
+
+                    expire();
+                }
+            } catch (IOException e) {
+                shutdown = true;
+            } catch (ClosedSelectorException e) {
+                shutdown = true;
+            } finally {
+                closeAll();
+            }
+        }
+
+        private long tickMillis() {
+            return Math.max(10, Math.min(TimeUnit.NANOSECONDS.toMillis(timeoutNanos) / 4, 1000));
+        }
+
+        private void dispatch(NioRequest request) {
+            HostPool pool = pools.get(request.getAddress());
+            if (pool == null) {
+                pool = new HostPool(request.getAddress());
+                pools.put(request.getAddress(), pool);
+            }
+
+            Connection c = pool.idle.poll();
+            if (c != null) {
+                start(c, request, true);
+                c.key.interestOps(SelectionKey.OP_WRITE);
+            } else if (pool.open < maxConnectionsPerHost) {
+                open(pool, request);
+            } else {
+                pool.waiting.add(request);
+            }
+        }
+
+        private void open(HostPool pool, NioRequest request) {
+            SocketChannel channel = null;
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                // resolved afresh for each new connection, as HttpClient does;
+                // with keep-alive that is rare enough not to hold up the loop
+                InetSocketAddress address = pool.address;
+                if (address.isUnresolved()) {
+                    address = new InetSocketAddress(address.getHostName(), address.getPort());
+                }
+                boolean connected;
+                try {
+                    connected = channel.connect(address);
+                } catch (UnresolvedAddressException e) {
+                    throw new IOException("Cannot resolve " + address.getHostName());
+                }
+                Connection c = new Connection(pool, channel);
+                c.key = channel.register(selector, connected ? SelectionKey.OP_WRITE : SelectionKey.OP_CONNECT, c);
+                pool.open++;
+                connections.add(c);
+                start(c, request, false);
+            } catch (IOException e) {
+                if (channel != null) {
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {}
+                }
+                failed(request, e);
+            }
+        }
+
+        private void start(Connection c, NioRequest request, boolean reused) {
+            c.request = request;
+            c.response = new HttpResponseParser(request.isHead());
+            c.out = request.getData();
+            c.reused = reused;
+            c.lastActivity = System.nanoTime();
+            active.add(c);
+        }
+
+        private void ready(Connection c, SelectionKey key) {
+            try {
+                if (key.isValid() && key.isConnectable()) {
+                    c.channel.finishConnect();
+                    c.lastActivity = System.nanoTime();
+                    key.interestOps(SelectionKey.OP_WRITE);
+                } else if (key.isValid() && key.isWritable()) {
+                    write(c);
+                } else if (key.isValid() && key.isReadable()) {
+                    read(c);
+                }
+            } catch (IOException e) {
+                fail(c, e, true);
+            } catch (CancelledKeyException e) {
+                fail(c, new IOException("Connection closed"), false);
+            }
+        }
+
+        private void write(Connection c) throws IOException {
+            if (c.channel.write(c.out) > 0) {
+                c.lastActivity = System.nanoTime();
+            }
+            if (!c.out.hasRemaining()) {
+                c.out = null;
+                c.key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        private void read(Connection c) throws IOException {
+            readBuffer.clear();
+            int n = c.channel.read(readBuffer);
+            if (c.request == null) {
+                // an idle connection was closed by the server, or sent
+                // something it shouldn't have
+                close(c);
+                return;
+            }
+            if (n == -1) {
+                if (!c.response.eof())
+                    throw new IOException("Connection closed before the response was complete");
+                complete(c, false);
+                return;
+            }
+            if (n == 0)
+                return;
+
+            c.lastActivity = System.nanoTime();
+            readBuffer.flip();
+            if (c.response.feed(readBuffer)) {
+                // bytes beyond the response mean the connection is out of step
+                complete(c, c.response.isKeepAlive() && !readBuffer.hasRemaining());
+            }
+        }
+
+        private void complete(Connection c, boolean reusable) {
+            NioRequest request = c.request;
+            HttpResponseParser response = c.response;
+            c.request = null;
+            c.response = null;
+            active.remove(c);
+            if (reusable) {
+                release(c);
+            } else {
+                close(c);
+            }
+            completed(request, response);
+        }
+
+        /** Give the connection to a waiting request, or keep it idle */
+        private void release(Connection c) {
+            NioRequest request = c.pool.waiting.poll();
+            if (request != null) {
+                start(c, request, true);
+                c.key.interestOps(SelectionKey.OP_WRITE);
+            } else {
+                c.pool.idle.addFirst(c);
+                // so a close by the server is noticed
+                c.key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        private void fail(Connection c, IOException e, boolean retryable) {
+            NioRequest request = c.request;
+            boolean retry = retryable && request != null && c.reused && !request.isRetried()
+                            && !c.response.isStarted();
+            close(c);
+            if (request == null)
+                return;
+            if (retry) {
+                request.setRetried();
+                dispatch(request);
+            } else {
+                failed(request, e);
+            }
+        }
+
+        private void close(Connection c) {
+            if (c.closed)
+                return;
+            c.closed = true;
+            c.request = null;
+            active.remove(c);
+            connections.remove(c);
+            c.pool.idle.remove(c);
+            c.pool.open--;
+            if (c.key != null) {
+                c.key.cancel();
+            }
+            try {
+                c.channel.close();
+            } catch (IOException ignored) {}
+
+            // the freed slot goes to the next waiting request
+            if (!shutdown) {
+                NioRequest request = c.pool.waiting.poll();
+                if (request != null) {
+                    open(c.pool, request);
+                }
+            }
+        }
+
+        private void expire() {
+            if (timeoutNanos == 0 || active.isEmpty())
+                return;
+            long now = System.nanoTime();
+            if (now - nextExpiry < 0)
+                return;
+            nextExpiry = now + TimeUnit.MILLISECONDS.toNanos(tickMillis());
+
+            for (Connection c : new ArrayList<Connection>(active)) {
+                if (now - c.lastActivity > timeoutNanos) {
+                    fail(c, new SocketTimeoutException("Timed out waiting for the server"), false);
+                }
+            }
+        }
+
+        private void closeAll() {
+            IOException e = new IOException("Transport is shut down");
+            for (Connection c : new ArrayList<Connection>(connections)) {
+                fail(c, e, false);
+            }
+            for (HostPool pool : pools.values()) {
+                NioRequest request;
+                while ((request = pool.waiting.poll()) != null) {
+                    failed(request, e);
+                }
+            }
+            NioRequest request;
+            while ((request = submitted.poll()) != null) {
+                failed(request, e);
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {}
+        }
+    }
+}
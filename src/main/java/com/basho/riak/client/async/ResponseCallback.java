@@ -0,0 +1,36 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.async;
+
+/**
+ * Receives the result of an asynchronous Riak operation. Callbacks are invoked
+ * on the thread which completed the request -- for {@link AsyncRiakClient}, an
+ * event loop thread shared with many other requests -- so they should return
+ * quickly and not block.
+ */
+public interface ResponseCallback<T> {
+
+    /**
+     * Called with the response once the operation completes. Note that an
+     * unsuccessful HTTP status is still delivered here; check
+     * isSuccess() on the response.
+     */
+    public void onSuccess(T response);
+
+    /**
+     * Called if the operation failed, e.g. with a RiakIORuntimeException if
+     * the server could not be reached.
+     */
+    public void onFailure(Throwable t);
+}
@@ -24,6 +24,8 @@ import org.json.JSONObject;
 public class JavascriptFunction implements MapReduceFunction {
    
    private String source;
+   private String bucket;
+   private String key;
    private MapReduceFunction.Types type;
    
    /**
@@ -44,6 +46,45 @@ public class JavascriptFunction implements MapReduceFunction {
       return new JavascriptFunction(MapReduceFunction.Types.ANONYMOUS, functionSource);
    }
 
+   /**
+    * Shortcut for creating a reference to a Javascript function
+    * stored as the value of a Riak object. See
+    * {@link JavascriptFunctionStore} to store anonymous functions
+    * @param bucket Bucket of the object holding the function source
+    * @param key Key of the object holding the function source
+    */
+   public static JavascriptFunction stored(String bucket, String key) {
+      JavascriptFunction f = new JavascriptFunction(MapReduceFunction.Types.STORED, null);
+      f.bucket = bucket;
+      f.key = key;
+      return f;
+   }
+
+   public MapReduceFunction.Types getType() {
+      return type;
+   }
+
+   /**
+    * The function's name if named, its source if anonymous, or null if stored
+    */
+   public String getSource() {
+      return source;
+   }
+
+   /**
+    * The bucket of a stored function, otherwise null
+    */
+   public String getBucket() {
+      return bucket;
+   }
+
+   /**
+    * The key of a stored function, otherwise null
+    */
+   public String getKey() {
+      return key;
+   }
+
    /**
     * Converts the function definition to JSON
     */
@@ -54,6 +95,10 @@ public class JavascriptFunction implements MapReduceFunction {
           if (type == MapReduceFunction.Types.NAMED) {
              retval.put("name", this.source);
           }
+          else if (type == MapReduceFunction.Types.STORED) {
+             retval.put("bucket", this.bucket);
+             retval.put("key", this.key);
+          }
           else {
              retval.put("source", this.source);
           }
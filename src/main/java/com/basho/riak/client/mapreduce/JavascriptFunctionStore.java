@@ -0,0 +1,152 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.mapreduce;
+
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import com.basho.riak.client.RiakClient;
+import com.basho.riak.client.RiakObject;
+import com.basho.riak.client.response.RiakIORuntimeException;
+import com.basho.riak.client.response.RiakResponseRuntimeException;
+import com.basho.riak.client.response.StoreResponse;
+import com.basho.riak.client.util.Coalescer;
+
+/**
+ * Stores the source of anonymous Javascript functions in a Riak bucket, keyed
+ * by the SHA-1 hash of the source, so that map/reduce jobs can refer to them
+ * with {@link JavascriptFunction#stored(String, String)} instead of sending
+ * the source with every job. See
+ * {@link com.basho.riak.client.request.MapReduceBuilder#setFunctionStore(JavascriptFunctionStore)}.
+ * <p>
+ * The store remembers which hashes it has uploaded, so each function is only
+ * stored once per store. If the bucket may have been emptied behind the
+ * client's back, call {@link JavascriptFunctionStore#clear()}.
+ */
+public class JavascriptFunctionStore {
+
+    /** Default bucket for stored functions */
+    public static final String DEFAULT_BUCKET = "riak_client_js_functions";
+    /** Content type of stored function source */
+    public static final String CTYPE_JAVASCRIPT = "application/javascript";
+
+    private static final String CHARSET = "UTF-8";
+
+    private final RiakClient riak;
+    private final String bucket;
+    private final ConcurrentMap<String, Boolean> stored = new ConcurrentHashMap<String, Boolean>();
+    private final Coalescer<String, Boolean> uploads = new Coalescer<String, Boolean>();
+
+    /**
+     * @param riak
+     *            RiakClient used to upload functions
+     * @param bucket
+     *            Bucket to store functions in, which should not be used for
+     *            anything else
+     */
+    public JavascriptFunctionStore(RiakClient riak, String bucket) {
+        if (riak == null || bucket == null)
+            throw new IllegalArgumentException("riak and bucket must not be null");
+        this.riak = riak;
+        this.bucket = bucket;
+    }
+
+    public JavascriptFunctionStore(RiakClient riak) {
+        this(riak, DEFAULT_BUCKET);
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    /**
+     * The key under which <code>source</code> is stored: the hex SHA-1 hash
+     * of its UTF-8 encoding
+     */
+    public static String hash(String source) {
+        return DigestUtils.shaHex(utf8(source));
+    }
+
+    /**
+     * Store <code>source</code> unless this store has already done so, and
+     * return a reference to it.
+     * 
+     * @throws RiakIORuntimeException
+     *             If an error occurs during communication with the Riak server.
+     * @throws RiakResponseRuntimeException
+     *             If the Riak server does not store the function.
+     */
+    public JavascriptFunction store(final String source) {
+        final String key = hash(source);
+        if (!stored.containsKey(key)) {
+            uploads.execute(key, new Callable<Boolean>() {
+                public Boolean call() {
+                    if (!stored.containsKey(key)) {
+                        upload(key, source);
+                        stored.put(key, Boolean.TRUE);
+                    }
+                    return Boolean.TRUE;
+                }
+            });
+        }
+        return JavascriptFunction.stored(bucket, key);
+    }
+
+    /**
+     * If <code>function</code> is an anonymous Javascript function, store it
+     * as for {@link JavascriptFunctionStore#store(String)} and return a
+     * reference to it; otherwise return <code>function</code> unchanged.
+     */
+    public MapReduceFunction store(MapReduceFunction function) {
+        if (function instanceof JavascriptFunction) {
+            JavascriptFunction js = (JavascriptFunction) function;
+            if (js.getType() == MapReduceFunction.Types.ANONYMOUS)
+                return store(js.getSource());
+        }
+        return function;
+    }
+
+    /**
+     * Whether this store has uploaded <code>source</code>
+     */
+    public boolean isStored(String source) {
+        return stored.containsKey(hash(source));
+    }
+
+    /**
+     * Forget which functions have been uploaded, so each is stored again the
+     * next time it is used
+     */
+    public void clear() {
+        stored.clear();
+    }
+
+    private void upload(String key, String source) {
+        StoreResponse r = riak.store(new RiakObject(bucket, key, utf8(source), CTYPE_JAVASCRIPT));
+        if (r == null || !r.isSuccess())
+            throw new RiakResponseRuntimeException(r, "Failed to store map/reduce function " + bucket + "/" + key);
+    }
+
+    private static byte[] utf8(String s) {
+        try {
+            return s.getBytes(CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 must be supported", e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.mapreduce;
+
+import java.util.Collection;
+
+import com.basho.riak.client.RiakObject;
+
+/**
+ * The map phase of a job run in the client by
+ * {@link com.basho.riak.client.request.LocalMapReduceBuilder}. Called once
+ * for each input object, possibly from several threads at once.
+ */
+public interface LocalMapFunction<T> {
+
+    /**
+     * @param object
+     *            The fetched input object. If it has siblings, this is the
+     *            first sibling, as returned by
+     *            {@link com.basho.riak.client.response.FetchResponse#getObject()}
+     * @return The values the object maps to, or null for none
+     */
+    public Collection<T> map(RiakObject object);
+}
@@ -0,0 +1,29 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.mapreduce;
+
+import java.util.List;
+
+/**
+ * A reduce phase of a job run in the client by
+ * {@link com.basho.riak.client.request.LocalMapReduceBuilder}. As with a Riak
+ * reduce function, the values are reduced in batches and the results of
+ * batches reduced again, so the function must accept its own output as input
+ * and give the same result however its input is split. It may be called from
+ * several threads at once.
+ */
+public interface LocalReduceFunction<T> {
+
+    public List<T> reduce(List<T> values);
+}
@@ -0,0 +1,33 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.mapreduce;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+/**
+ * Combines the partial results of a sharded map/reduce job whose final phase
+ * is a reduce. See
+ * {@link com.basho.riak.client.request.MapReduceBuilder#setShards(int)}.
+ * <p>
+ * Each sub-job reduces its own share of the inputs, so the combiner plays the
+ * part of a Riak re-reduce: it is called once with the final reduce results
+ * of every sub-job concatenated together, and returns the result of the whole
+ * job. For example, a job ending in Riak.reduceSum would be combined by
+ * summing the partial sums.
+ */
+public interface MapReduceCombiner {
+
+    public JSONArray combine(JSONArray results) throws JSONException;
+}
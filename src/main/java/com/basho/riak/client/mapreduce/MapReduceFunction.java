@@ -23,7 +23,8 @@ public interface MapReduceFunction {
    
    public static enum Types {
       ANONYMOUS,
-      NAMED
+      NAMED,
+      STORED
    }
    
    public JSONObject toJson();
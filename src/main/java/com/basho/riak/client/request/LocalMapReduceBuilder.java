@@ -0,0 +1,371 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.request;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.basho.riak.client.RiakClient;
+import com.basho.riak.client.RiakObject;
+import com.basho.riak.client.mapreduce.LocalMapFunction;
+import com.basho.riak.client.mapreduce.LocalReduceFunction;
+import com.basho.riak.client.response.FetchManyResponse;
+import com.basho.riak.client.response.FetchResponse;
+import com.basho.riak.client.response.RiakFetchRuntimeException;
+import com.basho.riak.client.response.RiakIORuntimeException;
+import com.basho.riak.client.response.RiakResponseRuntimeException;
+import com.basho.riak.client.util.DaemonThreadFactory;
+
+/**
+ * Builds a map/reduce job whose phases are Java functions and runs it in the
+ * client rather than on the Riak cluster, for map and reduce logic which is
+ * too expensive, or too awkward, to run in Riak's Javascript VMs. Uses the
+ * same chained method metaphor as {@link MapReduceBuilder}.
+ * <p>
+ * The input objects are fetched in parallel with
+ * {@link RiakClient#fetchMany(String, Collection, RequestMeta, int)}. Each
+ * object is mapped on the executor as soon as it arrives. Each reduce phase is
+ * then run as a tree: the values are split into batches which are reduced in
+ * parallel, and the results are batched and reduced again until one list is
+ * left. Inputs which are not found are skipped.
+ */
+public class LocalMapReduceBuilder<T> {
+
+    /** Default maximum number of values passed to one reduce call */
+    public static final int DEFAULT_REDUCE_BATCH_SIZE = 1000;
+
+    private static ExecutorService defaultExecutor = null;
+
+    private Map<String, Set<String>> objects = new HashMap<String, Set<String>>();
+    private LocalMapFunction<T> map = null;
+    private List<LocalReduceFunction<T>> reduces = new ArrayList<LocalReduceFunction<T>>();
+    private int fetchConcurrency = RiakClient.DEFAULT_FETCH_MANY_CONCURRENCY;
+    private int reduceBatchSize = DEFAULT_REDUCE_BATCH_SIZE;
+    private ExecutorService executor = null;
+    private RiakClient riak = null;
+
+    /**
+     * @param riak
+     *            RiakClient instance used to fetch the input objects
+     */
+    public LocalMapReduceBuilder(RiakClient riak) {
+        this.riak = riak;
+    }
+
+    public LocalMapReduceBuilder() { /* nop */}
+
+    public RiakClient getRiakClient() {
+        return riak;
+    }
+
+    public LocalMapReduceBuilder<T> setRiakClient(RiakClient client) {
+        riak = client;
+        return this;
+    }
+
+    /**
+     * Adds a Riak object (bucket name/key pair) to the job's inputs
+     */
+    public LocalMapReduceBuilder<T> addRiakObject(String bucket, String key) {
+        Set<String> keys = objects.get(bucket);
+        if (keys == null) {
+            keys = new LinkedHashSet<String>();
+            objects.put(bucket, keys);
+        }
+        keys.add(key);
+        return this;
+    }
+
+    /**
+     * Adds each of <code>keys</code> in <code>bucket</code> to the job's
+     * inputs
+     */
+    public LocalMapReduceBuilder<T> addRiakObjects(String bucket, Collection<String> keys) {
+        for (String key : keys) {
+            addRiakObject(bucket, key);
+        }
+        return this;
+    }
+
+    /**
+     * Sets the job's inputs to the given map of bucket names to keys
+     */
+    public LocalMapReduceBuilder<T> setRiakObjects(Map<String, Set<String>> objects) {
+        clearRiakObjects();
+        if (objects != null) {
+            for (Map.Entry<String, Set<String>> e : objects.entrySet()) {
+                addRiakObjects(e.getKey(), e.getValue());
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns a copy of the Riak objects on the input list
+     */
+    public Map<String, Set<String>> getRiakObjects() {
+        return new HashMap<String, Set<String>>(objects);
+    }
+
+    public void clearRiakObjects() {
+        objects.clear();
+    }
+
+    /**
+     * Sets the map phase, which every job must have
+     */
+    public LocalMapReduceBuilder<T> map(LocalMapFunction<T> function) {
+        map = function;
+        return this;
+    }
+
+    /**
+     * Adds a reduce phase, run after the map phase and any reduce phases
+     * already added
+     */
+    public LocalMapReduceBuilder<T> reduce(LocalReduceFunction<T> function) {
+        if (function == null)
+            throw new IllegalArgumentException("function must not be null");
+        reduces.add(function);
+        return this;
+    }
+
+    /**
+     * Maximum number of input fetches in flight at once. Defaults to
+     * {@link RiakClient#DEFAULT_FETCH_MANY_CONCURRENCY}.
+     */
+    public LocalMapReduceBuilder<T> setFetchConcurrency(int fetchConcurrency) {
+        this.fetchConcurrency = fetchConcurrency;
+        return this;
+    }
+
+    public int getFetchConcurrency() {
+        return fetchConcurrency;
+    }
+
+    /**
+     * Maximum number of values passed to one call of a reduce function when
+     * reducing map output. A re-reduce may be given up to twice as many if
+     * the reduce returns large results, since it must combine at least two
+     * of them. Defaults to
+     * {@link LocalMapReduceBuilder#DEFAULT_REDUCE_BATCH_SIZE}.
+     */
+    public LocalMapReduceBuilder<T> setReduceBatchSize(int reduceBatchSize) {
+        if (reduceBatchSize < 1)
+            throw new IllegalArgumentException("reduceBatchSize must be at least 1");
+        this.reduceBatchSize = reduceBatchSize;
+        return this;
+    }
+
+    public int getReduceBatchSize() {
+        return reduceBatchSize;
+    }
+
+    /**
+     * The executor which runs the map and reduce functions. Defaults to a
+     * shared pool with a thread per available processor.
+     */
+    public LocalMapReduceBuilder<T> setExecutor(ExecutorService executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Fetches the input objects and runs the job over them.
+     * 
+     * @param meta
+     *            Extra metadata to attach to each fetch, as for
+     *            {@link RiakClient#fetch(String, String, RequestMeta)}
+     * 
+     * @return The output of the last phase
+     * 
+     * @throws IllegalStateException
+     *             If this job has not been associated with a Riak instance by
+     *             calling
+     *             {@link LocalMapReduceBuilder#setRiakClient(RiakClient)}, or
+     *             has no map phase
+     * @throws RiakFetchRuntimeException
+     *             If fetching an input object throws, e.g. because an error
+     *             occurs during communication with the Riak server.
+     * @throws RiakResponseRuntimeException
+     *             If an input object cannot be fetched.
+     * @throws RuntimeException
+     *             Whatever a map or reduce function throws
+     */
+    public List<T> submit(RequestMeta meta) {
+        if (riak == null)
+            throw new IllegalStateException("Cannot perform map reduce without a RiakClient");
+        if (map == null)
+            throw new IllegalStateException("Cannot perform map reduce without a map phase");
+
+        ExecutorService executor = this.executor != null ? this.executor : getDefaultExecutor();
+        List<Future<List<T>>> mapped = new ArrayList<Future<List<T>>>();
+        try {
+            for (Map.Entry<String, Set<String>> e : objects.entrySet()) {
+                FetchManyResponse fetched = riak.fetchMany(e.getKey(), e.getValue(), meta, fetchConcurrency);
+                try {
+                    for (FetchResponse r : fetched) {
+                        if (r.getStatusCode() == 404)
+                            continue;
+                        if (!r.isSuccess() || !r.hasObject())
+                            throw new RiakResponseRuntimeException(r, "Failed to fetch input " + r.getBucket() + "/" +
+                                                                      r.getKey());
+                        mapped.add(executor.submit(new MapTask(r.getObject())));
+                    }
+                } finally {
+                    fetched.cancel();
+                }
+            }
+
+            List<List<T>> values = getAll(mapped);
+            for (LocalReduceFunction<T> reduce : reduces) {
+                values = Collections.singletonList(treeReduce(executor, reduce, values));
+            }
+            return concat(values);
+        } finally {
+            for (Future<List<T>> f : mapped) {
+                f.cancel(true);
+            }
+        }
+    }
+
+    public List<T> submit() {
+        return submit(null);
+    }
+
+    /**
+     * Reduces <code>parts</code> in batches of about
+     * {@link LocalMapReduceBuilder#getReduceBatchSize()} values, then reduces
+     * the batches' results in the same way until one list is left. After the
+     * first level, every batch holds at least two parts, so each level has
+     * fewer parts than the one before.
+     */
+    private List<T> treeReduce(ExecutorService executor, LocalReduceFunction<T> reduce, List<List<T>> parts) {
+        List<List<T>> chunks = new ArrayList<List<T>>(parts.size());
+        for (List<T> part : parts) {
+            for (int i = 0; i < part.size(); i += reduceBatchSize) {
+                chunks.add(part.subList(i, Math.min(part.size(), i + reduceBatchSize)));
+            }
+        }
+        parts = chunks;
+        int minBatchParts = 1;
+        do {
+            List<Future<List<T>>> level = new ArrayList<Future<List<T>>>();
+            List<T> batch = new ArrayList<T>();
+            int batchParts = 0;
+            for (List<T> part : parts) {
+                if (batchParts >= minBatchParts && batch.size() + part.size() > reduceBatchSize) {
+                    level.add(executor.submit(new ReduceTask(reduce, batch)));
+                    batch = new ArrayList<T>();
+                    batchParts = 0;
+                }
+                batch.addAll(part);
+                batchParts++;
+            }
+            if (batchParts > 0 || level.isEmpty()) {
+                level.add(executor.submit(new ReduceTask(reduce, batch)));
+            }
+            try {
+                parts = getAll(level);
+            } finally {
+                for (Future<List<T>> f : level) {
+                    f.cancel(true);
+                }
+            }
+            minBatchParts = 2;
+        } while (parts.size() > 1);
+        return parts.get(0);
+    }
+
+    private List<List<T>> getAll(List<Future<List<T>>> futures) {
+        List<List<T>> results = new ArrayList<List<T>>(futures.size());
+        for (Future<List<T>> f : futures) {
+            try {
+                results.add(f.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RiakIORuntimeException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new IllegalStateException("Map/reduce function threw a checked exception", cause);
+            }
+        }
+        return results;
+    }
+
+    private List<T> concat(List<List<T>> parts) {
+        if (parts.size() == 1)
+            return parts.get(0);
+        List<T> all = new ArrayList<T>();
+        for (List<T> part : parts) {
+            all.addAll(part);
+        }
+        return all;
+    }
+
+    private static synchronized ExecutorService getDefaultExecutor() {
+        if (defaultExecutor == null) {
+            defaultExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                                                           new DaemonThreadFactory("riak-local-mapreduce"));
+        }
+        return defaultExecutor;
+    }
+
+    private class MapTask implements Callable<List<T>> {
+        private final RiakObject object;
+
+        MapTask(RiakObject object) {
+            this.object = object;
+        }
+
+        public List<T> call() {
+            Collection<T> values = map.map(object);
+            if (values == null)
+                return new ArrayList<T>();
+            return new ArrayList<T>(values);
+        }
+    }
+
+    private class ReduceTask implements Callable<List<T>> {
+        private final LocalReduceFunction<T> reduce;
+        private final List<T> values;
+
+        ReduceTask(LocalReduceFunction<T> reduce, List<T> values) {
+            this.reduce = reduce;
+            this.values = values;
+        }
+
+        public List<T> call() {
+            List<T> result = reduce.reduce(values);
+            if (result == null)
+                return new ArrayList<T>();
+            return result;
+        }
+    }
+}
@@ -13,25 +13,47 @@
  */
 package com.basho.riak.client.request;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.httpclient.methods.RequestEntity;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
 import com.basho.riak.client.RiakClient;
 import com.basho.riak.client.RiakObject;
+import com.basho.riak.client.mapreduce.JavascriptFunctionStore;
 import com.basho.riak.client.mapreduce.LinkFunction;
+import com.basho.riak.client.mapreduce.MapReduceCombiner;
 import com.basho.riak.client.mapreduce.MapReduceFunction;
 import com.basho.riak.client.response.MapReduceResponse;
 import com.basho.riak.client.response.RiakIORuntimeException;
 import com.basho.riak.client.response.RiakResponseRuntimeException;
+import com.basho.riak.client.response.StreamedMapReduceResponse;
+import com.basho.riak.client.util.MapReduceResultCache;
 
 /**
  * Builds a map/reduce job description and submits it Uses the same chained
@@ -45,8 +67,14 @@ public class MapReduceBuilder {
 
     private String bucket = null;
     private Map<String, Set<String>> objects = new HashMap<String, Set<String>>();
+    private Iterable<String[]> inputs = null;
+    private boolean repeatable = true;
     private List<MapReducePhase> phases = new LinkedList<MapReducePhase>();
     private int timeout = -1;
+    private int shards = 1;
+    private MapReduceCombiner combiner = null;
+    private JavascriptFunctionStore functionStore = null;
+    private long cacheTtl = 0;
     private RiakClient riak = null;
 
     /**
@@ -86,7 +114,7 @@ public class MapReduceBuilder {
      *             - If objects have already been added to the job
      */
     public MapReduceBuilder setBucket(String newBucket) {
-        if (objects.size() > 0)
+        if (objects.size() > 0 || inputs != null)
             throw new IllegalStateException("Cannot map/reduce over buckets and objects");
         bucket = newBucket;
         return this;
@@ -101,6 +129,8 @@ public class MapReduceBuilder {
     public void addRiakObject(String bucket, String key) {
         if (this.bucket != null)
             throw new IllegalStateException("Cannot map/reduce over buckets and objects");
+        if (inputs != null)
+            throw new IllegalStateException("Cannot add objects to inputs set with setInputs()");
         Set<String> keys = objects.get(bucket);
         if (keys == null) {
             keys = new LinkedHashSet<String>();
@@ -143,6 +173,7 @@ public class MapReduceBuilder {
         if (objects == null) {
             clearRiakObjects();
         } else {
+            clearRiakObjects();
             this.objects = new HashMap<String, Set<String>>(objects);
         }
 
@@ -164,10 +195,79 @@ public class MapReduceBuilder {
     }
 
     /**
-     * Remove all Riak objects from the input list
+     * Remove all Riak objects from the input list, including any set with
+     * setInputs()
      */
     public void clearRiakObjects() {
         objects.clear();
+        inputs = null;
+        repeatable = true;
+    }
+
+    /**
+     * Sets the inputs of the map/reduce job to the bucket name/key pairs (or
+     * bucket/key/key-data triples) returned by <code>inputs</code>. Unlike
+     * {@link MapReduceBuilder#addRiakObject(String, String)}, the inputs are
+     * not copied: they are drawn from the Iterable each time the job is
+     * written, so a job over millions of keys can be submitted without
+     * holding them in memory. Replaces any objects already on the input list.
+     * 
+     * @throws IllegalStateException
+     *             - If a bucket name has already been set on the job
+     */
+    public MapReduceBuilder setInputs(Iterable<String[]> inputs) {
+        if (bucket != null)
+            throw new IllegalStateException("Cannot map/reduce over buckets and objects");
+        clearRiakObjects();
+        this.inputs = inputs;
+        return this;
+    }
+
+    /**
+     * Same as {@link MapReduceBuilder#setInputs(Iterable)}, except the inputs
+     * can only be drawn once, so the job can only be written or submitted
+     * once and will not be retried by the HTTP client.
+     */
+    public MapReduceBuilder setInputs(Iterator<String[]> inputs) {
+        setInputs(inputs == null ? null : new OneShotIterable(inputs));
+        repeatable = (inputs == null);
+        return this;
+    }
+
+    /**
+     * Same as {@link MapReduceBuilder#setInputs(Iterable)}, using each of
+     * <code>keys</code> in <code>bucket</code> as an input. <code>keys</code>
+     * may be, for example, a {@link com.basho.riak.client.util.DiskKeySet}.
+     */
+    public MapReduceBuilder setInputs(final String bucket, final Iterable<String> keys) {
+        if (keys == null)
+            return setInputs((Iterable<String[]>) null);
+        return setInputs(new Iterable<String[]>() {
+            public Iterator<String[]> iterator() {
+                final Iterator<String> it = keys.iterator();
+                return new Iterator<String[]>() {
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    public String[] next() {
+                        return new String[] { bucket, it.next() };
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        });
+    }
+
+    /**
+     * Whether the job can be written more than once, i.e. its inputs were not
+     * set with {@link MapReduceBuilder#setInputs(Iterator)}
+     */
+    public boolean isRepeatable() {
+        return repeatable;
     }
 
     /**
@@ -184,6 +284,87 @@ public class MapReduceBuilder {
         return timeout;
     }
 
+    /**
+     * Split the job's inputs into <code>shards</code> sub-jobs which are
+     * submitted in parallel by {@link MapReduceBuilder#submit()}, so that a
+     * job over many objects is coordinated by several Riak nodes instead of
+     * one. With a {@link com.basho.riak.client.util.FailoverClientHelper},
+     * the sub-jobs are spread across its hosts.
+     * <p>
+     * The results of the sub-jobs are concatenated, which gives the same
+     * result as running the job whole for map and link phases. If the final
+     * phase is a reduce, a {@link MapReduceCombiner} must also be set to
+     * combine the sub-jobs' partial reductions. Reduce phases other than the
+     * final phase cannot be sharded, and neither can jobs over a whole bucket.
+     * 
+     * @param shards
+     *            number of sub-jobs; 1, the default, submits the job whole
+     */
+    public MapReduceBuilder setShards(int shards) {
+        if (shards < 1)
+            throw new IllegalArgumentException("shards must be at least 1");
+        this.shards = shards;
+        return this;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * Sets the {@link MapReduceCombiner} which combines the results of the
+     * final reduce phase of each sub-job when the job is sharded. See
+     * {@link MapReduceBuilder#setShards(int)}.
+     */
+    public MapReduceBuilder setCombiner(MapReduceCombiner combiner) {
+        this.combiner = combiner;
+        return this;
+    }
+
+    public MapReduceCombiner getCombiner() {
+        return combiner;
+    }
+
+    /**
+     * Sets a {@link JavascriptFunctionStore} to upload the job's anonymous
+     * Javascript functions to. When the job is submitted, each anonymous
+     * function is stored, unless the store has already stored it, and
+     * replaced in the job by a reference to the stored copy, so the job does
+     * not carry the function source.
+     */
+    public MapReduceBuilder setFunctionStore(JavascriptFunctionStore functionStore) {
+        this.functionStore = functionStore;
+        return this;
+    }
+
+    public JavascriptFunctionStore getFunctionStore() {
+        return functionStore;
+    }
+
+    /**
+     * Opt in to the client's map/reduce result cache, which is enabled with
+     * {@link com.basho.riak.client.IRiakConfig#setMapReduceCacheMaxBytes(Long)}.
+     * A successful result is cached for <code>ttlMillis</code> under the job's
+     * {@link MapReduceBuilder#getFingerprint()} and the query parameters of
+     * the request, and {@link MapReduceBuilder#submit()} returns a copy of it
+     * without contacting Riak until it expires. Identical jobs submitted
+     * while one is running wait for and share its result.
+     * 
+     * @param ttlMillis
+     *            how long to cache the result, or 0, the default, to not
+     *            cache it
+     */
+    public MapReduceBuilder setCacheTtl(long ttlMillis) {
+        if (ttlMillis < 0)
+            throw new IllegalArgumentException("ttlMillis must not be negative");
+        cacheTtl = ttlMillis;
+        return this;
+    }
+
+    public long getCacheTtl() {
+        return cacheTtl;
+    }
+
     /**
      * Adds a map phase to the job
      * 
@@ -298,7 +479,8 @@ public class MapReduceBuilder {
     }
 
     /**
-     * Submits the job to the Riak server
+     * Submits the job to the Riak server, as parallel sub-jobs if
+     * {@link MapReduceBuilder#setShards(int)} was called
      * 
      * @param meta
      *            Extra metadata to attach to the request such as HTTP headers
@@ -308,22 +490,75 @@ public class MapReduceBuilder {
      * 
      * @throws IllegalStateException
      *             If this job has not been associated with a Riak instance by
-     *             calling {@link MapReduceBuilder#setRiakClient(RiakClient)}
+     *             calling {@link MapReduceBuilder#setRiakClient(RiakClient)},
+     *             or it is sharded but cannot be split
      * @throws RiakIORuntimeException
      *             If an error occurs during communication with the Riak server.
      * @throws RiakResponseRuntimeException
      *             If the Riak server returns a malformed response.
      */
-    public MapReduceResponse submit(RequestMeta meta) {
+    public MapReduceResponse submit(final RequestMeta meta) {
         if (riak == null)
             throw new IllegalStateException("Cannot perform map reduce without a RiakClient");
-        return riak.mapReduce(toJSON().toString(), meta);
+
+        // before fingerprinting, so the fingerprint is the same on every submit
+        storeFunctions();
+        MapReduceResultCache cache = riak.getMapReduceCache();
+        if (cacheTtl > 0 && cache != null && repeatable) {
+            String key = getFingerprint() + "?" + (meta == null ? "" : meta.getQueryParams());
+            return cache.execute(key, cacheTtl, new Callable<MapReduceResponse>() {
+                public MapReduceResponse call() {
+                    return execute(meta);
+                }
+            });
+        }
+        return execute(meta);
+    }
+
+    private MapReduceResponse execute(RequestMeta meta) {
+        if (shards > 1)
+            return riak.mapReduceSharded(this, meta);
+        return riak.mapReduce(new MapReduceRequestEntity(this), meta);
     }
 
     public MapReduceResponse submit() throws JSONException {
         return submit(null);
     }
 
+    /**
+     * Submits the job to the Riak server in chunked mode, streaming the
+     * results back as they are produced. See
+     * {@link RiakClient#streamMapReduce(RequestEntity, RequestMeta)}.
+     * 
+     * @param meta
+     *            Extra metadata to attach to the request such as HTTP headers
+     *            or query parameters.
+     * 
+     * @return {@link StreamedMapReduceResponse} which iterates over batches of
+     *         job results
+     * 
+     * @throws IllegalStateException
+     *             If this job has not been associated with a Riak instance by
+     *             calling {@link MapReduceBuilder#setRiakClient(RiakClient)},
+     *             or it is sharded
+     * @throws RiakIORuntimeException
+     *             If an error occurs during communication with the Riak server.
+     * @throws RiakResponseRuntimeException
+     *             If the Riak server returns a malformed response.
+     */
+    public StreamedMapReduceResponse submitStreamed(RequestMeta meta) {
+        if (riak == null)
+            throw new IllegalStateException("Cannot perform map reduce without a RiakClient");
+        if (shards > 1)
+            throw new IllegalStateException("Sharded map/reduce jobs cannot be streamed");
+        storeFunctions();
+        return riak.streamMapReduce(new MapReduceRequestEntity(this), meta);
+    }
+
+    public StreamedMapReduceResponse submitStreamed() {
+        return submitStreamed(null);
+    }
+
     /**
      * Builds the JSON representation of a map/reduce job
      */
@@ -348,7 +583,282 @@ public class MapReduceBuilder {
         }
         return job;
     }
+
+    /**
+     * A fingerprint of the job which is the same for any two jobs with the
+     * same inputs, phases, phase arguments and timeout: the hex SHA-1 hash of
+     * a canonical JSON form of the job. Objects added with
+     * {@link MapReduceBuilder#addRiakObject(String, String)} are sorted, so
+     * the order in which they were added does not matter; inputs set with
+     * setInputs() are taken in the order they are iterated. Object keys in
+     * phase arguments are sorted.
+     * 
+     * @throws IllegalStateException
+     *             If the inputs were set from an Iterator, since reading them
+     *             would consume them
+     */
+    public String getFingerprint() {
+        if (!repeatable)
+            throw new IllegalStateException("Cannot fingerprint inputs set from an Iterator");
+
+        MessageDigest sha1;
+        try {
+            sha1 = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 must be supported", e);
+        }
+
+        try {
+            Writer w = new BufferedWriter(new OutputStreamWriter(new DigestOutputStream(NULL_OUTPUT, sha1), "UTF-8"));
+            JSONWriter json = new JSONWriter(w);
+            json.object().key("inputs");
+            if (bucket != null) {
+                json.value(bucket);
+            } else {
+                json.array();
+                Iterable<String[]> ordered = inputs;
+                if (ordered == null) {
+                    List<String[]> pairs = new ArrayList<String[]>();
+                    for (String b : new TreeSet<String>(objects.keySet())) {
+                        for (String key : new TreeSet<String>(objects.get(b))) {
+                            pairs.add(new String[] { b, key });
+                        }
+                    }
+                    ordered = pairs;
+                }
+                for (String[] input : ordered) {
+                    writeCanonical(json, Arrays.asList(input));
+                }
+                json.endArray();
+            }
+            JSONArray query = new JSONArray();
+            for (MapReducePhase phase : phases) {
+                renderPhase(phase, query);
+            }
+            json.key("query");
+            writeCanonical(json, query);
+            json.key("timeout").value(timeout);
+            json.endObject();
+            w.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException("Writing to a digest cannot fail", e);
+        } catch (JSONException e) {
+            throw new RuntimeException("Cannot fingerprint map/reduce job", e);
+        }
+
+        return new String(Hex.encodeHex(sha1.digest()));
+    }
+
+    /**
+     * Writes <code>value</code> as JSON with the keys of objects sorted
+     */
+    @SuppressWarnings("unchecked") private static void writeCanonical(JSONWriter json, Object value)
+            throws JSONException {
+        if (value instanceof JSONObject) {
+            JSONObject o = (JSONObject) value;
+            Map<String, Object> map = new HashMap<String, Object>();
+            for (Iterator<String> it = o.keys(); it.hasNext();) {
+                String key = it.next();
+                map.put(key, o.get(key));
+            }
+            value = map;
+        } else if (value instanceof JSONArray) {
+            JSONArray a = (JSONArray) value;
+            List<Object> list = new ArrayList<Object>(a.length());
+            for (int i = 0; i < a.length(); i++) {
+                list.add(a.get(i));
+            }
+            value = list;
+        } else if (value instanceof Object[]) {
+            value = Arrays.asList((Object[]) value);
+        }
+
+        if (value instanceof Map) {
+            json.object();
+            Map<Object, Object> map = (Map<Object, Object>) value;
+            Map<String, Object> sorted = new TreeMap<String, Object>();
+            for (Map.Entry<Object, Object> e : map.entrySet()) {
+                sorted.put(String.valueOf(e.getKey()), e.getValue());
+            }
+            for (Map.Entry<String, Object> e : sorted.entrySet()) {
+                json.key(e.getKey());
+                writeCanonical(json, e.getValue());
+            }
+            json.endObject();
+        } else if (value instanceof Collection) {
+            json.array();
+            for (Object o : (Collection<Object>) value) {
+                writeCanonical(json, o);
+            }
+            json.endArray();
+        } else {
+            json.value(value == null ? JSONObject.NULL : value);
+        }
+    }
+
+    private static final OutputStream NULL_OUTPUT = new OutputStream() {
+        @Override public void write(int b) { /* nop */}
+
+        @Override public void write(byte[] b, int off, int len) { /* nop */}
+    };
+
+    /**
+     * Writes the JSON representation of the map/reduce job to <code>w</code>
+     * as it is generated, drawing the inputs one at a time, rather than
+     * building it in memory first like {@link MapReduceBuilder#toJSON()}. The
+     * writer is not flushed or closed.
+     * 
+     * @throws IOException
+     *             If writing to <code>w</code> fails.
+     * @throws IllegalStateException
+     *             If the inputs were set with
+     *             {@link MapReduceBuilder#setInputs(Iterator)} and have
+     *             already been written.
+     */
+    public void writeJSON(Writer w) throws IOException {
+        JSONWriter json = new JSONWriter(w);
+        try {
+            json.object().key("inputs");
+            if (bucket != null) {
+                json.value(bucket);
+            } else {
+                json.array();
+                for (String[] input : getInputs()) {
+                    json.array();
+                    for (String s : input) {
+                        json.value(s);
+                    }
+                    json.endArray();
+                }
+                json.endArray();
+            }
+            JSONArray query = new JSONArray();
+            for (MapReducePhase phase : phases) {
+                renderPhase(phase, query);
+            }
+            json.key("query").value(query);
+            if (timeout > 0) {
+                json.key("timeout").value(timeout);
+            }
+            json.endObject();
+        } catch (JSONException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new RuntimeException("Can always write a valid map/reduce job", e);
+        }
+    }
     
+    /**
+     * Splits the job into {@link MapReduceBuilder#getShards()} sub-jobs, each
+     * with the same phases and timeout and every n-th of this job's inputs.
+     * The sub-jobs draw their inputs from this job's, so the inputs are not
+     * copied.
+     * 
+     * @throws IllegalStateException
+     *             If the job is over a whole bucket, its inputs were set from
+     *             an Iterator, it has a reduce phase other than the final
+     *             phase, or its final phase is a reduce and no
+     *             {@link MapReduceCombiner} is set.
+     */
+    public List<MapReduceBuilder> split() {
+        if (bucket != null)
+            throw new IllegalStateException("Cannot shard a map/reduce over a whole bucket");
+        if (!repeatable)
+            throw new IllegalStateException("Cannot shard inputs set from an Iterator");
+        for (int i = 0; i < phases.size() - 1; i++) {
+            if (phases.get(i).type == Types.REDUCE)
+                throw new IllegalStateException("Cannot shard a map/reduce with a reduce before its final phase");
+        }
+        if (endsWithReduce() && combiner == null)
+            throw new IllegalStateException("A MapReduceCombiner is required to shard a map/reduce ending in a reduce");
+
+        int n = shards;
+        if (inputs == null) {
+            int size = 0;
+            for (Set<String> keys : objects.values()) {
+                size += keys.size();
+            }
+            n = Math.max(1, Math.min(n, size));
+        }
+
+        List<MapReduceBuilder> jobs = new ArrayList<MapReduceBuilder>(n);
+        Iterable<String[]> all = getInputs();
+        for (int i = 0; i < n; i++) {
+            MapReduceBuilder job = new MapReduceBuilder(riak);
+            job.inputs = new StridedInputs(all, i, n);
+            job.phases = new LinkedList<MapReducePhase>(phases);
+            job.timeout = timeout;
+            jobs.add(job);
+        }
+        return jobs;
+    }
+
+    /**
+     * Merges the results of the sub-jobs returned by
+     * {@link MapReduceBuilder#split()} into the result of the whole job. The
+     * sub-jobs' results are concatenated, phase by phase if more than one
+     * phase keeps its results, and the results of a final reduce phase are
+     * passed through the {@link MapReduceCombiner}. Riak always returns the
+     * results of the final phase, so it is treated as kept.
+     * 
+     * @throws JSONException
+     *             If a sub-job's results do not have the expected shape, or
+     *             the combiner throws.
+     */
+    public JSONArray mergeShardResults(List<JSONArray> results) throws JSONException {
+        int kept = 0;
+        for (int i = 0; i < phases.size(); i++) {
+            if (phases.get(i).keep || i == phases.size() - 1) {
+                kept++;
+            }
+        }
+
+        if (kept <= 1) {
+            JSONArray merged = new JSONArray();
+            for (JSONArray result : results) {
+                append(merged, result);
+            }
+            return endsWithReduce() ? combiner.combine(merged) : merged;
+        }
+
+        JSONArray merged = new JSONArray();
+        for (int phase = 0; phase < kept; phase++) {
+            JSONArray phaseResults = new JSONArray();
+            for (JSONArray result : results) {
+                append(phaseResults, result.optJSONArray(phase));
+            }
+            if (phase == kept - 1 && endsWithReduce()) {
+                phaseResults = combiner.combine(phaseResults);
+            }
+            merged.put(phaseResults);
+        }
+        return merged;
+    }
+
+    /**
+     * Replace anonymous Javascript functions with references to copies
+     * stored in the function store, if there is one
+     */
+    private void storeFunctions() {
+        if (functionStore != null) {
+            for (MapReducePhase phase : phases) {
+                phase.function = functionStore.store(phase.function);
+            }
+        }
+    }
+
+    private boolean endsWithReduce() {
+        return phases.size() > 0 && phases.get(phases.size() - 1).type == Types.REDUCE;
+    }
+
+    private static void append(JSONArray to, JSONArray from) throws JSONException {
+        if (from != null) {
+            for (int i = 0; i < from.length(); i++) {
+                to.put(from.get(i));
+            }
+        }
+    }
+
     private MapReduceBuilder addPhase(Types phaseType, MapReduceFunction function, boolean keep) {
        return addPhase(phaseType, function, null, keep);
     }
@@ -372,12 +882,8 @@ public class MapReduceBuilder {
             }
         } else {
             JSONArray inputs = new JSONArray();
-            for (String bucket : objects.keySet()) {
-                Set<String> keys = objects.get(bucket);
-                for (String key : keys) {
-                    String[] pair = { bucket, key };
-                    inputs.put(pair);
-                }
+            for (String[] pair : getInputs()) {
+                inputs.put(pair);
             }
             try {
                 job.put("inputs", inputs);
@@ -387,6 +893,43 @@ public class MapReduceBuilder {
         }
     }
 
+    /**
+     * The inputs set with setInputs() or, failing that, the Riak objects on
+     * the input list as bucket/key pairs
+     */
+    private Iterable<String[]> getInputs() {
+        if (inputs != null)
+            return inputs;
+        return new Iterable<String[]>() {
+            public Iterator<String[]> iterator() {
+                final Iterator<Map.Entry<String, Set<String>>> buckets = objects.entrySet().iterator();
+                return new Iterator<String[]>() {
+                    String bucket = null;
+                    Iterator<String> keys = null;
+
+                    public boolean hasNext() {
+                        while ((keys == null || !keys.hasNext()) && buckets.hasNext()) {
+                            Map.Entry<String, Set<String>> e = buckets.next();
+                            bucket = e.getKey();
+                            keys = e.getValue().iterator();
+                        }
+                        return keys != null && keys.hasNext();
+                    }
+
+                    public String[] next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        return new String[] { bucket, keys.next() };
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
     private void renderPhase(MapReducePhase phase, JSONArray query) {
         JSONObject phaseJson = new JSONObject();
         JSONObject functionJson = phase.function.toJson();
@@ -422,6 +965,70 @@ public class MapReduceBuilder {
         query.put(phaseJson);
     }
 
+    private static class OneShotIterable implements Iterable<String[]> {
+        private Iterator<String[]> it;
+
+        OneShotIterable(Iterator<String[]> it) {
+            this.it = it;
+        }
+
+        public synchronized Iterator<String[]> iterator() {
+            if (it == null)
+                throw new IllegalStateException("Inputs set from an Iterator can only be read once");
+            Iterator<String[]> i = it;
+            it = null;
+            return i;
+        }
+    }
+
+    /**
+     * Every n-th input of another set of inputs
+     */
+    private static class StridedInputs implements Iterable<String[]> {
+        private final Iterable<String[]> inputs;
+        private final int offset;
+        private final int stride;
+
+        StridedInputs(Iterable<String[]> inputs, int offset, int stride) {
+            this.inputs = inputs;
+            this.offset = offset;
+            this.stride = stride;
+        }
+
+        public Iterator<String[]> iterator() {
+            final Iterator<String[]> it = inputs.iterator();
+            return new Iterator<String[]>() {
+                String[] next = advance(offset + 1);
+
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                public String[] next() {
+                    if (next == null)
+                        throw new NoSuchElementException();
+                    String[] input = next;
+                    next = advance(stride);
+                    return input;
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+
+                private String[] advance(int n) {
+                    String[] input = null;
+                    for (int i = 0; i < n; i++) {
+                        if (!it.hasNext())
+                            return null;
+                        input = it.next();
+                    }
+                    return input;
+                }
+            };
+        }
+    }
+
     private class MapReducePhase {
         Types type;
         MapReduceFunction function;
@@ -0,0 +1,66 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.request;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.apache.commons.httpclient.methods.RequestEntity;
+
+import com.basho.riak.client.util.Constants;
+
+/**
+ * A {@link RequestEntity} which writes a {@link MapReduceBuilder}'s job
+ * directly to the connection as UTF-8 JSON using
+ * {@link MapReduceBuilder#writeJSON(Writer)}. The length is not known ahead of
+ * time, so the request is sent with chunked transfer encoding.
+ */
+public class MapReduceRequestEntity implements RequestEntity {
+
+    private static final String CHARSET = "UTF-8";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final MapReduceBuilder job;
+
+    public MapReduceRequestEntity(MapReduceBuilder job) {
+        if (job == null)
+            throw new IllegalArgumentException("job must not be null");
+        this.job = job;
+    }
+
+    public MapReduceBuilder getJob() {
+        return job;
+    }
+
+    public boolean isRepeatable() {
+        return job.isRepeatable();
+    }
+
+    public void writeRequest(OutputStream out) throws IOException {
+        Writer w = new BufferedWriter(new OutputStreamWriter(out, CHARSET), BUFFER_SIZE);
+        job.writeJSON(w);
+        w.flush();
+    }
+
+    public long getContentLength() {
+        return -1;
+    }
+
+    public String getContentType() {
+        return Constants.CTYPE_JSON;
+    }
+}
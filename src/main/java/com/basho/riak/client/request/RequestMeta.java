@@ -71,6 +71,17 @@ public class RequestMeta {
         return meta;
     }
 
+    /**
+     * A new {@link RequestMeta} with the same headers and query parameters,
+     * which can be modified without affecting this one.
+     */
+    public RequestMeta copy() {
+        RequestMeta copy = new RequestMeta();
+        copy.queryParams.putAll(queryParams);
+        copy.headers.putAll(headers);
+        return copy;
+    }
+
     /**
      * Add the specified HTTP header
      * 
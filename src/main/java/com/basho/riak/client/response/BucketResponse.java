@@ -14,18 +14,16 @@
 package com.basho.riak.client.response;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.Collection;
+import java.util.List;
 
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.JSONTokener;
 
 import com.basho.riak.client.RiakBucketInfo;
-import com.basho.riak.client.util.ClientUtils;
 import com.basho.riak.client.util.Constants;
+import com.basho.riak.client.util.JsonAdapter;
+import com.basho.riak.client.util.JsonPullParser;
+import com.basho.riak.client.util.JsonPullParser.Event;
 
 /**
  * Response from a GET request at a bucket's URL. Decorates an HttpResponse to
@@ -51,23 +49,37 @@ public class BucketResponse extends HttpResponseDecorator implements HttpRespons
         super(r);
 
         if (r != null && r.isSuccess()) {
-            JSONObject props;
-            Collection<String> keys;
+            JsonPullParser parser;
             if (!r.isStreamed()) {
-                JSONObject json = new JSONObject(r.getBodyAsString());
-                JSONArray jsonKeys = json.optJSONArray(Constants.FL_KEYS);
-                props = json.optJSONObject(Constants.FL_SCHEMA);
-                keys = ClientUtils.jsonArrayAsList(jsonKeys);
+                parser = new JsonPullParser(r.getBody() == null ? new byte[0] : r.getBody());
             } else {
-                InputStream stream = r.getStream();
-                JSONTokener tokens = new JSONTokener(new InputStreamReader(stream));
+                parser = new JsonPullParser(r.getStream());
+            }
+
+            // read the first object, which holds the schema and possibly
+            // keys. When streaming, the rest of the stream is given to the
+            // streamed keys collection.
+            JSONObject props = null;
+            List<String> keys = null;
+            if (parser.next() != Event.START_OBJECT)
+                throw new JSONException("Expected a JSON object");
+            while (parser.next() == Event.FIELD_NAME) {
+                String field = parser.getText();
+                if (Constants.FL_SCHEMA.equals(field)) {
+                    Object value = JsonAdapter.readValue(parser);
+                    props = value instanceof JSONObject ? (JSONObject) value : null;
+                } else if (Constants.FL_KEYS.equals(field)) {
+                    keys = JsonAdapter.readStringList(parser);
+                } else {
+                    parser.skipValue();
+                }
+            }
 
-                // suck in the first object from the stream, which is the schema
-                // and give the rest to the streamed keys collection
-                props = new JSONObject(tokens).optJSONObject(Constants.FL_SCHEMA);
-                keys = new StreamedKeysCollection(tokens);
+            if (!r.isStreamed()) {
+                bucketInfo = new RiakBucketInfo(props, keys);
+            } else {
+                bucketInfo = new RiakBucketInfo(props, new StreamedKeysCollection(parser, keys));
             }
-            bucketInfo = new RiakBucketInfo(props, keys);
         }
     }
 
@@ -0,0 +1,251 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.response;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.basho.riak.client.RiakClient;
+import com.basho.riak.client.RiakLink;
+import com.basho.riak.client.RiakObject;
+import com.basho.riak.client.mapreduce.JavascriptFunction;
+import com.basho.riak.client.util.Constants;
+
+/**
+ * Response from a bulk fetch, which is a map-reduce query over a set of
+ * objects with a single map phase that returns each object whole. Decorates an
+ * HttpResponse and decodes the JSON results into {@link RiakObject}s indexed
+ * by bucket and key, so results may arrive in any order. Keys that were
+ * requested but not returned are reported by {@link #getMissing()}.
+ * <p>
+ * Riak's Javascript map phases carry object values as strings, so values are
+ * decoded as UTF-8 text. Use {@link RiakClient#fetch(String, String)} for
+ * binary values.
+ */
+public class BulkFetchResponse extends MapReduceResponse {
+
+    /**
+     * Map phase used to return each input object, or its not_found marker, as
+     * is
+     */
+    public static final JavascriptFunction MAP_OBJECT = JavascriptFunction.anon("function(v) { return [v]; }");
+
+    private static final String NOT_FOUND = "not_found";
+    private static final String META_VTAG = "X-Riak-VTag";
+    private static final String META_LASTMOD = "X-Riak-Last-Modified";
+    private static final String META_USERMETA = "X-Riak-Meta";
+    private static final String META_LINKS = "Links";
+
+    private Map<String, Map<String, List<RiakObject>>> objects = new HashMap<String, Map<String, List<RiakObject>>>();
+    private Map<String, Set<String>> missing = new HashMap<String, Set<String>>();
+    private int objectCount = 0;
+
+    /**
+     * On a 2xx response, decodes the results of the map phase into
+     * {@link RiakObject}s and compares them against the requested keys.
+     * 
+     * @param r
+     *            The HTTP response from POST'ing the bulk fetch job
+     * @param riak
+     *            The {@link RiakClient} to associate with returned objects
+     * @param requested
+     *            The objects requested as a map of { bucket : [ keys ] }
+     * @throws JSONException
+     *             Response is a 2xx but doesn't contain valid results
+     */
+    public BulkFetchResponse(HttpResponse r, RiakClient riak, Map<String, Set<String>> requested) throws JSONException {
+        super(r);
+
+        if (getResults() != null) {
+            JSONArray results = getResults();
+            for (int i = 0; i < results.length(); i++) {
+                JSONObject result = results.optJSONObject(i);
+                if (result != null && !result.has(NOT_FOUND)) {
+                    addObject(riak, result);
+                }
+            }
+            if (requested != null) {
+                for (String bucket : requested.keySet()) {
+                    for (String key : requested.get(bucket)) {
+                        if (!hasObject(bucket, key)) {
+                            Set<String> keys = missing.get(bucket);
+                            if (keys == null) {
+                                keys = new LinkedHashSet<String>();
+                                missing.put(bucket, keys);
+                            }
+                            keys.add(key);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the given object was returned
+     */
+    public boolean hasObject(String bucket, String key) {
+        Map<String, List<RiakObject>> keys = objects.get(bucket);
+        return keys != null && keys.containsKey(key);
+    }
+
+    /**
+     * The returned object with the given bucket and key or null if it was not
+     * returned. If the object has siblings, this is the first sibling.
+     */
+    public RiakObject getObject(String bucket, String key) {
+        List<RiakObject> siblings = getSiblings(bucket, key);
+        return siblings.isEmpty() ? null : siblings.get(0);
+    }
+
+    /**
+     * All the values returned for the given bucket and key, which is more than
+     * one if the object has siblings, or an empty list if it was not returned.
+     */
+    public List<RiakObject> getSiblings(String bucket, String key) {
+        Map<String, List<RiakObject>> keys = objects.get(bucket);
+        List<RiakObject> siblings = keys == null ? null : keys.get(key);
+        if (siblings == null)
+            return Collections.emptyList();
+        return siblings;
+    }
+
+    /**
+     * All returned objects. Objects with siblings contribute only their first
+     * sibling.
+     */
+    public List<RiakObject> getObjects() {
+        List<RiakObject> all = new ArrayList<RiakObject>(objectCount);
+        for (Map<String, List<RiakObject>> keys : objects.values()) {
+            for (List<RiakObject> siblings : keys.values()) {
+                all.add(siblings.get(0));
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Requested objects which were not returned as a map of { bucket : [ keys
+     * ] }.
+     */
+    public Map<String, Set<String>> getMissing() {
+        return missing;
+    }
+
+    /**
+     * Whether any requested objects were not returned
+     */
+    public boolean hasMissing() {
+        return !missing.isEmpty();
+    }
+
+    private void addObject(RiakClient riak, JSONObject result) throws JSONException {
+        String bucket = result.getString("bucket");
+        String key = result.getString("key");
+        String vclock = result.optString("vclock", null);
+        JSONArray values = result.optJSONArray("values");
+
+        List<RiakObject> siblings = new ArrayList<RiakObject>();
+        if (values != null) {
+            for (int i = 0; i < values.length(); i++) {
+                JSONObject value = values.getJSONObject(i);
+                siblings.add(parseValue(riak, bucket, key, vclock, value));
+            }
+        }
+        if (siblings.isEmpty()) {
+            siblings.add(new RiakObject(riak, bucket, key, null, null, null, null, vclock, null, null));
+        }
+
+        Map<String, List<RiakObject>> keys = objects.get(bucket);
+        if (keys == null) {
+            keys = new HashMap<String, List<RiakObject>>();
+            objects.put(bucket, keys);
+        }
+        if (keys.put(key, siblings) == null) {
+            objectCount++;
+        }
+    }
+
+    private RiakObject parseValue(RiakClient riak, String bucket, String key, String vclock, JSONObject value) {
+        JSONObject metadata = value.optJSONObject("metadata");
+        if (metadata == null) {
+            metadata = new JSONObject();
+        }
+
+        Object data = value.opt("data");
+        byte[] bytes = null;
+        if (data != null && data != JSONObject.NULL) {
+            try {
+                bytes = data.toString().getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException("UTF-8 must be supported", e);
+            }
+        }
+
+        return new RiakObject(riak, bucket, key, bytes, metadata.optString(Constants.HDR_CONTENT_TYPE, null),
+                              parseLinks(metadata.optJSONArray(META_LINKS)),
+                              parseUsermeta(metadata.optJSONObject(META_USERMETA)), vclock,
+                              metadata.optString(META_LASTMOD, null), metadata.optString(META_VTAG, null));
+    }
+
+    /**
+     * Links are returned either as [bucket, key, tag] or [[bucket, key], tag]
+     * depending on the Riak version.
+     */
+    private List<RiakLink> parseLinks(JSONArray json) {
+        List<RiakLink> links = new ArrayList<RiakLink>();
+        if (json == null)
+            return links;
+        for (int i = 0; i < json.length(); i++) {
+            JSONArray link = json.optJSONArray(i);
+            if (link == null) {
+                continue;
+            }
+            JSONArray target = link.optJSONArray(0);
+            if (target != null) {
+                links.add(new RiakLink(target.optString(0), target.optString(1), link.optString(1)));
+            } else {
+                links.add(new RiakLink(link.optString(0), link.optString(1), link.optString(2)));
+            }
+        }
+        return links;
+    }
+
+    private Map<String, String> parseUsermeta(JSONObject json) {
+        Map<String, String> usermeta = new HashMap<String, String>();
+        if (json == null)
+            return usermeta;
+        for (Iterator<?> it = json.keys(); it.hasNext();) {
+            String header = it.next().toString();
+            // lower-cased to match what a fetch returns from the HTTP headers
+            String name = header.toLowerCase();
+            if (name.startsWith(Constants.HDR_USERMETA_PREFIX)) {
+                name = name.substring(Constants.HDR_USERMETA_PREFIX.length());
+            }
+            usermeta.put(name, json.optString(header));
+        }
+        return usermeta;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.response;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import com.basho.riak.client.RiakClient;
+import com.basho.riak.client.request.RequestMeta;
+
+/**
+ * The results of {@link RiakClient#fetchMany(String, Collection, RequestMeta)}:
+ * one {@link FetchResponse} per key, in the order the fetches complete. The
+ * fetches run in the background with at most a fixed number in flight, and
+ * iteration blocks until the next one is done.
+ * <p>
+ * Every result names the key it is for. If a fetch throws (e.g. a
+ * {@link RiakIORuntimeException} when no exception handler is installed, or
+ * an Error), the corresponding call to {@link Iterator#next()} throws a
+ * {@link RiakFetchRuntimeException} naming the key, caused by what the fetch
+ * threw; the remaining results can still be read. A fetch whose failure was
+ * passed to the exception handler yields a response with status 0 for its
+ * key.
+ */
+public class FetchManyResponse implements Iterable<FetchResponse> {
+
+    /** Posted by cancel() to wake threads waiting for a result */
+    private static final Object CANCELLED = new Object();
+
+    private final BlockingQueue<Object> results = new LinkedBlockingQueue<Object>();
+    private final Iterator<String> keys;
+    private final int size;
+    private volatile boolean cancelled = false;
+    private int returned = 0;
+
+    /**
+     * Start fetching <code>keys</code>.
+     * 
+     * @param meta
+     *            Request parameters; each fetch uses its own copy
+     * @param maxConcurrency
+     *            Maximum number of fetches in flight at once
+     * @param executor
+     *            Runs the fetches; must be able to run
+     *            <code>maxConcurrency</code> tasks at once to reach that
+     *            concurrency
+     */
+    public FetchManyResponse(final RiakClient riak, final String bucket, Collection<String> keys,
+            final RequestMeta meta, int maxConcurrency, Executor executor) {
+        this.keys = new ArrayList<String>(keys).iterator();
+        this.size = keys.size();
+
+        int workers = Math.min(Math.max(1, maxConcurrency), size);
+        for (int i = 0; i < workers; i++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    String key;
+                    while ((key = nextKey()) != null) {
+                        Object result = null;
+                        try {
+                            result = keyed(riak, bucket, key, riak.fetch(bucket, key, meta == null ? null : meta.copy()));
+                        } catch (Throwable t) {
+                            result = new RiakFetchRuntimeException(bucket, key, t);
+                        } finally {
+                            // always post something, or next() would wait forever
+                            results.add(result != null ? result : new RiakFetchRuntimeException(bucket, key, null));
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Number of keys requested
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Stop starting new fetches. Fetches already in flight complete, but
+     * iteration ends immediately, and a call to {@link Iterator#next()}
+     * waiting for a result throws {@link NoSuchElementException}.
+     */
+    public void cancel() {
+        cancelled = true;
+        results.add(CANCELLED);
+    }
+
+    /**
+     * The results in completion order. There is only one underlying sequence
+     * of results, shared by all iterators.
+     */
+    public Iterator<FetchResponse> iterator() {
+        return new Iterator<FetchResponse>() {
+            public boolean hasNext() {
+                synchronized (FetchManyResponse.this) {
+                    return !cancelled && returned < size;
+                }
+            }
+
+            public FetchResponse next() {
+                synchronized (FetchManyResponse.this) {
+                    if (!hasNext())
+                        throw new NoSuchElementException();
+                    returned++;
+                }
+
+                Object result;
+                try {
+                    result = results.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RiakIORuntimeException(e);
+                }
+                if (result == CANCELLED) {
+                    // leave it for any other thread waiting in next()
+                    results.add(CANCELLED);
+                    throw new NoSuchElementException("cancelled");
+                }
+                if (result instanceof RiakFetchRuntimeException)
+                    throw (RiakFetchRuntimeException) result;
+                return (FetchResponse) result;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * The response returned by toss() when an exception handler is installed
+     * doesn't say which object it is for, so give it the bucket and key.
+     */
+    private static FetchResponse keyed(RiakClient riak, String bucket, String key, FetchResponse r) {
+        if (r != null && (r.getKey() != null || r.hasObject()))
+            return r;
+        int status = 0;
+        if (r != null) {
+            status = r.getStatusCode();
+            r.close();
+        }
+        return new FetchResponse(new DefaultHttpResponse(bucket, key, status, null, null, null, null), riak);
+    }
+
+    private String nextKey() {
+        synchronized (keys) {
+            if (cancelled || !keys.hasNext())
+                return null;
+            return keys.next();
+        }
+    }
+}
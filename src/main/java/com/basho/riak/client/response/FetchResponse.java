@@ -82,7 +82,7 @@ public class FetchResponse extends HttpResponseDecorator implements HttpResponse
                     throw new RiakIORuntimeException("Error finding initial boundary", e);
                 }
             } else {
-                siblings = ClientUtils.parseMultipart(riak, r.getBucket(), r.getKey(), headers, r.getBodyAsString());
+                siblings = ClientUtils.parseMultipartBytes(riak, r.getBucket(), r.getKey(), headers, r.getBody());
             }
 
             object = siblings.iterator().next();
@@ -108,6 +108,33 @@ public class FetchResponse extends HttpResponseDecorator implements HttpResponse
         this(r, null);
     }
 
+    /**
+     * Create a response sharing the HTTP response information of
+     * <code>r</code> but holding its own copies of the object and siblings,
+     * made with {@link RiakObject#copyData(RiakObject)}. Streamed responses
+     * can't be copied; the copy shares the same value streams.
+     * 
+     * @param riak
+     *            Client to associate with the copied objects
+     */
+    public static FetchResponse copyOf(FetchResponse r, RiakClient riak) {
+        FetchResponse copy = new FetchResponse(null, riak);
+        copy.impl = r.impl;
+        if (r.object != null) {
+            for (RiakObject sibling : r.siblings) {
+                copy.siblings.add(copyOf(sibling, riak));
+            }
+            copy.object = copy.siblings.isEmpty() ? copyOf(r.object, riak) : copy.siblings.iterator().next();
+        }
+        return copy;
+    }
+
+    private static RiakObject copyOf(RiakObject o, RiakClient riak) {
+        RiakObject copy = new RiakObject(riak, o.getBucket(), o.getKey());
+        copy.copyData(o);
+        return copy;
+    }
+
     /**
      * Whether response contained a Riak object
      */
@@ -13,9 +13,14 @@
  */
 package com.basho.riak.client.response;
 
+import java.io.IOException;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 
+import com.basho.riak.client.util.JsonAdapter;
+import com.basho.riak.client.util.JsonPullParser;
+
 /**
  * Response from a map-reduce query (POST to /mapred). Decorates an HttpResponse
  * and parses returned JSON array returned from Riak.
@@ -25,7 +30,8 @@ public class MapReduceResponse extends HttpResponseDecorator implements HttpResp
     JSONArray result = null;
 
     /**
-     * On a 2xx response, parses the response into a {@link JSONArray}
+     * On a 2xx response, parses the response into a {@link JSONArray}. The
+     * body is parsed directly from its UTF-8 bytes.
      * 
      * @param r
      *            The HTTP response query POST'd to the map-reduce resource
@@ -36,8 +42,38 @@ public class MapReduceResponse extends HttpResponseDecorator implements HttpResp
         super(r);
 
         if (r != null && r.isSuccess() && (r.getBody() != null)) {
-            result = new JSONArray(r.getBodyAsString());
+            try {
+                result = JsonAdapter.readArray(new JsonPullParser(r.getBody()));
+            } catch (IOException e) {
+                // can't happen reading from a byte array
+                throw new JSONException(e);
+            }
+        }
+    }
+
+    /**
+     * Decorates <code>r</code> with results which have already been parsed,
+     * or which were not parsed from <code>r</code> at all.
+     */
+    protected MapReduceResponse(HttpResponse r, JSONArray result) {
+        super(r);
+        this.result = result;
+    }
+
+    /**
+     * Create a response sharing the HTTP response information of
+     * <code>r</code> but holding its own copy of the results.
+     */
+    public static MapReduceResponse copyOf(MapReduceResponse r) {
+        JSONArray copy = null;
+        if (r.result != null) {
+            try {
+                copy = new JSONArray(r.result.toString());
+            } catch (JSONException e) {
+                throw new IllegalStateException("Results should always be valid JSON", e);
+            }
         }
+        return new MapReduceResponse(r, copy);
     }
 
     /**
@@ -0,0 +1,41 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.response;
+
+/**
+ * Thrown when one fetch of a batch, such as one key of
+ * {@link com.basho.riak.client.RiakClient#fetchMany(String, java.util.Collection)},
+ * fails. Names the object so the caller can tell which fetch failed and retry
+ * it; the cause is what the fetch threw.
+ */
+public class RiakFetchRuntimeException extends RuntimeException {
+
+    private static final long serialVersionUID = 5276187375412396361L;
+    private final String bucket;
+    private final String key;
+
+    public RiakFetchRuntimeException(String bucket, String key, Throwable cause) {
+        super("Failed to fetch " + bucket + "/" + key, cause);
+        this.bucket = bucket;
+        this.key = key;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public String getKey() {
+        return key;
+    }
+}
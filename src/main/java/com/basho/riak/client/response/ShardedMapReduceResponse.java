@@ -0,0 +1,84 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.response;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import com.basho.riak.client.request.MapReduceBuilder;
+
+/**
+ * Response from a map/reduce job which was split into parallel sub-jobs with
+ * {@link MapReduceBuilder#setShards(int)}. The results are the sub-jobs'
+ * results merged by {@link MapReduceBuilder#mergeShardResults(List)}.
+ * <p>
+ * The HTTP information (status, headers, body) is that of the first sub-job
+ * which failed or, if they all succeeded, of the first sub-job. If any sub-job
+ * failed, there are no results.
+ */
+public class ShardedMapReduceResponse extends MapReduceResponse {
+
+    private final List<MapReduceResponse> shardResponses;
+
+    /**
+     * @param job
+     *            The job which was split
+     * @param shardResponses
+     *            The responses to the sub-jobs returned by
+     *            {@link MapReduceBuilder#split()}
+     * @throws JSONException
+     *             If the sub-jobs' results cannot be merged
+     */
+    public ShardedMapReduceResponse(MapReduceBuilder job, List<MapReduceResponse> shardResponses)
+            throws JSONException {
+        super(representative(shardResponses), merge(job, shardResponses));
+        this.shardResponses = Collections.unmodifiableList(new ArrayList<MapReduceResponse>(shardResponses));
+    }
+
+    /**
+     * The responses to each of the sub-jobs
+     */
+    public List<MapReduceResponse> getShardResponses() {
+        return shardResponses;
+    }
+
+    @Override public void close() {
+        for (MapReduceResponse r : shardResponses) {
+            r.close();
+        }
+    }
+
+    private static HttpResponse representative(List<MapReduceResponse> shardResponses) {
+        for (MapReduceResponse r : shardResponses) {
+            if (!r.isSuccess())
+                return r;
+        }
+        return shardResponses.isEmpty() ? null : shardResponses.get(0);
+    }
+
+    private static JSONArray merge(MapReduceBuilder job, List<MapReduceResponse> shardResponses)
+            throws JSONException {
+        List<JSONArray> results = new ArrayList<JSONArray>(shardResponses.size());
+        for (MapReduceResponse r : shardResponses) {
+            if (!r.isSuccess() || r.getResults() == null)
+                return null;
+            results.add(r.getResults());
+        }
+        return job.mergeShardResults(results);
+    }
+}
@@ -13,10 +13,15 @@
  */
 package com.basho.riak.client.response;
 
+import java.io.IOException;
+import java.util.Collection;
+
 import org.json.JSONException;
 import org.json.JSONTokener;
 
 import com.basho.riak.client.util.CollectionWrapper;
+import com.basho.riak.client.util.JsonPullParser;
+import com.basho.riak.client.util.JsonPullParser.Event;
 
 /**
  * Presents the stream of keys from a Riak bucket response with query parameter
@@ -26,11 +31,32 @@ import com.basho.riak.client.util.CollectionWrapper;
 public class StreamedKeysCollection extends CollectionWrapper<String> {
 
     JSONTokener tokens;
+    JsonPullParser parser;
     boolean readingArray = false;
 
     public StreamedKeysCollection(JSONTokener tokens) {
         this.tokens = tokens;
     }
+
+    /**
+     * Reads keys from a pull parser over the response bytes, which avoids
+     * decoding the stream through a Reader and building a JSON value for each
+     * key.
+     * 
+     * @param parser
+     *            Parser positioned anywhere before the remaining keys
+     * @param initialKeys
+     *            Keys already read from the stream, e.g. along with the bucket
+     *            properties. May be null.
+     */
+    public StreamedKeysCollection(JsonPullParser parser, Collection<String> initialKeys) {
+        this.parser = parser;
+        if (initialKeys != null) {
+            for (String key : initialKeys) {
+                cache(key);
+            }
+        }
+    }
     
     /**
      * Tries to read and cache another set of keys from the input stream. This
@@ -38,6 +64,8 @@ public class StreamedKeysCollection extends CollectionWrapper<String> {
      * available array in the stream and sucks elements out of it.
      */
     @Override protected boolean cacheNext() {
+        if (parser != null)
+            return cacheNextFromParser();
         if (tokens == null)
             return false;
 
@@ -62,7 +90,29 @@ public class StreamedKeysCollection extends CollectionWrapper<String> {
         return false;
     }
 
+    /**
+     * Caches the next scalar element of any array in the stream, consistent
+     * with the JSONTokener version above.
+     */
+    private boolean cacheNextFromParser() {
+        try {
+            Event e;
+            while ((e = parser.next()) != null) {
+                if (e != Event.START_OBJECT && e != Event.END_OBJECT && e != Event.START_ARRAY &&
+                    e != Event.END_ARRAY && e != Event.FIELD_NAME && parser.inArray()) {
+                    cache(e == Event.STRING || e == Event.NUMBER ? parser.getText() : e.name().toLowerCase());
+                    return true;
+                }
+            }
+        } catch (JSONException e) { /* nop */
+        } catch (IOException e) { /* nop */}
+
+        parser = null;
+        return false;
+    }
+
     @Override protected void closeBackend() {
         tokens = null;
+        parser = null;
     }
 }
@@ -0,0 +1,210 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.response;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.commons.httpclient.HttpMethod;
+import org.json.JSONException;
+
+import com.basho.riak.client.util.Constants;
+import com.basho.riak.client.util.Utf8JsonTokenizer;
+
+/**
+ * Forward-only cursor over the keys in a streamed bucket listing (GET with
+ * query parameter keys=stream). Unlike {@link StreamedKeysCollection}, keys
+ * are not cached: each key is decoded straight from the response bytes when
+ * the iterator reaches it and is then forgotten, so a listing of any size is
+ * enumerated in constant memory. The bucket properties Riak sends ahead of
+ * the keys are skipped.
+ * <p>
+ * The cursor can be iterated only once. The connection is released once the
+ * last key is read or an error occurs. Callers that stop iterating early must
+ * call {@link #close()}, which aborts the request rather than reading the
+ * rest of the listing. Note, this class is NOT thread-safe!
+ */
+public class StreamedKeysCursor extends HttpResponseDecorator implements HttpResponse, Iterable<String> {
+
+    private static final int BETWEEN_OBJECTS = 0;
+    private static final int IN_OBJECT = 1;
+    private static final int IN_KEYS = 2;
+
+    private Utf8JsonTokenizer tokens = null;
+    private int state = BETWEEN_OBJECTS;
+    private boolean iterated = false;
+
+    /**
+     * On a 2xx response, prepares to read keys from the response stream. No
+     * data is read until the cursor is iterated.
+     * 
+     * @param r
+     *            The streamed HTTP response from a GET at a bucket with
+     *            keys=stream
+     * @throws RiakResponseRuntimeException
+     *             If the response is a 2xx but is not streamed
+     */
+    public StreamedKeysCursor(HttpResponse r) throws RiakResponseRuntimeException {
+        super(r);
+
+        if (r == null || !r.isSuccess())
+            return;
+        if (!r.isStreamed() || r.getStream() == null)
+            throw new RiakResponseRuntimeException(r, "streamed response expected for key listing");
+
+        tokens = new Utf8JsonTokenizer(r.getStream());
+    }
+
+    /**
+     * Iterates over the keys in the order Riak sends them.
+     * {@link Iterator#next()} throws {@link RiakIORuntimeException} if the
+     * connection fails, and {@link RiakResponseRuntimeException} if the
+     * listing is malformed.
+     * 
+     * @throws IllegalStateException
+     *             If called more than once
+     */
+    public Iterator<String> iterator() {
+        if (iterated)
+            throw new IllegalStateException("Streamed keys can only be iterated once");
+        iterated = true;
+
+        return new Iterator<String>() {
+            String next = null;
+
+            public boolean hasNext() {
+                if (next == null) {
+                    next = readKey();
+                }
+                return next != null;
+            }
+
+            public String next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                String key = next;
+                next = null;
+                return key;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Reads the next key, or closes the response and returns null at the end
+     * of the listing.
+     */
+    private String readKey() {
+        if (tokens == null)
+            return null;
+
+        String key;
+        try {
+            key = findNextKey();
+        } catch (IOException e) {
+            close();
+            throw new RiakIORuntimeException(e);
+        } catch (JSONException e) {
+            close();
+            throw new RiakResponseRuntimeException(impl, e);
+        }
+
+        if (key == null) {
+            tokens = null;
+            close();
+        }
+        return key;
+    }
+
+    /**
+     * Walks the stream of JSON objects, descending only into the "keys" arrays
+     * and skipping every other value.
+     */
+    private String findNextKey() throws IOException, JSONException {
+        while (true) {
+            int c = tokens.nextClean();
+            switch (state) {
+            case IN_KEYS:
+                if (c == ',') {
+                    c = tokens.nextClean();
+                }
+                if (c == ']') {
+                    state = IN_OBJECT;
+                } else if (c == '"') {
+                    return tokens.nextString();
+                } else if (c == -1) {
+                    throw new JSONException("Unterminated keys array");
+                } else {
+                    tokens.back();
+                    tokens.skipValue();
+                }
+                break;
+
+            case IN_OBJECT:
+                if (c == ',') {
+                    c = tokens.nextClean();
+                }
+                if (c == '}') {
+                    state = BETWEEN_OBJECTS;
+                    break;
+                }
+                if (c != '"')
+                    throw new JSONException("Expected a field name");
+                String field = tokens.nextString();
+                if (tokens.nextClean() != ':')
+                    throw new JSONException("Expected ':' after " + field);
+                c = tokens.nextClean();
+                if (c == '[' && Constants.FL_KEYS.equals(field)) {
+                    state = IN_KEYS;
+                } else if (c == -1) {
+                    throw new JSONException("Expected a value for " + field);
+                } else {
+                    tokens.back();
+                    tokens.skipValue();
+                }
+                break;
+
+            default:
+                if (c == -1)
+                    return null;
+                if (c == '{') {
+                    state = IN_OBJECT;
+                } else {
+                    tokens.back();
+                    tokens.skipValue();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops reading keys and releases the connection. If the listing hasn't
+     * been read to the end, the request is aborted so the rest of it isn't
+     * transferred.
+     */
+    @Override public void close() {
+        if (tokens != null) {
+            tokens = null;
+            HttpMethod method = getHttpMethod();
+            if (method != null) {
+                method.abort();
+            }
+        }
+        super.close();
+    }
+}
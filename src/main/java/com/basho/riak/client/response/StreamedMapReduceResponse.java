@@ -0,0 +1,216 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.response;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import com.basho.riak.client.util.Constants;
+import com.basho.riak.client.util.JsonAdapter;
+import com.basho.riak.client.util.JsonPullParser;
+import com.basho.riak.client.util.JsonPullParser.Event;
+import com.basho.riak.client.util.Multipart;
+import com.basho.riak.client.util.StreamedMultipart;
+
+/**
+ * Response from a map-reduce query run in chunked mode (POST to
+ * /mapred?chunked=true). Riak returns a multipart/mixed document with one part
+ * per batch of results, each tagged with the phase which produced it. Rather
+ * than buffering the whole body, batches are parsed one at a time as they are
+ * read off the socket, so memory use is bounded by the largest batch rather
+ * than the size of the result.
+ * <p>
+ * The response can be iterated only once. The connection is released once
+ * the last batch is read; call {@link #close()} to release it early.
+ */
+public class StreamedMapReduceResponse extends HttpResponseDecorator implements HttpResponse, Iterable<StreamedMapReduceResponse.Batch> {
+
+    private static final String FL_PHASE = "phase";
+    private static final String FL_DATA = "data";
+    private static final String FL_ERROR = "error";
+
+    private StreamedMultipart multipart = null;
+    private boolean iterated = false;
+    private boolean closed = false;
+
+    /**
+     * On a 2xx response, finds the start of the multipart/mixed document. The
+     * batches themselves are not read until the response is iterated.
+     * 
+     * @param r
+     *            The streamed HTTP response to a chunked map-reduce query
+     * @throws RiakResponseRuntimeException
+     *             If the response is a 2xx but is not multipart/mixed
+     * @throws RiakIORuntimeException
+     *             If an error occurs reading the start of the response
+     */
+    public StreamedMapReduceResponse(HttpResponse r) throws RiakResponseRuntimeException, RiakIORuntimeException {
+        super(r);
+
+        if (r == null || !r.isSuccess())
+            return;
+
+        String contentType = r.getHttpHeaders().get(Constants.HDR_CONTENT_TYPE);
+        if (contentType == null || !(contentType.trim().toLowerCase().startsWith(Constants.CTYPE_MULTIPART_MIXED)))
+            throw new RiakResponseRuntimeException(r, "multipart/mixed content expected from chunked map/reduce");
+        if (!r.isStreamed() || r.getStream() == null)
+            throw new RiakResponseRuntimeException(r, "streamed response expected from chunked map/reduce");
+
+        try {
+            multipart = new StreamedMultipart(r.getHttpHeaders(), r.getStream());
+        } catch (IOException e) {
+            throw new RiakIORuntimeException("Error finding initial boundary", e);
+        }
+    }
+
+    /**
+     * Iterates over the result batches in the order Riak sends them. Batches
+     * from different phases may be interleaved. {@link Iterator#next()} throws
+     * {@link RiakIORuntimeException} if the connection fails, and
+     * {@link RiakResponseRuntimeException} if a batch is malformed or Riak
+     * reports an error partway through the job.
+     * 
+     * @throws IllegalStateException
+     *             If called more than once
+     */
+    public Iterator<Batch> iterator() {
+        if (iterated)
+            throw new IllegalStateException("Streamed map/reduce results can only be iterated once");
+        iterated = true;
+
+        return new Iterator<Batch>() {
+            Batch next = null;
+
+            public boolean hasNext() {
+                if (next == null) {
+                    next = readBatch();
+                }
+                return next != null;
+            }
+
+            public Batch next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                Batch b = next;
+                next = null;
+                return b;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Reads and parses the next part of the multipart document, or closes the
+     * response and returns null when there are no more.
+     */
+    private Batch readBatch() {
+        if (multipart == null) {
+            close();
+            return null;
+        }
+
+        Multipart.Part part;
+        try {
+            part = multipart.next();
+        } catch (RuntimeException e) {
+            close();
+            if (e.getCause() instanceof IOException)
+                throw new RiakIORuntimeException(e);
+            throw e;
+        }
+
+        if (part == null) {
+            close();
+            return null;
+        }
+
+        int phase = 0;
+        JSONArray data = null;
+        Object error = null;
+        try {
+            JsonPullParser parser = new JsonPullParser(part.getStream());
+            if (parser.next() != Event.START_OBJECT)
+                throw new JSONException("Expected a JSON object");
+            while (parser.next() == Event.FIELD_NAME) {
+                String field = parser.getText();
+                if (FL_PHASE.equals(field) && parser.next() == Event.NUMBER) {
+                    phase = parser.getInt();
+                } else if (FL_DATA.equals(field)) {
+                    Object value = JsonAdapter.readValue(parser);
+                    data = value instanceof JSONArray ? (JSONArray) value : null;
+                } else if (FL_ERROR.equals(field)) {
+                    error = JsonAdapter.readValue(parser);
+                } else if (parser.getEvent() == Event.FIELD_NAME) {
+                    parser.skipValue();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        } catch (JSONException e) {
+            close();
+            throw new RiakResponseRuntimeException(impl, e);
+        } catch (IOException e) {
+            close();
+            throw new RiakIORuntimeException(e);
+        }
+
+        if (error != null) {
+            close();
+            throw new RiakResponseRuntimeException(impl, "map/reduce job failed: " + error);
+        }
+
+        return new Batch(phase, data == null ? new JSONArray() : data);
+    }
+
+    /**
+     * Stops reading results and releases the connection
+     */
+    @Override public void close() {
+        if (closed)
+            return;
+        closed = true;
+        multipart = null;
+        super.close();
+    }
+
+    /**
+     * A batch of results from one phase of the map-reduce job
+     */
+    public static class Batch {
+        private final int phase;
+        private final JSONArray results;
+
+        public Batch(int phase, JSONArray results) {
+            this.phase = phase;
+            this.results = results;
+        }
+
+        /** The index of the phase which produced these results */
+        public int getPhase() {
+            return phase;
+        }
+
+        /** The results in this batch */
+        public JSONArray getResults() {
+            return results;
+        }
+    }
+}
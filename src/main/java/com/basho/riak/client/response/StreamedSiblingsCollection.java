@@ -55,6 +55,10 @@ public class StreamedSiblingsCollection extends CollectionWrapper<RiakObject> {
         
         if (part != null) {
             Map<String, String> headers = part.getHeaders();
+            // objects from a link walk carry their own vclocks
+            if (headers.get(Constants.HDR_VCLOCK) != null) {
+                vclock = headers.get(Constants.HDR_VCLOCK);
+            }
             List<RiakLink> links = ClientUtils.parseLinkHeader(headers.get(Constants.HDR_LINK));
             Map<String, String> usermeta = ClientUtils.parseUsermeta(headers);
             String location = headers.get(Constants.HDR_LOCATION);
@@ -0,0 +1,90 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.response;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+import com.basho.riak.client.RiakClient;
+import com.basho.riak.client.RiakObject;
+import com.basho.riak.client.util.CollectionWrapper;
+import com.basho.riak.client.util.Constants;
+import com.basho.riak.client.util.Multipart;
+import com.basho.riak.client.util.StreamedMultipart;
+
+/**
+ * The steps of a streamed link walk response. Each step is read from the
+ * multipart/mixed stream only when the iteration reaches it, and its objects
+ * are in turn read lazily by a {@link StreamedSiblingsCollection}, with values
+ * exposed as streams.
+ */
+public class StreamedWalkStepsCollection extends CollectionWrapper<Collection<RiakObject>> {
+
+    HttpResponse r;
+    RiakClient riak;
+    StreamedMultipart multipart;
+
+    public StreamedWalkStepsCollection(HttpResponse r, RiakClient riak, StreamedMultipart multipart) {
+        this.r = r;
+        this.riak = riak;
+        this.multipart = multipart;
+    }
+
+    /**
+     * Tries to read and cache the next step of the multipart/mixed stream.
+     * 
+     * @throws RiakIORuntimeException
+     *             If an error occurs during communication with the Riak server.
+     * @throws RiakResponseRuntimeException
+     *             If the step isn't a multipart/mixed subpart
+     */
+    @Override protected boolean cacheNext() {
+        if (multipart == null)
+            return false;
+
+        Multipart.Part part;
+        try {
+            part = multipart.next();
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new RiakIORuntimeException(e);
+            }
+            throw e;
+        }
+
+        if (part == null)
+            return false;
+
+        Map<String, String> headers = part.getHeaders();
+        String contentType = headers.get(Constants.HDR_CONTENT_TYPE);
+        if (contentType == null || !(contentType.trim().toLowerCase().startsWith(Constants.CTYPE_MULTIPART_MIXED)))
+            throw new RiakResponseRuntimeException(r, "multipart/mixed subparts expected in link walk results");
+
+        StreamedMultipart step;
+        try {
+            step = new StreamedMultipart(headers, part.getStream());
+        } catch (IOException e) {
+            throw new RiakIORuntimeException("Error finding initial boundary of link walk step", e);
+        }
+        cache(new StreamedSiblingsCollection(riak, r.getBucket(), r.getKey(), step));
+        return true;
+    }
+
+    @Override protected void closeBackend() {
+        r = null;
+        riak = null;
+        multipart = null;
+    }
+}
@@ -13,7 +13,9 @@
  */
 package com.basho.riak.client.response;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -22,6 +24,7 @@ import com.basho.riak.client.RiakObject;
 import com.basho.riak.client.util.ClientUtils;
 import com.basho.riak.client.util.Constants;
 import com.basho.riak.client.util.Multipart;
+import com.basho.riak.client.util.StreamedMultipart;
 
 /**
  * Response from a GET request for an object with link walking. Decorates an
@@ -31,17 +34,28 @@ import com.basho.riak.client.util.Multipart;
 public class WalkResponse extends HttpResponseDecorator implements HttpResponse {
 
     private List<? extends List<RiakObject>> steps = new ArrayList<List<RiakObject>>();
+    private StreamedWalkStepsCollection streamedSteps = null;
 
     /**
      * On a 2xx response, parses the HTTP body into a list of steps. Each step
      * contains a list of objects returned in that step. The HTTP body is a
-     * multipart/mixed message with multipart/mixed subparts
+     * multipart/mixed message with multipart/mixed subparts. If the response
+     * is streamed, the steps are instead read as they are iterated over from
+     * {@link WalkResponse#getStreamedSteps()}.
+     * 
+     * @throws RiakIORuntimeException
+     *             If the response is streamed and an error occurs finding the
+     *             start of the first step
      */
-    public WalkResponse(HttpResponse r, RiakClient riak) throws RiakResponseRuntimeException {
+    public WalkResponse(HttpResponse r, RiakClient riak) throws RiakResponseRuntimeException, RiakIORuntimeException {
         super(r);
 
         if (r != null && r.isSuccess()) {
-            steps = parseSteps(r, riak);
+            if (r.isStreamed()) {
+                streamedSteps = parseStreamedSteps(r, riak);
+            } else {
+                steps = parseSteps(r, riak);
+            }
         }
     }
 
@@ -51,6 +65,8 @@ public class WalkResponse extends HttpResponseDecorator implements HttpResponse
 
     /** Whether objects were contained in the response */
     public boolean hasSteps() {
+        if (streamedSteps != null)
+            return streamedSteps.iterator().hasNext();
         return steps.size() > 0;
     }
 
@@ -62,6 +78,33 @@ public class WalkResponse extends HttpResponseDecorator implements HttpResponse
         return steps;
     }
 
+    /**
+     * Steps read incrementally from a streamed link walk response, or null if
+     * the response was not streamed. Each step, and each object within it, is
+     * read from the connection only when iteration reaches it, and object
+     * values are available from {@link RiakObject#getValueStream()}. Reading a
+     * later step buffers any unread parts of earlier ones. See
+     * RiakClient.streamWalk().
+     */
+    public Collection<? extends Collection<RiakObject>> getStreamedSteps() {
+        return streamedSteps;
+    }
+
+    /**
+     * Find the start of a streamed link walk response; steps are read lazily.
+     */
+    private static StreamedWalkStepsCollection parseStreamedSteps(HttpResponse r, RiakClient riak) {
+        String contentType = r.getHttpHeaders().get(Constants.HDR_CONTENT_TYPE);
+        if (contentType == null || !(contentType.trim().toLowerCase().startsWith(Constants.CTYPE_MULTIPART_MIXED)))
+            throw new RiakResponseRuntimeException(r, "multipart/mixed content expected in link walk results");
+
+        try {
+            return new StreamedWalkStepsCollection(r, riak, new StreamedMultipart(r.getHttpHeaders(), r.getStream()));
+        } catch (IOException e) {
+            throw new RiakIORuntimeException("Error finding initial boundary", e);
+        }
+    }
+
     /**
      * Parse a multipart/mixed message with multipart/mixed subparts into a list
      * of lists.
@@ -81,7 +124,7 @@ public class WalkResponse extends HttpResponseDecorator implements HttpResponse
         String bucket = r.getBucket();
         String key = r.getKey();
         List<List<RiakObject>> parsedSteps = new ArrayList<List<RiakObject>>();
-        List<Multipart.Part> parts = Multipart.parse(r.getHttpHeaders(), r.getBodyAsString());
+        List<Multipart.Part> parts = Multipart.parse(r.getHttpHeaders(), r.getBody());
 
         if (parts != null) {
             for (Multipart.Part part : parts) {
@@ -92,7 +135,7 @@ public class WalkResponse extends HttpResponseDecorator implements HttpResponse
                     !(contentType.trim().toLowerCase().startsWith(Constants.CTYPE_MULTIPART_MIXED)))
                     throw new RiakResponseRuntimeException(r, "multipart/mixed subparts expected in link walk results");
 
-                parsedSteps.add(ClientUtils.parseMultipart(riak, bucket, key, partHeaders, part.getBodyAsString()));
+                parsedSteps.add(ClientUtils.parseMultipartBytes(riak, bucket, key, partHeaders, part.getBodyBuffer()));
             }
         }
 
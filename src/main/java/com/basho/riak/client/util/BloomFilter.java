@@ -0,0 +1,108 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe Bloom filter over strings. {@link BloomFilter#mightContain}
+ * never returns false for a string that was added, and returns true for a
+ * string that wasn't with roughly the false positive probability given at
+ * construction, as long as no more than the expected number of strings are
+ * added. Strings cannot be removed.
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long numBits;
+    private final int numHashes;
+
+    /**
+     * @param expectedInsertions
+     *            Number of strings expected to be added
+     * @param falsePositiveRate
+     *            Desired false positive probability, between 0 and 1
+     *            exclusive
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+            throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+        long n = Math.max(1, expectedInsertions);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        m = Math.max(64, m);
+        bits = new AtomicLongArray((int) Math.min(Integer.MAX_VALUE, (m + 63) / 64));
+        numBits = bits.length() * 64L;
+        numHashes = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+    }
+
+    public void add(String s) {
+        long h1 = hash(s);
+        long h2 = Long.rotateLeft(h1, 32);
+        for (int i = 1; i <= numHashes; i++) {
+            long bit = index(h1 + i * h2);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long old;
+            do {
+                old = bits.get(word);
+                if ((old & mask) != 0)
+                    break;
+            } while (!bits.compareAndSet(word, old, old | mask));
+        }
+    }
+
+    /**
+     * @return false if <code>s</code> was definitely never added
+     */
+    public boolean mightContain(String s) {
+        long h1 = hash(s);
+        long h2 = Long.rotateLeft(h1, 32);
+        for (int i = 1; i <= numHashes; i++) {
+            long bit = index(h1 + i * h2);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    public long getNumBits() {
+        return numBits;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    private long index(long combined) {
+        return (combined & Long.MAX_VALUE) % numBits;
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 chars, finished with a MurmurHash3 mix so
+     * both halves are well distributed.
+     */
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -21,16 +21,25 @@ import java.io.InputStream;
  * An input stream that can be branched into other InputStreams, each
  * maintaining its own location, with the main read() method always returning
  * bytes from the furthest advanced branch.
+ * <p>
+ * Data is buffered in a list of chunks which grow up to
+ * {@link #MAX_CHUNK_SIZE}. Each branch holds a reference on the chunk it is
+ * reading, so once every open branch has moved past a chunk (or been closed)
+ * the chunk is released. If the stream was given a {@link ChunkPool}, released
+ * chunks are returned to it for reuse.
  * 
  * @author jlee <jonjlee@gmail.com>
  */
 public class BranchableInputStream extends InputStream {
 
     static final int DEFAULT_BASE_CHUNK_SIZE = 1024;
-    static final int MAX_BYTES_PER_READ = 1024;
+    static final int MAX_CHUNK_SIZE = 64 * 1024;
+    static final int MAX_BYTES_PER_READ = 8 * 1024;
     int nextChunkSize;
 
     InputStream impl;
+    ChunkPool pool;
+    LinkedChunk head;
     LinkedChunk lastChunk = null;
     int dataLen = 0;
     int pos;
@@ -41,8 +50,23 @@ public class BranchableInputStream extends InputStream {
     }
 
     public BranchableInputStream(InputStream in, int initialBufferSize) {
+        this(in, initialBufferSize, null);
+    }
+
+    /**
+     * @param pool
+     *            Chunks are allocated from and released to this pool. May be
+     *            null.
+     */
+    public BranchableInputStream(InputStream in, ChunkPool pool) {
+        this(in, DEFAULT_BASE_CHUNK_SIZE, pool);
+    }
+
+    public BranchableInputStream(InputStream in, int initialBufferSize, ChunkPool pool) {
         impl = in;
-        lastChunk = new LinkedChunk(0, 0);
+        this.pool = pool;
+        lastChunk = new LinkedChunk(0, new byte[0]);
+        head = lastChunk;
         nextChunkSize = initialBufferSize;
     }
 
@@ -53,6 +77,27 @@ public class BranchableInputStream extends InputStream {
         return -1;
     }
 
+    @Override public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return 0;
+
+        int curpos = pos;
+        if (!readUntil(curpos))
+            return -1;
+
+        // the furthest position is always in the last chunk
+        int n = Math.min(len, dataLen - curpos);
+        System.arraycopy(lastChunk.buf, curpos - lastChunk.offset, b, off, n);
+        pos = curpos + n;
+        return n;
+    }
+
+    @Override public int available() {
+        return dataLen - pos;
+    }
+
     @Override public void close() throws IOException {
         eof = true;
         impl.close();
@@ -69,13 +114,23 @@ public class BranchableInputStream extends InputStream {
         return new InputStreamBranch(lastChunk, pos);
     }
 
+    /**
+     * Read everything remaining in the underlying stream into the buffer, so
+     * that it stays available to existing branches. Like reading to the end
+     * through a branch, this moves the main position to the end.
+     */
+    void bufferAll() throws IOException {
+        readUntil(Integer.MAX_VALUE);
+        pos = dataLen;
+    }
+
     boolean readUntil(int pos) throws IOException {
         if (!eof) {
             while ((pos >= dataLen) && !eof) {
                 if (lastChunk.full()) {
-                    lastChunk.setNext(new LinkedChunk(lastChunk.lastIndex() + 1, nextChunkSize));
+                    lastChunk.setNext(new LinkedChunk(lastChunk.lastIndex() + 1, allocate(nextChunkSize)));
                     lastChunk = lastChunk.next();
-                    nextChunkSize *= 2;
+                    nextChunkSize = Math.min(nextChunkSize * 2, MAX_CHUNK_SIZE);
                 }
 
                 int bytesRead = lastChunk.readFrom(impl, MAX_BYTES_PER_READ);
@@ -93,6 +148,27 @@ public class BranchableInputStream extends InputStream {
         return false;
     }
 
+    private byte[] allocate(int size) {
+        if (pool != null)
+            return pool.acquire(size);
+        return new byte[size];
+    }
+
+    /**
+     * Release the chunks at the head of the list that no branch refers to.
+     * The last chunk is kept since new branches start there.
+     */
+    void releaseUnreachable() {
+        while (head != lastChunk && head.refs == 0) {
+            LinkedChunk next = head.next();
+            if (pool != null) {
+                pool.release(head.buf);
+                head.buf = null;
+            }
+            head = next;
+        }
+    }
+
     class InputStreamBranch extends InputStream {
 
         LinkedChunk chunk;
@@ -101,20 +177,64 @@ public class BranchableInputStream extends InputStream {
         InputStreamBranch(LinkedChunk chunk, int pos) {
             this.chunk = chunk;
             this.pos = pos;
+            chunk.refs++;
         }
 
         @Override public int read() throws IOException {
             if (chunk == null || !readUntil(pos))
                 return -1;
 
-            while (pos > chunk.lastIndex()) {
-                chunk = chunk.next;
-            }
+            advance();
             return chunk.get(pos++);
         }
 
+        @Override public int read(byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || len > b.length - off)
+                throw new IndexOutOfBoundsException();
+            if (len == 0)
+                return 0;
+            if (chunk == null || !readUntil(pos))
+                return -1;
+
+            int n = 0;
+            while (n < len && pos < dataLen) {
+                advance();
+                int count = Math.min(len - n, chunk.offset + chunk.len - pos);
+                System.arraycopy(chunk.buf, pos - chunk.offset, b, off + n, count);
+                pos += count;
+                n += count;
+            }
+            BranchableInputStream.this.pos = Math.max(BranchableInputStream.this.pos, pos);
+            return n;
+        }
+
+        @Override public int available() {
+            if (chunk == null)
+                return 0;
+            return dataLen - pos;
+        }
+
         @Override public void close() {
-            chunk = null;
+            if (chunk != null) {
+                chunk.refs--;
+                chunk = null;
+                releaseUnreachable();
+            }
+        }
+
+        /**
+         * Move to the chunk containing pos, releasing the ones left behind
+         */
+        private void advance() {
+            if (pos <= chunk.lastIndex())
+                return;
+
+            while (pos > chunk.lastIndex()) {
+                chunk.refs--;
+                chunk = chunk.next;
+                chunk.refs++;
+            }
+            releaseUnreachable();
         }
     }
 
@@ -122,11 +242,12 @@ public class BranchableInputStream extends InputStream {
         int offset;
         int len;
         byte[] buf;
+        int refs = 0;
         LinkedChunk next = null;
 
-        LinkedChunk(int offset, int size) {
+        LinkedChunk(int offset, byte[] buf) {
             this.offset = offset;
-            buf = new byte[size];
+            this.buf = buf;
             len = 0;
         }
 
@@ -0,0 +1,92 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * A pool of byte arrays for {@link BranchableInputStream} chunks. Chunks that
+ * no branch can reach anymore are returned here and handed out again to the
+ * next stream that needs a chunk of the same size, so reading long streamed
+ * responses doesn't have to allocate a fresh buffer for every chunk.
+ * <p>
+ * A pool may be shared by any number of streams and is safe to use from
+ * multiple threads. It holds on to at most maxPooledBytes; arrays released
+ * beyond that are left to the garbage collector.
+ */
+public class ChunkPool {
+
+    public static final int DEFAULT_MAX_POOLED_BYTES = 1024 * 1024;
+
+    private final int maxPooledBytes;
+    private final Map<Integer, LinkedList<byte[]>> free = new HashMap<Integer, LinkedList<byte[]>>();
+    private int pooledBytes = 0;
+
+    public ChunkPool() {
+        this(DEFAULT_MAX_POOLED_BYTES);
+    }
+
+    /**
+     * @param maxPooledBytes
+     *            Upper bound on the total size of the arrays kept for reuse
+     */
+    public ChunkPool(int maxPooledBytes) {
+        if (maxPooledBytes < 0)
+            throw new IllegalArgumentException("maxPooledBytes must not be negative");
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    /**
+     * @return a previously released array of exactly size bytes if there is
+     *         one, otherwise a new array. The contents of a reused array are
+     *         undefined.
+     */
+    public synchronized byte[] acquire(int size) {
+        LinkedList<byte[]> bufs = free.get(size);
+        if (bufs == null || bufs.isEmpty())
+            return new byte[size];
+
+        pooledBytes -= size;
+        return bufs.removeFirst();
+    }
+
+    /**
+     * Return an array to the pool. The caller must not use it afterwards.
+     */
+    public synchronized void release(byte[] buf) {
+        if (buf == null || buf.length == 0 || pooledBytes + buf.length > maxPooledBytes)
+            return;
+
+        LinkedList<byte[]> bufs = free.get(buf.length);
+        if (bufs == null) {
+            bufs = new LinkedList<byte[]>();
+            free.put(buf.length, bufs);
+        }
+        bufs.addFirst(buf);
+        pooledBytes += buf.length;
+    }
+
+    /**
+     * @return the total size of the arrays currently available for reuse
+     */
+    public synchronized int getPooledBytes() {
+        return pooledBytes;
+    }
+
+    public int getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the outcome of recent requests to a single host and stops sending it
+ * traffic when too many of them fail or time out.
+ * <p>
+ * The breaker starts CLOSED and lets every request through. Once at least half
+ * a window of outcomes has been recorded, it trips OPEN if the fraction of
+ * errors or the fraction of timeouts in the last <code>windowSize</code>
+ * requests exceeds its threshold. While OPEN, requests are refused without
+ * touching the network. After the open interval it goes HALF_OPEN and lets a
+ * single trial request through: success closes the breaker, a failure or
+ * timeout opens it again.
+ * <p>
+ * Errors are I/O failures and 5xx responses; timeouts are socket timeouts
+ * and requests slower than the slow request threshold.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final byte OK = 0, ERROR = 1, TIMEOUT = 2, ERROR_TIMEOUT = 3;
+
+    private final byte[] window;
+    private final int minRequests;
+    private final double errorRateThreshold;
+    private final double timeoutRateThreshold;
+    private final long slowRequestNanos;
+    private final long openIntervalNanos;
+
+    private State state = State.CLOSED;
+    private int next = 0;
+    private int recorded = 0;
+    private int errors = 0;
+    private int timeouts = 0;
+    private long openedAt = 0;
+    private boolean trialInFlight = false;
+
+    /**
+     * @param windowSize
+     *            Number of recent requests the error and timeout rates are
+     *            computed over
+     * @param errorRateThreshold
+     *            Fraction of errors, between 0 and 1, that trips the breaker
+     * @param timeoutRateThreshold
+     *            Fraction of timeouts, between 0 and 1, that trips the breaker
+     * @param slowRequestMillis
+     *            Requests taking longer than this count as timeouts
+     * @param openIntervalMillis
+     *            How long the breaker stays open before allowing a trial
+     *            request
+     */
+    public CircuitBreaker(int windowSize, double errorRateThreshold, double timeoutRateThreshold,
+            long slowRequestMillis, long openIntervalMillis) {
+        if (windowSize < 1)
+            throw new IllegalArgumentException("windowSize must be positive");
+        this.window = new byte[windowSize];
+        this.minRequests = Math.max(1, windowSize / 2);
+        this.errorRateThreshold = errorRateThreshold;
+        this.timeoutRateThreshold = timeoutRateThreshold;
+        this.slowRequestNanos = TimeUnit.MILLISECONDS.toNanos(slowRequestMillis);
+        this.openIntervalNanos = TimeUnit.MILLISECONDS.toNanos(openIntervalMillis);
+    }
+
+    /**
+     * @return whether a request may be sent now without reserving it. Use
+     *         {@link CircuitBreaker#allowRequest()} to actually send one.
+     */
+    public synchronized boolean isAvailable() {
+        switch (state) {
+        case CLOSED:
+            return true;
+        case OPEN:
+            return System.nanoTime() - openedAt >= openIntervalNanos;
+        default:
+            return !trialInFlight;
+        }
+    }
+
+    /**
+     * Ask to send a request. Every request allowed must be followed by a call
+     * to {@link CircuitBreaker#onSuccess(long)} or
+     * {@link CircuitBreaker#onFailure(boolean)}.
+     * 
+     * @return false if the request should not be sent to this host
+     */
+    public synchronized boolean allowRequest() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openIntervalNanos) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        switch (state) {
+        case CLOSED:
+            return true;
+        case HALF_OPEN:
+            if (trialInFlight)
+                return false;
+            trialInFlight = true;
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Record a response received after <code>elapsedNanos</code>.
+     */
+    public synchronized void onSuccess(long elapsedNanos) {
+        record(elapsedNanos > slowRequestNanos ? TIMEOUT : OK);
+    }
+
+    /**
+     * Record a response with a server error status, e.g. a 503.
+     */
+    public synchronized void onError(long elapsedNanos) {
+        record(elapsedNanos > slowRequestNanos ? ERROR_TIMEOUT : ERROR);
+    }
+
+    /**
+     * Record a request that failed with an I/O error.
+     * 
+     * @param timeout
+     *            whether the failure was a socket timeout
+     */
+    public synchronized void onFailure(boolean timeout) {
+        record(timeout ? ERROR_TIMEOUT : ERROR);
+    }
+
+    /**
+     * Record that an allowed request was cancelled by the client before it
+     * completed. It does not count against the host.
+     */
+    public synchronized void onAbandoned() {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Fraction of errors among the requests in the window
+     */
+    public synchronized double getErrorRate() {
+        return recorded == 0 ? 0 : (double) errors / recorded;
+    }
+
+    /**
+     * Fraction of timeouts among the requests in the window
+     */
+    public synchronized double getTimeoutRate() {
+        return recorded == 0 ? 0 : (double) timeouts / recorded;
+    }
+
+    private void record(byte outcome) {
+        if (state == State.HALF_OPEN) {
+            trialInFlight = false;
+            if (outcome == OK) {
+                reset();
+                state = State.CLOSED;
+            } else {
+                trip();
+            }
+            return;
+        }
+        if (state == State.OPEN)
+            return; // a request started before the breaker opened
+
+        if (recorded == window.length) {
+            byte old = window[next];
+            errors -= old & ERROR;
+            timeouts -= (old & TIMEOUT) >> 1;
+        } else {
+            recorded++;
+        }
+        window[next] = outcome;
+        next = (next + 1) % window.length;
+        errors += outcome & ERROR;
+        timeouts += (outcome & TIMEOUT) >> 1;
+
+        if (recorded >= minRequests &&
+            (errors > errorRateThreshold * recorded || timeouts > timeoutRateThreshold * recorded)) {
+            trip();
+        }
+    }
+
+    private void trip() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        reset();
+    }
+
+    private void reset() {
+        next = 0;
+        recorded = 0;
+        errors = 0;
+        timeouts = 0;
+    }
+}
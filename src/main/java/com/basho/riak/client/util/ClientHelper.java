@@ -27,6 +27,7 @@ import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.HeadMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
 import org.apache.commons.httpclient.methods.StringRequestEntity;
 import org.json.JSONObject;
 
@@ -176,7 +177,7 @@ public class ClientHelper implements IClientHelper {
             meta.setQueryParam(Constants.QP_R, Constants.DEFAULT_R.toString());
         }
         HeadMethod head = new HeadMethod(ClientUtils.makeURI(config, bucket, key));
-        return executeMethod(bucket, key, head, meta);
+        return executeRead(bucket, key, head, meta, false);
     }
 
     /* (non-Javadoc)
@@ -190,7 +191,7 @@ public class ClientHelper implements IClientHelper {
             meta.setQueryParam(Constants.QP_R, Constants.DEFAULT_R.toString());
         }
         GetMethod get = new GetMethod(ClientUtils.makeURI(config, bucket, key));
-        return executeMethod(bucket, key, get, meta, streamResponse);
+        return executeRead(bucket, key, get, meta, streamResponse);
     }
 
     /* (non-Javadoc)
@@ -239,21 +240,51 @@ public class ClientHelper implements IClientHelper {
      * @see com.basho.riak.client.util.IClientHelper#walk(java.lang.String, java.lang.String, java.lang.String, com.basho.riak.client.request.RequestMeta)
      */
     public HttpResponse walk(String bucket, String key, String walkSpec, RequestMeta meta) {
+        return walk(bucket, key, walkSpec, meta, false);
+    }
+
+    /* (non-Javadoc)
+     * @see com.basho.riak.client.util.IClientHelper#walk(java.lang.String, java.lang.String, java.lang.String, com.basho.riak.client.request.RequestMeta, boolean)
+     */
+    public HttpResponse walk(String bucket, String key, String walkSpec, RequestMeta meta, boolean streamResponse) {
         GetMethod get = new GetMethod(ClientUtils.makeURI(config, bucket, key, walkSpec));
-        return executeMethod(bucket, key, get, meta);
+        return executeMethod(bucket, key, get, meta, streamResponse);
     }
 
     /* (non-Javadoc)
      * @see com.basho.riak.client.util.IClientHelper#mapReduce(java.lang.String, com.basho.riak.client.request.RequestMeta)
      */
     public HttpResponse mapReduce(String job, RequestMeta meta) {
-        PostMethod post = new PostMethod(config.getMapReduceUrl());
+        return mapReduce(job, meta, false);
+    }
+
+    /* (non-Javadoc)
+     * @see com.basho.riak.client.util.IClientHelper#mapReduce(java.lang.String, com.basho.riak.client.request.RequestMeta, boolean)
+     */
+    public HttpResponse mapReduce(String job, RequestMeta meta, boolean streamResponse) {
         try {
-            post.setRequestEntity(new StringRequestEntity(job, Constants.CTYPE_JSON, null));
+            return mapReduce(new StringRequestEntity(job, Constants.CTYPE_JSON, null), meta, streamResponse);
         } catch (UnsupportedEncodingException e) {
             throw new IllegalStateException("StringRequestEntity should always support no charset", e);
         }
-        return executeMethod(null, null, post, meta);
+    }
+
+    /* (non-Javadoc)
+     * @see com.basho.riak.client.util.IClientHelper#mapReduce(org.apache.commons.httpclient.methods.RequestEntity, com.basho.riak.client.request.RequestMeta, boolean)
+     */
+    public HttpResponse mapReduce(RequestEntity job, RequestMeta meta, boolean streamResponse) {
+        if (streamResponse) {
+            if (meta == null) {
+                meta = new RequestMeta();
+            }
+            if (meta.getQueryParam(Constants.QP_CHUNKED) == null) {
+                meta.setQueryParam(Constants.QP_CHUNKED, "true");
+            }
+        }
+
+        PostMethod post = new PostMethod(config.getMapReduceUrl());
+        post.setRequestEntity(job);
+        return executeMethod(null, null, post, meta, streamResponse);
     }
 
     /* (non-Javadoc)
@@ -383,4 +414,16 @@ public class ClientHelper implements IClientHelper {
     HttpResponse executeMethod(String bucket, String key, HttpMethod httpMethod, RequestMeta meta) {
         return executeMethod(bucket, key, httpMethod, meta, false);
     }
+
+    /**
+     * Perform an idempotent read of an object, i.e. a GET or HEAD. Behaves
+     * exactly like
+     * {@link ClientHelper#executeMethod(String, String, HttpMethod, RequestMeta, boolean)}
+     * but, since the request can safely be repeated, subclasses may override
+     * this to send it to more than one server.
+     */
+    HttpResponse executeRead(String bucket, String key, HttpMethod httpMethod, RequestMeta meta,
+                             boolean streamResponse) {
+        return executeMethod(bucket, key, httpMethod, meta, streamResponse);
+    }
 }
@@ -19,6 +19,7 @@ import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -30,7 +31,6 @@ import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpConnectionManager;
-import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.params.HttpClientParams;
 import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.apache.commons.httpclient.params.HttpMethodParams;
@@ -54,6 +54,8 @@ public class ClientUtils {
 
     /**
      * Construct a new {@link HttpClient} instance given a {@link RiakConfig}.
+     * Unless the config provides an HttpClient, the client uses a
+     * {@link MeteredHttpConnectionManager}.
      * 
      * @param config
      *            {@link RiakConfig} containing HttpClient configuration
@@ -66,7 +68,7 @@ public class ClientUtils {
         HttpConnectionManager m;
 
         if (http == null) {
-            m = new MultiThreadedHttpConnectionManager();
+            m = new MeteredHttpConnectionManager();
             http = new HttpClient(m);
         } else {
             m = http.getHttpConnectionManager();
@@ -77,6 +79,14 @@ public class ClientUtils {
         	mp.setMaxTotalConnections(config.getMaxConnections());
         }
 
+        // Without this, HttpClient's default of 2 connections per host caps
+        // throughput to each node regardless of the total
+        if (config.getMaxConnectionsPerHost() != null) {
+            mp.setDefaultMaxConnectionsPerHost(config.getMaxConnectionsPerHost());
+        } else if (config.getMaxConnections() != null) {
+            mp.setDefaultMaxConnectionsPerHost(config.getMaxConnections());
+        }
+
         HttpClientParams cp = http.getParams();
         if (config.getTimeout() != null) {
             mp.setConnectionTimeout(config.getTimeout().intValue());
@@ -398,6 +408,33 @@ public class ClientUtils {
      */
     public static List<RiakObject> parseMultipart(RiakClient riak, String bucket, String key,
                                                   Map<String, String> docHeaders, String docBody) {
+        return toRiakObjects(riak, bucket, key, docHeaders, Multipart.parse(docHeaders, docBody));
+    }
+
+    /**
+     * Same as
+     * {@link ClientUtils#parseMultipart(RiakClient, String, String, Map, String)}
+     * except the document is parsed from its bytes, so binary values are not
+     * corrupted by being decoded into a String and back.
+     */
+    public static List<RiakObject> parseMultipartBytes(RiakClient riak, String bucket, String key,
+                                                       Map<String, String> docHeaders, byte[] docBody) {
+        return toRiakObjects(riak, bucket, key, docHeaders, Multipart.parse(docHeaders, docBody));
+    }
+
+    /**
+     * Same as
+     * {@link ClientUtils#parseMultipartBytes(RiakClient, String, String, Map, byte[])}
+     * over the bytes remaining in a buffer, such as a part of an enclosing
+     * multipart document
+     */
+    public static List<RiakObject> parseMultipartBytes(RiakClient riak, String bucket, String key,
+                                                       Map<String, String> docHeaders, ByteBuffer docBody) {
+        return toRiakObjects(riak, bucket, key, docHeaders, Multipart.parse(docHeaders, docBody));
+    }
+
+    private static List<RiakObject> toRiakObjects(RiakClient riak, String bucket, String key,
+                                                  Map<String, String> docHeaders, List<Multipart.Part> parts) {
 
         String vclock = null;
 
@@ -405,7 +442,6 @@ public class ClientUtils {
             vclock = docHeaders.get(Constants.HDR_VCLOCK);
         }
 
-        List<Multipart.Part> parts = Multipart.parse(docHeaders, docBody);
         List<RiakObject> objects = new ArrayList<RiakObject>();
         if (parts != null) {
             for (Multipart.Part part : parts) {
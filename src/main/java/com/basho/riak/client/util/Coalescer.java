@@ -0,0 +1,112 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Merges concurrent calls for the same key into a single call. The first
+ * caller for a key runs the call on its own thread; callers that arrive while
+ * it is in flight wait for and share its result instead of making their own.
+ * Once the call completes, the next caller for that key starts a new one.
+ * Results are never cached.
+ * <p>
+ * Override {@link Coalescer#share(Object)} to give each caller its own copy
+ * of a mutable result. The result the call returned is never handed out.
+ */
+public class Coalescer<K, V> {
+
+    private final ConcurrentMap<K, FutureTask<V>> inFlight = new ConcurrentHashMap<K, FutureTask<V>>();
+
+    /**
+     * Run <code>call</code>, or wait for an identical call already in flight.
+     * 
+     * @param key
+     *            Identifies calls that return the same result
+     * @param call
+     *            The call to make if none is in flight for <code>key</code>
+     * @return The result of the call, passed through
+     *         {@link Coalescer#share(Object)}
+     * @throws RuntimeException
+     *             Whatever unchecked exception the call threw, also thrown to
+     *             every caller waiting on it
+     */
+    public V execute(K key, Callable<V> call) {
+        FutureTask<V> task = new FutureTask<V>(call);
+        FutureTask<V> existing = inFlight.putIfAbsent(key, task);
+
+        if (existing == null) {
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+            // followers may already be copying the result, so the leader
+            // can't be handed the original either
+            return share(get(task));
+        }
+
+        try {
+            return share(get(existing));
+        } catch (InterruptedCall e) {
+            Thread.currentThread().interrupt();
+            return get(runAlone(call));
+        }
+    }
+
+    /**
+     * Number of distinct calls currently in flight
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Prepare the result of a call for one of its callers, including the one
+     * that made it. Called concurrently for the same <code>value</code>. The
+     * default returns <code>value</code> itself.
+     */
+    protected V share(V value) {
+        return value;
+    }
+
+    private FutureTask<V> runAlone(Callable<V> call) {
+        FutureTask<V> task = new FutureTask<V>(call);
+        task.run();
+        return task;
+    }
+
+    private V get(FutureTask<V> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedCall();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IllegalStateException("Coalesced call threw a checked exception", cause);
+        }
+    }
+
+    private static class InterruptedCall extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+}
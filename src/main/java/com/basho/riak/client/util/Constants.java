@@ -79,6 +79,7 @@ public interface Constants {
     public static String QP_W = "w";
     public static String QP_DW = "dw";
     public static String QP_KEYS = "keys";
+    public static String QP_CHUNKED = "chunked";
 
     // HTTP method names
     public static String HTTP_HEAD_METHOD = "HEAD";
@@ -0,0 +1,489 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * A sorted, duplicate-free set of keys stored in a memory-mapped file, for
+ * enumerating buckets with more keys than fit comfortably in heap. The set is
+ * built once from a stream of keys (see {@link #build(Iterator, File)}) using
+ * an external merge sort, after which it can be iterated, searched and sliced
+ * any number of times without listing the bucket again. Keys live in the
+ * mapped file as UTF-8; a String is only created for a key when it is
+ * returned.
+ * <p>
+ * Keys are ordered by their UTF-8 bytes, i.e. by Unicode code point. This is
+ * the same as {@link String#compareTo(String)} except for keys containing
+ * characters outside the Basic Multilingual Plane.
+ * <p>
+ * File layout: a 32 byte header (magic, version, key count, offset of the
+ * index), the key bytes back to back, padding to a multiple of 8, then an
+ * index of count + 1 longs giving the start of each key.
+ * <p>
+ * Instances are immutable once built and safe to share between threads.
+ */
+public class DiskKeySet implements Iterable<String> {
+
+    /** Default bytes of keys to sort in memory before spilling a run to disk */
+    public static final int DEFAULT_RUN_BYTES = 8 * 1024 * 1024;
+
+    static final int MAGIC = 0x524b4559; // "RKEY"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int SEGMENT_SHIFT = 30;
+    static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+    private static final Comparator<byte[]> UNSIGNED_BYTES = new Comparator<byte[]>() {
+        public int compare(byte[] a, byte[] b) {
+            int n = Math.min(a.length, b.length);
+            for (int i = 0; i < n; i++) {
+                int c = (a[i] & 0xff) - (b[i] & 0xff);
+                if (c != 0)
+                    return c;
+            }
+            return a.length - b.length;
+        }
+    };
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final MappedByteBuffer[] segments;
+    private final long indexOffset;
+    private final long from;
+    private final long to;
+
+    private DiskKeySet(File file, RandomAccessFile raf, MappedByteBuffer[] segments, long indexOffset, long from, long to) {
+        this.file = file;
+        this.raf = raf;
+        this.segments = segments;
+        this.indexOffset = indexOffset;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Sort and de-duplicate keys into file, replacing anything already
+     * there, and open the result.
+     * 
+     * @param keys
+     *            The keys, in any order. Null keys are ignored.
+     * @param file
+     *            Where to write the set. Sorted runs are spilled to temporary
+     *            files in the same directory and deleted once merged.
+     * @throws IOException
+     *             If there is an error writing or mapping the file
+     */
+    public static DiskKeySet build(Iterator<String> keys, File file) throws IOException {
+        return build(keys, file, DEFAULT_RUN_BYTES);
+    }
+
+    /**
+     * @param maxRunBytes
+     *            Bytes of keys to sort in memory before spilling a run, which
+     *            bounds the heap used while building.
+     */
+    public static DiskKeySet build(Iterator<String> keys, File file, int maxRunBytes) throws IOException {
+        if (keys == null || file == null)
+            throw new IllegalArgumentException();
+        if (maxRunBytes <= 0)
+            throw new IllegalArgumentException("maxRunBytes must be positive");
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        List<File> runs = new ArrayList<File>();
+        try {
+            List<byte[]> run = new ArrayList<byte[]>();
+            long runBytes = 0;
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (key == null)
+                    continue;
+                byte[] b = utf8(key);
+                run.add(b);
+                runBytes += b.length + 16;
+                if (runBytes >= maxRunBytes) {
+                    runs.add(writeRun(run, dir));
+                    run.clear();
+                    runBytes = 0;
+                }
+            }
+            if (!run.isEmpty() || runs.isEmpty()) {
+                runs.add(writeRun(run, dir));
+            }
+
+            merge(runs, file, dir);
+        } finally {
+            for (File run : runs) {
+                run.delete();
+            }
+        }
+        return open(file);
+    }
+
+    /**
+     * Open a set previously written by {@link #build(Iterator, File)}.
+     * 
+     * @throws IOException
+     *             If the file can't be read or is not a key set
+     */
+    public static DiskKeySet open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() < HEADER_SIZE || raf.readInt() != MAGIC || raf.readInt() != VERSION)
+                throw new IOException(file + " is not a key set");
+            long count = raf.readLong();
+            long indexOffset = raf.readLong();
+            if (indexOffset < HEADER_SIZE || indexOffset + (count + 1) * 8 > raf.length())
+                throw new IOException(file + " is truncated");
+
+            FileChannel channel = raf.getChannel();
+            long length = raf.length();
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((length + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, length - start));
+            }
+            return new DiskKeySet(file, raf, segments, indexOffset, 0, count);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of keys in this set
+     */
+    public long size() {
+        return to - from;
+    }
+
+    public boolean isEmpty() {
+        return to == from;
+    }
+
+    /**
+     * @return the index'th key in sort order
+     * @throws IndexOutOfBoundsException
+     *             If index is not between 0 and size() - 1
+     */
+    public String get(long index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException(Long.toString(index));
+        return keyAt(from + index);
+    }
+
+    /**
+     * Binary search for key. No String is created for the keys compared.
+     */
+    public boolean contains(String key) {
+        if (key == null)
+            return false;
+        byte[] probe = utf8(key);
+        long i = lowerBound(probe);
+        return i < to && compareAt(i, probe) == 0;
+    }
+
+    /**
+     * @return a view of the keys from fromKey inclusive to toKey exclusive.
+     *         Either bound may be null to leave that end open.
+     */
+    public DiskKeySet subSet(String fromKey, String toKey) {
+        long lo = fromKey == null ? from : lowerBound(utf8(fromKey));
+        long hi = toKey == null ? to : lowerBound(utf8(toKey));
+        return new DiskKeySet(file, raf, segments, indexOffset, lo, Math.max(lo, hi));
+    }
+
+    /**
+     * @return a view of the keys before toKey
+     */
+    public DiskKeySet headSet(String toKey) {
+        return subSet(null, toKey);
+    }
+
+    /**
+     * @return a view of the keys from fromKey onwards
+     */
+    public DiskKeySet tailSet(String fromKey) {
+        return subSet(fromKey, null);
+    }
+
+    /**
+     * Iterates over the keys in sort order. Each pass reads the mapped file
+     * again; nothing is cached.
+     */
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            long next = from;
+
+            public boolean hasNext() {
+                return next < to;
+            }
+
+            public String next() {
+                if (next >= to)
+                    throw new NoSuchElementException();
+                return keyAt(next++);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * The file backing this set
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Close the file. This closes the set and every view of it. The mapping
+     * itself is released by the JVM once the set is garbage collected, so on
+     * some platforms the file can't be deleted until then.
+     */
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    /**
+     * Index of the first key not less than probe, within [from, to]
+     */
+    private long lowerBound(byte[] probe) {
+        long lo = from, hi = to;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (compareAt(mid, probe) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int compareAt(long index, byte[] probe) {
+        long start = offset(index);
+        long len = offset(index + 1) - start;
+        long n = Math.min(len, probe.length);
+        for (int i = 0; i < n; i++) {
+            int c = (byteAt(start + i) & 0xff) - (probe[i] & 0xff);
+            if (c != 0)
+                return c;
+        }
+        return (int) (len - probe.length);
+    }
+
+    private String keyAt(long index) {
+        long start = offset(index);
+        byte[] b = new byte[(int) (offset(index + 1) - start)];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = byteAt(start + i);
+        }
+        try {
+            return new String(b, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 must be supported", e);
+        }
+    }
+
+    private long offset(long index) {
+        long pos = indexOffset + index * 8;
+        return segments[(int) (pos >>> SEGMENT_SHIFT)].getLong((int) (pos & (SEGMENT_SIZE - 1)));
+    }
+
+    private byte byteAt(long pos) {
+        return segments[(int) (pos >>> SEGMENT_SHIFT)].get((int) (pos & (SEGMENT_SIZE - 1)));
+    }
+
+    private static File writeRun(List<byte[]> run, File dir) throws IOException {
+        Collections.sort(run, UNSIGNED_BYTES);
+        File f = File.createTempFile("riak-keys", ".run", dir);
+        boolean written = false;
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 64 * 1024));
+            try {
+                byte[] last = null;
+                for (byte[] key : run) {
+                    if (last != null && UNSIGNED_BYTES.compare(last, key) == 0)
+                        continue;
+                    out.writeInt(key.length);
+                    out.write(key);
+                    last = key;
+                }
+            } finally {
+                out.close();
+            }
+            written = true;
+        } finally {
+            // the caller only deletes runs it was handed
+            if (!written) {
+                f.delete();
+            }
+        }
+        return f;
+    }
+
+    /**
+     * k-way merge of the sorted runs into the final file. Key offsets are
+     * written to a temporary index file while the key bytes are written, then
+     * appended after them.
+     */
+    private static void merge(List<File> runs, File file, File dir) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<RunReader>(Math.max(1, runs.size()), new Comparator<RunReader>() {
+            public int compare(RunReader a, RunReader b) {
+                return UNSIGNED_BYTES.compare(a.current, b.current);
+            }
+        });
+        File indexFile = File.createTempFile("riak-keys", ".idx", dir);
+        DataOutputStream data = null;
+        DataOutputStream index = null;
+        boolean merged = false;
+        long count = 0;
+        long pos = HEADER_SIZE;
+        try {
+            data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+            index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile), 64 * 1024));
+            for (File run : runs) {
+                RunReader r = new RunReader(run);
+                if (r.advance()) {
+                    queue.add(r);
+                } else {
+                    r.close();
+                }
+            }
+
+            data.write(new byte[HEADER_SIZE]);
+            byte[] last = null;
+            while (!queue.isEmpty()) {
+                RunReader r = queue.poll();
+                byte[] key = r.current;
+                if (last == null || UNSIGNED_BYTES.compare(last, key) != 0) {
+                    index.writeLong(pos);
+                    data.write(key);
+                    pos += key.length;
+                    count++;
+                    last = key;
+                }
+                if (r.advance()) {
+                    queue.add(r);
+                } else {
+                    r.close();
+                }
+            }
+            index.writeLong(pos);
+            index.close();
+
+            // pad so the index longs never straddle a mapped segment
+            int pad = (int) ((8 - pos % 8) % 8);
+            data.write(new byte[pad]);
+            long indexOffset = pos + pad;
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), 64 * 1024));
+            try {
+                byte[] buf = new byte[64 * 1024];
+                int n;
+                while ((n = in.read(buf)) != -1) {
+                    data.write(buf, 0, n);
+                }
+            } finally {
+                in.close();
+            }
+            data.close();
+
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.writeInt(MAGIC);
+                raf.writeInt(VERSION);
+                raf.writeLong(count);
+                raf.writeLong(indexOffset);
+            } finally {
+                raf.close();
+            }
+            merged = true;
+        } finally {
+            for (RunReader r : queue) {
+                r.close();
+            }
+            try {
+                if (index != null) {
+                    index.close();
+                }
+                if (data != null) {
+                    data.close();
+                }
+            } finally {
+                indexFile.delete();
+                // don't leave a partly written set that open() might accept
+                if (!merged && data != null) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 must be supported", e);
+        }
+    }
+
+    private static class RunReader {
+        final DataInputStream in;
+        byte[] current;
+
+        RunReader(File f) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(f), 64 * 1024));
+        }
+
+        boolean advance() throws IOException {
+            int len;
+            try {
+                len = in.readInt();
+            } catch (EOFException e) {
+                current = null;
+                return false;
+            }
+            current = new byte[len];
+            in.readFully(current);
+            return true;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+}
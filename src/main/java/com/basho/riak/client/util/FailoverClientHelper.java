@@ -15,15 +15,28 @@ package com.basho.riak.client.util;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.httpclient.HostConfiguration;
 import org.apache.commons.httpclient.HttpHost;
 import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
 import org.apache.commons.httpclient.protocol.Protocol;
 
 import com.basho.riak.client.RiakFailoverConfig;
@@ -31,18 +44,47 @@ import com.basho.riak.client.request.RequestMeta;
 import com.basho.riak.client.response.DefaultHttpResponse;
 import com.basho.riak.client.response.HttpResponse;
 import com.basho.riak.client.response.RiakIORuntimeException;
+import com.basho.riak.client.response.StreamHandler;
 
 /**
  * Failover client
  */
 public class FailoverClientHelper extends ClientHelper {
     
-    Queue<HostConfiguration> httpClientHostConfigs = new ConcurrentLinkedQueue<HostConfiguration>();
+    CopyOnWriteArrayList<HostConfiguration> httpClientHostConfigs = new CopyOnWriteArrayList<HostConfiguration>();
     final RiakFailoverConfig failoverConfig;
+    final HostSelectionStrategy hostSelectionStrategy;
+    final HostHealthChecker healthChecker;
+    final ConcurrentMap<HostConfiguration, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<HostConfiguration, CircuitBreaker>();
+    
+    /** Reads need this many latency samples before they are hedged */
+    static final int HEDGE_MIN_SAMPLES = 100;
+    final Histogram readLatency = new Histogram();
+    final ScheduledExecutorService hedgeScheduler;
+    final ExecutorService hedgeExecutor;
+    final AtomicLong hedgesSent = new AtomicLong();
+    final AtomicLong hedgesWon = new AtomicLong();
 
     public FailoverClientHelper(RiakFailoverConfig config, String clientId) {
         super(config, clientId);
         this.failoverConfig = config;
+        HostSelectionStrategy strategy = config.getHostSelectionStrategy();
+        this.hostSelectionStrategy = strategy == null ? new RoundRobinHostSelectionStrategy() : strategy;
+        if (config.isHealthCheckEnabled()) {
+            this.healthChecker = new HostHealthChecker(this, config.getHealthCheckPath(),
+                                                       config.getHealthCheckInitialDelay(),
+                                                       config.getHealthCheckMaxDelay(),
+                                                       config.getHealthCheckTimeout());
+        } else {
+            this.healthChecker = null;
+        }
+        if (config.isHedgedReadsEnabled()) {
+            this.hedgeScheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("riak-hedge-timer"));
+            this.hedgeExecutor = Executors.newCachedThreadPool(new DaemonThreadFactory("riak-hedge"));
+        } else {
+            this.hedgeScheduler = null;
+            this.hedgeExecutor = null;
+        }
         addRiakUrls(failoverConfig.getUrlList());
     }
     
@@ -60,29 +102,187 @@ public class FailoverClientHelper extends ClientHelper {
     public void addRiakHost(String host, int port, boolean usessl) {
         HostConfiguration config = new HostConfiguration();
         config.setHost(new HttpHost(host, port, usessl ? Protocol.getProtocol("https"):Protocol.getProtocol("http")));
+        if (failoverConfig.isCircuitBreakerEnabled()) {
+            circuitBreakers.put(config, new CircuitBreaker(failoverConfig.getCircuitBreakerWindowSize(),
+                                                           failoverConfig.getCircuitBreakerErrorRate(),
+                                                           failoverConfig.getCircuitBreakerTimeoutRate(),
+                                                           failoverConfig.getCircuitBreakerSlowRequestThreshold(),
+                                                           failoverConfig.getCircuitBreakerOpenInterval()));
+        }
         httpClientHostConfigs.add(config);
         // add to RiakFailoverConfig ?
     }
     
+    /**
+     * Permanently remove a host from the rotation. Unlike a host taken out
+     * after a failed request, it will not be health checked or re-admitted.
+     */
     public void removeRiakHost(String host, int port) {
         for (HostConfiguration config:httpClientHostConfigs) {
             if (host.equals(config.getHost()) && port == config.getPort()) {
                 httpClientHostConfigs.remove(config);
+                circuitBreakers.remove(config);
                 postProcessHostRemove(host, port);
             }
         }
+        if (healthChecker != null) {
+            healthChecker.release(host, port);
+        }
         // remove from RiakFailoverConfig ?
     }
     
     /**
-     * get the next host in the cluster.
-     * @return the next host in the cluster.
+     * Take a host that failed a request out of the rotation. If health
+     * checking is enabled it is probed in the background and re-admitted once
+     * it responds; otherwise it is removed permanently.
+     */
+    void quarantineHost(HostConfiguration config) {
+        if (healthChecker == null) {
+            removeRiakHost(config.getHost(), config.getPort());
+        } else if (httpClientHostConfigs.remove(config)) {
+            healthChecker.quarantine(config);
+            postProcessHostRemove(config.getHost(), config.getPort());
+        }
+    }
+    
+    /**
+     * Put a quarantined host back into the rotation.
+     */
+    void readmitHost(HostConfiguration config) {
+        httpClientHostConfigs.addIfAbsent(config);
+    }
+    
+    /**
+     * @return the checker probing failed hosts, or null if health checking
+     *         is disabled
+     */
+    public HostHealthChecker getHealthChecker() {
+        return healthChecker;
+    }
+    
+    /**
+     * @return the circuit breaker guarding <code>config</code>, or null if
+     *         circuit breakers are disabled
+     */
+    public CircuitBreaker getCircuitBreaker(HostConfiguration config) {
+        return circuitBreakers.get(config);
+    }
+    
+    /**
+     * get the next host in the cluster, as chosen by the configured
+     * {@link HostSelectionStrategy} among hosts whose circuit breaker is not
+     * open.
+     * @return the next host in the cluster or null if there are no live hosts.
      */
     HostConfiguration getNextHost() {
-        if (this.httpClientHostConfigs.size() == 0) {
+        return getNextHost(null);
+    }
+    
+    /**
+     * get the next host in the cluster other than <code>exclude</code>.
+     */
+    HostConfiguration getNextHost(HostConfiguration exclude) {
+        List<HostConfiguration> hosts = new ArrayList<HostConfiguration>(this.httpClientHostConfigs.size());
+        for (HostConfiguration config : this.httpClientHostConfigs) {
+            CircuitBreaker breaker = circuitBreakers.get(config);
+            if (config != exclude && (breaker == null || breaker.isAvailable())) {
+                hosts.add(config);
+            }
+        }
+        if (hosts.size() == 0) {
             return null;
         }
-        return this.httpClientHostConfigs.peek();
+        return hostSelectionStrategy.select(hosts);
+    }
+    
+    /**
+     * @return the strategy used to choose the host for each request
+     */
+    public HostSelectionStrategy getHostSelectionStrategy() {
+        return hostSelectionStrategy;
+    }
+    
+    /**
+     * @return latency in microseconds of fetch and fetchMeta requests
+     */
+    public Histogram getReadLatency() {
+        return readLatency;
+    }
+    
+    /**
+     * @return number of hedge requests sent
+     */
+    public long getHedgesSent() {
+        return hedgesSent.get();
+    }
+    
+    /**
+     * @return number of reads answered by the hedge request rather than the
+     *         original
+     */
+    public long getHedgesWon() {
+        return hedgesWon.get();
+    }
+    
+    /**
+     * @return microseconds to wait for a read before hedging it, or -1 if
+     *         reads should not be hedged yet
+     */
+    long getHedgeDelay() {
+        if (readLatency.getCount() < HEDGE_MIN_SAMPLES)
+            return -1;
+        long min = TimeUnit.MILLISECONDS.toMicros(failoverConfig.getHedgeMinDelay());
+        return Math.max(min, readLatency.getPercentile(failoverConfig.getHedgeDelayPercentile()));
+    }
+    
+    void recordReadLatency(HttpResponse response, long startNanos) {
+        if (response != null && response.getHttpMethod() != null) {
+            readLatency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+        }
+    }
+    
+    /**
+     * Perform a fetch or fetchMeta. If hedged reads are enabled and the first
+     * host hasn't responded within the configured latency percentile, the
+     * same request is also sent to a second host and the first usable
+     * response is returned.
+     */
+    @Override HttpResponse executeRead(String bucket, String key, HttpMethod httpMethod, RequestMeta meta,
+                                       boolean streamResponse) {
+        long delay = hedgeScheduler == null ? -1 : getHedgeDelay();
+        HostConfiguration primary = delay < 0 ? null : getNextHost();
+        if (primary == null) {
+            long start = System.nanoTime();
+            HttpResponse response = executeMethod(bucket, key, httpMethod, meta, streamResponse);
+            recordReadLatency(response, start);
+            return response;
+        }
+        return new HedgedRead(this, bucket, key, httpMethod, meta, streamResponse, primary).execute(delay);
+    }
+    
+    /**
+     * Stream an object through the failover path, so the request is sent to
+     * a live host and is hedged like any other fetch.
+     */
+    @Override public boolean stream(String bucket, String key, StreamHandler handler, RequestMeta meta)
+            throws IOException {
+        if (meta == null) {
+            meta = new RequestMeta();
+        }
+        if (meta.getQueryParam(Constants.QP_R) == null) {
+            meta.setQueryParam(Constants.QP_R, Constants.DEFAULT_R.toString());
+        }
+        GetMethod get = new GetMethod(ClientUtils.makeURI(getConfig(), bucket, key));
+        HttpResponse r = executeRead(bucket, key, get, meta, true);
+        try {
+            if (handler == null)
+                return true;
+
+            return handler.process(bucket, key, r.getStatusCode(), r.getHttpHeaders(), r.getStream(),
+                                   r.getHttpMethod());
+        } finally {
+            r.close();
+        }
     }
     
     /**
@@ -122,6 +322,18 @@ public class FailoverClientHelper extends ClientHelper {
      */
     HttpResponse executeMethod(String bucket, String key, HttpMethod httpMethod, RequestMeta meta,
                                boolean streamResponse) {
+        return executeMethod(bucket, key, httpMethod, meta, streamResponse, null);
+    }
+
+    /**
+     * As {@link FailoverClientHelper#executeMethod(String, String, HttpMethod, RequestMeta, boolean)}
+     * but the first attempt is sent to <code>firstHost</code>, if not null.
+     * If <code>httpMethod</code> is aborted by another thread, a
+     * {@link RiakIORuntimeException} is thrown without calling the exception
+     * handler or counting the failure against the host.
+     */
+    HttpResponse executeMethod(String bucket, String key, HttpMethod httpMethod, RequestMeta meta,
+                               boolean streamResponse, HostConfiguration firstHost) {
 
         if (meta != null) {
             Map<String, String> headers = meta.getHeaders();
@@ -149,45 +361,95 @@ public class FailoverClientHelper extends ClientHelper {
             
             while (true) {
             
-                try {
-                    int size = this.httpClientHostConfigs.size();
-                    if (size < 1) {
-                        toss(new RiakIORuntimeException("No live riak servers available to handle this request"));
-                    }
-                    
-                    currentHostConfig = getNextHost();
-                    getHttpClient().executeMethod(currentHostConfig, httpMethod);
-    
-                    int status = 0;
-                    if (httpMethod.getStatusLine() != null) {
-                        status = httpMethod.getStatusCode();
-                    }
+                currentHostConfig = (attempts == 0 && firstHost != null) ? firstHost : getNextHost();
+                if (currentHostConfig == null)
+                    return toss(new RiakIORuntimeException("No live riak servers available to handle this request", ex));
+                
+                CircuitBreaker breaker = circuitBreakers.get(currentHostConfig);
+                if (breaker == null || breaker.allowRequest()) {
+                    long start = System.nanoTime();
+                    boolean failed = true;
+                    boolean recorded = false;
+                    hostSelectionStrategy.requestStarted(currentHostConfig);
+                    try {
+                        getHttpClient().executeMethod(currentHostConfig, httpMethod);
         
-                    Map<String, String> headers = ClientUtils.asHeaderMap(httpMethod.getResponseHeaders());
-                    byte[] body = null;
-                    InputStream stream = null;
-                    if (streamResponse) {
-                        stream = httpMethod.getResponseBodyAsStream();
-                    } else {
-                        body = httpMethod.getResponseBody();
+                        int status = 0;
+                        if (httpMethod.getStatusLine() != null) {
+                            status = httpMethod.getStatusCode();
+                        }
+            
+                        Map<String, String> headers = ClientUtils.asHeaderMap(httpMethod.getResponseHeaders());
+                        byte[] body = null;
+                        InputStream stream = null;
+                        if (streamResponse) {
+                            stream = httpMethod.getResponseBodyAsStream();
+                        } else {
+                            body = httpMethod.getResponseBody();
+                        }
+            
+                        failed = false;
+                        if (breaker != null) {
+                            long elapsed = System.nanoTime() - start;
+                            if (status >= 500) {
+                                breaker.onError(elapsed);
+                            } else {
+                                breaker.onSuccess(elapsed);
+                            }
+                            recorded = true;
+                        }
+                        return new DefaultHttpResponse(bucket, key, status, headers, body, stream, httpMethod);
+                    
+                    } catch (IOException e) {
+                        if (isAborted(httpMethod))
+                            throw new RiakIORuntimeException("Request aborted", e);
+                        ex = e;
+                        if (breaker != null) {
+                            // the breaker keeps the host out of rotation
+                            breaker.onFailure(e instanceof InterruptedIOException);
+                            recorded = true;
+                        } else {
+                            quarantineHost(currentHostConfig);
+                        }
+                        if (!isRepeatable(httpMethod))
+                            return toss(new RiakIORuntimeException("Request body cannot be resent to another server", e));
+                    } finally {
+                        boolean aborted = isAborted(httpMethod);
+                        if (breaker != null && !recorded) {
+                            if (aborted) {
+                                breaker.onAbandoned();
+                            } else {
+                                breaker.onFailure(false);
+                            }
+                        }
+                        hostSelectionStrategy.requestCompleted(currentHostConfig, System.nanoTime() - start, failed && !aborted);
                     }
-        
-                    return new DefaultHttpResponse(bucket, key, status, headers, body, stream, httpMethod);
-                
-                } catch (IOException e) {
-                    ex = e;
-                    removeRiakHost(currentHostConfig.getHost(), currentHostConfig.getPort());
                 }
                 
                 attempts++;
-                if (attempts >= startSize) {
-                    toss(new RiakIORuntimeException("No live riak servers available to handle this request", ex));
-                }
+                if (attempts >= startSize)
+                    return toss(new RiakIORuntimeException("No live riak servers available to handle this request", ex));
             }
         } finally {
-            if (!streamResponse) {
+            if (!streamResponse || isAborted(httpMethod)) {
                 httpMethod.releaseConnection();
             }
         }
     }
+
+    /**
+     * False if the method's request body has been consumed by the first
+     * attempt, e.g. a {@link com.basho.riak.client.request.MapReduceRequestEntity}
+     * over a one-shot input iterator, and so can't be sent again.
+     */
+    private static boolean isRepeatable(HttpMethod httpMethod) {
+        if (!(httpMethod instanceof EntityEnclosingMethod))
+            return true;
+        RequestEntity entity = ((EntityEnclosingMethod) httpMethod).getRequestEntity();
+        return entity == null || entity.isRepeatable();
+    }
+
+    private static boolean isAborted(HttpMethod httpMethod) {
+        return httpMethod instanceof HttpMethodBase && ((HttpMethodBase) httpMethod).isAborted();
+    }
 }
@@ -0,0 +1,195 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.HeadMethod;
+
+import com.basho.riak.client.request.RequestMeta;
+import com.basho.riak.client.response.HttpResponse;
+
+/**
+ * A single read sent to one host and, if that host hasn't answered within the
+ * hedge delay, to a second host as well. The first usable response wins and
+ * the other request is aborted and its connection released.
+ * <p>
+ * The primary request runs on the calling thread, so reads that finish before
+ * the hedge delay cost nothing more than a timer. The hedge runs on the
+ * helper's hedge executor; if it wins, it aborts the primary to unblock the
+ * caller.
+ */
+class HedgedRead implements Runnable {
+
+    private final FailoverClientHelper helper;
+    private final String bucket;
+    private final String key;
+    private final RequestMeta meta;
+    private final boolean streamResponse;
+    private final HttpMethod primaryMethod;
+    private final HttpMethod hedgeMethod;
+    private final HostConfiguration primaryHost;
+
+    // guarded by this
+    private boolean decided = false;
+    private boolean hedgeStarted = false;
+    private boolean hedgeDone = false;
+    private HttpResponse winner = null;
+
+    HedgedRead(FailoverClientHelper helper, String bucket, String key, HttpMethod httpMethod, RequestMeta meta,
+            boolean streamResponse, HostConfiguration primaryHost) {
+        this.helper = helper;
+        this.bucket = bucket;
+        this.key = key;
+        this.meta = meta;
+        this.streamResponse = streamResponse;
+        this.primaryMethod = httpMethod;
+        this.hedgeMethod = copy(httpMethod); // before meta is applied to the original
+        this.primaryHost = primaryHost;
+    }
+
+    /**
+     * Run the read, hedging after <code>delayMicros</code>.
+     */
+    HttpResponse execute(long delayMicros) {
+        ScheduledFuture<?> timer = null;
+        try {
+            timer = helper.hedgeScheduler.schedule(this, delayMicros, TimeUnit.MICROSECONDS);
+        } catch (RejectedExecutionException e) { /* shut down; don't hedge */}
+
+        long start = System.nanoTime();
+        HttpResponse response = null;
+        RuntimeException failure = null;
+        try {
+            response = helper.executeMethod(bucket, key, primaryMethod, meta, streamResponse, primaryHost);
+            helper.recordReadLatency(response, start);
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+
+        synchronized (this) {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            if (!decided && hedgeStarted && !isUsable(response)) {
+                // primary failed but the hedge may still succeed
+                try {
+                    while (!hedgeDone) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (!decided) {
+                decided = true;
+                if (hedgeStarted && !hedgeDone) {
+                    hedgeMethod.abort();
+                }
+                if (failure != null)
+                    throw failure;
+                return response;
+            }
+        }
+
+        // the hedge won
+        release(response);
+        helper.hedgesWon.incrementAndGet();
+        return winner;
+    }
+
+    /**
+     * Fired by the hedge timer: send the hedge request if the primary is
+     * still outstanding.
+     */
+    public void run() {
+        final HostConfiguration hedgeHost;
+        synchronized (this) {
+            if (decided)
+                return;
+            hedgeHost = helper.getNextHost(primaryHost);
+            if (hedgeHost == null)
+                return;
+            hedgeStarted = true;
+        }
+        helper.hedgesSent.incrementAndGet();
+        try {
+            helper.hedgeExecutor.execute(new Runnable() {
+                public void run() {
+                    hedge(hedgeHost);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            hedgeCompleted(null);
+        }
+    }
+
+    private void hedge(HostConfiguration hedgeHost) {
+        long start = System.nanoTime();
+        HttpResponse response = null;
+        try {
+            response = helper.executeMethod(bucket, key, hedgeMethod, meta, streamResponse, hedgeHost);
+            helper.recordReadLatency(response, start);
+        } catch (RuntimeException e) { /* the primary's outcome is used */}
+        hedgeCompleted(response);
+    }
+
+    private void hedgeCompleted(HttpResponse response) {
+        boolean release = true;
+        synchronized (this) {
+            hedgeDone = true;
+            if (!decided && isUsable(response)) {
+                decided = true;
+                winner = response;
+                release = false;
+                primaryMethod.abort();
+            }
+            notifyAll();
+        }
+        if (release) {
+            release(response);
+        }
+    }
+
+    /**
+     * Whether a response can be returned in preference to waiting for the
+     * other request. Responses produced by the exception handler have no
+     * HttpMethod.
+     */
+    private static boolean isUsable(HttpResponse response) {
+        return response != null && response.getHttpMethod() != null && response.getStatusCode() < 500;
+    }
+
+    private static void release(HttpResponse response) {
+        if (response != null && response.getHttpMethod() != null) {
+            response.getHttpMethod().releaseConnection();
+        }
+    }
+
+    private static HttpMethod copy(HttpMethod httpMethod) {
+        HttpMethod copy = (httpMethod instanceof HeadMethod) ? new HeadMethod() : new GetMethod();
+        copy.setPath(httpMethod.getPath());
+        copy.setQueryString(httpMethod.getQueryString());
+        for (Header header : httpMethod.getRequestHeaders()) {
+            copy.setRequestHeader(header.getName(), header.getValue());
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of non-negative long values (e.g. latencies in
+ * microseconds). Values are counted in log-linear buckets: each power of two
+ * is split into 4 sub-buckets, so percentiles are accurate to within 25%
+ * while the histogram uses constant memory regardless of the number of
+ * values recorded.
+ */
+public class Histogram {
+
+    static final int SUB_BUCKETS = 4;
+    static final int LINEAR_LIMIT = 8;
+    static final int BUCKETS = LINEAR_LIMIT + (63 - 3) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a value. Negative values are recorded as 0.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucketFor(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long m = max.get();
+        while (value > m && !max.compareAndSet(m, value)) {
+            m = max.get();
+        }
+    }
+
+    /** Number of values recorded */
+    public long getCount() {
+        return count.get();
+    }
+
+    /** Sum of all values recorded */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /** Largest value recorded or 0 if none */
+    public long getMax() {
+        return max.get();
+    }
+
+    /** Mean of the values recorded or 0 if none */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Estimate the value below which the given percentage of values fall.
+     * 
+     * @param percentile
+     *            between 0 and 100, e.g. 99 for the 99th percentile
+     * @return The upper bound of the bucket containing the percentile or 0 if
+     *         no values were recorded.
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+
+        long n = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0)
+            return 0;
+
+        long target = (long) Math.ceil(n * percentile / 100.0);
+        if (target < 1) {
+            target = 1;
+        }
+
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= target)
+                return Math.min(upperBound(i), getMax());
+        }
+        return getMax();
+    }
+
+    /**
+     * Clear all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    static int bucketFor(long value) {
+        if (value < LINEAR_LIMIT)
+            return (int) value;
+
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - 2)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exp - 3) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < LINEAR_LIMIT)
+            return bucket;
+
+        int exp = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + 3;
+        int sub = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        long lower = ((long) (SUB_BUCKETS + sub)) << (exp - 2);
+        return lower + (1L << (exp - 2)) - 1;
+    }
+}
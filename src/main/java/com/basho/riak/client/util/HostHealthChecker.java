@@ -0,0 +1,152 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.GetMethod;
+
+/**
+ * Probes hosts that {@link FailoverClientHelper} took out of rotation after a
+ * failure and adds them back once they respond. Each quarantined host is
+ * pinged on a background daemon thread; the delay between attempts starts at
+ * the initial delay and doubles after every failed probe up to the maximum.
+ */
+public class HostHealthChecker {
+
+    private final FailoverClientHelper helper;
+    private final String path;
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+    private final int timeoutMillis;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentMap<HostConfiguration, Long> quarantined = new ConcurrentHashMap<HostConfiguration, Long>();
+
+    /**
+     * @param helper
+     *            Helper whose hosts are checked and re-admitted
+     * @param path
+     *            Path to request on each host, e.g. /ping. Any 2xx response
+     *            means the host is healthy.
+     * @param initialDelayMillis
+     *            Delay before the first probe of a newly quarantined host
+     * @param maxDelayMillis
+     *            Upper bound on the delay between probes
+     * @param timeoutMillis
+     *            Socket timeout for each probe
+     */
+    public HostHealthChecker(FailoverClientHelper helper, String path, long initialDelayMillis, long maxDelayMillis,
+            int timeoutMillis) {
+        this.helper = helper;
+        this.path = path;
+        this.initialDelayMillis = Math.max(1, initialDelayMillis);
+        this.maxDelayMillis = Math.max(this.initialDelayMillis, maxDelayMillis);
+        this.timeoutMillis = timeoutMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("riak-health-check"));
+    }
+
+    /**
+     * Start probing <code>host</code>. Does nothing if it is already
+     * quarantined.
+     */
+    public void quarantine(HostConfiguration host) {
+        if (quarantined.putIfAbsent(host, initialDelayMillis) == null) {
+            schedule(host, initialDelayMillis);
+        }
+    }
+
+    /**
+     * Stop probing the given host without re-admitting it.
+     */
+    public void release(String host, int port) {
+        for (HostConfiguration config : quarantined.keySet()) {
+            if (host.equals(config.getHost()) && port == config.getPort()) {
+                quarantined.remove(config);
+            }
+        }
+    }
+
+    public boolean isQuarantined(HostConfiguration host) {
+        return quarantined.containsKey(host);
+    }
+
+    /**
+     * Stop all probing. Quarantined hosts stay out of rotation.
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        quarantined.clear();
+    }
+
+    /**
+     * Probe <code>host</code> once, re-admitting it on success or scheduling
+     * the next attempt with a longer delay on failure.
+     */
+    void check(HostConfiguration host) {
+        Long delay = quarantined.get(host);
+        if (delay == null)
+            return; // released in the meantime
+
+        if (probe(host)) {
+            if (quarantined.remove(host) != null) {
+                helper.readmitHost(host);
+            }
+        } else {
+            long next = Math.min(delay * 2, maxDelayMillis);
+            if (quarantined.replace(host, delay, next)) {
+                schedule(host, next);
+            }
+        }
+    }
+
+    boolean probe(HostConfiguration host) {
+        GetMethod ping = new GetMethod(path);
+        ping.getParams().setSoTimeout(timeoutMillis);
+        try {
+            int status = helper.getHttpClient().executeMethod(host, ping);
+            return status >= HttpStatus.SC_OK && status < HttpStatus.SC_MULTIPLE_CHOICES;
+        } catch (IOException e) {
+            return false;
+        } catch (RuntimeException e) {
+            return false;
+        } finally {
+            ping.releaseConnection();
+        }
+    }
+
+    long getDelay(HostConfiguration host) {
+        Long delay = quarantined.get(host);
+        return delay == null ? -1 : delay;
+    }
+
+    private void schedule(final HostConfiguration host, long delayMillis) {
+        try {
+            scheduler.schedule(new Runnable() {
+                public void run() {
+                    check(host);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            quarantined.remove(host); // shut down
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import java.util.List;
+
+import org.apache.commons.httpclient.HostConfiguration;
+
+/**
+ * Chooses which Riak node {@link FailoverClientHelper} sends each request
+ * to. Implementations must be thread-safe. A strategy may keep per-host state
+ * and is notified as requests start and complete, so an instance should only
+ * be used by a single client.
+ */
+public interface HostSelectionStrategy {
+
+    /**
+     * Choose the host for the next request.
+     * 
+     * @param hosts
+     *            The hosts currently in rotation; never empty. The list is a
+     *            snapshot and is not modified concurrently.
+     * @return One of <code>hosts</code>
+     */
+    public HostConfiguration select(List<HostConfiguration> hosts);
+
+    /**
+     * Called just before a request is sent to <code>host</code>.
+     */
+    public void requestStarted(HostConfiguration host);
+
+    /**
+     * Called after a request to <code>host</code> completes, i.e. the response
+     * headers were received or the request failed.
+     * 
+     * @param elapsedNanos
+     *            Time from when the request was started
+     * @param failed
+     *            Whether the request failed with an I/O error
+     */
+    public void requestCompleted(HostConfiguration host, long elapsedNanos, boolean failed);
+}
@@ -3,6 +3,7 @@ package com.basho.riak.client.util;
 import java.io.IOException;
 
 import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.methods.RequestEntity;
 import org.json.JSONObject;
 
 import com.basho.riak.client.IRiakConfig;
@@ -91,11 +92,34 @@ public interface IClientHelper {
      */
     public abstract HttpResponse walk(String bucket, String key, String walkSpec, RequestMeta meta);
 
+    /**
+     * Same as {@link RiakClient}, except only returning the HTTP response, and
+     * if streamResponse==true, the response will be streamed back, so the user
+     * is responsible for calling {@link HttpResponse#close()}
+     */
+    public abstract HttpResponse walk(String bucket, String key, String walkSpec, RequestMeta meta,
+                                      boolean streamResponse);
+
     /**
      * Same as {@link RiakClient}, except only returning the HTTP response
      */
     public abstract HttpResponse mapReduce(String job, RequestMeta meta);
 
+    /**
+     * Same as {@link RiakClient}, except only returning the HTTP response, and
+     * if streamResponse==true, the job is run in chunked mode and the response
+     * will be streamed back, so the user is responsible for calling
+     * {@link HttpResponse#close()}
+     */
+    public abstract HttpResponse mapReduce(String job, RequestMeta meta, boolean streamResponse);
+
+    /**
+     * Same as {@link IClientHelper#mapReduce(String, RequestMeta, boolean)},
+     * except the job is written to the connection by <code>job</code>, e.g. a
+     * {@link com.basho.riak.client.request.MapReduceRequestEntity}
+     */
+    public abstract HttpResponse mapReduce(RequestEntity job, RequestMeta meta, boolean streamResponse);
+
     /** @return the installed exception handler or null if not installed */
     public abstract RiakExceptionHandler getExceptionHandler();
 
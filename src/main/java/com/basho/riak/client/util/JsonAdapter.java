@@ -0,0 +1,148 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.basho.riak.client.util.JsonPullParser.Event;
+
+/**
+ * Builds values from a {@link JsonPullParser} for the response classes. Where
+ * the public API hands out org.json objects, they are built directly from the
+ * parser's events instead of decoding the body to a String and re-parsing it
+ * with {@link org.json.JSONTokener}. Where it doesn't, e.g. lists of keys, no
+ * org.json objects are built at all.
+ */
+public class JsonAdapter {
+
+    /**
+     * Read the next value from the parser as an org.json value: JSONObject,
+     * JSONArray, String, Integer, Long, Double, Boolean or
+     * {@link JSONObject#NULL}. Numbers are typed as {@link org.json.JSONTokener}
+     * would type them.
+     * 
+     * @throws JSONException
+     *             If the input is malformed or there is no next value
+     */
+    public static Object readValue(JsonPullParser parser) throws IOException, JSONException {
+        Event e = parser.next();
+        if (e == null)
+            throw new JSONException("Expected a value");
+        return currentValue(parser);
+    }
+
+    /**
+     * Read the next value, which must be an object
+     */
+    public static JSONObject readObject(JsonPullParser parser) throws IOException, JSONException {
+        if (parser.next() != Event.START_OBJECT)
+            throw new JSONException("Expected a JSON object");
+        return (JSONObject) currentValue(parser);
+    }
+
+    /**
+     * Read the next value, which must be an array
+     */
+    public static JSONArray readArray(JsonPullParser parser) throws IOException, JSONException {
+        if (parser.next() != Event.START_ARRAY)
+            throw new JSONException("Expected a JSON array");
+        return (JSONArray) currentValue(parser);
+    }
+
+    /**
+     * Read the next value, which must be an array, into a list of strings.
+     * Non-string elements are added as their JSON text and nested objects and
+     * arrays are skipped.
+     */
+    public static List<String> readStringList(JsonPullParser parser) throws IOException, JSONException {
+        if (parser.next() != Event.START_ARRAY)
+            throw new JSONException("Expected a JSON array");
+
+        List<String> l = new ArrayList<String>();
+        while (true) {
+            Event e = parser.next();
+            if (e == Event.END_ARRAY)
+                return l;
+            if (e == Event.START_OBJECT || e == Event.START_ARRAY) {
+                parser.skipChildren();
+            } else {
+                l.add(text(parser));
+            }
+        }
+    }
+
+    /**
+     * Build the value for the event the parser is currently at. For
+     * START_OBJECT and START_ARRAY, reads up to the matching end event.
+     */
+    public static Object currentValue(JsonPullParser parser) throws IOException, JSONException {
+        Event e = parser.getEvent();
+        if (e == null)
+            throw new JSONException("Expected a value");
+
+        switch (e) {
+        case START_OBJECT:
+            JSONObject o = new JSONObject();
+            while ((e = parser.next()) != Event.END_OBJECT) {
+                String name = parser.getText();
+                parser.next();
+                o.put(name, currentValue(parser));
+            }
+            return o;
+        case START_ARRAY:
+            JSONArray a = new JSONArray();
+            while (parser.next() != Event.END_ARRAY) {
+                a.put(currentValue(parser));
+            }
+            return a;
+        case STRING:
+            return parser.getText();
+        case NUMBER:
+            if (parser.isIntegral()) {
+                long n = parser.getLong();
+                if (n == (int) n)
+                    return Integer.valueOf((int) n);
+                return Long.valueOf(n);
+            }
+            return Double.valueOf(parser.getDouble());
+        case TRUE:
+            return Boolean.TRUE;
+        case FALSE:
+            return Boolean.FALSE;
+        case NULL:
+            return JSONObject.NULL;
+        default:
+            throw new JSONException("Unexpected " + e);
+        }
+    }
+
+    private static String text(JsonPullParser parser) {
+        switch (parser.getEvent()) {
+        case TRUE:
+            return "true";
+        case FALSE:
+            return "false";
+        case NULL:
+            return "null";
+        default:
+            return parser.getText();
+        }
+    }
+}
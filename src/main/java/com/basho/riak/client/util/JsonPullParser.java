@@ -0,0 +1,308 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.json.JSONException;
+
+/**
+ * A pull parser for JSON in a UTF-8 byte stream. Each call to {@link #next()}
+ * returns the next {@link Event}; the current string, field name or number is
+ * then available from the accessors. Nothing is built beyond what the caller
+ * asks for: numbers are kept as characters until {@link #getLong()} or
+ * {@link #getDouble()} is called, and unwanted objects and arrays can be
+ * passed over with {@link #skipChildren()}. Several values may follow each
+ * other at the top level, as in Riak's streamed bucket listings.
+ * <p>
+ * See {@link JsonAdapter} for building org.json values from a parser. This
+ * class is NOT thread-safe.
+ */
+public class JsonPullParser {
+
+    public enum Event {
+        START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY, FIELD_NAME, STRING, NUMBER, TRUE, FALSE, NULL
+    }
+
+    private static final byte OBJECT = 1;
+    private static final byte ARRAY = 2;
+
+    // per level state
+    private static final byte EXPECT_FIRST = 0;
+    private static final byte EXPECT_VALUE = 1;   // after a field name
+    private static final byte AFTER_VALUE = 2;
+
+    private final Utf8JsonTokenizer tokens;
+    private byte[] types = new byte[16];
+    private byte[] states = new byte[16];
+    private int depth = 0;
+
+    private Event event = null;
+    private String text = null;
+    private int numberLen = 0;
+
+    public JsonPullParser(InputStream in) {
+        tokens = new Utf8JsonTokenizer(in);
+    }
+
+    public JsonPullParser(byte[] json) {
+        this(new ByteArrayInputStream(json));
+    }
+
+    /**
+     * Advance to the next token.
+     * 
+     * @return the event for the token, or null at the end of the input
+     * @throws JSONException
+     *             If the input is not well-formed JSON
+     */
+    public Event next() throws IOException, JSONException {
+        text = null;
+        int c = tokens.nextClean();
+
+        if (depth == 0) {
+            if (c == -1)
+                return event = null;
+            return event = value(c);
+        }
+
+        if (c == -1)
+            throw new JSONException("Unexpected end of input");
+
+        byte type = types[depth - 1];
+        byte state = states[depth - 1];
+
+        if ((type == OBJECT && c == '}') || (type == ARRAY && c == ']')) {
+            if (state == EXPECT_VALUE)
+                throw new JSONException("Expected a value before '" + (char) c + "'");
+            depth--;
+            valueDone();
+            return event = (type == OBJECT ? Event.END_OBJECT : Event.END_ARRAY);
+        }
+
+        if (state == AFTER_VALUE) {
+            if (c != ',')
+                throw new JSONException("Expected ',' but found '" + (char) c + "'");
+            c = tokens.nextClean();
+            state = EXPECT_FIRST;
+        }
+
+        if (type == OBJECT && state != EXPECT_VALUE) {
+            if (c != '"')
+                throw new JSONException("Expected a field name");
+            text = tokens.nextString();
+            if (tokens.nextClean() != ':')
+                throw new JSONException("Expected ':' after \"" + text + "\"");
+            states[depth - 1] = EXPECT_VALUE;
+            return event = Event.FIELD_NAME;
+        }
+
+        return event = value(c);
+    }
+
+    private Event value(int c) throws IOException, JSONException {
+        switch (c) {
+        case '{':
+            push(OBJECT);
+            return Event.START_OBJECT;
+        case '[':
+            push(ARRAY);
+            return Event.START_ARRAY;
+        case '"':
+            text = tokens.nextString();
+            valueDone();
+            return Event.STRING;
+        case 't':
+            literal("rue");
+            valueDone();
+            return Event.TRUE;
+        case 'f':
+            literal("alse");
+            valueDone();
+            return Event.FALSE;
+        case 'n':
+            literal("ull");
+            valueDone();
+            return Event.NULL;
+        default:
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                numberLen = tokens.readNumber(c);
+                valueDone();
+                return Event.NUMBER;
+            }
+            if (c == -1)
+                throw new JSONException("Expected a value");
+            throw new JSONException("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private void literal(String rest) throws IOException, JSONException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (tokens.next() != rest.charAt(i))
+                throw new JSONException("Invalid literal");
+        }
+    }
+
+    private void push(byte type) {
+        if (depth == types.length) {
+            byte[] t = new byte[depth * 2];
+            byte[] s = new byte[depth * 2];
+            System.arraycopy(types, 0, t, 0, depth);
+            System.arraycopy(states, 0, s, 0, depth);
+            types = t;
+            states = s;
+        }
+        types[depth] = type;
+        states[depth] = EXPECT_FIRST;
+        depth++;
+    }
+
+    private void valueDone() {
+        if (depth > 0) {
+            states[depth - 1] = AFTER_VALUE;
+        }
+    }
+
+    /**
+     * The event last returned by {@link #next()}
+     */
+    public Event getEvent() {
+        return event;
+    }
+
+    /**
+     * Nesting depth: 0 at the top level, 1 inside a top-level object or
+     * array, and so on. A START event is reported at the depth it opens.
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return true if the parser is directly inside an array, i.e. the
+     *         current value is an array element
+     */
+    public boolean inArray() {
+        return depth > 0 && types[depth - 1] == ARRAY;
+    }
+
+    /**
+     * The field name, string or number text for the current event, or null
+     * for other events
+     */
+    public String getText() {
+        if (text == null && event == Event.NUMBER) {
+            text = new String(tokens.chars(), 0, numberLen);
+        }
+        return text;
+    }
+
+    /**
+     * @return true if the current number has no fraction or exponent and
+     *         fits in a long
+     */
+    public boolean isIntegral() {
+        if (event != Event.NUMBER)
+            return false;
+        char[] chars = tokens.chars();
+        int i = chars[0] == '-' ? 1 : 0;
+        if (numberLen - i > 18) {
+            // may overflow; let the slow path decide
+            try {
+                Long.parseLong(getText());
+                return true;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        for (; i < numberLen; i++) {
+            if (chars[i] < '0' || chars[i] > '9')
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * The current number as a long, parsed without creating a String when it
+     * is integral
+     * 
+     * @throws JSONException
+     *             If the current event is not a number
+     */
+    public long getLong() throws JSONException {
+        if (event != Event.NUMBER)
+            throw new JSONException("Not a number: " + event);
+        if (!isIntegral())
+            return (long) getDouble();
+
+        char[] chars = tokens.chars();
+        boolean negative = chars[0] == '-';
+        long n = 0;
+        for (int i = negative ? 1 : 0; i < numberLen; i++) {
+            n = n * 10 - (chars[i] - '0');
+        }
+        return negative ? n : -n;
+    }
+
+    public int getInt() throws JSONException {
+        return (int) getLong();
+    }
+
+    /**
+     * @throws JSONException
+     *             If the current event is not a number
+     */
+    public double getDouble() throws JSONException {
+        if (event != Event.NUMBER)
+            throw new JSONException("Not a number: " + event);
+        try {
+            return Double.parseDouble(getText());
+        } catch (NumberFormatException e) {
+            throw new JSONException("Invalid number " + getText());
+        }
+    }
+
+    /**
+     * If the current event is {@link Event#START_OBJECT} or
+     * {@link Event#START_ARRAY}, skip to its matching end event. Otherwise do
+     * nothing.
+     */
+    public void skipChildren() throws IOException, JSONException {
+        if (event != Event.START_OBJECT && event != Event.START_ARRAY)
+            return;
+        tokens.skipRest();
+        depth--;
+        valueDone();
+        event = (event == Event.START_OBJECT ? Event.END_OBJECT : Event.END_ARRAY);
+        text = null;
+    }
+
+    /**
+     * Skip the next value, e.g. the value of a field that isn't wanted.
+     */
+    public void skipValue() throws IOException, JSONException {
+        if (next() == null)
+            throw new JSONException("Expected a value");
+        skipChildren();
+    }
+
+    /**
+     * Release the underlying stream
+     */
+    public void close() throws IOException {
+        tokens.close();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.httpclient.HostConfiguration;
+
+/**
+ * Prefers hosts that have been responding quickly. Each host keeps an
+ * exponentially weighted moving average (EWMA) of its response latency, and
+ * its cost is that average multiplied by one more than the number of requests
+ * in flight to it. Each request samples two hosts at random and goes to the
+ * cheaper one, which steers load away from slow nodes without piling every
+ * request onto the single fastest one.
+ * <p>
+ * Failed requests count as a sample of at least the failure penalty so a
+ * failing node is quickly avoided. Hosts with no samples yet cost nothing and
+ * so are tried right away.
+ */
+public class LatencyWeightedHostSelectionStrategy implements HostSelectionStrategy {
+
+    public static final double DEFAULT_DECAY = 0.3;
+    public static final long DEFAULT_FAILURE_PENALTY_MILLIS = 1000;
+
+    private final double decay;
+    private final long failurePenaltyNanos;
+    private final ConcurrentMap<HostConfiguration, HostStats> stats = new ConcurrentHashMap<HostConfiguration, HostStats>();
+    private final Random random = new Random();
+
+    public LatencyWeightedHostSelectionStrategy() {
+        this(DEFAULT_DECAY, DEFAULT_FAILURE_PENALTY_MILLIS);
+    }
+
+    /**
+     * @param decay
+     *            Weight given to each new latency sample, between 0 and 1.
+     *            Higher values react faster to changes.
+     * @param failurePenaltyMillis
+     *            Minimum latency recorded for a failed request
+     */
+    public LatencyWeightedHostSelectionStrategy(double decay, long failurePenaltyMillis) {
+        if (decay <= 0 || decay > 1)
+            throw new IllegalArgumentException("decay must be in (0, 1]");
+        this.decay = decay;
+        this.failurePenaltyNanos = TimeUnit.MILLISECONDS.toNanos(failurePenaltyMillis);
+    }
+
+    public HostConfiguration select(List<HostConfiguration> hosts) {
+        int size = hosts.size();
+        if (size == 1)
+            return hosts.get(0);
+
+        int i = random.nextInt(size);
+        int j = random.nextInt(size - 1);
+        if (j >= i) {
+            j++;
+        }
+        HostConfiguration a = hosts.get(i);
+        HostConfiguration b = hosts.get(j);
+        return cost(b) < cost(a) ? b : a;
+    }
+
+    public void requestStarted(HostConfiguration host) {
+        stats(host).started();
+    }
+
+    public void requestCompleted(HostConfiguration host, long elapsedNanos, boolean failed) {
+        long sample = failed ? Math.max(elapsedNanos, failurePenaltyNanos) : elapsedNanos;
+        stats(host).completed(sample, decay);
+    }
+
+    /**
+     * The current moving average of response latency to <code>host</code> in
+     * nanoseconds, or 0 if no requests have completed.
+     */
+    public double getAverageLatency(HostConfiguration host) {
+        HostStats s = stats.get(host);
+        return s == null ? 0 : s.getAverage();
+    }
+
+    double cost(HostConfiguration host) {
+        HostStats s = stats.get(host);
+        return s == null ? 0 : s.getCost();
+    }
+
+    private HostStats stats(HostConfiguration host) {
+        HostStats s = stats.get(host);
+        if (s == null) {
+            HostStats existing = stats.putIfAbsent(host, s = new HostStats());
+            if (existing != null) {
+                s = existing;
+            }
+        }
+        return s;
+    }
+
+    private static class HostStats {
+        private double average;
+        private boolean sampled;
+        private int outstanding;
+
+        synchronized void started() {
+            outstanding++;
+        }
+
+        synchronized void completed(long sample, double decay) {
+            if (outstanding > 0) {
+                outstanding--;
+            }
+            if (sampled) {
+                average += decay * (sample - average);
+            } else {
+                average = sample;
+                sampled = true;
+            }
+        }
+
+        synchronized double getAverage() {
+            return average;
+        }
+
+        synchronized double getCost() {
+            return average * (outstanding + 1);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.httpclient.HostConfiguration;
+
+/**
+ * Sends each request to the host with the fewest requests in flight. Ties
+ * are broken round-robin so idle hosts share the load evenly.
+ */
+public class LeastOutstandingHostSelectionStrategy implements HostSelectionStrategy {
+
+    private final ConcurrentMap<HostConfiguration, AtomicInteger> outstanding = new ConcurrentHashMap<HostConfiguration, AtomicInteger>();
+    private final AtomicInteger next = new AtomicInteger();
+
+    public HostConfiguration select(List<HostConfiguration> hosts) {
+        int size = hosts.size();
+        int start = (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+        HostConfiguration best = null;
+        int bestCount = Integer.MAX_VALUE;
+
+        for (int i = 0; i < size; i++) {
+            HostConfiguration host = hosts.get((start + i) % size);
+            int count = getOutstanding(host);
+            if (count < bestCount) {
+                best = host;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    public void requestStarted(HostConfiguration host) {
+        counter(host).incrementAndGet();
+    }
+
+    public void requestCompleted(HostConfiguration host, long elapsedNanos, boolean failed) {
+        counter(host).decrementAndGet();
+    }
+
+    /**
+     * Number of requests currently in flight to <code>host</code>
+     */
+    public int getOutstanding(HostConfiguration host) {
+        AtomicInteger count = outstanding.get(host);
+        return count == null ? 0 : count.get();
+    }
+
+    private AtomicInteger counter(HostConfiguration host) {
+        AtomicInteger count = outstanding.get(host);
+        if (count == null) {
+            AtomicInteger existing = outstanding.putIfAbsent(host, count = new AtomicInteger());
+            if (existing != null) {
+                count = existing;
+            }
+        }
+        return count;
+    }
+}
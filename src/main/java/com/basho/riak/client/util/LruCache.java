@@ -0,0 +1,154 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A thread-safe least-recently-used cache bounded by the total weight of its
+ * values, with an optional time-to-live. Each value's weight comes from a
+ * {@link Weigher}, e.g. its size in bytes; when adding a value pushes the
+ * total over the maximum, the least recently used entries are evicted.
+ * Entries older than the TTL are dropped when next read.
+ */
+public class LruCache<K, V> {
+
+    /**
+     * Computes the weight of a cached value.
+     */
+    public interface Weigher<V> {
+        public long weigh(V value);
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long weight;
+        final long expiresAt;
+
+        Entry(V value, long weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final long maxWeight;
+    private final long ttlNanos;
+    private final Weigher<? super V> weigher;
+    private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+    private long weight = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param maxWeight
+     *            Maximum total weight of the cached values
+     * @param ttlMillis
+     *            Milliseconds after which an entry expires, or 0 for no
+     *            expiry
+     * @param weigher
+     *            Computes the weight of each value
+     */
+    public LruCache(long maxWeight, long ttlMillis, Weigher<? super V> weigher) {
+        this.maxWeight = maxWeight;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.weigher = weigher;
+    }
+
+    /**
+     * @return the value for <code>key</code>, or null if it is absent or
+     *         expired
+     */
+    public synchronized V get(K key) {
+        Entry<V> e = map.get(key);
+        if (e != null && ttlNanos > 0 && System.nanoTime() - e.expiresAt > 0) {
+            remove(key);
+            e = null;
+        }
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return e.value;
+    }
+
+    /**
+     * Cache <code>value</code> under <code>key</code>, replacing any existing
+     * value. A value heavier than the maximum weight is not cached.
+     */
+    public synchronized void put(K key, V value) {
+        long w = weigher.weigh(value);
+        remove(key);
+        if (w > maxWeight)
+            return;
+
+        map.put(key, new Entry<V>(value, w, System.nanoTime() + ttlNanos));
+        weight += w;
+
+        Iterator<Map.Entry<K, Entry<V>>> it = map.entrySet().iterator();
+        while (weight > maxWeight && it.hasNext()) {
+            weight -= it.next().getValue().weight;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * @return the value removed, or null if there was none
+     */
+    public synchronized V remove(K key) {
+        Entry<V> e = map.remove(key);
+        if (e == null)
+            return null;
+        weight -= e.weight;
+        return e.value;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    /**
+     * Total weight of the cached values
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+}
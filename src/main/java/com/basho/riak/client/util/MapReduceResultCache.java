@@ -0,0 +1,161 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+
+import com.basho.riak.client.response.DefaultHttpResponse;
+import com.basho.riak.client.response.HttpResponse;
+import com.basho.riak.client.response.MapReduceResponse;
+
+/**
+ * Caches the results of map/reduce jobs by a fingerprint of the job, such as
+ * {@link com.basho.riak.client.request.MapReduceBuilder#getFingerprint()}.
+ * Each entry has its own time-to-live, and the cache is bounded by the total
+ * size of the cached results, evicting the least recently used
+ * entries. Concurrent submissions of a job which is not cached are coalesced
+ * into one request. Every caller receives its own copy of the results.
+ * <p>
+ * Only successful responses are cached. An entry keeps the status, headers
+ * and serialized results of the response, not the response itself, so the
+ * body of a cached response is its results as JSON.
+ */
+public class MapReduceResultCache {
+
+    private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+    private static class Entry {
+        final HttpResponse response;
+        final long expiresAt;
+
+        Entry(MapReduceResponse r, long expiresAt) {
+            byte[] results;
+            try {
+                results = r.getResults().toString().getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException("UTF-8 should always be supported", e);
+            }
+            this.response = new DefaultHttpResponse(r.getBucket(), r.getKey(), r.getStatusCode(),
+                                                    new HashMap<String, String>(r.getHttpHeaders()), results,
+                                                    null, null);
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired() {
+            return System.nanoTime() - expiresAt > 0;
+        }
+    }
+
+    private static final LruCache.Weigher<Entry> WEIGHER = new LruCache.Weigher<Entry>() {
+        public long weigh(Entry e) {
+            return ENTRY_OVERHEAD_BYTES + e.response.getBody().length;
+        }
+    };
+
+    private final LruCache<String, Entry> cache;
+    private final Coalescer<String, MapReduceResponse> coalescer = new Coalescer<String, MapReduceResponse>() {
+        @Override protected MapReduceResponse share(MapReduceResponse r) {
+            return r == null ? null : MapReduceResponse.copyOf(r);
+        }
+    };
+
+    /**
+     * @param maxBytes
+     *            Maximum total size of the cached results
+     */
+    public MapReduceResultCache(long maxBytes) {
+        cache = new LruCache<String, Entry>(maxBytes, 0, WEIGHER);
+    }
+
+    /**
+     * Return a copy of the cached response for <code>fingerprint</code> if
+     * there is one which has not expired. Otherwise run <code>job</code>, or
+     * wait for a run of the same job already in flight, and cache its
+     * response for <code>ttlMillis</code>.
+     * 
+     * @throws RuntimeException
+     *             Whatever unchecked exception <code>job</code> throws
+     */
+    public MapReduceResponse execute(final String fingerprint, final long ttlMillis,
+                                     final Callable<MapReduceResponse> job) {
+        MapReduceResponse cached = get(fingerprint);
+        if (cached != null)
+            return cached;
+
+        return coalescer.execute(fingerprint, new Callable<MapReduceResponse>() {
+            public MapReduceResponse call() throws Exception {
+                MapReduceResponse r = job.call();
+                if (r != null && r.isSuccess() && r.getResults() != null) {
+                    long expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+                    cache.put(fingerprint, new Entry(r, expiresAt));
+                }
+                return r;
+            }
+        });
+    }
+
+    /**
+     * @return a copy of the cached response for <code>fingerprint</code>, or
+     *         null if there is none or it has expired
+     */
+    public MapReduceResponse get(String fingerprint) {
+        Entry e = cache.get(fingerprint);
+        if (e == null)
+            return null;
+        if (e.isExpired()) {
+            cache.remove(fingerprint);
+            return null;
+        }
+        try {
+            return new MapReduceResponse(e.response);
+        } catch (JSONException ex) {
+            throw new IllegalStateException("Results should always be valid JSON", ex);
+        }
+    }
+
+    /**
+     * Discard the cached response for <code>fingerprint</code>, if any
+     */
+    public void invalidate(String fingerprint) {
+        cache.remove(fingerprint);
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Total size of the cached results
+     */
+    public long getWeight() {
+        return cache.getWeight();
+    }
+
+    public long getHits() {
+        return cache.getHits();
+    }
+
+    public long getMisses() {
+        return cache.getMisses();
+    }
+}
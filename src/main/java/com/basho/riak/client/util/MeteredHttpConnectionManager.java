@@ -0,0 +1,93 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+
+/**
+ * A {@link MultiThreadedHttpConnectionManager} which keeps live gauges of the
+ * connections leased from and idle in the pool, the number of requests
+ * waiting for a connection, and a histogram of the time spent waiting.
+ * {@link ClientUtils#newHttpClient(com.basho.riak.client.IRiakConfig)} uses
+ * this connection manager unless an HttpClient is provided in the config, so
+ * the metrics for a client can be retrieved with:
+ * 
+ * <pre>
+ * MeteredHttpConnectionManager m = (MeteredHttpConnectionManager) riak.getHttpClient().getHttpConnectionManager();
+ * </pre>
+ */
+public class MeteredHttpConnectionManager extends MultiThreadedHttpConnectionManager {
+
+    private final AtomicInteger leased = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Histogram waitTime = new Histogram();
+
+    @Override public HttpConnection getConnectionWithTimeout(HostConfiguration hostConfiguration, long timeout)
+            throws ConnectionPoolTimeoutException {
+        long start = System.nanoTime();
+        pending.incrementAndGet();
+        try {
+            HttpConnection conn = super.getConnectionWithTimeout(hostConfiguration, timeout);
+            leased.incrementAndGet();
+            return conn;
+        } finally {
+            pending.decrementAndGet();
+            waitTime.record((System.nanoTime() - start) / 1000);
+        }
+    }
+
+    @Override public void releaseConnection(HttpConnection conn) {
+        super.releaseConnection(conn);
+        if (leased.decrementAndGet() < 0) {
+            leased.incrementAndGet();
+        }
+    }
+
+    /**
+     * Number of connections currently checked out of the pool. Connections
+     * which are garbage collected without being released are not
+     * subtracted.
+     */
+    public int getLeasedConnections() {
+        return leased.get();
+    }
+
+    /**
+     * Number of open connections in the pool which are not checked out.
+     */
+    public int getIdleConnections() {
+        return Math.max(0, getConnectionsInPool() - leased.get());
+    }
+
+    /**
+     * Number of requests currently blocked waiting for a connection to
+     * become available.
+     */
+    public int getPendingRequests() {
+        return pending.get();
+    }
+
+    /**
+     * Time, in microseconds, that requests spent waiting to obtain a
+     * connection from the pool, including requests that timed out waiting.
+     */
+    public Histogram getConnectionWaitTime() {
+        return waitTime;
+    }
+}
@@ -17,6 +17,8 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -98,6 +100,173 @@ public class Multipart {
         return parts;
     }
 
+    /**
+     * Same as {@link Multipart#parse(Map, ByteBuffer)} over an entire byte
+     * array.
+     */
+    public static List<Multipart.Part> parse(Map<String, String> headers, byte[] body) {
+        if (body == null)
+            return null;
+        return parse(headers, ByteBuffer.wrap(body));
+    }
+
+    /**
+     * Parses a multipart message or a multipart subpart of a multipart message
+     * directly from its bytes. Unlike {@link Multipart#parse(Map, String)}, the
+     * body is never decoded into a String: boundaries are located with a
+     * Boyer-Moore-Horspool search and each part's body is a view over the same
+     * bytes rather than a copy, so binary values are returned intact. Part
+     * headers are decoded as ISO-8859-1, as HTTP headers are.
+     * 
+     * @param headers
+     *            The headers of the message, which contain the Content-Type
+     *            header including the boundary string
+     * @param body
+     *            The bytes between the buffer's position and limit are parsed.
+     *            The buffer's position is not changed.
+     * @return A list of the parts parsed into headers and body of this
+     *         multipart message, or null if the message has no boundary
+     */
+    public static List<Multipart.Part> parse(Map<String, String> headers, ByteBuffer body) {
+        if (headers == null || body == null || !body.hasRemaining())
+            return null;
+        if (headers.get(Constants.HDR_CONTENT_TYPE) == null)
+            return null;
+
+        String boundary = getBoundary(headers.get(Constants.HDR_CONTENT_TYPE));
+        if (boundary.length() == 0)
+            return null;
+
+        if (!body.hasArray()) {
+            ByteBuffer copy = ByteBuffer.allocate(body.remaining());
+            copy.put(body.duplicate());
+            copy.flip();
+            body = copy;
+        }
+
+        byte[] buf = body.array();
+        int begin = body.arrayOffset() + body.position();
+        int limit = body.arrayOffset() + body.limit();
+        byte[] delim = latin1Bytes("\r\n--" + boundary);
+        int[] skip = horspoolTable(delim);
+
+        // Treat a first boundary at the very start like the others by
+        // pretending it is preceded by "\r\n". That position can be -1, so
+        // whether a boundary was found is tracked separately.
+        int pos;
+        boolean found;
+        if (regionMatches(buf, begin, limit, delim, 2)) {
+            pos = begin - 2;
+            found = true;
+        } else {
+            pos = indexOf(buf, begin, limit, delim, skip);
+            found = pos != -1;
+        }
+
+        List<Part> parts = new ArrayList<Part>();
+        while (found && pos < limit) {
+            // first byte of part
+            int start = pos + delim.length;
+            // check for end boundary, which is (boundary + "--")
+            if (start + 1 < limit && buf[start] == '-' && buf[start + 1] == '-') {
+                break;
+            }
+
+            // last byte of part + 1
+            int end = indexOf(buf, start, limit, delim, skip);
+            if (end == -1) {
+                end = limit;
+            }
+
+            // end of header section + 1, which may overlap the next boundary
+            // if the part has no body
+            int headerEnd = indexOf(buf, start, Math.min(limit, end + HEADER_DELIM_BYTES.length), HEADER_DELIM_BYTES,
+                                    HEADER_DELIM_SKIP);
+            int bodyStart;
+            if (headerEnd == -1) {
+                headerEnd = end;
+                bodyStart = end;
+            } else {
+                bodyStart = Math.min(end, headerEnd + HEADER_DELIM_BYTES.length);
+                headerEnd = Math.min(end, headerEnd);
+            }
+
+            Map<String, String> partHeaders = parseHeaders(latin1String(buf, start, headerEnd - start));
+            ByteBuffer partBody = ByteBuffer.wrap(buf, bodyStart, end - bodyStart).slice();
+            parts.add(new Part(partHeaders, partBody));
+
+            pos = end;
+        }
+
+        return parts;
+    }
+
+    private static final byte[] HEADER_DELIM_BYTES = latin1Bytes(HEADER_DELIM);
+    private static final int[] HEADER_DELIM_SKIP = horspoolTable(HEADER_DELIM_BYTES);
+
+    /**
+     * Bad character shift table for a Boyer-Moore-Horspool search: how far the
+     * pattern can be moved along when the byte aligned with its last position
+     * is b.
+     */
+    static int[] horspoolTable(byte[] pattern) {
+        int[] skip = new int[256];
+        for (int i = 0; i < skip.length; i++) {
+            skip[i] = pattern.length;
+        }
+        for (int i = 0; i < pattern.length - 1; i++) {
+            skip[pattern[i] & 0xff] = pattern.length - 1 - i;
+        }
+        return skip;
+    }
+
+    /**
+     * Boyer-Moore-Horspool search for pattern within buf[from, to).
+     * 
+     * @return The index of the first match or -1 if there is none
+     */
+    static int indexOf(byte[] buf, int from, int to, byte[] pattern, int[] skip) {
+        int last = pattern.length - 1;
+        int i = from;
+        while (i + last < to) {
+            int j = last;
+            while (buf[i + j] == pattern[j]) {
+                if (j == 0)
+                    return i;
+                j--;
+            }
+            i += skip[buf[i + last] & 0xff];
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(byte[] buf, int from, int to, byte[] pattern, int patternOffset) {
+        int len = pattern.length - patternOffset;
+        if (to - from < len)
+            return false;
+        for (int i = 0; i < len; i++) {
+            if (buf[from + i] != pattern[patternOffset + i])
+                return false;
+        }
+        return true;
+    }
+
+    private static byte[] latin1Bytes(String s) {
+        try {
+            return s.getBytes("ISO-8859-1");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("ISO-8859-1 must be supported", e);
+        }
+    }
+
+    private static String latin1String(byte[] buf, int offset, int length) {
+        try {
+            return new String(buf, offset, length, "ISO-8859-1");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("ISO-8859-1 must be supported", e);
+        }
+    }
+
     /**
      * Parse a block of header lines as defined here:
      * 
@@ -149,6 +318,7 @@ public class Multipart {
     public static class Part {
         private Map<String, String> headers;
         private byte[] body;
+        private ByteBuffer buffer;
         private InputStream stream;
 
         public Part(Map<String, String> headers, byte[] body) {
@@ -156,6 +326,18 @@ public class Multipart {
             this.body = body;
         }
 
+        /**
+         * A part whose body is a view over a larger buffer, which must be
+         * backed by an array. The body is only copied out if
+         * {@link Part#getBody()} is called.
+         */
+        public Part(Map<String, String> headers, ByteBuffer body) {
+            if (body != null && !body.hasArray())
+                throw new IllegalArgumentException("body must be backed by an array");
+            this.headers = headers;
+            buffer = body;
+        }
+
         public Part(Map<String, String> headers, InputStream body) {
             this.headers = headers;
             stream = body;
@@ -172,7 +354,10 @@ public class Multipart {
          * Body of this part
          */
         public byte[] getBody() {
-            if (body == null && stream != null) {
+            if (body == null && buffer != null) {
+                body = new byte[buffer.remaining()];
+                buffer.duplicate().get(body);
+            } else if (body == null && stream != null) {
                 try {
                     ByteArrayOutputStream os = new ByteArrayOutputStream();
                     byte[] buffer = new byte[1024];
@@ -180,6 +365,7 @@ public class Multipart {
                         os.write(buffer, 0, readCount);
                     }
                     body = os.toByteArray();
+                    stream.close();
                 } catch (IOException e) { /* nop */}
                 stream = null;
             }
@@ -193,9 +379,27 @@ public class Multipart {
            return new String(body);
         }
 
+        /**
+         * Body of this part as a buffer. If the part was parsed from a byte
+         * array, the buffer is a view over that array rather than a copy, so
+         * it can be handed to {@link Multipart#parse(Map, ByteBuffer)} to parse
+         * a nested multipart message; it should not be modified.
+         */
+        public ByteBuffer getBodyBuffer() {
+            if (buffer != null)
+                return buffer.duplicate();
+            byte[] body = getBody();
+            if (body == null)
+                return null;
+            return ByteBuffer.wrap(body);
+        }
+
         public InputStream getStream() {
             if (stream == null && body != null) {
                 stream = new ByteArrayInputStream(body);
+            } else if (stream == null && buffer != null) {
+                stream = new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                                                  buffer.remaining());
             }
 
             return stream;
@@ -2,91 +2,197 @@ package com.basho.riak.client.util;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.UnsupportedEncodingException;
 
 /**
  * A wrapper that reads a single element an underlying {@link InputStream}
  * containing contains a delimited list
+ * <p>
+ * The underlying stream is read in blocks and scanned for the delimiter
+ * incrementally (Knuth-Morris-Pratt), so each byte is examined once no matter
+ * how the delimiter straddles block boundaries. Bytes that might be the start
+ * of the delimiter are held back until they are known to be data. If the
+ * underlying stream is a {@link PushbackInputStream}, bytes read past the
+ * delimiter are pushed back onto it so the next element can be read from the
+ * same stream; its pushback buffer must hold at least {@link #BLOCK_SIZE}
+ * bytes.
  * 
  * @author jlee <jonjlee@gmail.com>
  */
 public class OneTokenInputStream extends InputStream {
 
-    int maxBufferLen;
+    /** Maximum number of bytes requested from the underlying stream per read */
+    public static final int BLOCK_SIZE = 8192;
+
     InputStream impl;
+    byte[] delimiter;
+    int[] failure;
     boolean eof = false;
-    int pos = 0;
-    int dataLen = 0;
-    int bufOffset = 0;
-    StringBuilder buf = null;
-    String delimiter; 
+    boolean foundToken = false;
+
+    byte[] buf;
+    int start = 0;      // next byte to return
+    int safe = 0;       // end of the bytes known not to be part of the delimiter
+    int end = 0;        // end of the bytes read from impl
+    int matched = 0;    // length of the delimiter prefix ending at end
+    long tokenEnd = -1;
+    long consumed = 0;  // bytes read from impl before buf[end]
 
     public OneTokenInputStream(InputStream in, String delimiter) {
+        if (delimiter == null || delimiter.length() == 0)
+            throw new IllegalArgumentException("delimiter must not be empty");
         impl = in;
-        maxBufferLen = Math.max(1024, delimiter.length() * 2);
-        this.delimiter = delimiter;
+        try {
+            this.delimiter = delimiter.getBytes("ISO-8859-1");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("ISO-8859-1 must be supported", e);
+        }
+        failure = failureTable(this.delimiter);
+        buf = new byte[BLOCK_SIZE + this.delimiter.length];
     }
 
     @Override public int read() throws IOException {
-        while (!eof && pos >= dataLen) {
-            buffer();
-        }
-        if (pos >= dataLen)
+        if (!fill())
             return -1;
+        return buf[start++] & 0xff;
+    }
+
+    @Override public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off)
+            throw new IndexOutOfBoundsException();
+        if (len == 0)
+            return 0;
+        if (!fill())
+            return -1;
+
+        int n = Math.min(len, safe - start);
+        System.arraycopy(buf, start, b, off, n);
+        start += n;
+        return n;
+    }
 
-        char c = buf.charAt(pos - bufOffset);
-        pos++;
-        return c;
+    @Override public int available() {
+        return safe - start;
     }
 
     @Override public void close() throws IOException {
-        impl.close();
+        if (impl != null) {
+            impl.close();
+        }
         impl = null;
         eof = true;
+        start = safe = end = 0;
     }
-    
+
+    /**
+     * @return true once the delimiter has been found or the underlying stream
+     *         is exhausted, i.e. no more bytes will be read from it.
+     */
     public boolean done() {
         return eof;
     }
-    
-    private void buffer() throws IOException {
-        if (eof)
-            return;
 
-        if (buf == null) {
-            initBuffer();
+    /**
+     * @return true if reading stopped because the delimiter was found rather
+     *         than because the underlying stream ended.
+     */
+    public boolean foundToken() {
+        return foundToken;
+    }
+
+    /**
+     * @return the number of bytes consumed from the underlying stream up to
+     *         and including the delimiter, or -1 if the delimiter has not been
+     *         found (yet).
+     */
+    public long getTokenEnd() {
+        return tokenEnd;
+    }
+
+    /**
+     * Read blocks from the underlying stream until there is data to return
+     * or the element has ended.
+     * 
+     * @return true if there is data available in buf
+     */
+    private boolean fill() throws IOException {
+        while (start == safe) {
+            if (eof)
+                return false;
+            readBlock();
         }
-        if (!eof) {
-            int c = impl.read();
-            if (c == -1) {
-                dataLen = buf.length();
+        return true;
+    }
+
+    private void readBlock() throws IOException {
+        // keep only the held back partial match
+        if (start > 0) {
+            System.arraycopy(buf, start, buf, 0, end - start);
+            safe -= start;
+            end -= start;
+            start = 0;
+        }
+
+        int n = impl.read(buf, end, BLOCK_SIZE);
+        if (n == -1) {
+            // a partial match at the end of the stream is just data
+            safe = end;
+            eof = true;
+            return;
+        }
+
+        int limit = end + n;
+        for (int i = end; i < limit; i++) {
+            matched = step(matched, buf[i]);
+            if (matched == delimiter.length) {
+                int tokenStart = i + 1 - delimiter.length;
+                pushBack(i + 1, limit - (i + 1));
+                tokenEnd = consumed + (i + 1 - end);
+                safe = end = tokenStart;
+                foundToken = true;
                 eof = true;
-            } else {
-                buf.append((char) c);
-                if (buf.length() > maxBufferLen) {
-                    bufOffset += buf.length() - delimiter.length();
-                    buf.delete(0, buf.length() - delimiter.length());
-                }
-                if (buf.indexOf(delimiter) >= 0) {
-                    eof = true;
-                } else {
-                    dataLen++;
-                }
+                return;
             }
         }
+        consumed += n;
+        end = limit;
+        safe = end - matched;
     }
-    
-    private void initBuffer() throws IOException {
-        byte[] headStart = new byte[delimiter.length() - 1];
-        int offset = 0;
-        while (offset < headStart.length) {
-            int bytesRead = impl.read(headStart, offset, headStart.length - offset);
-            if (bytesRead == -1) {
-                eof = true;
-                return;
-            } else {
-                offset += bytesRead;
+
+    private int step(int matched, byte b) {
+        while (matched > 0 && delimiter[matched] != b) {
+            matched = failure[matched - 1];
+        }
+        if (delimiter[matched] == b) {
+            matched++;
+        }
+        return matched;
+    }
+
+    private void pushBack(int off, int len) throws IOException {
+        if (len > 0 && impl instanceof PushbackInputStream) {
+            ((PushbackInputStream) impl).unread(buf, off, len);
+        }
+    }
+
+    /**
+     * @return the KMP failure table for pattern: entry i is the length of the
+     *         longest proper prefix of pattern[0..i] that is also a suffix of
+     *         it.
+     */
+    static int[] failureTable(byte[] pattern) {
+        int[] failure = new int[pattern.length];
+        int k = 0;
+        for (int i = 1; i < pattern.length; i++) {
+            while (k > 0 && pattern[k] != pattern[i]) {
+                k = failure[k - 1];
+            }
+            if (pattern[k] == pattern[i]) {
+                k++;
             }
+            failure[i] = k;
         }
-        buf = new StringBuilder(new String(headStart));
+        return failure;
     }
 }
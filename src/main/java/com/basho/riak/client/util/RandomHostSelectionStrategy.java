@@ -0,0 +1,35 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.httpclient.HostConfiguration;
+
+/**
+ * Sends each request to a host chosen uniformly at random.
+ */
+public class RandomHostSelectionStrategy implements HostSelectionStrategy {
+
+    private final Random random = new Random();
+
+    public HostConfiguration select(List<HostConfiguration> hosts) {
+        return hosts.get(random.nextInt(hosts.size()));
+    }
+
+    public void requestStarted(HostConfiguration host) { /* nop */}
+
+    public void requestCompleted(HostConfiguration host, long elapsedNanos, boolean failed) { /* nop */}
+}
@@ -1,8 +1,13 @@
 package com.basho.riak.client.util;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.io.UnsupportedEncodingException;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -11,10 +16,13 @@ import com.basho.riak.client.util.Multipart.Part;
 public class StreamedMultipart implements Iterator<Part> {
 
     Map<String, String> headers = null;
-    BranchableInputStream stream;
+    PushbackInputStream stream;
     String boundary;
     boolean foundNext = false;
+    boolean finished = false;
+    OneTokenInputStream currentPart = null;
     BranchableInputStream currentPartStream = null;
+    ChunkPool chunks = new ChunkPool();
 
     /**
      * Parses a multipart message or a multipart subpart of a multipart message.
@@ -24,6 +32,12 @@ public class StreamedMultipart implements Iterator<Part> {
      * InputStream does not need to be consumed before proceed to the next part.
      * If it is not consumed, it will be buffered in memory and accessible
      * later.
+     * <p>
+     * stream is read in blocks of up to {@link OneTokenInputStream#BLOCK_SIZE}
+     * bytes; bytes read ahead of a boundary are pushed back and handed to the
+     * next part. Part bodies are buffered in chunks drawn from a pool shared
+     * by the parts of this message; a chunk goes back to the pool once the
+     * part's stream has been read past it or closed.
      * 
      * @param headers
      *            The headers from the original message, which contains the
@@ -42,32 +56,64 @@ public class StreamedMultipart implements Iterator<Part> {
 
         String initialBoundary = "--" + Multipart.getBoundary(headers.get(Constants.HDR_CONTENT_TYPE));
         String boundary = "\r\n" + initialBoundary;
+        PushbackInputStream source = new SharedPushbackInputStream(stream, OneTokenInputStream.BLOCK_SIZE);
 
         // Find the first boundary, ignoring everything preceding it
-        StringBuilder sb = new StringBuilder();
-        while (true) {
-            int c = stream.read();
-            if (c == -1)
+        if (!skipIfNext(source, latin1(initialBoundary))) {
+            OneTokenInputStream preamble = new OneTokenInputStream(source, boundary);
+            drain(preamble);
+            if (!preamble.foundToken())
                 throw new EOFException();
-            sb.append((char) c);
-            if ((sb.length() == initialBoundary.length() && initialBoundary.equals(sb.toString())) ||
-                (sb.indexOf(boundary, sb.length() - boundary.length()) >= 0)) {
-                finishReadingLine(stream);
-                break;
-            }
         }
+        finishReadingLine(source);
 
         this.headers = headers;
         this.boundary = boundary;
-        this.stream = new BranchableInputStream(new OneTokenInputStream(stream, boundary + "--"));
+        this.stream = source;
     }
 
-    private void finishReadingLine(InputStream in) throws IOException {
+    /**
+     * Consume the rest of the current line including the newline
+     */
+    private void finishReadingLine(PushbackInputStream in) throws IOException {
+        byte[] block = new byte[OneTokenInputStream.BLOCK_SIZE];
         while (true) {
-            int c = in.read();
-            if (c == -1 || c == '\n')
+            int n = in.read(block, 0, block.length);
+            if (n == -1)
+                return;
+            for (int i = 0; i < n; i++) {
+                if (block[i] == '\n') {
+                    in.unread(block, i + 1, n - (i + 1));
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Consume expected from in if it comes next; otherwise leave in untouched.
+     */
+    private boolean skipIfNext(PushbackInputStream in, byte[] expected) throws IOException {
+        byte[] actual = new byte[expected.length];
+        int len = 0;
+        while (len < actual.length) {
+            int n = in.read(actual, len, actual.length - len);
+            if (n == -1)
                 break;
+            len += n;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (i >= len || actual[i] != expected[i]) {
+                in.unread(actual, 0, len);
+                return false;
+            }
         }
+        return true;
+    }
+
+    private void drain(InputStream in) throws IOException {
+        byte[] block = new byte[OneTokenInputStream.BLOCK_SIZE];
+        while (in.read(block, 0, block.length) != -1) { /* nop */}
     }
 
     /**
@@ -108,41 +154,58 @@ public class StreamedMultipart implements Iterator<Part> {
             return null;
         foundNext = false;
 
-        String headerBlock = null;
+        ByteArrayOutputStream headerBlock = new ByteArrayOutputStream();
+        InputStream body = null;
         try {
-            headerBlock = readHeaderBlock(currentPartStream);
+            body = readHeaderBlock(currentPart, headerBlock);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
-        Map<String, String> headers = Multipart.parseHeaders(headerBlock);
+        Map<String, String> headers = Multipart.parseHeaders(latin1(headerBlock.toByteArray()));
+        currentPartStream = new BranchableInputStream(body, chunks);
         return new Part(headers, currentPartStream.branch());
     }
 
     public void remove() { /* nop */}
 
     /**
-     * Move this.currentPartStream to the next part in the entity
+     * Move this.currentPart to the next part in the entity
      * 
      * @return true if there is another part was found
      * 
      * @throws IOException
      */
     private boolean findNext() throws IOException {
-        if (currentPartStream != null) {
-            InputStream is = currentPartStream.branch();
-            try {
-                while (is.read() != -1) { /* nop */}    // advance stream to end of next boundary 
-                finishReadingLine(stream);              // and consume the rest of the boundary line including the newline
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+        if (finished)
+            return false;
+
+        if (currentPart != null) {
+            // buffer whatever the caller hasn't read of the current part,
+            // which advances the stream to the end of the next boundary
+            if (currentPartStream != null) {
+                currentPartStream.bufferAll();
+            } else {
+                drain(currentPart);
+            }
+            currentPartStream = null;
+
+            if (!currentPart.foundToken() || skipIfNext(stream, latin1("--"))) {
+                finished = true;
+                return false;
             }
+            finishReadingLine(stream);
         }
-        if (stream.peek() != -1) {
-            currentPartStream = new BranchableInputStream(new OneTokenInputStream(stream.branch(), boundary));
-            return true;
+
+        int c = stream.read();
+        if (c == -1) {
+            finished = true;
+            return false;
         }
-        return false;
+        stream.unread(c);
+
+        currentPart = new OneTokenInputStream(stream, boundary);
+        return true;
     }
 
     /**
@@ -151,23 +214,60 @@ public class StreamedMultipart implements Iterator<Part> {
      * 
      * @param in
      *            Stream to read header block from
+     * @param headers
+     *            Receives the header block
      * 
-     * @return String containing the header block
+     * @return A stream of the remainder of in, i.e. the part body
      */
-    private String readHeaderBlock(InputStream in) throws IOException {
-        StringBuilder headers = new StringBuilder();
+    private InputStream readHeaderBlock(InputStream in, ByteArrayOutputStream headers) throws IOException {
+        byte[] block = new byte[OneTokenInputStream.BLOCK_SIZE];
         boolean currentLineEmpty = true;
         while (true) {
-            int c = in.read();
-            if (c == -1 || (currentLineEmpty && c == '\n')) {
-                break;
-            } else if (c == '\n') {
-                currentLineEmpty = true;
-            } else if (c != '\r' && c != '\n') {
-                currentLineEmpty = false;
+            int n = in.read(block, 0, block.length);
+            if (n == -1)
+                return new ByteArrayInputStream(new byte[0]);
+
+            for (int i = 0; i < n; i++) {
+                byte c = block[i];
+                if (currentLineEmpty && c == '\n') {
+                    headers.write(block, 0, i);
+                    InputStream rest = new ByteArrayInputStream(block, i + 1, n - (i + 1));
+                    return new SequenceInputStream(rest, in);
+                } else if (c == '\n') {
+                    currentLineEmpty = true;
+                } else if (c != '\r') {
+                    currentLineEmpty = false;
+                }
             }
-            headers.append((char) c);
+            headers.write(block, 0, n);
         }
-        return headers.toString();
     }
-}
\ No newline at end of file
+
+    private static byte[] latin1(String s) {
+        try {
+            return s.getBytes("ISO-8859-1");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("ISO-8859-1 must be supported", e);
+        }
+    }
+
+    private static String latin1(byte[] b) {
+        try {
+            return new String(b, "ISO-8859-1");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("ISO-8859-1 must be supported", e);
+        }
+    }
+
+    /**
+     * Every part reads from the same underlying stream, so closing a part must
+     * not close the message.
+     */
+    static class SharedPushbackInputStream extends PushbackInputStream {
+        SharedPushbackInputStream(InputStream in, int size) {
+            super(in, size);
+        }
+
+        @Override public void close() { /* nop */}
+    }
+}
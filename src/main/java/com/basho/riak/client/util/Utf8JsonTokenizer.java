@@ -0,0 +1,323 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.json.JSONException;
+
+/**
+ * A minimal JSON tokenizer which works directly on a UTF-8 encoded byte
+ * stream. Unlike {@link org.json.JSONTokener} over an InputStreamReader, there
+ * is no charset decoder or Reader in between: the stream is read in blocks and
+ * structural characters are matched as bytes. Only string values are decoded
+ * to Java Strings; other values can be skipped without being materialized.
+ * <p>
+ * This class is NOT thread-safe.
+ */
+public class Utf8JsonTokenizer {
+
+    public static final int BUFFER_SIZE = 8192;
+
+    private InputStream in;
+    private byte[] buf;
+    private int pos = 0;
+    private int lim = 0;
+    private char[] chars = new char[64];
+    private int charLen = 0;
+
+    public Utf8JsonTokenizer(InputStream in) {
+        this(in, BUFFER_SIZE);
+    }
+
+    public Utf8JsonTokenizer(InputStream in, int bufferSize) {
+        if (in == null)
+            throw new IllegalArgumentException("in must not be null");
+        this.in = in;
+        buf = new byte[bufferSize];
+    }
+
+    /**
+     * @return the next byte in the stream, or -1 at the end of the stream
+     */
+    public int next() throws IOException {
+        if (pos == lim && !fill())
+            return -1;
+        return buf[pos++] & 0xff;
+    }
+
+    /**
+     * Step back one byte. Only valid directly after {@link #next()} or
+     * {@link #nextClean()} returned something other than -1.
+     */
+    public void back() {
+        if (pos > 0) {
+            pos--;
+        }
+    }
+
+    /**
+     * @return the next byte which is not JSON whitespace, or -1 at the end of
+     *         the stream
+     */
+    public int nextClean() throws IOException {
+        while (true) {
+            int c = next();
+            if (c != ' ' && c != '\t' && c != '\r' && c != '\n')
+                return c;
+        }
+    }
+
+    /**
+     * Read the rest of a string whose opening quote has already been consumed,
+     * decoding UTF-8 and escape sequences.
+     * 
+     * @throws JSONException
+     *             If the stream ends before the closing quote or an escape is
+     *             malformed
+     */
+    public String nextString() throws IOException, JSONException {
+        charLen = 0;
+        while (true) {
+            // fast path for runs of plain ASCII already in the buffer
+            while (pos < lim) {
+                byte b = buf[pos];
+                if (b == '"' || b == '\\' || b < 0)
+                    break;
+                append((char) b);
+                pos++;
+            }
+
+            int c = next();
+            if (c == -1)
+                throw new JSONException("Unterminated string");
+            if (c == '"')
+                return new String(chars, 0, charLen);
+            if (c == '\\') {
+                appendEscape();
+            } else if (c >= 0x80) {
+                appendMultiByte(c);
+            } else {
+                append((char) c);
+            }
+        }
+    }
+
+    /**
+     * Read the rest of a number whose first character has already been
+     * consumed into the internal character buffer, see {@link #chars()}.
+     * 
+     * @return the number of characters in the number
+     */
+    int readNumber(int first) throws IOException {
+        charLen = 0;
+        append((char) first);
+        while (true) {
+            int c = next();
+            if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+                append((char) c);
+            } else {
+                if (c != -1) {
+                    back();
+                }
+                return charLen;
+            }
+        }
+    }
+
+    /**
+     * The characters read by the last call to {@link #readNumber(int)}
+     */
+    char[] chars() {
+        return chars;
+    }
+
+    /**
+     * Skip the next value (string, number, literal, object or array) without
+     * decoding it.
+     * 
+     * @throws JSONException
+     *             If the stream ends in the middle of the value
+     */
+    public void skipValue() throws IOException, JSONException {
+        int c = nextClean();
+        if (c == -1)
+            throw new JSONException("Expected a value");
+
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            skipRest();
+        } else {
+            while (true) {
+                c = next();
+                if (c == -1)
+                    return;
+                if (c == ',' || c == '}' || c == ']' || c == ':' || c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                    back();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Skip the rest of an object or array whose opening bracket has already
+     * been consumed, up to and including the matching closing bracket.
+     * 
+     * @throws JSONException
+     *             If the stream ends first
+     */
+    public void skipRest() throws IOException, JSONException {
+        int depth = 1;
+        while (depth > 0) {
+            int c = next();
+            if (c == -1)
+                throw new JSONException("Unterminated object or array");
+            if (c == '"') {
+                skipString();
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Release the underlying stream
+     */
+    public void close() throws IOException {
+        if (in != null) {
+            in.close();
+        }
+        in = null;
+        pos = lim = 0;
+    }
+
+    private boolean fill() throws IOException {
+        if (in == null)
+            return false;
+        int n = in.read(buf, 0, buf.length);
+        while (n == 0) {
+            n = in.read(buf, 0, buf.length);
+        }
+        if (n < 0)
+            return false;
+        pos = 0;
+        lim = n;
+        return true;
+    }
+
+    private void skipString() throws IOException, JSONException {
+        while (true) {
+            int c = next();
+            if (c == -1)
+                throw new JSONException("Unterminated string");
+            if (c == '"')
+                return;
+            if (c == '\\') {
+                next();
+            }
+        }
+    }
+
+    private void appendEscape() throws IOException, JSONException {
+        int c = next();
+        switch (c) {
+        case 'b':
+            append('\b');
+            break;
+        case 't':
+            append('\t');
+            break;
+        case 'n':
+            append('\n');
+            break;
+        case 'f':
+            append('\f');
+            break;
+        case 'r':
+            append('\r');
+            break;
+        case 'u':
+            int cp = 0;
+            for (int i = 0; i < 4; i++) {
+                int d = Character.digit(next(), 16);
+                if (d < 0)
+                    throw new JSONException("Illegal \\u escape");
+                cp = (cp << 4) | d;
+            }
+            append((char) cp);
+            break;
+        case -1:
+            throw new JSONException("Unterminated string");
+        default:
+            // \" \\ \/ and, leniently, anything else
+            append((char) c);
+        }
+    }
+
+    private void appendMultiByte(int lead) throws IOException {
+        int extra;
+        int cp;
+        if (lead >= 0xf8) {
+            append('\ufffd');
+            return;
+        } else if (lead >= 0xf0) {
+            extra = 3;
+            cp = lead & 0x07;
+        } else if (lead >= 0xe0) {
+            extra = 2;
+            cp = lead & 0x0f;
+        } else if (lead >= 0xc0) {
+            extra = 1;
+            cp = lead & 0x1f;
+        } else {
+            // stray continuation byte
+            append('\ufffd');
+            return;
+        }
+
+        for (int i = 0; i < extra; i++) {
+            int c = next();
+            if ((c & 0xc0) != 0x80) {
+                if (c != -1) {
+                    back();
+                }
+                append('\ufffd');
+                return;
+            }
+            cp = (cp << 6) | (c & 0x3f);
+        }
+
+        if (cp >= 0x10000) {
+            cp -= 0x10000;
+            append((char) (0xd800 + (cp >> 10)));
+            append((char) (0xdc00 + (cp & 0x3ff)));
+        } else {
+            append((char) cp);
+        }
+    }
+
+    private void append(char c) {
+        if (charLen == chars.length) {
+            char[] grown = new char[chars.length * 2];
+            System.arraycopy(chars, 0, grown, 0, charLen);
+            chars = grown;
+        }
+        chars[charLen++] = c;
+    }
+}
@@ -17,28 +17,51 @@ import static org.junit.Assert.*;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.hamcrest.BaseMatcher;
+import org.hamcrest.Description;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
+import com.basho.riak.client.mapreduce.JavascriptFunction;
+import com.basho.riak.client.request.MapReduceBuilder;
+import com.basho.riak.client.request.MapReduceRequestEntity;
 import com.basho.riak.client.request.RequestMeta;
 import com.basho.riak.client.request.RiakWalkSpec;
+import com.basho.riak.client.response.BulkFetchResponse;
+import com.basho.riak.client.response.DefaultHttpResponse;
 import com.basho.riak.client.response.FetchResponse;
 import com.basho.riak.client.response.HttpResponse;
+import com.basho.riak.client.response.MapReduceResponse;
 import com.basho.riak.client.response.RiakResponseRuntimeException;
+import com.basho.riak.client.response.ShardedMapReduceResponse;
 import com.basho.riak.client.response.StreamHandler;
 import com.basho.riak.client.response.WalkResponse;
 import com.basho.riak.client.util.ClientHelper;
 import com.basho.riak.client.util.Constants;
+import com.basho.riak.client.util.DiskKeySet;
 
 public class TestRiakClient {
 
@@ -184,6 +207,84 @@ public class TestRiakClient {
         reset(mockHelper);
     }
     
+    @Test public void builder_submits_job_as_streaming_entity() {
+        when(mockHelper.mapReduce(any(RequestEntity.class), same(meta), eq(false))).thenReturn(mockHttpResponse);
+        MapReduceBuilder builder = impl.mapReduceOverBucket(bucket);
+        ArgumentCaptor<RequestEntity> entity = ArgumentCaptor.forClass(RequestEntity.class);
+
+        try {
+            builder.submit(meta);
+        } catch (RuntimeException e) { /* response is a mock */ }
+
+        verify(mockHelper).mapReduce(entity.capture(), same(meta), eq(false));
+        assertSame(builder, ((MapReduceRequestEntity) entity.getValue()).getJob());
+    }
+
+    @Test public void sharded_builder_submits_sub_jobs_and_merges_results() {
+        when(mockHelper.mapReduce(any(RequestEntity.class), any(RequestMeta.class), eq(false))).thenAnswer(new Answer<HttpResponse>() {
+            public HttpResponse answer(InvocationOnMock invocation) throws Throwable {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ((RequestEntity) invocation.getArguments()[0]).writeRequest(out);
+                JSONArray inputs = new JSONObject(out.toString("UTF-8")).getJSONArray("inputs");
+                JSONArray keys = new JSONArray();
+                for (int i = 0; i < inputs.length(); i++) {
+                    keys.put(inputs.getJSONArray(i).getString(1));
+                }
+                return new DefaultHttpResponse(null, null, 200, null, keys.toString().getBytes(), null, null);
+            }
+        });
+        MapReduceBuilder builder = new MapReduceBuilder(impl).setInputs(bucket, Arrays.asList("k0", "k1", "k2"));
+        builder.map(JavascriptFunction.named("Riak.mapValuesJson"), true).setShards(2);
+
+        MapReduceResponse r = builder.submit(null);
+
+        verify(mockHelper, times(2)).mapReduce(any(RequestEntity.class), any(RequestMeta.class), eq(false));
+        assertTrue(r.isSuccess());
+        Set<String> results = new HashSet<String>();
+        for (int i = 0; i < r.getResults().length(); i++) {
+            results.add(r.getResults().optString(i));
+        }
+        assertEquals(new HashSet<String>(Arrays.asList("k0", "k1", "k2")), results);
+        assertEquals(2, ((ShardedMapReduceResponse) r).getShardResponses().size());
+    }
+
+    @Test public void cached_builder_jobs_are_submitted_once_per_ttl() {
+        RiakConfig config = new RiakConfig("http://localhost:8098/riak");
+        config.setMapReduceCacheMaxBytes(1024L * 1024);
+        when(mockHelper.getConfig()).thenReturn(config);
+        when(mockHelper.mapReduce(any(RequestEntity.class), any(RequestMeta.class), eq(false))).thenAnswer(new Answer<HttpResponse>() {
+            public HttpResponse answer(InvocationOnMock invocation) throws Throwable {
+                return new DefaultHttpResponse(null, null, 200, null, "[1]".getBytes(), null, null);
+            }
+        });
+        impl = new RiakClient(mockHelper);
+
+        for (int i = 0; i < 3; i++) {
+            MapReduceResponse r = impl.mapReduceOverBucket(bucket).map(JavascriptFunction.named("Riak.mapValuesJson"), true)
+                                      .setCacheTtl(60000).submit(null);
+            assertEquals("[1]", r.getResults().toString());
+        }
+        impl.mapReduceOverBucket(bucket).map(JavascriptFunction.named("Riak.mapValuesJson"), true).submit(null);
+
+        verify(mockHelper, times(2)).mapReduce(any(RequestEntity.class), any(RequestMeta.class), eq(false));
+    }
+
+    @Test public void bulkFetch_submits_object_map_job_over_keys() throws JSONException {
+        Map<String, Set<String>> objects = new HashMap<String, Set<String>>();
+        objects.put(bucket, new HashSet<String>(Arrays.asList(key)));
+        ArgumentCaptor<String> job = ArgumentCaptor.forClass(String.class);
+
+        impl.bulkFetch(objects, meta);
+
+        verify(mockHelper).mapReduce(job.capture(), same(meta));
+        JSONObject json = new JSONObject(job.getValue());
+        assertEquals(bucket, json.getJSONArray("inputs").getJSONArray(0).getString(0));
+        assertEquals(key, json.getJSONArray("inputs").getJSONArray(0).getString(1));
+        JSONObject map = json.getJSONArray("query").getJSONObject(0).getJSONObject("map");
+        assertEquals(BulkFetchResponse.MAP_OBJECT.toJson().getString("source"), map.getString("source"));
+        assertTrue(map.getBoolean("keep"));
+    }
+
     @Test public void setBucketSchema_puts_schema_in_props_field() {
         final JSONObject mockJSONObject = mock(JSONObject.class);
         
@@ -266,4 +367,181 @@ public class TestRiakClient {
 
         assertSame(impl, r.getSteps().get(0).get(0).getRiakClient());
    }
-}
\ No newline at end of file
+
+    @Test public void concurrent_identical_fetches_are_coalesced() throws Exception {
+        RiakConfig config = new RiakConfig();
+        config.setCoalesceFetches(true);
+        when(mockHelper.getConfig()).thenReturn(config);
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(mockHelper.fetch(eq(bucket), eq(key), any(RequestMeta.class), eq(false))).thenAnswer(new Answer<HttpResponse>() {
+            public HttpResponse answer(InvocationOnMock invocation) throws Throwable {
+                entered.countDown();
+                release.await();
+                return new DefaultHttpResponse(bucket, key, 200, new HashMap<String, String>(), "v".getBytes(), null, null);
+            }
+        });
+
+        final List<FetchResponse> results = new ArrayList<FetchResponse>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 3; i++) {
+            threads.add(new Thread() {
+                @Override public void run() {
+                    FetchResponse r = impl.fetch(bucket, key);
+                    synchronized (results) {
+                        results.add(r);
+                    }
+                }
+            });
+        }
+        threads.get(0).start();
+        entered.await();
+        threads.get(1).start();
+        threads.get(2).start();
+        for (Thread t : threads) {
+            for (int i = 0; i < 500 && t.getState() != Thread.State.WAITING; i++) {
+                Thread.sleep(10);
+            }
+        }
+        release.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        verify(mockHelper, times(1)).fetch(eq(bucket), eq(key), any(RequestMeta.class), eq(false));
+        assertEquals(3, results.size());
+        assertNotSame(results.get(0).getObject(), results.get(1).getObject());
+        assertNotSame(results.get(1).getObject(), results.get(2).getObject());
+        for (FetchResponse r : results) {
+            assertEquals("v", r.getObject().getValue());
+        }
+    }
+
+    @Test public void fetches_with_different_params_are_not_coalesced() {
+        assertFalse(RiakClient.coalescingKey("GET", bucket, key, RequestMeta.readParams(1)).equals(
+                    RiakClient.coalescingKey("GET", bucket, key, RequestMeta.readParams(2))));
+        assertFalse(RiakClient.coalescingKey("GET", bucket, key, null).equals(
+                    RiakClient.coalescingKey("HEAD", bucket, key, null)));
+        assertEquals(RiakClient.coalescingKey("GET", bucket, key, new RequestMeta().setHeader("a", "1").setHeader("b", "2")),
+                     RiakClient.coalescingKey("GET", bucket, key, new RequestMeta().setHeader("b", "2").setHeader("a", "1")));
+    }
+
+    @Test public void cached_objects_are_revalidated_with_vtag() {
+        RiakConfig config = new RiakConfig();
+        config.setObjectCacheMaxBytes(1024L);
+        when(mockHelper.getConfig()).thenReturn(config);
+        impl = new RiakClient(mockHelper);
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put(Constants.HDR_ETAG, "vtag1");
+        when(mockHelper.fetch(eq(bucket), eq(key), any(RequestMeta.class), eq(false)))
+            .thenReturn(new DefaultHttpResponse(bucket, key, 200, headers, "v".getBytes(), null, null))
+            .thenReturn(new DefaultHttpResponse(bucket, key, 304, new HashMap<String, String>(), null, null, null));
+
+        FetchResponse first = impl.fetch(bucket, key);
+        FetchResponse second = impl.fetch(bucket, key);
+
+        assertEquals(1, impl.getObjectCache().size());
+        assertEquals("v", second.getObject().getValue());
+        assertEquals("vtag1", second.getObject().getVtag());
+        assertNotSame(first.getObject(), second.getObject());
+        verify(mockHelper).fetch(eq(bucket), eq(key), argThat(new BaseMatcher<RequestMeta>() {
+            public boolean matches(Object o) {
+                return "vtag1".equals(((RequestMeta) o).getIfNoneMatch());
+            }
+            public void describeTo(Description d) {
+                d.appendText("If-None-Match: vtag1");
+            }
+        }), eq(false));
+    }
+
+    @Test public void store_and_delete_invalidate_cached_objects() {
+        RiakConfig config = new RiakConfig();
+        config.setObjectCacheMaxBytes(1024L);
+        when(mockHelper.getConfig()).thenReturn(config);
+        impl = new RiakClient(mockHelper);
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put(Constants.HDR_ETAG, "vtag1");
+        when(mockHelper.fetch(eq(bucket), eq(key), any(RequestMeta.class), eq(false)))
+            .thenReturn(new DefaultHttpResponse(bucket, key, 200, headers, "v".getBytes(), null, null));
+        when(object.getBucket()).thenReturn(bucket);
+        when(object.getKey()).thenReturn(key);
+
+        impl.fetch(bucket, key);
+        assertEquals(1, impl.getObjectCache().size());
+        impl.store(object, null);
+        assertEquals(0, impl.getObjectCache().size());
+
+        impl.fetch(bucket, key);
+        assertEquals(1, impl.getObjectCache().size());
+        impl.delete(bucket, key);
+        assertEquals(0, impl.getObjectCache().size());
+    }
+
+    @Test public void not_found_keys_are_remembered_until_stored() {
+        RiakConfig config = new RiakConfig();
+        config.setNegativeCacheSize(10);
+        when(mockHelper.getConfig()).thenReturn(config);
+        impl = new RiakClient(mockHelper);
+        when(mockHelper.fetch(eq(bucket), eq(key), any(RequestMeta.class), eq(false)))
+            .thenReturn(new DefaultHttpResponse(bucket, key, 404, new HashMap<String, String>(), null, null, null));
+        when(object.getBucket()).thenReturn(bucket);
+        when(object.getKey()).thenReturn(key);
+
+        assertEquals(404, impl.fetch(bucket, key).getStatusCode());
+        assertEquals(404, impl.fetch(bucket, key).getStatusCode());
+        assertEquals(404, impl.fetchMeta(bucket, key).getStatusCode());
+        verify(mockHelper, times(1)).fetch(eq(bucket), eq(key), any(RequestMeta.class), eq(false));
+        verify(mockHelper, never()).fetchMeta(anyString(), anyString(), any(RequestMeta.class));
+
+        impl.store(object, null);
+        impl.fetch(bucket, key);
+        verify(mockHelper, times(2)).fetch(eq(bucket), eq(key), any(RequestMeta.class), eq(false));
+    }
+
+    @Test public void bloom_filter_skips_fetches_of_missing_keys() {
+        when(mockHelper.listBucket(eq(bucket), any(RequestMeta.class), eq(true)))
+            .thenReturn(new DefaultHttpResponse(bucket, null, 200, new HashMap<String, String>(), null,
+                                                new ByteArrayInputStream("{\"props\":{}}{\"keys\":[\"a\",\"b\"]}{\"keys\":[]}".getBytes()), null));
+        when(mockHelper.fetch(anyString(), anyString(), any(RequestMeta.class), eq(false)))
+            .thenReturn(new DefaultHttpResponse(bucket, "a", 200, new HashMap<String, String>(), "v".getBytes(), null, null));
+        when(object.getBucket()).thenReturn(bucket);
+        when(object.getKey()).thenReturn("c");
+
+        assertNotNull(impl.enableBloomFilter(bucket, 100, 0.001));
+
+        assertEquals(200, impl.fetch(bucket, "a").getStatusCode());
+        assertEquals(404, impl.fetch(bucket, "missing").getStatusCode());
+        verify(mockHelper, never()).fetch(eq(bucket), eq("missing"), any(RequestMeta.class), anyBoolean());
+
+        impl.store(object, null);
+        impl.fetch(bucket, "c");
+        verify(mockHelper).fetch(eq(bucket), eq("c"), any(RequestMeta.class), eq(false));
+    }
+
+    @Test public void streamKeys_iterates_streamed_listing() {
+        when(mockHelper.listBucket(eq(bucket), same(meta), eq(true)))
+            .thenReturn(new DefaultHttpResponse(bucket, null, 200, new HashMap<String, String>(), null,
+                                                new ByteArrayInputStream("{\"props\":{}}{\"keys\":[\"a\",\"b\"]}".getBytes()), null));
+
+        Iterator<String> keys = impl.streamKeys(bucket, meta).iterator();
+        assertEquals("a", keys.next());
+        assertEquals("b", keys.next());
+        assertFalse(keys.hasNext());
+    }
+
+    @Test public void listBucketToDisk_spills_sorted_keys() throws IOException {
+        when(mockHelper.listBucket(eq(bucket), any(RequestMeta.class), eq(true)))
+            .thenReturn(new DefaultHttpResponse(bucket, null, 200, new HashMap<String, String>(), null,
+                                                new ByteArrayInputStream("{\"props\":{}}{\"keys\":[\"b\",\"a\"]}{\"keys\":[\"c\"]}".getBytes()), null));
+        File file = File.createTempFile("test-keys", ".set");
+        try {
+            DiskKeySet keys = impl.listBucketToDisk(bucket, file);
+            assertEquals(3, keys.size());
+            assertEquals("a", keys.get(0));
+            assertTrue(keys.contains("c"));
+            keys.close();
+        } finally {
+            file.delete();
+        }
+    }
+}
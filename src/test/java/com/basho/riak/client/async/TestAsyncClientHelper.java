@@ -0,0 +1,298 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.async;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.basho.riak.client.RiakConfig;
+import com.basho.riak.client.RiakObject;
+import com.basho.riak.client.request.RequestMeta;
+import com.basho.riak.client.response.HttpResponse;
+import com.basho.riak.client.response.RiakIORuntimeException;
+
+public class TestAsyncClientHelper {
+
+    FakeServer server;
+    AsyncClientHelper impl;
+
+    @After public void teardown() throws Exception {
+        if (impl != null) {
+            impl.shutdown();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    RiakConfig config() {
+        return new RiakConfig("http://127.0.0.1:" + server.getPort() + "/riak");
+    }
+
+    @Test public void fetch_sends_request_and_returns_response() throws Exception {
+        server = new FakeServer("HTTP/1.1 200 OK\r\nX-Riak-Vclock: vclock\r\nContent-Length: 5\r\n\r\nvalue");
+        impl = new AsyncClientHelper(config(), null, 1);
+        RequestMeta meta = new RequestMeta();
+        meta.setHeader("x-test", "t");
+
+        HttpResponse r = impl.fetch("b", "k k", meta, null).get(5, TimeUnit.SECONDS);
+
+        assertEquals(200, r.getStatusCode());
+        assertEquals("b", r.getBucket());
+        assertEquals("k k", r.getKey());
+        assertEquals("vclock", r.getHttpHeaders().get("x-riak-vclock"));
+        assertEquals("value", r.getBodyAsString());
+
+        FakeServer.Request request = server.requests.get(0);
+        assertEquals("GET /riak/b/k+k?r=2 HTTP/1.1", request.line);
+        assertEquals("t", request.headers.get("x-test"));
+        assertEquals("127.0.0.1:" + server.getPort(), request.headers.get("host"));
+    }
+
+    @Test public void store_sends_object_headers_and_body() throws Exception {
+        server = new FakeServer("HTTP/1.1 204 No Content\r\n\r\n");
+        impl = new AsyncClientHelper(config(), "abcd", 1);
+        RiakObject object = new RiakObject("b", "k", "value".getBytes(), "text/plain", null, null, "vclock", null,
+                                           null);
+        RequestMeta meta = new RequestMeta();
+        meta.setQueryParam("returnbody", "true");
+
+        HttpResponse r = impl.store(object, meta, null).get(5, TimeUnit.SECONDS);
+
+        assertEquals(204, r.getStatusCode());
+        assertNull(r.getBody());
+
+        FakeServer.Request request = server.requests.get(0);
+        assertEquals("PUT /riak/b/k?returnbody=true HTTP/1.1", request.line);
+        assertEquals("vclock", request.headers.get("x-riak-vclock"));
+        assertEquals("text/plain", request.headers.get("content-type"));
+        assertEquals("YWJjZA==", request.headers.get("x-riak-clientid"));
+        assertEquals("value", new String(request.body));
+    }
+
+    @Test public void many_requests_share_few_connections() throws Exception {
+        server = new FakeServer("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+        RiakConfig config = config();
+        config.setMaxConnectionsPerHost(2);
+        impl = new AsyncClientHelper(config, null, 1);
+
+        List<Future<HttpResponse>> futures = new ArrayList<Future<HttpResponse>>();
+        for (int i = 0; i < 500; i++) {
+            futures.add(impl.fetch("b", "k" + i, null, null));
+        }
+        for (Future<HttpResponse> f : futures) {
+            assertEquals("ok", f.get(10, TimeUnit.SECONDS).getBodyAsString());
+        }
+
+        assertEquals(500, server.requests.size());
+        assertTrue(server.connections.get() <= 2);
+    }
+
+    @Test public void request_on_connection_closed_by_server_is_retried() throws Exception {
+        server = new FakeServer("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok");
+        server.requestsPerConnection = 1;
+        impl = new AsyncClientHelper(config(), null, 1);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals("ok", impl.fetch("b", "k", null, null).get(5, TimeUnit.SECONDS).getBodyAsString());
+        }
+        assertEquals(5, server.connections.get());
+    }
+
+    @Test public void unreachable_server_fails_request() throws Exception {
+        server = new FakeServer("");
+        RiakConfig config = config();
+        server.close();
+        impl = new AsyncClientHelper(config, null, 1);
+
+        final AtomicInteger failures = new AtomicInteger();
+        Future<HttpResponse> f = impl.fetch("b", "k", null, new ResponseCallback<HttpResponse>() {
+            public void onSuccess(HttpResponse response) {}
+            public void onFailure(Throwable t) {
+                failures.incrementAndGet();
+            }
+        });
+
+        try {
+            f.get(5, TimeUnit.SECONDS);
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RiakIORuntimeException);
+        }
+        assertEquals(1, failures.get());
+    }
+
+    @Test public void unresponsive_server_times_out() throws Exception {
+        server = new FakeServer(null);
+        RiakConfig config = config();
+        config.setTimeout(200);
+        impl = new AsyncClientHelper(config, null, 1);
+
+        try {
+            impl.fetch("b", "k", null, null).get(5, TimeUnit.SECONDS);
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getCause() instanceof SocketTimeoutException);
+        }
+    }
+
+    @Test public void shutdown_fails_requests_in_flight() throws Exception {
+        server = new FakeServer(null);
+        impl = new AsyncClientHelper(config(), null, 1);
+
+        Future<HttpResponse> f = impl.fetch("b", "k", null, null);
+        impl.shutdown();
+
+        try {
+            f.get(5, TimeUnit.SECONDS);
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RiakIORuntimeException);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void rejects_https() {
+        new AsyncClientHelper(new RiakConfig("https://127.0.0.1:8098/riak"), null, 1);
+    }
+
+    /**
+     * Reads HTTP requests on a thread per connection and answers each with
+     * the same canned response, or never answers if it is null.
+     */
+    static class FakeServer {
+        static class Request {
+            String line;
+            Map<String, String> headers = new HashMap<String, String>();
+            byte[] body;
+        }
+
+        final ServerSocket socket;
+        final String response;
+        final List<Request> requests = new ArrayList<Request>();
+        final AtomicInteger connections = new AtomicInteger();
+        volatile int requestsPerConnection = Integer.MAX_VALUE;
+
+        FakeServer(String response) throws IOException {
+            this.response = response;
+            socket = new ServerSocket(0);
+            Thread acceptor = new Thread() {
+                @Override public void run() {
+                    try {
+                        while (true) {
+                            final Socket s = socket.accept();
+                            connections.incrementAndGet();
+                            Thread handler = new Thread() {
+                                @Override public void run() {
+                                    serve(s);
+                                }
+                            };
+                            handler.setDaemon(true);
+                            handler.start();
+                        }
+                    } catch (IOException e) {
+                        // closed
+                    }
+                }
+            };
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int getPort() {
+            return socket.getLocalPort();
+        }
+
+        void close() throws IOException {
+            socket.close();
+        }
+
+        void serve(Socket s) {
+            try {
+                InputStream in = s.getInputStream();
+                OutputStream out = s.getOutputStream();
+                for (int n = 0; n < requestsPerConnection; n++) {
+                    Request request = read(in);
+                    if (request == null)
+                        break;
+                    synchronized (requests) {
+                        requests.add(request);
+                    }
+                    if (response == null) {
+                        Thread.sleep(Long.MAX_VALUE);
+                    }
+                    out.write(response.getBytes("ISO-8859-1"));
+                    out.flush();
+                }
+            } catch (Exception e) {
+                // client went away
+            } finally {
+                try {
+                    s.close();
+                } catch (IOException e) {}
+            }
+        }
+
+        static Request read(InputStream in) throws IOException {
+            Request request = new Request();
+            request.line = readLine(in);
+            if (request.line == null)
+                return null;
+            String header;
+            while ((header = readLine(in)) != null && header.length() > 0) {
+                int colon = header.indexOf(':');
+                request.headers.put(header.substring(0, colon).trim().toLowerCase(), header.substring(colon + 1).trim());
+            }
+            String length = request.headers.get("content-length");
+            request.body = new byte[length == null ? 0 : Integer.parseInt(length)];
+            for (int read = 0; read < request.body.length;) {
+                int n = in.read(request.body, read, request.body.length - read);
+                if (n == -1)
+                    throw new IOException("Truncated body");
+                read += n;
+            }
+            return request;
+        }
+
+        static String readLine(InputStream in) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int c;
+            while ((c = in.read()) != '\n') {
+                if (c == -1)
+                    return line.size() == 0 ? null : line.toString("ISO-8859-1");
+                if (c != '\r') {
+                    line.write(c);
+                }
+            }
+            return line.toString("ISO-8859-1");
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.async;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.basho.riak.client.RiakClient;
+import com.basho.riak.client.RiakObject;
+import com.basho.riak.client.request.RequestMeta;
+import com.basho.riak.client.response.DefaultHttpResponse;
+import com.basho.riak.client.response.FetchResponse;
+import com.basho.riak.client.response.HttpResponse;
+import com.basho.riak.client.response.MapReduceResponse;
+import com.basho.riak.client.response.RiakIORuntimeException;
+import com.basho.riak.client.response.RiakResponseRuntimeException;
+import com.basho.riak.client.response.StoreResponse;
+import com.basho.riak.client.util.Constants;
+
+public class TestAsyncRiakClient {
+
+    final String bucket = "bucket";
+    final String key = "key";
+    final RequestMeta meta = new RequestMeta();
+
+    @Mock RiakClient mockRiak;
+    @Mock AsyncClientHelper mockHelper;
+    @Mock RiakObject object;
+    AsyncRiakClient impl;
+
+    @Before public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(object.getBucket()).thenReturn(bucket);
+        when(object.getKey()).thenReturn(key);
+        impl = new AsyncRiakClient(mockRiak, mockHelper);
+    }
+
+    /** Answers an AsyncClientHelper call by passing its callback the given outcome */
+    static class Respond implements Answer<Object> {
+        final HttpResponse response;
+        final Throwable failure;
+
+        Respond(HttpResponse response) {
+            this.response = response;
+            failure = null;
+        }
+
+        Respond(Throwable failure) {
+            response = null;
+            this.failure = failure;
+        }
+
+        @SuppressWarnings("unchecked") public Object answer(InvocationOnMock invocation) {
+            Object[] args = invocation.getArguments();
+            ResponseCallback<HttpResponse> callback = (ResponseCallback<HttpResponse>) args[args.length - 1];
+            if (failure != null) {
+                callback.onFailure(failure);
+            } else {
+                callback.onSuccess(response);
+            }
+            return null;
+        }
+    }
+
+    static HttpResponse response(int status, String body) {
+        return new DefaultHttpResponse("bucket", "key", status, new HashMap<String, String>(),
+                                       body == null ? null : body.getBytes(), null, null);
+    }
+
+    @SuppressWarnings("unchecked") static ResponseCallback<HttpResponse> anyCallback() {
+        return (ResponseCallback<HttpResponse>) any();
+    }
+
+    @Test public void fetch_future_returns_response_built_like_riak_client() throws Exception {
+        doAnswer(new Respond(response(200, "v"))).when(mockHelper).fetch(eq(bucket), eq(key), same(meta),
+                                                                         anyCallback());
+
+        FetchResponse r = impl.fetch(bucket, key, meta).get(5, TimeUnit.SECONDS);
+
+        assertTrue(r.hasObject());
+        assertEquals("v", r.getObject().getValue());
+    }
+
+    @Test public void store_requests_body_and_updates_riak_client_caches() throws Exception {
+        doAnswer(new Respond(response(204, null))).when(mockHelper).store(same(object), any(RequestMeta.class),
+                                                                          anyCallback());
+
+        StoreResponse r = impl.store(object, meta).get(5, TimeUnit.SECONDS);
+
+        assertEquals(204, r.getStatusCode());
+        assertEquals("true", meta.getQueryParam(Constants.QP_RETURN_BODY));
+        verify(mockRiak).stored(bucket, key);
+    }
+
+    @Test public void delete_updates_riak_client_caches() throws Exception {
+        HttpResponse response = response(204, null);
+        doAnswer(new Respond(response)).when(mockHelper).delete(eq(bucket), eq(key), same(meta), anyCallback());
+
+        assertSame(response, impl.delete(bucket, key, meta).get(5, TimeUnit.SECONDS));
+        verify(mockRiak).deleted(bucket, key, response);
+    }
+
+    @Test public void callback_receives_response() throws Exception {
+        doAnswer(new Respond(response(404, null))).when(mockHelper).fetchMeta(eq(bucket), eq(key), same(meta),
+                                                                              anyCallback());
+        final AtomicReference<FetchResponse> result = new AtomicReference<FetchResponse>();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        impl.fetchMeta(bucket, key, meta, new ResponseCallback<FetchResponse>() {
+            public void onSuccess(FetchResponse response) {
+                result.set(response);
+                latch.countDown();
+            }
+            public void onFailure(Throwable t) {}
+        });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(404, result.get().getStatusCode());
+    }
+
+    @Test public void callback_receives_exceptions() throws Exception {
+        final RiakIORuntimeException e = new RiakIORuntimeException();
+        doAnswer(new Respond(e)).when(mockHelper).fetch(eq(bucket), eq(key), same(meta), anyCallback());
+        final AtomicReference<Throwable> result = new AtomicReference<Throwable>();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        impl.fetch(bucket, key, meta, new ResponseCallback<FetchResponse>() {
+            public void onSuccess(FetchResponse response) {}
+            public void onFailure(Throwable t) {
+                result.set(t);
+                latch.countDown();
+            }
+        });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertSame(e, result.get());
+    }
+
+    @Test public void future_throws_execution_exception_on_failure() throws Exception {
+        final RiakIORuntimeException e = new RiakIORuntimeException();
+        doAnswer(new Respond(e)).when(mockHelper).delete(eq(bucket), eq(key), same(meta), anyCallback());
+        try {
+            impl.delete(bucket, key, meta).get(5, TimeUnit.SECONDS);
+            fail("Expected ExecutionException");
+        } catch (ExecutionException ee) {
+            assertSame(e, ee.getCause());
+        }
+        verify(mockRiak, never()).deleted(anyString(), anyString(), any(HttpResponse.class));
+    }
+
+    @Test public void unparseable_map_reduce_response_fails_future() throws Exception {
+        doAnswer(new Respond(response(200, "not json"))).when(mockHelper).mapReduce(eq("job"), same(meta),
+                                                                                    anyCallback());
+        try {
+            MapReduceResponse r = impl.mapReduce("job", meta).get(5, TimeUnit.SECONDS);
+            fail("Expected ExecutionException, got " + r);
+        } catch (ExecutionException ee) {
+            assertTrue(ee.getCause() instanceof RiakResponseRuntimeException);
+        }
+    }
+
+    @Test public void shutdown_shuts_down_helper() {
+        impl.shutdown();
+        verify(mockHelper).shutdown();
+    }
+}
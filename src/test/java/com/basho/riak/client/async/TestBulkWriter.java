@@ -0,0 +1,157 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.async;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.basho.riak.client.RiakClient;
+import com.basho.riak.client.RiakObject;
+import com.basho.riak.client.request.RequestMeta;
+import com.basho.riak.client.response.RiakIORuntimeException;
+import com.basho.riak.client.response.StoreResponse;
+
+public class TestBulkWriter {
+
+    @Mock StoreResponse okResponse;
+    @Mock StoreResponse errorResponse;
+    final RiakObject ok = new RiakObject("bucket", "ok");
+    final RiakObject error = new RiakObject("bucket", "error");
+    final RiakObject broken = new RiakObject("bucket", "broken");
+
+    final Set<RequestMeta> seenMeta = Collections.synchronizedSet(new HashSet<RequestMeta>());
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+    volatile CountDownLatch gate = new CountDownLatch(0);
+
+    // a plain subclass rather than a mock so stores really run concurrently
+    final RiakClient riak = new RiakClient("http://localhost:8098/riak") {
+        @Override public StoreResponse store(RiakObject object, RequestMeta meta) {
+            seenMeta.add(meta);
+            int n = inFlight.incrementAndGet();
+            synchronized (maxInFlight) {
+                maxInFlight.set(Math.max(n, maxInFlight.get()));
+            }
+            try {
+                gate.await(5, TimeUnit.SECONDS);
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                throw new RiakIORuntimeException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            if (object == broken)
+                throw new RiakIORuntimeException("broken");
+            return object == ok ? okResponse : errorResponse;
+        }
+    };
+
+    @Before public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(okResponse.isSuccess()).thenReturn(true);
+        when(errorResponse.isSuccess()).thenReturn(false);
+    }
+
+    @Test public void writes_all_objects_and_counts_results() {
+        BulkWriter impl = new BulkWriter(riak, 3);
+
+        impl.writeAll(Arrays.asList(ok, ok, error, ok, broken, ok, ok, error));
+        impl.close();
+
+        assertEquals(5, impl.getSucceeded());
+        assertEquals(3, impl.getFailed());
+        assertEquals(0, impl.getInFlight());
+        assertTrue(maxInFlight.get() <= 3);
+    }
+
+    @Test public void each_write_gets_its_own_meta() {
+        RequestMeta meta = RequestMeta.writeParams(2, 2);
+        BulkWriter impl = new BulkWriter(riak, 3);
+
+        impl.writeAll(Arrays.asList(ok, ok, ok, ok).iterator(), meta, null);
+        impl.close();
+
+        assertEquals(4, seenMeta.size());
+        assertFalse(seenMeta.contains(meta));
+    }
+
+    @Test public void write_blocks_while_max_in_flight() throws Exception {
+        final BulkWriter impl = new BulkWriter(riak, 2);
+        gate = new CountDownLatch(1);
+
+        impl.write(ok);
+        impl.write(ok);
+        assertEquals(2, impl.getInFlight());
+
+        Thread producer = new Thread() {
+            @Override public void run() {
+                impl.write(ok);
+            }
+        };
+        producer.start();
+        producer.join(100);
+        assertTrue(producer.isAlive());
+
+        gate.countDown();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+
+        impl.flush();
+        assertEquals(3, impl.getSucceeded());
+        impl.close();
+    }
+
+    @Test public void callback_receives_result_before_flush_returns() {
+        BulkWriter impl = new BulkWriter(riak, 2);
+        final AtomicReference<StoreResponse> response = new AtomicReference<StoreResponse>();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        ResponseCallback<StoreResponse> callback = new ResponseCallback<StoreResponse>() {
+            public void onSuccess(StoreResponse r) {
+                response.set(r);
+            }
+
+            public void onFailure(Throwable t) {
+                failure.set(t);
+            }
+        };
+
+        impl.write(ok, null, callback);
+        impl.write(broken, null, callback);
+        impl.flush();
+
+        assertSame(okResponse, response.get());
+        assertTrue(failure.get() instanceof RiakIORuntimeException);
+        impl.close();
+    }
+
+    @Test(expected = IllegalStateException.class) public void write_after_close_throws() {
+        BulkWriter impl = new BulkWriter(riak, 1);
+        impl.close();
+        impl.write(ok);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.async;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class TestHttpResponseParser {
+
+    static ByteBuffer bytes(String s) throws Exception {
+        return ByteBuffer.wrap(s.getBytes("ISO-8859-1"));
+    }
+
+    @Test public void reads_content_length_body_and_leaves_following_bytes() throws Exception {
+        HttpResponseParser impl = new HttpResponseParser(false);
+        ByteBuffer buf = bytes("HTTP/1.1 200 OK\r\nContent-Length: 5\r\nX-Riak-Vclock: abc\r\n\r\nhelloHTTP");
+
+        assertTrue(impl.feed(buf));
+        assertEquals(200, impl.getStatus());
+        assertEquals("abc", impl.getHeaders().get("x-riak-vclock"));
+        assertEquals("hello", new String(impl.getBody()));
+        assertTrue(impl.isKeepAlive());
+        assertEquals(4, buf.remaining());
+    }
+
+    @Test public void reads_chunked_body_fed_a_byte_at_a_time() throws Exception {
+        HttpResponseParser impl = new HttpResponseParser(false);
+        byte[] response = ("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"
+                           + "5\r\nhello\r\n6;ext=1\r\n world\r\n0\r\nX-Trailer: t\r\n\r\n").getBytes("ISO-8859-1");
+
+        for (int i = 0; i < response.length; i++) {
+            assertFalse(impl.isComplete());
+            impl.feed(ByteBuffer.wrap(response, i, 1));
+        }
+
+        assertTrue(impl.isComplete());
+        assertEquals("hello world", new String(impl.getBody()));
+    }
+
+    @Test public void reads_body_until_eof_without_length() throws Exception {
+        HttpResponseParser impl = new HttpResponseParser(false);
+
+        assertFalse(impl.feed(bytes("HTTP/1.0 200 OK\r\n\r\npartial")));
+        assertFalse(impl.feed(bytes(" body")));
+        assertTrue(impl.eof());
+        assertEquals("partial body", new String(impl.getBody()));
+        assertFalse(impl.isKeepAlive());
+    }
+
+    @Test public void incomplete_response_is_not_completed_by_eof() throws Exception {
+        HttpResponseParser impl = new HttpResponseParser(false);
+
+        assertFalse(impl.feed(bytes("HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\nshort")));
+        assertFalse(impl.eof());
+    }
+
+    @Test public void head_and_no_content_responses_have_no_body() throws Exception {
+        HttpResponseParser head = new HttpResponseParser(true);
+        assertTrue(head.feed(bytes("HTTP/1.1 200 OK\r\nContent-Length: 100\r\n\r\n")));
+        assertNull(head.getBody());
+        assertEquals("100", head.getHeaders().get("content-length"));
+
+        HttpResponseParser noContent = new HttpResponseParser(false);
+        assertTrue(noContent.feed(bytes("HTTP/1.1 204 No Content\r\n\r\n")));
+        assertNull(noContent.getBody());
+    }
+
+    @Test public void skips_interim_responses() throws Exception {
+        HttpResponseParser impl = new HttpResponseParser(false);
+
+        assertTrue(impl.feed(bytes("HTTP/1.1 100 Continue\r\n\r\nHTTP/1.1 201 Created\r\nContent-Length: 0\r\n\r\n")));
+        assertEquals(201, impl.getStatus());
+    }
+
+    @Test public void joins_repeated_headers() throws Exception {
+        HttpResponseParser impl = new HttpResponseParser(false);
+
+        impl.feed(bytes("HTTP/1.1 200 OK\r\nLink: <a>\r\nlink: <b>\r\nContent-Length: 0\r\n\r\n"));
+        assertEquals("<a>, <b>", impl.getHeaders().get("link"));
+    }
+
+    @Test public void connection_close_and_http_1_0_are_not_kept_alive() throws Exception {
+        HttpResponseParser close = new HttpResponseParser(false);
+        close.feed(bytes("HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: 0\r\n\r\n"));
+        assertFalse(close.isKeepAlive());
+
+        HttpResponseParser old = new HttpResponseParser(false);
+        old.feed(bytes("HTTP/1.0 200 OK\r\nContent-Length: 0\r\n\r\n"));
+        assertFalse(old.isKeepAlive());
+
+        HttpResponseParser oldKeepAlive = new HttpResponseParser(false);
+        oldKeepAlive.feed(bytes("HTTP/1.0 200 OK\r\nConnection: Keep-Alive\r\nContent-Length: 0\r\n\r\n"));
+        assertTrue(oldKeepAlive.isKeepAlive());
+    }
+
+    @Test(expected = IOException.class) public void rejects_malformed_status_line() throws Exception {
+        new HttpResponseParser(false).feed(bytes("SMTP ready\r\n\r\n"));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.mapreduce;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayOutputStream;
+
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.basho.riak.client.RiakClient;
+import com.basho.riak.client.RiakObject;
+import com.basho.riak.client.request.MapReduceBuilder;
+import com.basho.riak.client.request.RequestMeta;
+import com.basho.riak.client.response.DefaultHttpResponse;
+import com.basho.riak.client.response.MapReduceResponse;
+import com.basho.riak.client.response.RiakResponseRuntimeException;
+import com.basho.riak.client.response.StoreResponse;
+import com.basho.riak.client.util.MapReduceResultCache;
+
+public class TestJavascriptFunctionStore {
+
+    final String source = "function(v) { return [v]; }";
+    final String sourceHash = JavascriptFunctionStore.hash(source);
+
+    @Mock RiakClient mockRiak;
+    @Mock StoreResponse mockStoreResponse;
+    JavascriptFunctionStore impl;
+
+    @Before public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(mockRiak.store(any(RiakObject.class))).thenReturn(mockStoreResponse);
+        when(mockStoreResponse.isSuccess()).thenReturn(true);
+        impl = new JavascriptFunctionStore(mockRiak, "functions");
+    }
+
+    @Test public void hash_is_hex_sha1_of_utf8_source() {
+        assertEquals("da39a3ee5e6b4b0d3255bfef95601890afd80709", JavascriptFunctionStore.hash(""));
+        assertEquals(40, sourceHash.length());
+        assertFalse(sourceHash.equals(JavascriptFunctionStore.hash(source + " ")));
+    }
+
+    @Test public void stores_source_under_its_hash_once() {
+        ArgumentCaptor<RiakObject> stored = ArgumentCaptor.forClass(RiakObject.class);
+
+        JavascriptFunction f = impl.store(source);
+        assertTrue(impl.isStored(source));
+        impl.store(source);
+
+        verify(mockRiak, times(1)).store(stored.capture());
+        assertEquals("functions", stored.getValue().getBucket());
+        assertEquals(sourceHash, stored.getValue().getKey());
+        assertEquals(source, stored.getValue().getValue());
+        assertEquals(MapReduceFunction.Types.STORED, f.getType());
+        assertEquals("functions", f.getBucket());
+        assertEquals(sourceHash, f.getKey());
+    }
+
+    @Test public void stores_again_after_clear() {
+        impl.store(source);
+        impl.clear();
+        assertFalse(impl.isStored(source));
+        impl.store(source);
+        verify(mockRiak, times(2)).store(any(RiakObject.class));
+    }
+
+    @Test public void throws_and_does_not_remember_failed_store() {
+        when(mockStoreResponse.isSuccess()).thenReturn(false);
+        try {
+            impl.store(source);
+            fail("expected RiakResponseRuntimeException");
+        } catch (RiakResponseRuntimeException e) { /* expected */ }
+        assertFalse(impl.isStored(source));
+    }
+
+    @Test public void only_stores_anonymous_javascript_functions() {
+        MapReduceFunction named = JavascriptFunction.named("Riak.mapValuesJson");
+        MapReduceFunction erlang = new ErlangFunction("riak_kv_mapreduce", "map_object_value");
+        assertSame(named, impl.store(named));
+        assertSame(erlang, impl.store(erlang));
+        verify(mockRiak, never()).store(any(RiakObject.class));
+
+        MapReduceFunction anon = impl.store(JavascriptFunction.anon(source));
+        assertEquals(sourceHash, ((JavascriptFunction) anon).getKey());
+    }
+
+    @Test public void stored_function_json_refers_to_bucket_and_key() throws Exception {
+        JSONObject json = JavascriptFunction.stored("functions", "key").toJson();
+        assertEquals("javascript", json.getString("language"));
+        assertEquals("functions", json.getString("bucket"));
+        assertEquals("key", json.getString("key"));
+        assertFalse(json.has("source"));
+    }
+
+    @Test public void builder_submits_stored_function_references() throws Exception {
+        ArgumentCaptor<RequestEntity> entity = ArgumentCaptor.forClass(RequestEntity.class);
+        MapReduceBuilder builder = new MapReduceBuilder(mockRiak).setFunctionStore(impl);
+        builder.addRiakObject("b", "k");
+        builder.map(JavascriptFunction.anon(source), true);
+
+        builder.submit();
+
+        verify(mockRiak).mapReduce(entity.capture(), (RequestMeta) isNull());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.getValue().writeRequest(out);
+        JSONObject map = new JSONObject(out.toString("UTF-8")).getJSONArray("query").getJSONObject(0).getJSONObject("map");
+        assertEquals(sourceHash, map.getString("key"));
+        assertFalse(map.has("source"));
+    }
+
+    @Test public void cached_job_has_same_fingerprint_after_functions_are_stored() throws Exception {
+        when(mockRiak.getMapReduceCache()).thenReturn(new MapReduceResultCache(1024 * 1024));
+        when(mockRiak.mapReduce(any(RequestEntity.class), any(RequestMeta.class))).thenReturn(
+            new MapReduceResponse(new DefaultHttpResponse(null, null, 200, null, "[1]".getBytes(), null, null)));
+        MapReduceBuilder builder = new MapReduceBuilder(mockRiak).setFunctionStore(impl).setCacheTtl(60000);
+        builder.addRiakObject("b", "k");
+        builder.map(JavascriptFunction.anon(source), true);
+
+        builder.submit();
+        builder.submit();
+
+        verify(mockRiak, times(1)).mapReduce(any(RequestEntity.class), any(RequestMeta.class));
+    }
+}
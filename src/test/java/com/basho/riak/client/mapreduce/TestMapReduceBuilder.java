@@ -14,20 +14,30 @@
 package com.basho.riak.client.mapreduce;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 import org.junit.Test;
 
 import com.basho.riak.client.RiakObject;
 import com.basho.riak.client.request.MapReduceBuilder;
+import com.basho.riak.client.request.MapReduceRequestEntity;
+import com.basho.riak.client.util.Constants;
 
 public class TestMapReduceBuilder {
 
@@ -249,4 +259,252 @@ public class TestMapReduceBuilder {
             "\"module\":\"riak_kv_mapreduce\",\"language\":\"erlang\",\"keep\":true,\"function\":" +
             "\"reduce_sort\"}}]}", json);
    }
+
+   @Test public void writesSameJobAsToJSON() throws Exception {
+      MapReduceBuilder builder = new MapReduceBuilder();
+      builder.addRiakObject("first", "key1");
+      builder.addRiakObject("first", "key2");
+      builder.addRiakObject("second", "key1");
+      builder.map(JavascriptFunction.named("Riak.mapValuesJson"), false);
+      builder.reduce(new ErlangFunction("riak_kv_mapreduce", "reduce_sort"), "arg", true);
+      builder.setTimeout(5000);
+      StringWriter w = new StringWriter();
+      builder.writeJSON(w);
+      assertEquals(builder.toJSON().toString(), new JSONObject(w.toString()).toString());
+
+      builder = new MapReduceBuilder();
+      builder.setBucket("wubba");
+      builder.link("foo", "tag", false);
+      w = new StringWriter();
+      builder.writeJSON(w);
+      assertEquals(builder.toJSON().toString(), new JSONObject(w.toString()).toString());
+   }
+
+   @Test public void drawsInputsFromIterableEachTimeJobIsWritten() throws Exception {
+      MapReduceBuilder builder = new MapReduceBuilder();
+      builder.addRiakObject("ignored", "key");
+      builder.setInputs("wubba", Arrays.asList("key1", "key2"));
+      builder.map(JavascriptFunction.named("Riak.mapValuesJson"), true);
+      assertTrue(builder.getRiakObjects().isEmpty());
+      assertTrue(builder.isRepeatable());
+
+      for (int i = 0; i < 2; i++) {
+         StringWriter w = new StringWriter();
+         builder.writeJSON(w);
+         assertTrue(w.toString().startsWith("{\"inputs\":[[\"wubba\",\"key1\"],[\"wubba\",\"key2\"]],\"query\":"));
+      }
+      assertEquals(2, builder.toJSON().getJSONArray("inputs").length());
+   }
+
+   @Test public void writesKeyDataInInputs() throws Exception {
+      MapReduceBuilder builder = new MapReduceBuilder();
+      List<String[]> inputs = new ArrayList<String[]>();
+      inputs.add(new String[] { "b", "k", "data" });
+      builder.setInputs(inputs);
+      StringWriter w = new StringWriter();
+      builder.writeJSON(w);
+      assertTrue(w.toString().startsWith("{\"inputs\":[[\"b\",\"k\",\"data\"]]"));
+   }
+
+   @Test public void iteratorInputsCanOnlyBeWrittenOnce() throws Exception {
+      MapReduceBuilder builder = new MapReduceBuilder();
+      List<String[]> inputs = new ArrayList<String[]>();
+      inputs.add(new String[] { "b", "k" });
+      builder.setInputs(inputs.iterator());
+      assertFalse(builder.isRepeatable());
+      assertFalse(new MapReduceRequestEntity(builder).isRepeatable());
+
+      builder.writeJSON(new StringWriter());
+      try {
+         builder.writeJSON(new StringWriter());
+         fail("expected IllegalStateException");
+      } catch (IllegalStateException e) { /* expected */ }
+
+      builder.clearRiakObjects();
+      assertTrue(builder.isRepeatable());
+   }
+
+   @Test(expected=IllegalStateException.class)
+   public void cannotSetInputsWithBucket() {
+      MapReduceBuilder builder = new MapReduceBuilder();
+      builder.setBucket("wubba");
+      builder.setInputs("foo", Arrays.asList("bar"));
+   }
+
+   @Test(expected=IllegalStateException.class)
+   public void cannotSetBucketWithInputs() {
+      MapReduceBuilder builder = new MapReduceBuilder();
+      builder.setInputs("foo", Arrays.asList("bar"));
+      builder.setBucket("wubba");
+   }
+
+   @Test(expected=IllegalStateException.class)
+   public void cannotAddObjectsToInputs() {
+      MapReduceBuilder builder = new MapReduceBuilder();
+      builder.setInputs("foo", Arrays.asList("bar"));
+      builder.addRiakObject("foo", "baz");
+   }
+
+   @Test public void requestEntityWritesChunkedUtf8Json() throws Exception {
+      MapReduceBuilder builder = new MapReduceBuilder();
+      builder.setInputs("b\u00fccket", Arrays.asList("k\u00e9y"));
+      builder.map(JavascriptFunction.named("Riak.mapValuesJson"), true);
+      MapReduceRequestEntity entity = new MapReduceRequestEntity(builder);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      entity.writeRequest(out);
+
+      assertEquals(-1, entity.getContentLength());
+      assertEquals(Constants.CTYPE_JSON, entity.getContentType());
+      JSONObject job = new JSONObject(out.toString("UTF-8"));
+      assertEquals("b\u00fccket", job.getJSONArray("inputs").getJSONArray(0).getString(0));
+      assertEquals("k\u00e9y", job.getJSONArray("inputs").getJSONArray(0).getString(1));
+   }
+
+   @Test public void splitsInputsIntoStridedShards() throws Exception {
+      MapReduceBuilder builder = new MapReduceBuilder();
+      builder.setInputs("b", Arrays.asList("k0", "k1", "k2", "k3", "k4"));
+      builder.map(JavascriptFunction.named("Riak.mapValuesJson"), true);
+      builder.setTimeout(1000);
+      builder.setShards(2);
+
+      List<MapReduceBuilder> shards = builder.split();
+      assertEquals(2, shards.size());
+      JSONObject first = shards.get(0).toJSON();
+      JSONObject second = shards.get(1).toJSON();
+      assertEquals("[[\"b\",\"k0\"],[\"b\",\"k2\"],[\"b\",\"k4\"]]", first.getJSONArray("inputs").toString());
+      assertEquals("[[\"b\",\"k1\"],[\"b\",\"k3\"]]", second.getJSONArray("inputs").toString());
+      assertEquals(builder.toJSON().getJSONArray("query").toString(), first.getJSONArray("query").toString());
+      assertEquals(1000, second.getInt("timeout"));
+   }
+
+   @Test public void doesNotSplitObjectsIntoEmptyShards() {
+      MapReduceBuilder builder = new MapReduceBuilder();
+      builder.addRiakObject("b", "k0");
+      builder.addRiakObject("b", "k1");
+      builder.setShards(5);
+      assertEquals(2, builder.split().size());
+   }
+
+   @Test(expected=IllegalStateException.class)
+   public void cannotShardBucket() {
+      MapReduceBuilder builder = new MapReduceBuilder();
+      builder.setBucket("wubba");
+      builder.setShards(2);
+      builder.split();
+   }
+
+   @Test(expected=IllegalStateException.class)
+   public void cannotShardIteratorInputs() {
+      MapReduceBuilder builder = new MapReduceBuilder();
+      builder.setInputs(new ArrayList<String[]>().iterator());
+      builder.setShards(2);
+      builder.split();
+   }
+
+   @Test(expected=IllegalStateException.class)
+   public void cannotShardReduceBeforeFinalPhase() {
+      MapReduceBuilder builder = new MapReduceBuilder();
+      builder.addRiakObject("b", "k");
+      builder.reduce(JavascriptFunction.named("Riak.reduceSum"), false);
+      builder.map(JavascriptFunction.named("Riak.mapValuesJson"), true);
+      builder.setCombiner(SUM);
+      builder.setShards(2);
+      builder.split();
+   }
+
+   @Test(expected=IllegalStateException.class)
+   public void cannotShardFinalReduceWithoutCombiner() {
+      MapReduceBuilder builder = new MapReduceBuilder();
+      builder.addRiakObject("b", "k");
+      builder.map(JavascriptFunction.named("Riak.mapValuesJson"), false);
+      builder.reduce(JavascriptFunction.named("Riak.reduceSum"), true);
+      builder.setShards(2);
+      builder.split();
+   }
+
+   @Test public void concatenatesMapOnlyShardResults() throws JSONException {
+      MapReduceBuilder builder = new MapReduceBuilder();
+      builder.map(JavascriptFunction.named("Riak.mapValuesJson"), true);
+      JSONArray merged = builder.mergeShardResults(Arrays.asList(new JSONArray("[1,2]"), new JSONArray("[3]")));
+      assertEquals("[1,2,3]", merged.toString());
+   }
+
+   @Test public void combinesFinalReduceShardResults() throws JSONException {
+      MapReduceBuilder builder = new MapReduceBuilder();
+      builder.map(JavascriptFunction.named("Riak.mapValuesJson"), false);
+      builder.reduce(JavascriptFunction.named("Riak.reduceSum"), true);
+      builder.setCombiner(SUM);
+      JSONArray merged = builder.mergeShardResults(Arrays.asList(new JSONArray("[3]"), new JSONArray("[4]")));
+      assertEquals("[7]", merged.toString());
+   }
+
+   @Test public void mergesShardResultsPerKeptPhase() throws JSONException {
+      MapReduceBuilder builder = new MapReduceBuilder();
+      builder.map(JavascriptFunction.named("Riak.mapValuesJson"), true);
+      builder.reduce(JavascriptFunction.named("Riak.reduceSum"), false);
+      builder.setCombiner(SUM);
+      JSONArray merged = builder.mergeShardResults(Arrays.asList(new JSONArray("[[1,2],[3]]"),
+                                                                 new JSONArray("[[4],[4]]"), new JSONArray("[]")));
+      assertEquals("[[1,2,4],[7]]", merged.toString());
+   }
+
+   private static final MapReduceCombiner SUM = new MapReduceCombiner() {
+      public JSONArray combine(JSONArray results) throws JSONException {
+         int sum = 0;
+         for (int i = 0; i < results.length(); i++) {
+            sum += results.getInt(i);
+         }
+         return new JSONArray().put(sum);
+      }
+   };
+
+   @Test public void fingerprintIgnoresInputOrderAndArgKeyOrder() {
+      Map<String, Object> arg1 = new LinkedHashMap<String, Object>();
+      arg1.put("a", 1);
+      arg1.put("b", Arrays.asList("x", "y"));
+      Map<String, Object> arg2 = new LinkedHashMap<String, Object>();
+      arg2.put("b", Arrays.asList("x", "y"));
+      arg2.put("a", 1);
+
+      MapReduceBuilder first = new MapReduceBuilder();
+      first.addRiakObject("b1", "k1");
+      first.addRiakObject("b2", "k2");
+      first.map(JavascriptFunction.named("Riak.mapValuesJson"), arg1, true);
+      MapReduceBuilder second = new MapReduceBuilder();
+      second.addRiakObject("b2", "k2");
+      second.addRiakObject("b1", "k1");
+      second.map(JavascriptFunction.named("Riak.mapValuesJson"), arg2, true);
+
+      assertEquals(first.getFingerprint(), second.getFingerprint());
+      assertEquals(40, first.getFingerprint().length());
+   }
+
+   @Test public void fingerprintDependsOnInputsPhasesArgsAndTimeout() {
+      MapReduceBuilder builder = new MapReduceBuilder();
+      builder.addRiakObject("b", "k");
+      builder.map(JavascriptFunction.named("Riak.mapValuesJson"), "arg", true);
+      Set<String> fingerprints = new HashSet<String>();
+      fingerprints.add(builder.getFingerprint());
+
+      builder.setTimeout(1000);
+      fingerprints.add(builder.getFingerprint());
+      builder.addRiakObject("b", "k2");
+      fingerprints.add(builder.getFingerprint());
+      builder.reduce(JavascriptFunction.named("Riak.reduceSum"), true);
+      fingerprints.add(builder.getFingerprint());
+
+      MapReduceBuilder other = new MapReduceBuilder();
+      other.addRiakObject("b", "k");
+      other.map(JavascriptFunction.named("Riak.mapValuesJson"), "other", true);
+      fingerprints.add(other.getFingerprint());
+
+      assertEquals(5, fingerprints.size());
+   }
+
+   @Test(expected=IllegalStateException.class)
+   public void cannotFingerprintIteratorInputs() {
+      MapReduceBuilder builder = new MapReduceBuilder();
+      builder.setInputs(new ArrayList<String[]>().iterator());
+      builder.getFingerprint();
+   }
 }
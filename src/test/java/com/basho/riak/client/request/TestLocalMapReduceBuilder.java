@@ -0,0 +1,167 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.request;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.basho.riak.client.RiakClient;
+import com.basho.riak.client.RiakObject;
+import com.basho.riak.client.mapreduce.LocalMapFunction;
+import com.basho.riak.client.mapreduce.LocalReduceFunction;
+import com.basho.riak.client.response.FetchManyResponse;
+import com.basho.riak.client.response.FetchResponse;
+import com.basho.riak.client.response.RiakResponseRuntimeException;
+
+public class TestLocalMapReduceBuilder {
+
+    final String bucket = "bucket";
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    final AtomicInteger reduceCalls = new AtomicInteger();
+
+    RiakClient riak;
+    LocalMapReduceBuilder<Integer> impl;
+
+    final LocalMapFunction<Integer> VALUE_AS_INT = new LocalMapFunction<Integer>() {
+        public Collection<Integer> map(RiakObject object) {
+            return Collections.singletonList(Integer.valueOf(object.getValue()));
+        }
+    };
+
+    final LocalReduceFunction<Integer> SUM = new LocalReduceFunction<Integer>() {
+        public List<Integer> reduce(List<Integer> values) {
+            reduceCalls.incrementAndGet();
+            int sum = 0;
+            for (Integer i : values) {
+                sum += i;
+            }
+            return Collections.singletonList(sum);
+        }
+    };
+
+    @Before public void setup() {
+        riak = new RiakClient("http://localhost:8098/riak") {
+            @Override public FetchManyResponse fetchMany(String bucket, Collection<String> keys, RequestMeta meta,
+                                                         int maxConcurrency) {
+                return new FetchManyResponse(this, bucket, keys, meta, maxConcurrency, executor);
+            }
+
+            @Override public FetchResponse fetch(String bucket, String key, RequestMeta meta) {
+                FetchResponse r = mock(FetchResponse.class);
+                if (key.startsWith("missing")) {
+                    when(r.getStatusCode()).thenReturn(404);
+                } else if (key.startsWith("error")) {
+                    when(r.getStatusCode()).thenReturn(500);
+                } else {
+                    when(r.getStatusCode()).thenReturn(200);
+                    when(r.isSuccess()).thenReturn(true);
+                    when(r.hasObject()).thenReturn(true);
+                    when(r.getObject()).thenReturn(new RiakObject(bucket, key, key.getBytes()));
+                }
+                return r;
+            }
+        };
+        impl = new LocalMapReduceBuilder<Integer>(riak).setExecutor(executor);
+    }
+
+    @After public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test public void maps_every_fetched_object() {
+        impl.addRiakObjects(bucket, Arrays.asList("1", "2", "3")).addRiakObject("other", "4");
+        impl.map(VALUE_AS_INT);
+
+        List<Integer> result = impl.submit();
+
+        assertEquals(new HashSet<Integer>(Arrays.asList(1, 2, 3, 4)), new HashSet<Integer>(result));
+        assertEquals(4, result.size());
+    }
+
+    @Test public void tree_reduces_map_output_in_batches() {
+        List<String> keys = new ArrayList<String>();
+        int expected = 0;
+        for (int i = 1; i <= 100; i++) {
+            keys.add(Integer.toString(i));
+            expected += i;
+        }
+        impl.addRiakObjects(bucket, keys).map(VALUE_AS_INT).reduce(SUM).setReduceBatchSize(10);
+
+        assertEquals(Arrays.asList(expected), impl.submit());
+        assertTrue("reduced in batches", reduceCalls.get() > 10);
+    }
+
+    @Test public void runs_reduce_phases_in_order() {
+        impl.addRiakObjects(bucket, Arrays.asList("1", "2", "3")).map(VALUE_AS_INT).reduce(SUM);
+        impl.reduce(new LocalReduceFunction<Integer>() {
+            public List<Integer> reduce(List<Integer> values) {
+                List<Integer> doubled = new ArrayList<Integer>();
+                for (Integer i : values) {
+                    doubled.add(i * 2);
+                }
+                return doubled;
+            }
+        });
+
+        assertEquals(Arrays.asList(12), impl.submit());
+    }
+
+    @Test public void reduces_empty_input() {
+        impl.map(VALUE_AS_INT).reduce(SUM);
+        assertEquals(Arrays.asList(0), impl.submit());
+    }
+
+    @Test public void skips_missing_objects() {
+        impl.addRiakObjects(bucket, Arrays.asList("1", "missing", "2")).map(VALUE_AS_INT).reduce(SUM);
+        assertEquals(Arrays.asList(3), impl.submit());
+    }
+
+    @Test(expected = RiakResponseRuntimeException.class) public void throws_if_fetch_fails() {
+        impl.addRiakObjects(bucket, Arrays.asList("1", "error")).map(VALUE_AS_INT).submit();
+    }
+
+    @Test public void passes_through_map_function_exceptions() {
+        final IllegalArgumentException thrown = new IllegalArgumentException();
+        impl.addRiakObject(bucket, "1").map(new LocalMapFunction<Integer>() {
+            public Collection<Integer> map(RiakObject object) {
+                throw thrown;
+            }
+        });
+
+        try {
+            impl.submit();
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertSame(thrown, e);
+        }
+    }
+
+    @Test(expected = IllegalStateException.class) public void requires_map_phase() {
+        impl.addRiakObject(bucket, "1").reduce(SUM).submit();
+    }
+}
@@ -79,4 +79,19 @@ public class TestRequestMeta {
         assertFalse(impl.getQueryParams().startsWith("&"));
         assertFalse(impl.getQueryParams().endsWith("&"));
     }
+
+    @Test public void copy_is_independent_of_original() {
+        RequestMeta impl = new RequestMeta();
+        impl.setQueryParam("p1", "v1");
+        impl.setHeader("h1", "v1");
+
+        RequestMeta copy = impl.copy();
+        copy.setQueryParam("p2", "v2");
+        copy.setHeader("h2", "v2");
+
+        assertEquals("v1", copy.getQueryParam("p1"));
+        assertEquals("v1", copy.getHeader("h1"));
+        assertNull(impl.getQueryParam("p2"));
+        assertNull(impl.getHeader("h2"));
+    }
 }
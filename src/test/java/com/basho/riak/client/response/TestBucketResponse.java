@@ -137,4 +137,20 @@ public class TestBucketResponse {
         assertNotNull(impl.getBucketInfo().getKeys());
         assertTrue(impl.getBucketInfo().getKeys().isEmpty());
     }
+
+    @Test public void keeps_keys_sent_with_streamed_schema() throws Exception {
+        HttpResponse mockHttpResponse = mock(HttpResponse.class);
+        when(mockHttpResponse.getStream()).thenReturn(new ByteArrayInputStream(
+            "{\"props\":{\"name\":\"b\",\"precommit\":[\"hook\"]},\"keys\":[\"j\"]}{\"keys\":[\"k\"]}".getBytes()));
+        when(mockHttpResponse.isStreamed()).thenReturn(true);
+        when(mockHttpResponse.isSuccess()).thenReturn(true);
+
+        BucketResponse impl = new BucketResponse(mockHttpResponse);
+        Iterator<String> key = impl.getBucketInfo().getKeys().iterator();
+
+        assertEquals("j", key.next());
+        assertEquals("k", key.next());
+        assertFalse(key.hasNext());
+        assertEquals("b", impl.getBucketInfo().getSchema().getString("name"));
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.response;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.basho.riak.client.RiakClient;
+import com.basho.riak.client.RiakLink;
+import com.basho.riak.client.RiakObject;
+
+public class TestBulkFetchResponse {
+
+    final Map<String, Set<String>> REQUESTED = new HashMap<String, Set<String>>();
+
+    @Mock HttpResponse mockHttpResponse;
+    @Mock RiakClient mockRiakClient;
+
+    @Before public void setup() {
+        MockitoAnnotations.initMocks(this);
+        REQUESTED.put("b", new LinkedHashSet<String>(Arrays.asList("k1", "k2", "k3")));
+        when(mockHttpResponse.isSuccess()).thenReturn(true);
+    }
+
+    @Test public void doesnt_throw_on_null_impl() throws JSONException {
+        new BulkFetchResponse(null, null, null);
+    }
+
+    @Test public void decodes_objects_in_any_order() throws JSONException {
+        final String BODY = "[{\"bucket\":\"b\",\"key\":\"k2\",\"vclock\":\"vc2\","
+                            + "\"values\":[{\"metadata\":{\"content-type\":\"text/plain\",\"X-Riak-VTag\":\"vt2\","
+                            + "\"X-Riak-Last-Modified\":\"lm2\",\"X-Riak-Meta\":{\"X-Riak-Meta-Foo\":\"bar\"},"
+                            + "\"Links\":[[\"b\",\"k1\",\"tag\"]]},\"data\":\"two\"}]},"
+                            + "{\"bucket\":\"b\",\"key\":\"k1\",\"vclock\":\"vc1\","
+                            + "\"values\":[{\"metadata\":{\"content-type\":\"application/json\"},\"data\":\"{}\"}]}]";
+        when(mockHttpResponse.getBody()).thenReturn(BODY.getBytes());
+        when(mockHttpResponse.getBodyAsString()).thenReturn(BODY);
+
+        BulkFetchResponse impl = new BulkFetchResponse(mockHttpResponse, mockRiakClient, REQUESTED);
+
+        assertEquals(2, impl.getObjects().size());
+
+        RiakObject o = impl.getObject("b", "k2");
+        assertEquals("two", o.getValue());
+        assertEquals("text/plain", o.getContentType());
+        assertEquals("vc2", o.getVclock());
+        assertEquals("vt2", o.getVtag());
+        assertEquals("lm2", o.getLastmod());
+        assertEquals("bar", o.getUsermeta().get("foo"));
+        assertEquals(new RiakLink("b", "k1", "tag"), o.getLinks().get(0));
+
+        assertEquals("{}", impl.getObject("b", "k1").getValue());
+        assertEquals("application/json", impl.getObject("b", "k1").getContentType());
+    }
+
+    @Test public void reports_missing_keys() throws JSONException {
+        final String BODY = "[{\"not_found\":{\"bucket\":\"b\",\"key\":\"k3\"}},"
+                            + "{\"bucket\":\"b\",\"key\":\"k1\",\"values\":[{\"metadata\":{},\"data\":\"one\"}]}]";
+        when(mockHttpResponse.getBody()).thenReturn(BODY.getBytes());
+        when(mockHttpResponse.getBodyAsString()).thenReturn(BODY);
+
+        BulkFetchResponse impl = new BulkFetchResponse(mockHttpResponse, mockRiakClient, REQUESTED);
+
+        assertTrue(impl.hasObject("b", "k1"));
+        assertFalse(impl.hasObject("b", "k3"));
+        assertNull(impl.getObject("b", "k3"));
+        assertTrue(impl.hasMissing());
+        assertEquals(new LinkedHashSet<String>(Arrays.asList("k2", "k3")), impl.getMissing().get("b"));
+    }
+
+    @Test public void returns_all_siblings() throws JSONException {
+        final String BODY = "[{\"bucket\":\"b\",\"key\":\"k1\",\"values\":["
+                            + "{\"metadata\":{},\"data\":\"one\"},{\"metadata\":{},\"data\":\"uno\"}]}]";
+        when(mockHttpResponse.getBody()).thenReturn(BODY.getBytes());
+        when(mockHttpResponse.getBodyAsString()).thenReturn(BODY);
+
+        BulkFetchResponse impl = new BulkFetchResponse(mockHttpResponse, mockRiakClient, REQUESTED);
+
+        assertEquals(2, impl.getSiblings("b", "k1").size());
+        assertEquals("one", impl.getObject("b", "k1").getValue());
+        assertEquals("uno", impl.getSiblings("b", "k1").get(1).getValue());
+    }
+}
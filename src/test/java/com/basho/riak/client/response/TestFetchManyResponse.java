@@ -0,0 +1,216 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.response;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.basho.riak.client.RiakClient;
+import com.basho.riak.client.request.RequestMeta;
+
+public class TestFetchManyResponse {
+
+    final String bucket = "bucket";
+    final List<String> keys = Arrays.asList("a", "b", "c", "d", "e", "f");
+    final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @Mock RiakClient mockRiak;
+
+    @Before public void setup() {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @After public void teardown() {
+        executor.shutdownNow();
+    }
+
+    @Test public void returns_one_response_per_key() {
+        when(mockRiak.fetch(eq(bucket), anyString(), any(RequestMeta.class))).thenAnswer(new Answer<FetchResponse>() {
+            public FetchResponse answer(InvocationOnMock invocation) throws Throwable {
+                String key = (String) invocation.getArguments()[1];
+                return new FetchResponse(new DefaultHttpResponse(bucket, key, 404, new HashMap<String, String>(), null, null, null));
+            }
+        });
+
+        FetchManyResponse impl = new FetchManyResponse(mockRiak, bucket, keys, null, 3, executor);
+
+        Set<String> fetched = new HashSet<String>();
+        for (FetchResponse r : impl) {
+            assertEquals(404, r.getStatusCode());
+            fetched.add(r.getKey());
+        }
+        assertEquals(keys.size(), impl.size());
+        assertEquals(new HashSet<String>(keys), fetched);
+    }
+
+    @Test public void each_fetch_gets_its_own_meta() {
+        final RequestMeta meta = RequestMeta.readParams(2);
+        final Set<RequestMeta> seen = new HashSet<RequestMeta>();
+        RiakClient riak = new RiakClient("http://localhost:8098/riak") {
+            @Override public FetchResponse fetch(String bucket, String key, RequestMeta m) {
+                synchronized (seen) {
+                    seen.add(m);
+                }
+                return new FetchResponse(null);
+            }
+        };
+
+        for (Iterator<FetchResponse> it = new FetchManyResponse(riak, bucket, keys, meta, 2, executor).iterator(); it.hasNext(); it.next()) {}
+
+        assertEquals(keys.size(), seen.size());
+        assertFalse(seen.contains(meta));
+    }
+
+    @Test public void limits_fetches_in_flight() {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        RiakClient riak = new RiakClient("http://localhost:8098/riak") {
+            @Override public FetchResponse fetch(String bucket, String key, RequestMeta meta) {
+                int n = inFlight.incrementAndGet();
+                synchronized (maxInFlight) {
+                    maxInFlight.set(Math.max(n, maxInFlight.get()));
+                }
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {}
+                inFlight.decrementAndGet();
+                return new FetchResponse(null);
+            }
+        };
+
+        int count = 0;
+        for (Iterator<FetchResponse> it = new FetchManyResponse(riak, bucket, keys, null, 2, executor).iterator(); it.hasNext(); it.next()) {
+            count++;
+        }
+        assertEquals(keys.size(), count);
+        assertTrue(maxInFlight.get() <= 2);
+    }
+
+    @Test public void exceptions_are_thrown_from_next_with_their_key() {
+        final RiakIORuntimeException failure = new RiakIORuntimeException();
+        when(mockRiak.fetch(eq(bucket), anyString(), any(RequestMeta.class))).thenThrow(failure);
+
+        Iterator<FetchResponse> it = new FetchManyResponse(mockRiak, bucket, keys.subList(0, 2), null, 2, executor).iterator();
+        Set<String> failed = new HashSet<String>();
+        while (it.hasNext()) {
+            try {
+                it.next();
+            } catch (RiakFetchRuntimeException e) {
+                assertEquals(bucket, e.getBucket());
+                assertSame(failure, e.getCause());
+                failed.add(e.getKey());
+            }
+        }
+        assertEquals(new HashSet<String>(keys.subList(0, 2)), failed);
+    }
+
+    @Test public void handled_failures_are_returned_with_their_key() {
+        when(mockRiak.fetch(eq(bucket), anyString(), any(RequestMeta.class))).thenAnswer(new Answer<FetchResponse>() {
+            public FetchResponse answer(InvocationOnMock invocation) throws Throwable {
+                // what fetch() returns after toss() when an exception handler is installed
+                return new FetchResponse(new DefaultHttpResponse(null, null, 0, null, null, null, null));
+            }
+        });
+
+        Set<String> fetched = new HashSet<String>();
+        for (FetchResponse r : new FetchManyResponse(mockRiak, bucket, keys, null, 3, executor)) {
+            assertEquals(0, r.getStatusCode());
+            assertEquals(bucket, r.getBucket());
+            fetched.add(r.getKey());
+        }
+        assertEquals(new HashSet<String>(keys), fetched);
+    }
+
+    @Test(timeout = 5000) public void errors_are_thrown_from_next() {
+        final AssertionError error = new AssertionError("boom");
+        RiakClient riak = new RiakClient("http://localhost:8098/riak") {
+            @Override public FetchResponse fetch(String bucket, String key, RequestMeta meta) {
+                if (key.equals("a"))
+                    throw error;
+                return new FetchResponse(null);
+            }
+        };
+
+        Iterator<FetchResponse> it = new FetchManyResponse(riak, bucket, keys, null, 2, executor).iterator();
+        int thrown = 0, returned = 0;
+        while (it.hasNext()) {
+            try {
+                it.next();
+                returned++;
+            } catch (RiakFetchRuntimeException e) {
+                assertEquals("a", e.getKey());
+                assertSame(error, e.getCause());
+                thrown++;
+            }
+        }
+        assertEquals(1, thrown);
+        assertEquals(keys.size() - 1, returned);
+    }
+
+    @Test(timeout = 5000) public void cancel_wakes_waiting_next() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        RiakClient riak = new RiakClient("http://localhost:8098/riak") {
+            @Override public FetchResponse fetch(String bucket, String key, RequestMeta meta) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {}
+                return new FetchResponse(null);
+            }
+        };
+        final FetchManyResponse impl = new FetchManyResponse(riak, bucket, keys, null, 1, executor);
+        final Iterator<FetchResponse> it = impl.iterator();
+        final AtomicInteger woken = new AtomicInteger();
+        Thread waiter = new Thread() {
+            @Override public void run() {
+                try {
+                    it.next();
+                } catch (NoSuchElementException e) {
+                    woken.incrementAndGet();
+                }
+            }
+        };
+        waiter.start();
+        while (waiter.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+
+        impl.cancel();
+        waiter.join();
+        release.countDown();
+
+        assertEquals(1, woken.get());
+        assertFalse(it.hasNext());
+    }
+}
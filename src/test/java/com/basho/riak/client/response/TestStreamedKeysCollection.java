@@ -18,11 +18,14 @@ import static org.junit.Assert.*;
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.Arrays;
 import java.util.Iterator;
 
 import org.json.JSONTokener;
 import org.junit.Test;
 
+import com.basho.riak.client.util.JsonPullParser;
+
 public class TestStreamedKeysCollection {
     
     StreamedKeysCollection impl;
@@ -93,4 +96,16 @@ public class TestStreamedKeysCollection {
         
         assertEquals("key1", impl.iterator().next());
     }
+
+    @Test public void reads_keys_from_pull_parser() {
+        final String keys = "{\"keys\":[\"key1\"]}{\"j\": 1, \"k\": \"v\", \"l\": [ ]}[\"key2\", \"key3\"]";
+        impl = new StreamedKeysCollection(new JsonPullParser(keys.getBytes()), Arrays.asList("key0"));
+
+        assertEquals(4, impl.size());
+        Iterator<String> iter = impl.iterator();
+        assertEquals("key0", iter.next());
+        assertEquals("key1", iter.next());
+        assertEquals("key2", iter.next());
+        assertEquals("key3", iter.next());
+    }
 }
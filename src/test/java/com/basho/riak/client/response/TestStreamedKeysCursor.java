@@ -0,0 +1,138 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.response;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.httpclient.HttpMethod;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class TestStreamedKeysCursor {
+
+    @Mock HttpResponse mockHttpResponse;
+    @Mock HttpMethod mockHttpMethod;
+
+    @Before public void setup() {
+        MockitoAnnotations.initMocks(this);
+
+        when(mockHttpResponse.isSuccess()).thenReturn(true);
+        when(mockHttpResponse.isStreamed()).thenReturn(true);
+        when(mockHttpResponse.getHttpMethod()).thenReturn(mockHttpMethod);
+    }
+
+    private void body(String body) throws IOException {
+        when(mockHttpResponse.getStream()).thenReturn(new ByteArrayInputStream(body.getBytes("UTF-8")));
+    }
+
+    private static List<String> keys(StreamedKeysCursor impl) {
+        List<String> keys = new ArrayList<String>();
+        for (String key : impl) {
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    @Test public void doesnt_throw_on_null_impl() {
+        assertFalse(new StreamedKeysCursor(null).iterator().hasNext());
+    }
+
+    @Test public void no_keys_on_unsuccessful_response() {
+        when(mockHttpResponse.isSuccess()).thenReturn(false);
+        assertFalse(new StreamedKeysCursor(mockHttpResponse).iterator().hasNext());
+        verify(mockHttpResponse, never()).getStream();
+    }
+
+    @Test public void iterates_keys_across_chunks_and_skips_props() throws IOException {
+        body("{\"props\":{\"name\":\"b\",\"keys\":\"not these\",\"chash_keyfun\":{\"mod\":\"riak_core_util\"}},\"keys\":[\"k1\"]}" +
+             "{\"keys\":[]}\n{\"keys\":[\"k2\", \"k\\u00e9\\\"3\"]}" +
+             "{\"keys\":[\"\u65e5\u672c\"]}");
+
+        StreamedKeysCursor impl = new StreamedKeysCursor(mockHttpResponse);
+
+        assertEquals(4, keys(impl).size());
+        verify(mockHttpResponse).close();
+        verify(mockHttpMethod, never()).abort();
+    }
+
+    @Test public void decodes_keys() throws IOException {
+        body("{\"props\":{}}{\"keys\":[\"k1\",\"k\\u00e9\\\"3\"]}{\"keys\":[\"\u65e5\u672c\"]}");
+
+        List<String> keys = keys(new StreamedKeysCursor(mockHttpResponse));
+
+        assertEquals("k1", keys.get(0));
+        assertEquals("k\u00e9\"3", keys.get(1));
+        assertEquals("\u65e5\u672c", keys.get(2));
+    }
+
+    @Test public void keys_are_read_lazily() throws IOException {
+        final int[] reads = new int[1];
+        InputStream stream = new ByteArrayInputStream("{\"keys\":[\"a\"]}".getBytes()) {
+            @Override public synchronized int read(byte[] b, int off, int len) {
+                reads[0]++;
+                return super.read(b, off, len);
+            }
+        };
+        when(mockHttpResponse.getStream()).thenReturn(stream);
+
+        StreamedKeysCursor impl = new StreamedKeysCursor(mockHttpResponse);
+        assertEquals(0, reads[0]);
+
+        assertEquals("a", impl.iterator().next());
+    }
+
+    @Test public void close_before_end_aborts_request() throws IOException {
+        body("{\"keys\":[\"a\",\"b\",\"c\"]}");
+
+        StreamedKeysCursor impl = new StreamedKeysCursor(mockHttpResponse);
+        Iterator<String> it = impl.iterator();
+        assertEquals("a", it.next());
+        impl.close();
+
+        verify(mockHttpMethod).abort();
+        verify(mockHttpResponse).close();
+        assertFalse(it.hasNext());
+    }
+
+    @Test public void malformed_listing_throws_and_releases_connection() throws IOException {
+        body("{\"keys\":[\"a\",");
+
+        Iterator<String> it = new StreamedKeysCursor(mockHttpResponse).iterator();
+        assertEquals("a", it.next());
+        try {
+            it.next();
+            fail("expected RiakResponseRuntimeException");
+        } catch (RiakResponseRuntimeException e) { /* expected */}
+
+        verify(mockHttpMethod).abort();
+        verify(mockHttpResponse).close();
+    }
+
+    @Test(expected = IllegalStateException.class) public void can_only_be_iterated_once() throws IOException {
+        body("{\"keys\":[]}");
+        StreamedKeysCursor impl = new StreamedKeysCursor(mockHttpResponse);
+        impl.iterator();
+        impl.iterator();
+    }
+}
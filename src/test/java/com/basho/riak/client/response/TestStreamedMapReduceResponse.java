@@ -0,0 +1,114 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.response;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class TestStreamedMapReduceResponse {
+
+    final Map<String, String> HEADERS = new HashMap<String, String>();
+
+    @Mock HttpResponse mockHttpResponse;
+
+    @Before public void setup() {
+        HEADERS.put("content-type", "multipart/mixed; boundary=XZ8XvDkqmh9DMQRJuaARpaKoVBO");
+
+        MockitoAnnotations.initMocks(this);
+
+        when(mockHttpResponse.getHttpHeaders()).thenReturn(HEADERS);
+        when(mockHttpResponse.isSuccess()).thenReturn(true);
+        when(mockHttpResponse.isStreamed()).thenReturn(true);
+    }
+
+    private void body(String body) {
+        when(mockHttpResponse.getStream()).thenReturn(new ByteArrayInputStream(body.getBytes()));
+    }
+
+    private static String part(String json) {
+        return "\r\n--XZ8XvDkqmh9DMQRJuaARpaKoVBO\r\n" + "Content-Type: application/json\r\n" + "\r\n" + json;
+    }
+
+    @Test public void doesnt_throw_on_null_impl() {
+        assertFalse(new StreamedMapReduceResponse(null).iterator().hasNext());
+    }
+
+    @Test public void iterates_phase_tagged_batches() throws JSONException {
+        body(part("{\"phase\":0,\"data\":[1,2]}") + part("{\"phase\":1,\"data\":[\"a\"]}")
+             + part("{\"phase\":0,\"data\":[3]}") + "\r\n--XZ8XvDkqmh9DMQRJuaARpaKoVBO--\r\n");
+
+        StreamedMapReduceResponse impl = new StreamedMapReduceResponse(mockHttpResponse);
+        Iterator<StreamedMapReduceResponse.Batch> it = impl.iterator();
+
+        StreamedMapReduceResponse.Batch b = it.next();
+        assertEquals(0, b.getPhase());
+        assertEquals(2, b.getResults().length());
+        assertEquals(2, b.getResults().getInt(1));
+
+        b = it.next();
+        assertEquals(1, b.getPhase());
+        assertEquals("a", b.getResults().getString(0));
+
+        b = it.next();
+        assertEquals(0, b.getPhase());
+        assertEquals(3, b.getResults().getInt(0));
+
+        assertFalse(it.hasNext());
+        verify(mockHttpResponse).close();
+    }
+
+    @Test(expected = RiakResponseRuntimeException.class) public void throws_on_job_error() {
+        body(part("{\"phase\":0,\"data\":[1]}") + part("{\"error\":\"timeout\"}")
+             + "\r\n--XZ8XvDkqmh9DMQRJuaARpaKoVBO--\r\n");
+
+        Iterator<StreamedMapReduceResponse.Batch> it = new StreamedMapReduceResponse(mockHttpResponse).iterator();
+        it.next();
+        it.next();
+    }
+
+    @Test public void error_response_is_closed_when_iterated() {
+        when(mockHttpResponse.isSuccess()).thenReturn(false);
+        StreamedMapReduceResponse impl = new StreamedMapReduceResponse(mockHttpResponse);
+
+        Iterator<StreamedMapReduceResponse.Batch> it = impl.iterator();
+        assertFalse(it.hasNext());
+        assertFalse(it.hasNext());
+
+        verify(mockHttpResponse).close();
+    }
+
+    @Test(expected = RiakResponseRuntimeException.class) public void throws_if_not_multipart() {
+        HEADERS.put("content-type", "application/json");
+        body("[]");
+        new StreamedMapReduceResponse(mockHttpResponse);
+    }
+
+    @Test(expected = IllegalStateException.class) public void can_only_iterate_once() {
+        body("\r\n--XZ8XvDkqmh9DMQRJuaARpaKoVBO--\r\n");
+        StreamedMapReduceResponse impl = new StreamedMapReduceResponse(mockHttpResponse);
+        impl.iterator();
+        impl.iterator();
+    }
+}
@@ -16,7 +16,12 @@ package com.basho.riak.client.response;
 import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 
 import org.json.JSONException;
@@ -26,6 +31,7 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import com.basho.riak.client.RiakClient;
+import com.basho.riak.client.RiakObject;
 import com.basho.riak.client.response.HttpResponse;
 import com.basho.riak.client.response.RiakResponseRuntimeException;
 
@@ -115,6 +121,78 @@ public class TestWalkResponse {
         new WalkResponse(mockHttpResponse, mockRiakClient);
     }
 
+    @Test public void streams_walk_steps() throws IOException {
+        final String BODY = "\r\n" + "--BCVLGEKnH0gY7KsH5nW3xnzhYbU\r\n"
+                            + "Content-Type: multipart/mixed; boundary=7Ymillu08Tqzwb9Cm6Bs8OewFd5\r\n" 
+                            + "\r\n"
+                            + "--7Ymillu08Tqzwb9Cm6Bs8OewFd5\r\n" 
+                            + "Location: /riak/b/k1\r\n" 
+                            + "X-Riak-Vclock: vc1\r\n" 
+                            + "\r\n" 
+                            + "foo\r\n"
+                            + "--7Ymillu08Tqzwb9Cm6Bs8OewFd5--\r\n"
+                            + "\r\n"
+                            + "--BCVLGEKnH0gY7KsH5nW3xnzhYbU\r\n"
+                            + "Content-Type: multipart/mixed; boundary=GQ5pWIGD3Y1lCktctBrwvZiQxJA\r\n" 
+                            + "\r\n"
+                            + "--GQ5pWIGD3Y1lCktctBrwvZiQxJA\r\n" 
+                            + "Location: /riak/c/k2\r\n" 
+                            + "\r\n"
+                            + "bar\r\n"
+                            + "--GQ5pWIGD3Y1lCktctBrwvZiQxJA\r\n" 
+                            + "Location: /riak/c/k3\r\n" 
+                            + "\r\n"
+                            + "baz\r\n"
+                            + "--GQ5pWIGD3Y1lCktctBrwvZiQxJA--\r\n"
+                            + "\r\n"
+                            + "--BCVLGEKnH0gY7KsH5nW3xnzhYbU--\r\n";
+
+        when(mockHttpResponse.getStream()).thenReturn(new ByteArrayInputStream(BODY.getBytes()));
+        when(mockHttpResponse.isStreamed()).thenReturn(true);
+        when(mockHttpResponse.isSuccess()).thenReturn(true);
+
+        WalkResponse impl = new WalkResponse(mockHttpResponse, mockRiakClient);
+        assertTrue(impl.hasSteps());
+        verify(mockHttpResponse, never()).getBodyAsString();
+
+        Iterator<? extends Collection<RiakObject>> steps = impl.getStreamedSteps().iterator();
+
+        Iterator<RiakObject> objects = steps.next().iterator();
+        RiakObject o = objects.next();
+        assertEquals("b", o.getBucket());
+        assertEquals("k1", o.getKey());
+        assertEquals("vc1", o.getVclock());
+        assertEquals("foo", read(o.getValueStream()));
+        assertFalse(objects.hasNext());
+
+        objects = steps.next().iterator();
+        o = objects.next();
+        assertEquals("c", o.getBucket());
+        assertEquals("k2", o.getKey());
+        assertEquals("bar", read(o.getValueStream()));
+        o = objects.next();
+        assertEquals("k3", o.getKey());
+        assertEquals("baz", read(o.getValueStream()));
+        assertFalse(objects.hasNext());
+
+        assertFalse(steps.hasNext());
+    }
+
+    @Test public void non_streamed_response_has_no_streamed_steps() {
+        when(mockHttpResponse.getBody()).thenReturn("".getBytes());
+        when(mockHttpResponse.isSuccess()).thenReturn(true);
+
+        assertNull(new WalkResponse(mockHttpResponse, mockRiakClient).getStreamedSteps());
+    }
+
+    private static String read(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int c = in.read(); c != -1; c = in.read()) {
+            sb.append((char) c);
+        }
+        return sb.toString();
+    }
+
     // WalkResponse uses Multipart.parse, so we can rely on TestMultipart
     // to validate multipart parsing works.
 }
@@ -0,0 +1,55 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestBloomFilter {
+
+    @Test public void added_strings_are_always_found() {
+        BloomFilter impl = new BloomFilter(1000, 0.01);
+        for (int i = 0; i < 1000; i++) {
+            impl.add("key" + i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(impl.mightContain("key" + i));
+        }
+    }
+
+    @Test public void false_positive_rate_is_near_target() {
+        BloomFilter impl = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            impl.add("key" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (impl.mightContain("missing" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < 300);
+    }
+
+    @Test public void sized_from_expected_insertions() {
+        BloomFilter impl = new BloomFilter(1000, 0.01);
+        assertTrue(impl.getNumBits() >= 9585);
+        assertEquals(7, impl.getNumHashes());
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void rejects_invalid_rate() {
+        new BloomFilter(10, 1.0);
+    }
+}
@@ -174,4 +174,100 @@ public class TestBranchableInputStream {
 
         assertNull(firstChunk.next().next().next().next());
     }
+
+    @Test public void bulk_reads_span_chunks() throws IOException {
+        byte[] bytes = new byte[BranchableInputStream.DEFAULT_BASE_CHUNK_SIZE * 7 + 3];
+        new Random().nextBytes(bytes);
+        impl = new BranchableInputStream(new ByteArrayInputStream(bytes));
+        InputStream branch = impl.branch();
+
+        byte[] fromMain = new byte[bytes.length];
+        int len = 0, n;
+        while ((n = impl.read(fromMain, len, fromMain.length - len)) > 0) {
+            len += n;
+        }
+        assertEquals(bytes.length, len);
+        assertArrayEquals(bytes, fromMain);
+
+        byte[] fromBranch = new byte[bytes.length];
+        assertEquals(bytes.length, branch.read(fromBranch, 0, fromBranch.length));
+        assertArrayEquals(bytes, fromBranch);
+        assertEquals(-1, branch.read(fromBranch, 0, fromBranch.length));
+    }
+
+    @Test public void bulk_branch_read_advances_primary_position() throws IOException {
+        byte[] bytes = "012345678901234567890123456789".getBytes();
+        impl = new BranchableInputStream(new ByteArrayInputStream(bytes));
+        InputStream branch = impl.branch();
+
+        assertEquals(10, branch.read(new byte[10]));
+        assertEquals('0', impl.read());
+        assertEquals(11, impl.pos);
+    }
+
+    @Test public void chunk_size_is_capped() throws IOException {
+        byte[] bytes = new byte[BranchableInputStream.MAX_CHUNK_SIZE * 4];
+        impl = new BranchableInputStream(new ByteArrayInputStream(bytes));
+        LinkedChunk chunk = impl.lastChunk;
+        ClientUtils.copyStream(impl.branch(), new ByteArrayOutputStream());
+
+        while (chunk != null) {
+            assertTrue(chunk.buf.length <= BranchableInputStream.MAX_CHUNK_SIZE);
+            chunk = chunk.next();
+        }
+    }
+
+    @Test public void chunks_are_released_to_pool_once_all_branches_pass_them() throws IOException {
+        byte[] bytes = new byte[BranchableInputStream.DEFAULT_BASE_CHUNK_SIZE * 8];
+        new Random().nextBytes(bytes);
+        ChunkPool pool = new ChunkPool();
+        impl = new BranchableInputStream(new ByteArrayInputStream(bytes), pool);
+        InputStream behind = impl.branch();
+        InputStream ahead = impl.branch();
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ClientUtils.copyStream(ahead, os);
+        assertArrayEquals(bytes, os.toByteArray());
+        assertEquals(0, pool.getPooledBytes());
+
+        os.reset();
+        ClientUtils.copyStream(behind, os);
+        assertArrayEquals(bytes, os.toByteArray());
+        assertTrue(pool.getPooledBytes() > 0);
+        assertSame(impl.lastChunk, impl.head);
+    }
+
+    @Test public void closing_a_branch_releases_its_chunks() throws IOException {
+        byte[] bytes = new byte[BranchableInputStream.DEFAULT_BASE_CHUNK_SIZE * 8];
+        ChunkPool pool = new ChunkPool();
+        impl = new BranchableInputStream(new ByteArrayInputStream(bytes), pool);
+        InputStream unread = impl.branch();
+        ClientUtils.copyStream(impl.branch(), new ByteArrayOutputStream());
+        assertEquals(0, pool.getPooledBytes());
+
+        unread.close();
+        assertTrue(pool.getPooledBytes() > 0);
+        assertEquals(-1, unread.read());
+    }
+
+    @Test public void pooled_chunks_are_reused() throws IOException {
+        ChunkPool pool = new ChunkPool();
+        byte[] bytes = new byte[BranchableInputStream.DEFAULT_BASE_CHUNK_SIZE * 2];
+        new Random().nextBytes(bytes);
+
+        impl = new BranchableInputStream(new ByteArrayInputStream(new byte[bytes.length]), pool);
+        impl.branch().close();
+        ClientUtils.copyStream(impl.branch(), new ByteArrayOutputStream());
+        int pooled = pool.getPooledBytes();
+        assertTrue(pooled > 0);
+
+        impl = new BranchableInputStream(new ByteArrayInputStream(bytes), pool);
+        InputStream branch = impl.branch();
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        os.write(branch.read());
+        assertTrue(pool.getPooledBytes() < pooled);
+
+        ClientUtils.copyStream(branch, os);
+        assertArrayEquals(bytes, os.toByteArray());
+    }
 }
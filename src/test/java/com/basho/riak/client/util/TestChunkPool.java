@@ -0,0 +1,49 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestChunkPool {
+
+    @Test public void released_arrays_are_reused_for_the_same_size() {
+        ChunkPool impl = new ChunkPool();
+        byte[] buf = impl.acquire(1024);
+        impl.release(buf);
+
+        assertEquals(1024, impl.getPooledBytes());
+        assertNotSame(buf, impl.acquire(2048));
+        assertSame(buf, impl.acquire(1024));
+        assertEquals(0, impl.getPooledBytes());
+    }
+
+    @Test public void pool_is_bounded() {
+        ChunkPool impl = new ChunkPool(1500);
+        impl.release(new byte[1024]);
+        impl.release(new byte[1024]);
+        impl.release(new byte[256]);
+
+        assertEquals(1280, impl.getPooledBytes());
+    }
+
+    @Test public void ignores_null_and_empty_arrays() {
+        ChunkPool impl = new ChunkPool();
+        impl.release(null);
+        impl.release(new byte[0]);
+
+        assertEquals(0, impl.getPooledBytes());
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.basho.riak.client.util.CircuitBreaker.State;
+
+public class TestCircuitBreaker {
+
+    final long fast = TimeUnit.MILLISECONDS.toNanos(1);
+    final long slow = TimeUnit.MILLISECONDS.toNanos(500);
+
+    CircuitBreaker impl = new CircuitBreaker(10, 0.5, 0.5, 100, 60000);
+
+    @Test public void stays_closed_while_healthy() {
+        for (int i = 0; i < 20; i++) {
+            assertTrue(impl.allowRequest());
+            impl.onSuccess(fast);
+        }
+        assertEquals(State.CLOSED, impl.getState());
+    }
+
+    @Test public void needs_half_a_window_before_tripping() {
+        for (int i = 0; i < 4; i++) {
+            impl.onFailure(false);
+        }
+        assertEquals(State.CLOSED, impl.getState());
+        impl.onFailure(false);
+        assertEquals(State.OPEN, impl.getState());
+        assertFalse(impl.allowRequest());
+        assertFalse(impl.isAvailable());
+    }
+
+    @Test public void trips_on_error_rate() {
+        for (int i = 0; i < 10; i++) {
+            impl.onSuccess(fast);
+        }
+        for (int i = 0; i < 5; i++) {
+            impl.onError(fast);
+        }
+        assertEquals(State.CLOSED, impl.getState());
+        impl.onError(fast);
+        assertEquals(State.OPEN, impl.getState());
+    }
+
+    @Test public void trips_on_timeout_rate() {
+        for (int i = 0; i < 5; i++) {
+            impl.onSuccess(fast);
+        }
+        for (int i = 0; i < 6; i++) {
+            impl.onSuccess(slow);
+        }
+        assertEquals(State.OPEN, impl.getState());
+    }
+
+    @Test public void socket_timeouts_count_as_errors_and_timeouts() {
+        impl.onFailure(true);
+        assertEquals(1.0, impl.getErrorRate(), 0.0001);
+        assertEquals(1.0, impl.getTimeoutRate(), 0.0001);
+    }
+
+    @Test public void half_open_allows_one_trial_and_closes_on_success() throws InterruptedException {
+        impl = new CircuitBreaker(2, 0.5, 0.5, 100, 10);
+        impl.onFailure(false);
+        assertEquals(State.OPEN, impl.getState());
+
+        Thread.sleep(20);
+        assertTrue(impl.isAvailable());
+        assertTrue(impl.allowRequest());
+        assertEquals(State.HALF_OPEN, impl.getState());
+        assertFalse(impl.allowRequest());
+
+        impl.onSuccess(fast);
+        assertEquals(State.CLOSED, impl.getState());
+        assertTrue(impl.allowRequest());
+    }
+
+    @Test public void half_open_reopens_on_failure() throws InterruptedException {
+        impl = new CircuitBreaker(2, 0.5, 0.5, 100, 10);
+        impl.onFailure(false);
+        Thread.sleep(20);
+        assertTrue(impl.allowRequest());
+
+        impl.onSuccess(slow);
+        assertEquals(State.OPEN, impl.getState());
+        assertFalse(impl.allowRequest());
+    }
+}
@@ -208,6 +208,14 @@ public class TestClientHelper {
         verify(mockHttpClient).executeMethod(any(PostMethod.class));
     }
 
+    @Test public void mapReduce_adds_chunked_qp_when_streaming_response() {
+        RequestMeta meta = spy(new RequestMeta());
+        impl = spy(impl);
+        impl.mapReduce(mrJob, meta, true);
+        verify(meta).setQueryParam(Constants.QP_CHUNKED, "true");
+        verify(impl).executeMethod(anyString(), anyString(), any(PostMethod.class), same(meta), eq(true));
+    }
+
     @Test public void all_methods_add_query_params() throws HttpException, IOException {
 
         impl.setBucketSchema(bucket, schema, meta);
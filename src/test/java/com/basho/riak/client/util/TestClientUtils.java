@@ -62,6 +62,28 @@ public class TestClientUtils {
         assertEquals(maxConnections, httpClient.getHttpConnectionManager().getParams().getMaxTotalConnections());
     }
 
+    @Test public void newHttpClient_sets_max_connections_per_host() {
+        config.setMaxConnections(50);
+        config.setMaxConnectionsPerHost(11);
+
+        HttpClient httpClient = ClientUtils.newHttpClient(config);
+
+        assertEquals(11, httpClient.getHttpConnectionManager().getParams().getDefaultMaxConnectionsPerHost());
+    }
+
+    @Test public void newHttpClient_max_connections_per_host_defaults_to_max_total_connections() {
+        config.setMaxConnections(11);
+
+        HttpClient httpClient = ClientUtils.newHttpClient(config);
+
+        assertEquals(11, httpClient.getHttpConnectionManager().getParams().getDefaultMaxConnectionsPerHost());
+    }
+
+    @Test public void newHttpClient_uses_metered_connection_manager() {
+        HttpClient httpClient = ClientUtils.newHttpClient(config);
+        assertTrue(httpClient.getHttpConnectionManager() instanceof MeteredHttpConnectionManager);
+    }
+
     @Test public void newHttpClient_sets_connection_timeout() {
         final int timeout = 11;
         config.setTimeout(timeout);
@@ -0,0 +1,125 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TestCoalescer {
+
+    final AtomicInteger calls = new AtomicInteger();
+
+    @Test public void concurrent_calls_for_same_key_share_one_call() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Coalescer<String, StringBuilder> impl = new Coalescer<String, StringBuilder>() {
+            @Override protected StringBuilder share(StringBuilder value) {
+                return new StringBuilder(value);
+            }
+        };
+        final Callable<StringBuilder> call = new Callable<StringBuilder>() {
+            public StringBuilder call() throws Exception {
+                calls.incrementAndGet();
+                entered.countDown();
+                release.await();
+                return new StringBuilder("value");
+            }
+        };
+
+        final List<StringBuilder> results = new ArrayList<StringBuilder>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(new Thread() {
+                @Override public void run() {
+                    StringBuilder r = impl.execute("key", call);
+                    synchronized (results) {
+                        results.add(r);
+                    }
+                }
+            });
+        }
+        threads.get(0).start();
+        entered.await();
+        for (Thread t : threads.subList(1, threads.size())) {
+            t.start();
+        }
+        waitUntilBlocked(threads);
+        release.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(1, calls.get());
+        assertEquals(4, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals("value", results.get(i).toString());
+            for (int j = 0; j < i; j++) {
+                assertNotSame(results.get(i), results.get(j));
+            }
+        }
+        assertEquals(0, impl.getInFlight());
+    }
+
+    @Test public void caller_that_made_the_call_gets_a_shared_copy() {
+        final StringBuilder original = new StringBuilder("value");
+        Coalescer<String, StringBuilder> impl = new Coalescer<String, StringBuilder>() {
+            @Override protected StringBuilder share(StringBuilder value) {
+                return new StringBuilder(value);
+            }
+        };
+
+        StringBuilder r = impl.execute("key", new Callable<StringBuilder>() {
+            public StringBuilder call() {
+                return original;
+            }
+        });
+
+        assertNotSame(original, r);
+        assertEquals("value", r.toString());
+    }
+
+    @Test public void sequential_calls_are_not_cached() {
+        Coalescer<String, Integer> impl = new Coalescer<String, Integer>();
+        Callable<Integer> call = new Callable<Integer>() {
+            public Integer call() {
+                return calls.incrementAndGet();
+            }
+        };
+        assertEquals(Integer.valueOf(1), impl.execute("key", call));
+        assertEquals(Integer.valueOf(2), impl.execute("key", call));
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void exceptions_are_rethrown() {
+        new Coalescer<String, Integer>().execute("key", new Callable<Integer>() {
+            public Integer call() {
+                throw new IllegalArgumentException();
+            }
+        });
+    }
+
+    static void waitUntilBlocked(List<Thread> threads) throws InterruptedException {
+        for (Thread t : threads) {
+            for (int i = 0; i < 500 && t.getState() != Thread.State.WAITING; i++) {
+                Thread.sleep(10);
+            }
+        }
+    }
+}
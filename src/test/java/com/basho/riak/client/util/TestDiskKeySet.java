@@ -0,0 +1,149 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestDiskKeySet {
+
+    File file;
+    DiskKeySet impl;
+
+    @Before public void setup() throws IOException {
+        file = File.createTempFile("test-keys", ".set");
+    }
+
+    @After public void teardown() throws IOException {
+        if (impl != null) {
+            impl.close();
+        }
+        file.delete();
+    }
+
+    private static List<String> list(Iterable<String> keys) {
+        List<String> l = new ArrayList<String>();
+        for (String k : keys) {
+            l.add(k);
+        }
+        return l;
+    }
+
+    @Test public void iterates_sorted_distinct_keys() throws IOException {
+        impl = DiskKeySet.build(Arrays.asList("c", "a", "b", "a", "", "c").iterator(), file);
+
+        assertEquals(4, impl.size());
+        assertEquals(Arrays.asList("", "a", "b", "c"), list(impl));
+        assertEquals(Arrays.asList("", "a", "b", "c"), list(impl));
+        assertEquals("b", impl.get(2));
+    }
+
+    @Test public void merges_many_runs() throws IOException {
+        List<String> keys = new ArrayList<String>();
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            keys.add("key-" + random.nextInt(1500));
+        }
+        impl = DiskKeySet.build(keys.iterator(), file, 1024);
+
+        List<String> expected = new ArrayList<String>(new TreeSet<String>(keys));
+        assertEquals(expected, list(impl));
+        assertEquals(0, file.getParentFile().listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith("riak-keys");
+            }
+        }).length);
+    }
+
+    @Test public void contains_finds_only_present_keys() throws IOException {
+        impl = DiskKeySet.build(Arrays.asList("apple", "banana", "cherry", "\u65e5\u672c").iterator(), file);
+
+        assertTrue(impl.contains("apple"));
+        assertTrue(impl.contains("cherry"));
+        assertTrue(impl.contains("\u65e5\u672c"));
+        assertFalse(impl.contains("app"));
+        assertFalse(impl.contains("applesauce"));
+        assertFalse(impl.contains("zebra"));
+        assertFalse(impl.contains(null));
+    }
+
+    @Test public void slices_by_range() throws IOException {
+        impl = DiskKeySet.build(Arrays.asList("a", "b", "c", "d", "e").iterator(), file);
+
+        DiskKeySet slice = impl.subSet("b", "d");
+        assertEquals(2, slice.size());
+        assertEquals(Arrays.asList("b", "c"), list(slice));
+        assertEquals("c", slice.get(1));
+        assertFalse(slice.contains("d"));
+        assertTrue(slice.contains("b"));
+
+        assertEquals(Arrays.asList("a", "b"), list(impl.headSet("bb")));
+        assertEquals(Arrays.asList("d", "e"), list(impl.tailSet("d")));
+        assertTrue(impl.subSet("d", "b").isEmpty());
+        assertEquals(Arrays.asList("c"), list(slice.subSet("c", null)));
+    }
+
+    @Test public void reopens_existing_file() throws IOException {
+        DiskKeySet.build(Arrays.asList("x", "y").iterator(), file).close();
+
+        impl = DiskKeySet.open(file);
+        assertEquals(Arrays.asList("x", "y"), list(impl));
+    }
+
+    @Test public void empty_input_gives_empty_set() throws IOException {
+        impl = DiskKeySet.build(Collections.<String> emptyList().iterator(), file);
+
+        assertTrue(impl.isEmpty());
+        assertFalse(impl.iterator().hasNext());
+        assertFalse(impl.contains("a"));
+    }
+
+    @Test public void failed_build_leaves_no_files_behind() throws IOException {
+        File dir = File.createTempFile("test-keys", ".dir");
+        dir.delete();
+        dir.mkdir();
+        File target = new File(dir, "keys.set");
+        target.mkdir();
+        try {
+            DiskKeySet.build(Arrays.asList("a", "b").iterator(), target);
+            fail("expected IOException");
+        } catch (IOException e) { /* expected */ }
+
+        assertEquals(Arrays.asList("keys.set"), Arrays.asList(dir.list()));
+        target.delete();
+        dir.delete();
+    }
+
+    @Test(expected = IOException.class) public void open_rejects_other_files() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.write(new byte[64]);
+        raf.close();
+
+        DiskKeySet.open(file);
+    }
+}
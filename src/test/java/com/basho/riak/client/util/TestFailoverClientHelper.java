@@ -0,0 +1,231 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpMethodBase;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.basho.riak.client.RiakFailoverConfig;
+import com.basho.riak.client.response.HttpResponse;
+import com.basho.riak.client.response.RiakIORuntimeException;
+
+public class TestFailoverClientHelper {
+
+    final String[] urls = { "http://host1:8098/riak", "http://host2:8098/riak" };
+    final RiakFailoverConfig config = new RiakFailoverConfig(urls, "/riak");
+
+    @Mock HttpClient mockHttpClient;
+    FailoverClientHelper impl;
+
+    @Before public void setup() {
+        MockitoAnnotations.initMocks(this);
+        impl = new FailoverClientHelper(config, "test");
+        impl.setHttpClient(mockHttpClient);
+    }
+
+    @Test public void defaults_to_round_robin() {
+        assertTrue(impl.getHostSelectionStrategy() instanceof RoundRobinHostSelectionStrategy);
+
+        HostConfiguration first = impl.getNextHost();
+        HostConfiguration second = impl.getNextHost();
+        assertNotSame(first, second);
+        assertSame(first, impl.getNextHost());
+    }
+
+    @Test public void uses_configured_strategy() throws IOException {
+        HostSelectionStrategy strategy = mock(HostSelectionStrategy.class);
+        when(strategy.select(anyListOf(HostConfiguration.class))).thenAnswer(new Answer<HostConfiguration>() {
+            public HostConfiguration answer(InvocationOnMock invocation) throws Throwable {
+                return (HostConfiguration) ((List<?>) invocation.getArguments()[0]).get(1);
+            }
+        });
+        config.setHostSelectionStrategy(strategy);
+        impl = new FailoverClientHelper(config, "test");
+        impl.setHttpClient(mockHttpClient);
+
+        impl.executeMethod("b", "k", new GetMethod("/riak/b/k"), null, false);
+
+        HostConfiguration host = impl.httpClientHostConfigs.get(1);
+        verify(mockHttpClient).executeMethod(same(host), any(HttpMethod.class));
+        verify(strategy).requestStarted(host);
+        verify(strategy).requestCompleted(same(host), anyLong(), eq(false));
+    }
+
+    @Test public void removes_failed_host_and_retries_on_next() throws IOException {
+        final HostConfiguration bad = impl.httpClientHostConfigs.get(0);
+        when(mockHttpClient.executeMethod(any(HostConfiguration.class), any(HttpMethod.class))).thenAnswer(new Answer<Integer>() {
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                if (invocation.getArguments()[0] == bad)
+                    throw new IOException("down");
+                return 200;
+            }
+        });
+
+        HttpResponse r = impl.executeMethod("b", "k", new GetMethod("/riak/b/k"), null, false);
+
+        assertNotNull(r);
+        assertEquals(1, impl.httpClientHostConfigs.size());
+        assertFalse(impl.httpClientHostConfigs.contains(bad));
+    }
+
+    @Test(expected = RiakIORuntimeException.class) public void throws_when_all_hosts_fail() throws IOException {
+        when(mockHttpClient.executeMethod(any(HostConfiguration.class), any(HttpMethod.class))).thenThrow(new IOException("down"));
+        impl.executeMethod("b", "k", new GetMethod("/riak/b/k"), null, false);
+    }
+
+    @Test public void does_not_retry_a_request_whose_body_cannot_be_resent() throws IOException {
+        config.setCircuitBreakerEnabled(true);
+        impl = new FailoverClientHelper(config, "test");
+        impl.setHttpClient(mockHttpClient);
+        when(mockHttpClient.executeMethod(any(HostConfiguration.class), any(HttpMethod.class))).thenThrow(new IOException("reset"));
+        PostMethod post = new PostMethod("/mapred");
+        RequestEntity entity = mock(RequestEntity.class);
+        when(entity.isRepeatable()).thenReturn(false);
+        post.setRequestEntity(entity);
+
+        try {
+            impl.executeMethod(null, null, post, null, false);
+            fail("expected RiakIORuntimeException");
+        } catch (RiakIORuntimeException e) { /* expected */ }
+
+        verify(mockHttpClient, times(1)).executeMethod(any(HostConfiguration.class), any(HttpMethod.class));
+        int failed = 0;
+        for (HostConfiguration host : impl.httpClientHostConfigs) {
+            if (impl.getCircuitBreaker(host).getErrorRate() > 0)
+                failed++;
+        }
+        assertEquals(1, failed);
+    }
+
+    @Test public void circuit_breaker_keeps_failed_host_and_sheds_its_traffic() throws IOException {
+        config.setCircuitBreakerEnabled(true);
+        config.setCircuitBreakerWindowSize(2);
+        impl = new FailoverClientHelper(config, "test");
+        impl.setHttpClient(mockHttpClient);
+        final HostConfiguration bad = impl.httpClientHostConfigs.get(0);
+        HostConfiguration good = impl.httpClientHostConfigs.get(1);
+        when(mockHttpClient.executeMethod(any(HostConfiguration.class), any(HttpMethod.class))).thenAnswer(new Answer<Integer>() {
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                if (invocation.getArguments()[0] == bad)
+                    throw new IOException("down");
+                return 200;
+            }
+        });
+
+        impl.executeMethod("b", "k", new GetMethod("/riak/b/k"), null, false);
+
+        assertTrue(impl.httpClientHostConfigs.contains(bad));
+        assertEquals(CircuitBreaker.State.OPEN, impl.getCircuitBreaker(bad).getState());
+        for (int i = 0; i < 4; i++) {
+            assertSame(good, impl.getNextHost());
+        }
+    }
+
+    @Test(expected = RiakIORuntimeException.class) public void fails_fast_when_all_breakers_are_open() throws IOException {
+        config.setCircuitBreakerEnabled(true);
+        impl = new FailoverClientHelper(config, "test");
+        impl.setHttpClient(mockHttpClient);
+        for (HostConfiguration host : impl.httpClientHostConfigs) {
+            for (int i = 0; i < 20; i++) {
+                impl.getCircuitBreaker(host).onFailure(false);
+            }
+        }
+
+        try {
+            impl.executeMethod("b", "k", new GetMethod("/riak/b/k"), null, false);
+        } finally {
+            verify(mockHttpClient, never()).executeMethod(any(HostConfiguration.class), any(HttpMethod.class));
+        }
+    }
+
+    @Test public void slow_read_is_hedged_to_another_host() {
+        config.setHedgedReadsEnabled(true);
+        impl = new FailoverClientHelper(config, "test");
+        impl.setHttpClient(mockHttpClient);
+        for (int i = 0; i < FailoverClientHelper.HEDGE_MIN_SAMPLES; i++) {
+            impl.readLatency.record(1000);
+        }
+        final HostConfiguration slow = impl.httpClientHostConfigs.get(0);
+        final AtomicInteger calls = new AtomicInteger();
+        // not a mock: mocks serialize concurrent calls
+        impl.setHttpClient(new HttpClient() {
+            @Override public int executeMethod(HostConfiguration host, HttpMethod method) throws IOException {
+                calls.incrementAndGet();
+                if (host == slow) {
+                    for (int i = 0; i < 500 && !((HttpMethodBase) method).isAborted(); i++) {
+                        try {
+                            Thread.sleep(10);
+                        } catch (InterruptedException e) {
+                            break;
+                        }
+                    }
+                    throw new IOException("aborted");
+                }
+                return 200;
+            }
+        });
+
+        HttpResponse r = impl.fetch("b", "k", null);
+
+        assertNotNull(r.getHttpMethod());
+        assertEquals(1, impl.getHedgesSent());
+        assertEquals(1, impl.getHedgesWon());
+        assertTrue("aborted host should stay in rotation", impl.httpClientHostConfigs.contains(slow));
+        assertEquals(2, calls.get());
+    }
+
+    @Test public void fast_read_is_not_hedged() throws IOException {
+        config.setHedgedReadsEnabled(true);
+        config.setHedgeMinDelay(1000);
+        impl = new FailoverClientHelper(config, "test");
+        impl.setHttpClient(mockHttpClient);
+        for (int i = 0; i < FailoverClientHelper.HEDGE_MIN_SAMPLES; i++) {
+            impl.readLatency.record(1000);
+        }
+
+        impl.fetch("b", "k", null);
+
+        assertEquals(0, impl.getHedgesSent());
+        verify(mockHttpClient, times(1)).executeMethod(any(HostConfiguration.class), any(HttpMethod.class));
+    }
+
+    @Test public void reads_are_not_hedged_until_enough_latency_samples() {
+        config.setHedgedReadsEnabled(true);
+        impl = new FailoverClientHelper(config, "test");
+        impl.setHttpClient(mockHttpClient);
+
+        assertEquals(-1, impl.getHedgeDelay());
+        impl.fetch("b", "k", null);
+        assertEquals(1, impl.getReadLatency().getCount());
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestHistogram {
+
+    Histogram impl = new Histogram();
+
+    @Test public void empty_histogram_returns_zeros() {
+        assertEquals(0, impl.getCount());
+        assertEquals(0, impl.getPercentile(99));
+        assertEquals(0, impl.getMean(), 0);
+    }
+
+    @Test public void tracks_count_sum_and_max() {
+        impl.record(5);
+        impl.record(100);
+        impl.record(-1);
+        assertEquals(3, impl.getCount());
+        assertEquals(105, impl.getSum());
+        assertEquals(100, impl.getMax());
+    }
+
+    @Test public void small_values_are_exact() {
+        for (int i = 0; i < 8; i++) {
+            impl.record(i);
+        }
+        assertEquals(3, impl.getPercentile(50));
+        assertEquals(7, impl.getPercentile(100));
+    }
+
+    @Test public void percentiles_are_within_bucket_resolution() {
+        for (int i = 1; i <= 1000; i++) {
+            impl.record(i);
+        }
+        long p50 = impl.getPercentile(50);
+        long p99 = impl.getPercentile(99);
+        assertTrue("p50 was " + p50, p50 >= 500 && p50 <= 625);
+        assertTrue("p99 was " + p99, p99 >= 990 && p99 <= 1000);
+    }
+
+    @Test public void bucket_bounds_are_contiguous() {
+        for (int i = 1; i < Histogram.BUCKETS; i++) {
+            assertEquals(i, Histogram.bucketFor(Histogram.upperBound(i - 1) + 1));
+        }
+    }
+
+    @Test public void reset_clears_values() {
+        impl.record(42);
+        impl.reset();
+        assertEquals(0, impl.getCount());
+        assertEquals(0, impl.getMax());
+    }
+}
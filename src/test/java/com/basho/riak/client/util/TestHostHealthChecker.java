@@ -0,0 +1,115 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpMethod;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.basho.riak.client.RiakFailoverConfig;
+
+public class TestHostHealthChecker {
+
+    final String[] urls = { "http://host1:8098/riak", "http://host2:8098/riak" };
+    final RiakFailoverConfig config = new RiakFailoverConfig(urls, "/riak");
+
+    @Mock HttpClient mockHttpClient;
+    FailoverClientHelper helper;
+    HostHealthChecker impl;
+    HostConfiguration host;
+
+    @Before public void setup() {
+        MockitoAnnotations.initMocks(this);
+        config.setHealthCheckInitialDelay(60000);
+        config.setHealthCheckMaxDelay(200000);
+        helper = new FailoverClientHelper(config, "test");
+        helper.setHttpClient(mockHttpClient);
+        impl = helper.getHealthChecker();
+        host = helper.httpClientHostConfigs.get(0);
+    }
+
+    @After public void teardown() {
+        impl.shutdown();
+    }
+
+    @Test public void failed_host_is_quarantined_not_dropped() throws IOException {
+        when(mockHttpClient.executeMethod(same(host), any(HttpMethod.class))).thenThrow(new IOException("down"));
+        helper.quarantineHost(host);
+
+        assertFalse(helper.httpClientHostConfigs.contains(host));
+        assertTrue(impl.isQuarantined(host));
+    }
+
+    @Test public void readmits_host_that_responds() throws IOException {
+        when(mockHttpClient.executeMethod(same(host), any(HttpMethod.class))).thenReturn(200);
+        helper.quarantineHost(host);
+
+        impl.check(host);
+
+        assertTrue(helper.httpClientHostConfigs.contains(host));
+        assertFalse(impl.isQuarantined(host));
+    }
+
+    @Test public void backs_off_while_host_is_down() throws IOException {
+        when(mockHttpClient.executeMethod(same(host), any(HttpMethod.class))).thenThrow(new IOException("down"));
+        helper.quarantineHost(host);
+        assertEquals(60000, impl.getDelay(host));
+
+        impl.check(host);
+        assertEquals(120000, impl.getDelay(host));
+        impl.check(host);
+        assertEquals(200000, impl.getDelay(host));
+        assertFalse(helper.httpClientHostConfigs.contains(host));
+    }
+
+    @Test public void error_status_is_not_healthy() throws IOException {
+        when(mockHttpClient.executeMethod(same(host), any(HttpMethod.class))).thenReturn(503);
+        helper.quarantineHost(host);
+
+        impl.check(host);
+
+        assertFalse(helper.httpClientHostConfigs.contains(host));
+    }
+
+    @Test public void explicitly_removed_host_is_not_readmitted() throws IOException {
+        when(mockHttpClient.executeMethod(same(host), any(HttpMethod.class))).thenReturn(200);
+        helper.quarantineHost(host);
+        helper.removeRiakHost(host.getHost(), host.getPort());
+
+        impl.check(host);
+
+        assertFalse(helper.httpClientHostConfigs.contains(host));
+    }
+
+    @Test public void health_check_can_be_disabled() {
+        config.setHealthCheckEnabled(false);
+        helper = new FailoverClientHelper(config, "test");
+        assertNull(helper.getHealthChecker());
+
+        host = helper.httpClientHostConfigs.get(0);
+        helper.quarantineHost(host);
+        assertFalse(helper.httpClientHostConfigs.contains(host));
+    }
+}
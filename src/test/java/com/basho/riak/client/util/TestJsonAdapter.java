@@ -0,0 +1,62 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class TestJsonAdapter {
+
+    private static JsonPullParser parser(String json) throws IOException {
+        return new JsonPullParser(json.getBytes("UTF-8"));
+    }
+
+    @Test public void builds_same_values_as_json_tokener() throws IOException, JSONException {
+        String json = "{\"s\":\"\u65e5\u672c\",\"i\":3,\"l\":4000000000,\"d\":2.5,\"t\":true,\"n\":null,\"a\":[1,[2],{\"x\":\"y\"}]}";
+        JSONObject expected = new JSONObject(json);
+
+        JSONObject actual = JsonAdapter.readObject(parser(json));
+
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(expected.get("i").getClass(), actual.get("i").getClass());
+        assertEquals(expected.get("l").getClass(), actual.get("l").getClass());
+        assertEquals(expected.get("d").getClass(), actual.get("d").getClass());
+        assertSame(JSONObject.NULL, actual.get("n"));
+    }
+
+    @Test public void reads_arrays() throws IOException, JSONException {
+        JSONArray a = JsonAdapter.readArray(parser("[\"a\", 1, {\"b\": [true]}]"));
+
+        assertEquals(3, a.length());
+        assertEquals("a", a.getString(0));
+        assertEquals(1, a.getInt(1));
+        assertTrue(a.getJSONObject(2).getJSONArray("b").getBoolean(0));
+    }
+
+    @Test(expected = JSONException.class) public void readArray_rejects_objects() throws IOException, JSONException {
+        JsonAdapter.readArray(parser("{}"));
+    }
+
+    @Test public void reads_string_lists_without_json_values() throws IOException, JSONException {
+        assertEquals(Arrays.asList("a", "b", "3", "null"),
+                     JsonAdapter.readStringList(parser("[\"a\", \"b\", 3, {\"skip\": [\"me\"]}, null]")));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import com.basho.riak.client.util.JsonPullParser.Event;
+
+public class TestJsonPullParser {
+
+    private static JsonPullParser parser(String json) throws IOException {
+        return new JsonPullParser(json.getBytes("UTF-8"));
+    }
+
+    @Test public void reports_events_in_order() throws IOException, JSONException {
+        JsonPullParser impl = parser("{\"a\": [1, \"x\", true, false, null], \"b\": {}}");
+
+        assertEquals(Event.START_OBJECT, impl.next());
+        assertEquals(Event.FIELD_NAME, impl.next());
+        assertEquals("a", impl.getText());
+        assertEquals(Event.START_ARRAY, impl.next());
+        assertEquals(Event.NUMBER, impl.next());
+        assertTrue(impl.inArray());
+        assertEquals(Event.STRING, impl.next());
+        assertEquals("x", impl.getText());
+        assertEquals(Event.TRUE, impl.next());
+        assertEquals(Event.FALSE, impl.next());
+        assertEquals(Event.NULL, impl.next());
+        assertEquals(Event.END_ARRAY, impl.next());
+        assertEquals(Event.FIELD_NAME, impl.next());
+        assertEquals(Event.START_OBJECT, impl.next());
+        assertEquals(2, impl.getDepth());
+        assertEquals(Event.END_OBJECT, impl.next());
+        assertEquals(Event.END_OBJECT, impl.next());
+        assertEquals(0, impl.getDepth());
+        assertNull(impl.next());
+    }
+
+    @Test public void parses_numbers_without_strings() throws IOException, JSONException {
+        JsonPullParser impl = parser("[0, -42, 9223372036854775807, -9223372036854775808, 1.5, -2e3, 12345678901234567890]");
+        impl.next();
+
+        impl.next();
+        assertEquals(0, impl.getLong());
+        impl.next();
+        assertEquals(-42, impl.getInt());
+        impl.next();
+        assertEquals(Long.MAX_VALUE, impl.getLong());
+        impl.next();
+        assertEquals(Long.MIN_VALUE, impl.getLong());
+        impl.next();
+        assertFalse(impl.isIntegral());
+        assertEquals(1.5, impl.getDouble(), 0);
+        impl.next();
+        assertEquals(-2000.0, impl.getDouble(), 0);
+        assertEquals("-2e3", impl.getText());
+        impl.next();
+        assertFalse(impl.isIntegral());
+        assertEquals(1.2345678901234567e19, impl.getDouble(), 1e4);
+    }
+
+    @Test public void reads_consecutive_top_level_values() throws IOException, JSONException {
+        JsonPullParser impl = parser("{\"keys\":[]} {\"keys\":[\"a\"]}\n");
+
+        int objects = 0;
+        Event e;
+        while ((e = impl.next()) != null) {
+            if (e == Event.START_OBJECT) {
+                objects++;
+            }
+        }
+        assertEquals(2, objects);
+    }
+
+    @Test public void skips_children() throws IOException, JSONException {
+        JsonPullParser impl = parser("{\"skip\": {\"a\": [1, {\"b\": \"}]\"}]}, \"keep\": \"v\"}");
+
+        impl.next();
+        impl.next();
+        impl.next();
+        impl.skipChildren();
+        assertEquals(Event.END_OBJECT, impl.getEvent());
+        assertEquals(Event.FIELD_NAME, impl.next());
+        assertEquals("keep", impl.getText());
+        assertEquals(Event.STRING, impl.next());
+        assertEquals("v", impl.getText());
+    }
+
+    @Test(expected = JSONException.class) public void rejects_missing_comma() throws IOException, JSONException {
+        JsonPullParser impl = parser("[1 2]");
+        while (impl.next() != null) { /* nop */}
+    }
+
+    @Test(expected = JSONException.class) public void rejects_truncated_input() throws IOException, JSONException {
+        JsonPullParser impl = parser("{\"a\": [1");
+        while (impl.next() != null) { /* nop */}
+    }
+
+    @Test(expected = JSONException.class) public void rejects_bad_literal() throws IOException, JSONException {
+        JsonPullParser impl = parser("[nul]");
+        impl.next();
+        impl.next();
+    }
+}
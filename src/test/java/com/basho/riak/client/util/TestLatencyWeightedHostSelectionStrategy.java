@@ -0,0 +1,64 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.httpclient.HostConfiguration;
+import org.junit.Test;
+
+public class TestLatencyWeightedHostSelectionStrategy {
+
+    final HostConfiguration fast = TestLeastOutstandingHostSelectionStrategy.host("fast");
+    final HostConfiguration slow = TestLeastOutstandingHostSelectionStrategy.host("slow");
+    final List<HostConfiguration> hosts = Arrays.asList(fast, slow);
+    final LatencyWeightedHostSelectionStrategy impl = new LatencyWeightedHostSelectionStrategy(0.5, 1000);
+
+    @Test public void average_moves_toward_new_samples() {
+        impl.requestCompleted(fast, 100, false);
+        assertEquals(100, impl.getAverageLatency(fast), 0.001);
+        impl.requestCompleted(fast, 300, false);
+        assertEquals(200, impl.getAverageLatency(fast), 0.001);
+    }
+
+    @Test public void prefers_faster_host() {
+        impl.requestCompleted(fast, 1000, false);
+        impl.requestCompleted(slow, 50000, false);
+        for (int i = 0; i < 10; i++) {
+            assertSame(fast, impl.select(hosts));
+        }
+    }
+
+    @Test public void failures_are_penalized() {
+        impl.requestCompleted(fast, 1000, false);
+        impl.requestCompleted(slow, 5000, false);
+        impl.requestCompleted(fast, 10, true);
+        assertTrue(impl.getAverageLatency(fast) > 1000000);
+        assertSame(slow, impl.select(hosts));
+    }
+
+    @Test public void outstanding_requests_raise_cost() {
+        impl.requestCompleted(fast, 1000, false);
+        impl.requestCompleted(slow, 1500, false);
+        impl.requestStarted(fast);
+        assertSame(slow, impl.select(hosts));
+    }
+
+    @Test(expected = IllegalArgumentException.class) public void rejects_invalid_decay() {
+        new LatencyWeightedHostSelectionStrategy(0, 1000);
+    }
+}
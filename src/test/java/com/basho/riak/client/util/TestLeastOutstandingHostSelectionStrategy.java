@@ -0,0 +1,58 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.httpclient.HostConfiguration;
+import org.junit.Test;
+
+public class TestLeastOutstandingHostSelectionStrategy {
+
+    final HostConfiguration a = host("a");
+    final HostConfiguration b = host("b");
+    final List<HostConfiguration> hosts = Arrays.asList(a, b);
+    final LeastOutstandingHostSelectionStrategy impl = new LeastOutstandingHostSelectionStrategy();
+
+    @Test public void picks_host_with_fewest_requests_in_flight() {
+        impl.requestStarted(a);
+        for (int i = 0; i < 4; i++) {
+            assertSame(b, impl.select(hosts));
+        }
+
+        impl.requestStarted(b);
+        impl.requestStarted(b);
+        assertSame(a, impl.select(hosts));
+    }
+
+    @Test public void completed_requests_are_no_longer_outstanding() {
+        impl.requestStarted(a);
+        impl.requestCompleted(a, 1000, false);
+        assertEquals(0, impl.getOutstanding(a));
+    }
+
+    @Test public void spreads_ties_across_hosts() {
+        HostConfiguration first = impl.select(hosts);
+        assertNotSame(first, impl.select(hosts));
+    }
+
+    static HostConfiguration host(String name) {
+        HostConfiguration config = new HostConfiguration();
+        config.setHost(name, 8098);
+        return config;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestLruCache {
+
+    static final LruCache.Weigher<String> LENGTH = new LruCache.Weigher<String>() {
+        public long weigh(String value) {
+            return value.length();
+        }
+    };
+
+    LruCache<String, String> impl = new LruCache<String, String>(10, 0, LENGTH);
+
+    @Test public void evicts_least_recently_used_when_over_weight() {
+        impl.put("a", "aaaa");
+        impl.put("b", "bbbb");
+        impl.get("a");
+        impl.put("c", "cccc");
+
+        assertEquals("aaaa", impl.get("a"));
+        assertNull(impl.get("b"));
+        assertEquals("cccc", impl.get("c"));
+        assertEquals(8, impl.getWeight());
+        assertEquals(1, impl.getEvictions());
+    }
+
+    @Test public void replacing_a_value_updates_weight() {
+        impl.put("a", "aaaa");
+        impl.put("a", "aa");
+        assertEquals(2, impl.getWeight());
+        assertEquals(1, impl.size());
+    }
+
+    @Test public void values_heavier_than_max_are_not_cached() {
+        impl.put("a", "aaaa");
+        impl.put("big", "01234567890");
+        assertNull(impl.get("big"));
+        assertEquals("aaaa", impl.get("a"));
+    }
+
+    @Test public void expired_entries_are_dropped() throws InterruptedException {
+        impl = new LruCache<String, String>(10, 10, LENGTH);
+        impl.put("a", "aaaa");
+        assertEquals("aaaa", impl.get("a"));
+        Thread.sleep(20);
+        assertNull(impl.get("a"));
+        assertEquals(0, impl.getWeight());
+    }
+
+    @Test public void remove_and_clear() {
+        impl.put("a", "aaaa");
+        impl.put("b", "bb");
+        assertEquals("aaaa", impl.remove("a"));
+        assertNull(impl.remove("a"));
+        assertEquals(2, impl.getWeight());
+        impl.clear();
+        assertEquals(0, impl.size());
+        assertEquals(0, impl.getWeight());
+    }
+}
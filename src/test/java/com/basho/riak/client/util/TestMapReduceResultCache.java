@@ -0,0 +1,174 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.json.JSONException;
+import org.junit.Test;
+
+import com.basho.riak.client.response.DefaultHttpResponse;
+import com.basho.riak.client.response.MapReduceResponse;
+
+public class TestMapReduceResultCache {
+
+    final AtomicInteger calls = new AtomicInteger();
+    MapReduceResultCache impl = new MapReduceResultCache(1024 * 1024);
+
+    Callable<MapReduceResponse> job(final int status, final String body) {
+        return new Callable<MapReduceResponse>() {
+            public MapReduceResponse call() throws JSONException {
+                calls.incrementAndGet();
+                return new MapReduceResponse(new DefaultHttpResponse(null, null, status, null, body.getBytes(), null,
+                                                                     null));
+            }
+        };
+    }
+
+    @Test public void returns_cached_copy_without_running_job() throws JSONException {
+        MapReduceResponse first = impl.execute("job", 60000, job(200, "[1,2]"));
+        first.getResults().put(3);
+        MapReduceResponse second = impl.execute("job", 60000, job(200, "[4]"));
+
+        assertEquals(1, calls.get());
+        assertEquals("[1,2]", second.getResults().toString());
+        assertNotSame(first.getResults(), second.getResults());
+        assertEquals(200, second.getStatusCode());
+        assertEquals(1, impl.size());
+    }
+
+    @Test public void caller_that_ran_the_job_gets_a_copy() throws Exception {
+        final MapReduceResponse original = job(200, "[1]").call();
+        MapReduceResponse r = impl.execute("job", 60000, new Callable<MapReduceResponse>() {
+            public MapReduceResponse call() {
+                return original;
+            }
+        });
+
+        assertNotSame(original.getResults(), r.getResults());
+        assertEquals("[1]", r.getResults().toString());
+    }
+
+    @Test public void cached_copy_does_not_hold_the_job_response() throws JSONException {
+        final GetMethod method = new GetMethod("/mapred");
+        impl.execute("job", 60000, new Callable<MapReduceResponse>() {
+            public MapReduceResponse call() throws JSONException {
+                return new MapReduceResponse(new DefaultHttpResponse(null, null, 200, null, "[1, 2]".getBytes(),
+                                                                     null, method));
+            }
+        });
+
+        MapReduceResponse cached = impl.get("job");
+        assertNull(cached.getHttpMethod());
+        assertEquals("[1,2]", cached.getBodyAsString());
+        assertEquals("[1,2]", cached.getResults().toString());
+    }
+
+    @Test public void caches_each_fingerprint_separately() {
+        impl.execute("a", 60000, job(200, "[1]"));
+        assertEquals("[2]", impl.execute("b", 60000, job(200, "[2]")).getResults().toString());
+        assertEquals(2, calls.get());
+    }
+
+    @Test public void entries_expire_after_their_own_ttl() throws InterruptedException {
+        impl.execute("short", 1, job(200, "[1]"));
+        impl.execute("long", 60000, job(200, "[1]"));
+        Thread.sleep(10);
+
+        assertNull(impl.get("short"));
+        assertNotNull(impl.get("long"));
+        impl.execute("short", 1, job(200, "[1]"));
+        assertEquals(3, calls.get());
+    }
+
+    @Test public void does_not_cache_failures() {
+        impl.execute("job", 60000, job(500, "error"));
+        impl.execute("job", 60000, job(500, "error"));
+        assertEquals(2, calls.get());
+        assertEquals(0, impl.size());
+    }
+
+    @Test public void bounded_by_size_of_response_bodies() {
+        impl = new MapReduceResultCache(1000);
+        StringBuilder big = new StringBuilder("[0");
+        for (int i = 0; i < 150; i++) {
+            big.append(",0");
+        }
+        big.append("]");
+
+        impl.execute("a", 60000, job(200, big.toString()));
+        impl.execute("b", 60000, job(200, big.toString()));
+        impl.execute("c", 60000, job(200, big.toString()));
+
+        assertTrue(impl.getWeight() <= 1000);
+        assertNull(impl.get("a"));
+        assertNotNull(impl.get("c"));
+    }
+
+    @Test public void invalidate_and_clear_drop_entries() {
+        impl.execute("a", 60000, job(200, "[1]"));
+        impl.execute("b", 60000, job(200, "[1]"));
+        impl.invalidate("a");
+        assertNull(impl.get("a"));
+        impl.clear();
+        assertNull(impl.get("b"));
+    }
+
+    @Test public void concurrent_submissions_share_one_run() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Callable<MapReduceResponse> slow = new Callable<MapReduceResponse>() {
+            public MapReduceResponse call() throws Exception {
+                entered.countDown();
+                release.await();
+                return job(200, "[1]").call();
+            }
+        };
+
+        final List<MapReduceResponse> results = new ArrayList<MapReduceResponse>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 3; i++) {
+            threads.add(new Thread() {
+                @Override public void run() {
+                    MapReduceResponse r = impl.execute("job", 60000, slow);
+                    synchronized (results) {
+                        results.add(r);
+                    }
+                }
+            });
+        }
+        threads.get(0).start();
+        entered.await();
+        threads.get(1).start();
+        threads.get(2).start();
+        while (threads.get(1).getState() != Thread.State.WAITING || threads.get(2).getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(1, calls.get());
+        assertEquals(3, results.size());
+        assertNotSame(results.get(0).getResults(), results.get(1).getResults());
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMeteredHttpConnectionManager {
+
+    HostConfiguration host = new HostConfiguration();
+    MeteredHttpConnectionManager impl;
+
+    @Before public void setup() {
+        host.setHost("localhost", 8098);
+        impl = new MeteredHttpConnectionManager();
+        impl.getParams().setDefaultMaxConnectionsPerHost(1);
+    }
+
+    @Test public void tracks_leased_and_idle_connections() throws Exception {
+        HttpConnection conn = impl.getConnectionWithTimeout(host, 0);
+        assertEquals(1, impl.getLeasedConnections());
+        assertEquals(0, impl.getIdleConnections());
+
+        conn.releaseConnection();
+        assertEquals(0, impl.getLeasedConnections());
+        assertEquals(1, impl.getIdleConnections());
+    }
+
+    @Test public void records_wait_time_for_every_lease() throws Exception {
+        impl.getConnectionWithTimeout(host, 0).releaseConnection();
+        impl.getConnectionWithTimeout(host, 0).releaseConnection();
+        assertEquals(2, impl.getConnectionWaitTime().getCount());
+    }
+
+    @Test public void records_wait_time_when_pool_times_out() throws Exception {
+        impl.getConnectionWithTimeout(host, 0);
+        try {
+            impl.getConnectionWithTimeout(host, 10);
+            fail("Expected pool timeout");
+        } catch (ConnectionPoolTimeoutException e) { /* expected */}
+
+        assertEquals(0, impl.getPendingRequests());
+        assertEquals(2, impl.getConnectionWaitTime().getCount());
+        assertTrue(impl.getConnectionWaitTime().getMax() >= 10000);
+    }
+}
@@ -15,6 +15,9 @@ package com.basho.riak.client.util;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -121,4 +124,104 @@ public class TestMultipart {
         assertEquals(0, parts.get(0).getHeaders().size());
         assertEquals("part", parts.get(0).getBodyAsString());
     }
+
+    @Test public void byte_parse_null_result_if_no_boundary() {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("content-type", "multipart/mixed");
+        assertNull(Multipart.parse(headers, "\r\n--boundary\r\n\r\nsubpart\r\n--boundary--".getBytes()));
+    }
+
+    @Test public void byte_parse_matches_string_parse() {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("content-type", "multipart/mixed; boundary=boundary");
+        String[] bodies = {
+            "\r\n--boundary\r\n" + "\r\n" + "--boundary--",
+            "--boundary\r\n" + "Content-Type: text/plain\r\n" + "\r\n" + "part1\r\n" + "--boundary\r\n" + "\r\n"
+                + "part2\r\n" + "--boundary--",
+            "preamble\r\n--boundary trailing text\r\n" + "Location: /riak/b/k\r\n" + "\r\n" + "part\r\n" + "--boundary--\r\n",
+            "\r\n--boundary\r\n" + "No-Body: true\r\n" + "--boundary--" };
+
+        for (String body : bodies) {
+            List<Multipart.Part> expected = Multipart.parse(headers, body);
+            List<Multipart.Part> actual = Multipart.parse(headers, body.getBytes());
+            assertEquals(body, expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(body, expected.get(i).getHeaders(), actual.get(i).getHeaders());
+                assertEquals(body, expected.get(i).getBodyAsString(), actual.get(i).getBodyAsString());
+            }
+        }
+    }
+
+    @Test public void byte_parse_preserves_binary_bodies() throws IOException {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("content-type", "multipart/mixed; boundary=boundary");
+        byte[] value = { (byte) 0xff, (byte) 0xfe, 0, (byte) 0xc3, '\r', '\n', '-', '-' };
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write("\r\n--boundary\r\nContent-Type: application/octet-stream\r\n\r\n".getBytes());
+        body.write(value);
+        body.write("\r\n--boundary--".getBytes());
+
+        List<Multipart.Part> parts = Multipart.parse(headers, body.toByteArray());
+
+        assertEquals(1, parts.size());
+        assertArrayEquals(value, parts.get(0).getBody());
+    }
+
+    @Test public void byte_parse_parts_are_views_over_the_message() throws IOException {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("content-type", "multipart/mixed; boundary=boundary");
+        byte[] body = "\r\n--boundary\r\n\r\npart1\r\n--boundary--".getBytes();
+
+        Multipart.Part part = Multipart.parse(headers, body).get(0);
+        ByteBuffer view = part.getBodyBuffer();
+
+        assertSame(body, view.array());
+        assertEquals(5, view.remaining());
+        assertEquals('p', view.get(view.position()));
+        assertEquals('p', part.getStream().read());
+    }
+
+    @Test public void byte_parse_parses_multipart_subpart_in_place() {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("content-type", "multipart/mixed; boundary=boundary");
+        String body = "\r\n--boundary\r\n" + "Content-Type: multipart/mixed; boundary=5hgaasMxj1NIcoxJBpWd4j9IuaW\r\n" + "\r\n"
+                      + "--5hgaasMxj1NIcoxJBpWd4j9IuaW\r\n" + "Content-Type: application/octet-stream\r\n" + "\r\n"
+                      + "subpart1\r\n" + "--5hgaasMxj1NIcoxJBpWd4j9IuaW\r\n" + "Content-Type: application/octet-stream\r\n"
+                      + "\r\n" + "subpart2\r\n" + "--5hgaasMxj1NIcoxJBpWd4j9IuaW--\r\n" + "\r\n" + "--boundary--\r\n";
+        byte[] bytes = body.getBytes();
+
+        List<Multipart.Part> parts = Multipart.parse(headers, bytes);
+        List<Multipart.Part> subparts = Multipart.parse(parts.get(0).getHeaders(), parts.get(0).getBodyBuffer());
+
+        assertEquals(2, subparts.size());
+        assertEquals("subpart1", subparts.get(0).getBodyAsString());
+        assertEquals("subpart2", subparts.get(1).getBodyAsString());
+        assertSame(bytes, subparts.get(1).getBodyBuffer().array());
+    }
+
+    @Test public void byte_parse_finds_leading_boundary_at_any_buffer_position() {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("content-type", "multipart/mixed; boundary=boundary");
+        byte[] message = "--boundary\r\n\r\npart\r\n--boundary--".getBytes();
+
+        for (int offset = 0; offset < 4; offset++) {
+            byte[] buf = new byte[offset + message.length];
+            System.arraycopy(message, 0, buf, offset, message.length);
+            List<Multipart.Part> parts = Multipart.parse(headers, ByteBuffer.wrap(buf, offset, message.length));
+
+            assertEquals("offset " + offset, 1, parts.size());
+            assertEquals("part", parts.get(0).getBodyAsString());
+        }
+    }
+
+    @Test public void horspool_finds_first_match() {
+        byte[] pattern = "\r\n--abcab".getBytes();
+        int[] skip = Multipart.horspoolTable(pattern);
+        byte[] buf = "xx\r\n--abca\r\n--abcab\r\n--abcab".getBytes();
+
+        assertEquals(10, Multipart.indexOf(buf, 0, buf.length, pattern, skip));
+        assertEquals(10, Multipart.indexOf(buf, 10, buf.length, pattern, skip));
+        assertEquals(19, Multipart.indexOf(buf, 11, buf.length, pattern, skip));
+        assertEquals(-1, Multipart.indexOf(buf, 0, 18, pattern, skip));
+    }
 }
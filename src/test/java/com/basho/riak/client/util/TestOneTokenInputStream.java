@@ -18,6 +18,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
 
 import org.junit.Test;
 
@@ -73,4 +74,106 @@ public class TestOneTokenInputStream {
         ClientUtils.copyStream(impl, os);
         assertEquals(part1, os.toString());
     }
+
+    @Test public void stream_shorter_than_delimiter_is_not_lost() throws IOException {
+        String delim = "\r\n--a-long-boundary-string";
+        String part1 = "abc";
+        InputStream stream = new ByteArrayInputStream(part1.getBytes());
+        impl = new OneTokenInputStream(stream, delim);
+        
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ClientUtils.copyStream(impl, os);
+        assertEquals(part1, os.toString());
+    }
+
+    @Test public void bytes_are_returned_unchanged() throws IOException {
+        String delim = "\r\n--boundary";
+        byte[] body = { (byte) 0xc3, (byte) 0xa9, (byte) 0xff, 'a' };
+        impl = new OneTokenInputStream(new ByteArrayInputStream(body), delim);
+
+        for (byte b : body) {
+            assertEquals(b & 0xff, impl.read());
+        }
+        assertEquals(-1, impl.read());
+    }
+
+    @Test public void finds_delimiter_overlapping_a_partial_match() throws IOException {
+        String delim = "abac";
+        InputStream stream = new ByteArrayInputStream("xababacyz".getBytes());
+        impl = new OneTokenInputStream(stream, delim);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ClientUtils.copyStream(impl, os);
+        assertEquals("xab", os.toString());
+        assertTrue(impl.foundToken());
+        assertEquals(7, impl.getTokenEnd());
+    }
+
+    @Test public void finds_delimiter_split_across_reads() throws IOException {
+        String delim = "\r\n--boundary";
+        String part1 = "abcdefghijklmnop";
+        InputStream stream = new TrickleInputStream((part1 + delim + "rest").getBytes());
+        impl = new OneTokenInputStream(stream, delim);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ClientUtils.copyStream(impl, os);
+        assertEquals(part1, os.toString());
+        assertTrue(impl.foundToken());
+    }
+
+    @Test public void reads_in_bulk() throws IOException {
+        byte[] body = new byte[3 * OneTokenInputStream.BLOCK_SIZE];
+        for (int i = 0; i < body.length; i++) {
+            body[i] = (byte) i;
+        }
+        impl = new OneTokenInputStream(new ByteArrayInputStream(body), "\r\n--boundary");
+
+        byte[] b = new byte[body.length];
+        int n = impl.read(b, 0, b.length);
+        assertTrue(n > 1);
+        int len = n;
+        while ((n = impl.read(b, len, b.length - len)) > 0) {
+            len += n;
+        }
+        assertEquals(body.length, len);
+        assertArrayEquals(body, b);
+        assertFalse(impl.foundToken());
+        assertEquals(-1, impl.getTokenEnd());
+    }
+
+    @Test public void pushes_back_bytes_read_past_delimiter() throws IOException {
+        String delim = "\r\n--boundary";
+        PushbackInputStream stream = new PushbackInputStream(new ByteArrayInputStream(("abc" + delim + "def" + delim + "ghi").getBytes()),
+                                                             OneTokenInputStream.BLOCK_SIZE);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        impl = new OneTokenInputStream(stream, delim);
+        ClientUtils.copyStream(impl, os);
+        assertEquals("abc", os.toString());
+        assertEquals(3 + delim.length(), impl.getTokenEnd());
+
+        os.reset();
+        impl = new OneTokenInputStream(stream, delim);
+        ClientUtils.copyStream(impl, os);
+        assertEquals("def", os.toString());
+
+        os.reset();
+        impl = new OneTokenInputStream(stream, delim);
+        ClientUtils.copyStream(impl, os);
+        assertEquals("ghi", os.toString());
+        assertFalse(impl.foundToken());
+    }
+
+    /**
+     * Returns a single byte per read, whatever the buffer size
+     */
+    static class TrickleInputStream extends ByteArrayInputStream {
+        TrickleInputStream(byte[] buf) {
+            super(buf);
+        }
+
+        @Override public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, 1));
+        }
+    }
 }
@@ -160,4 +160,62 @@ public class TestStreamedMultipart {
         assertEquals("foo", os.toString());
 
     }
+
+    @Test public void last_part_shorter_than_boundary_is_parsed() {
+        Map<String, String> headers = new HashMap<String, String>();
+        headers.put("content-type", "multipart/mixed; boundary=GQ5pWIGD3Y1lCktctBrwvZiQxJA");
+        String body = 
+            "\r\n" +
+            "--GQ5pWIGD3Y1lCktctBrwvZiQxJA\r\n" +
+            "Location: /riak/c/k2\r\n" +
+            "\r\n" +
+            "bar\r\n" +
+            "--GQ5pWIGD3Y1lCktctBrwvZiQxJA\r\n" +
+            "Location: /riak/c/k3\r\n" +
+            "\r\n" +
+            "baz\r\n" +
+            "--GQ5pWIGD3Y1lCktctBrwvZiQxJA--\r\n";
+        try {
+            impl = new StreamedMultipart(headers, new ByteArrayInputStream(body.getBytes()));
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+
+        assertEquals("/riak/c/k2", impl.next().getHeaders().get("location"));
+        Multipart.Part part = impl.next();
+        assertEquals("/riak/c/k3", part.getHeaders().get("location"));
+        assertEquals("baz", part.getBodyAsString());
+        assertFalse(impl.hasNext());
+    }
+
+    @Test public void parses_parts_larger_than_a_block() throws IOException {
+        byte[] big = new byte[2 * OneTokenInputStream.BLOCK_SIZE + 17];
+        for (int i = 0; i < big.length; i++) {
+            big[i] = (byte) (i % 251);
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write("--boundary\r\n\r\n".getBytes());
+        body.write(big);
+        body.write("\r\n--boundary\r\nContent-Type: text/plain\r\n\r\nsmall\r\n--boundary--\r\n".getBytes());
+
+        impl = new StreamedMultipart(headers, new ByteArrayInputStream(body.toByteArray()));
+        Part first = impl.next();
+        Part second = impl.next();
+        assertNull(impl.next());
+
+        assertEquals("small", second.getBodyAsString());
+        assertEquals("text/plain", second.getHeaders().get("content-type"));
+        assertArrayEquals(big, first.getBody());
+    }
+
+    @Test public void parses_input_arriving_a_byte_at_a_time() throws IOException {
+        impl = new StreamedMultipart(headers, new TestOneTokenInputStream.TrickleInputStream(body.getBytes()));
+
+        assertEquals("foo", impl.next().getBodyAsString());
+        assertEquals("multiple lines of\ntext in this part\n", impl.next().getBodyAsString());
+        Part last = impl.next();
+        assertEquals("value2", last.getHeaders().get("header"));
+        assertEquals("baz,", last.getBodyAsString());
+        assertNull(impl.next());
+    }
 }
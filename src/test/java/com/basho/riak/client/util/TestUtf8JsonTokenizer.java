@@ -0,0 +1,61 @@
+/*
+ * This file is provided to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.basho.riak.client.util;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+public class TestUtf8JsonTokenizer {
+
+    private Utf8JsonTokenizer tokenizer(String json) throws IOException {
+        return new Utf8JsonTokenizer(new ByteArrayInputStream(json.getBytes("UTF-8")), 4);
+    }
+
+    @Test public void decodes_utf8_and_escapes() throws IOException, JSONException {
+        Utf8JsonTokenizer impl = tokenizer("\"caf\u00e9 \u65e5\u672c \ud83d\ude00 \\\"q\\\" \\u00e9\\n\"");
+
+        assertEquals('"', impl.nextClean());
+        assertEquals("caf\u00e9 \u65e5\u672c \ud83d\ude00 \"q\" \u00e9\n", impl.nextString());
+        assertEquals(-1, impl.next());
+    }
+
+    @Test public void skips_nested_values() throws IOException, JSONException {
+        Utf8JsonTokenizer impl = tokenizer(" {\"a\":[1,{\"b\":\"]}\"}],\"c\":true} 12.5e3 ,\"next\"");
+
+        impl.skipValue();
+        impl.skipValue();
+        assertEquals(',', impl.nextClean());
+        assertEquals('"', impl.nextClean());
+        assertEquals("next", impl.nextString());
+    }
+
+    @Test public void malformed_utf8_is_replaced() throws IOException, JSONException {
+        byte[] json = { '"', 'a', (byte) 0xc3, 'b', (byte) 0x80, '"' };
+        Utf8JsonTokenizer impl = new Utf8JsonTokenizer(new ByteArrayInputStream(json));
+
+        impl.next();
+        assertEquals("a\ufffdb\ufffd", impl.nextString());
+    }
+
+    @Test(expected = JSONException.class) public void throws_on_unterminated_string() throws IOException, JSONException {
+        Utf8JsonTokenizer impl = tokenizer("\"abc");
+        impl.next();
+        impl.nextString();
+    }
+}